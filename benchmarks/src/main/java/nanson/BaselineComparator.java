@@ -0,0 +1,106 @@
+package nanson;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two CSV baselines written by {@link BenchmarkRunner} and prints the
+ * relative change of every score (throughput and gc profiler metrics alike).
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar nanson.BaselineComparator old.csv new.csv}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class BaselineComparator {
+    /**
+     * Constructs an instance of BaselineComparator.
+     */
+    public BaselineComparator() {
+    }
+
+    /**
+     * Prints the comparison of two baselines.
+     *
+     * @param args the old baseline followed by the new baseline.
+     * @throws IOException if a baseline cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BaselineComparator <old.csv> <new.csv>");
+            System.exit(1);
+        }
+        Map<String, Double> oldScores = readScores(Path.of(args[0]));
+        Map<String, Double> newScores = readScores(Path.of(args[1]));
+        for (Map.Entry<String, Double> entry : newScores.entrySet()) {
+            Double oldScore = oldScores.get(entry.getKey());
+            if (oldScore == null) {
+                System.out.printf("%-100s %14s %14.3f%n", entry.getKey(), "-", entry.getValue());
+            } else {
+                double change = oldScore == 0 ? 0 : (entry.getValue() - oldScore) / oldScore * 100;
+                System.out.printf("%-100s %14.3f %14.3f %+8.1f%%%n", entry.getKey(), oldScore, entry.getValue(),
+                    change);
+            }
+        }
+    }
+
+    /**
+     * Reads the scores of a JMH CSV result file keyed by benchmark, unit and
+     * parameters.
+     *
+     * @param file is the CSV file.
+     * @return the scores in file order.
+     * @throws IOException if the file cannot be read.
+     */
+    private static Map<String, Double> readScores(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        Map<String, Double> scores = new LinkedHashMap<>();
+        if (lines.isEmpty())
+            return scores;
+        List<String> header = splitCsvLine(lines.get(0));
+        int benchmarkColumn = header.indexOf("Benchmark");
+        int scoreColumn = header.indexOf("Score");
+        int unitColumn = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> fields = splitCsvLine(line);
+            if (fields.size() != header.size())
+                continue;
+            StringBuilder key = new StringBuilder(fields.get(benchmarkColumn));
+            for (int i = 0; i < header.size(); i++)
+                if (header.get(i).startsWith("Param: "))
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+            key.append(" [").append(fields.get(unitColumn)).append(']');
+            scores.put(key.toString(), Double.parseDouble(fields.get(scoreColumn)));
+        }
+        return scores;
+    }
+
+    /**
+     * Splits one CSV line, honoring double-quoted fields.
+     *
+     * @param line is the CSV line.
+     * @return the fields of the line.
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else
+                field.append(c);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
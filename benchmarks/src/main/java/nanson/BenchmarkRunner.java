@@ -0,0 +1,70 @@
+package nanson;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks with the gc profiler and records the results as a CSV
+ * baseline that {@link BaselineComparator} can compare against later versions.
+ * <p>
+ * Usage: {@code java -jar benchmarks.jar [label] [jmh options...]}. The results
+ * are written to {@code baselines/<label>.csv}; the label defaults to the
+ * benchmarked version.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class BenchmarkRunner {
+    /**
+     * Directory the baselines are written to.
+     */
+    private static final Path BASELINE_DIRECTORY = Path.of("baselines");
+
+    /**
+     * Label used when none is given.
+     */
+    private static final String DEFAULT_LABEL = "2.0-SNAPSHOT";
+
+    /**
+     * Constructs an instance of BenchmarkRunner.
+     */
+    public BenchmarkRunner() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args the baseline label followed by any regular JMH options.
+     * @throws RunnerException            if a benchmark fails.
+     * @throws CommandLineOptionException if the JMH options are invalid.
+     * @throws IOException                if the baseline directory cannot be
+     *                                    created.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        String label = DEFAULT_LABEL;
+        String[] jmhArgs = args;
+        if (args.length > 0 && !args[0].startsWith("-")) {
+            label = args[0];
+            jmhArgs = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Files.createDirectories(BASELINE_DIRECTORY);
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(jmhArgs))
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.CSV)
+            .result(BASELINE_DIRECTORY.resolve(label + ".csv").toString())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,76 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks forward evaluation of a network.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForwardPassBenchmark {
+    /**
+     * Constructs an instance of ForwardPassBenchmark.
+     */
+    public ForwardPassBenchmark() {
+    }
+
+    /**
+     * Loads the input and evaluates every layer through the database.
+     *
+     * @param state     is the network under test.
+     * @param blackhole consumes the output.
+     */
+    @Benchmark
+    public void computeActivations(NetworkState state, Blackhole blackhole) {
+        state.database.computeActivations(state.input);
+        blackhole.consume(state.getOutputLayer()[0].isActivated());
+    }
+
+    /**
+     * Evaluates every layer through the database, splitting large layers across
+     * the common fork/join pool.
+     *
+     * @param state     is the network under test.
+     * @param blackhole consumes the output.
+     */
+    @Benchmark
+    public void computeActivationsInParallel(NetworkState state, Blackhole blackhole) {
+        state.database.setEvaluationPool(ForkJoinPool.commonPool());
+        state.database.computeActivations(state.input);
+        state.database.setEvaluationPool(null);
+        blackhole.consume(state.getOutputLayer()[0].isActivated());
+    }
+
+    /**
+     * Calls computeActivation on every activation neuron one at a time, which
+     * also updates stakes.
+     *
+     * @param state     is the network under test.
+     * @param blackhole consumes the output.
+     */
+    @Benchmark
+    @SuppressWarnings("removal")
+    public void computeActivationPerNeuron(NetworkState state, Blackhole blackhole) {
+        NeuronDatabase database = state.database;
+        for (int a = 1; a < database.getNumberOfLayers(); a++)
+            for (Neuron neuron : database.getNeuronLayer(a))
+                neuron.computeActivation(false);
+        for (Neuron[] layer : database.getNeurons())
+            for (Neuron neuron : layer)
+                neuron.clearStake();
+        blackhole.consume(state.getOutputLayer()[0].isActivated());
+    }
+}
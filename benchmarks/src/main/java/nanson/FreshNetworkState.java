@@ -0,0 +1,55 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Copy of the {@link NetworkState} network for benchmarks that mutate it. The
+ * copy is made again, with the same seed, before every iteration, so every
+ * iteration starts from the same wiring instead of from whatever the previous
+ * iterations left behind.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@State(Scope.Thread)
+public class FreshNetworkState {
+    /**
+     * Seed of the copy's random generator, so every iteration makes the same
+     * mutations.
+     */
+    private static final long SEED = 43;
+
+    /**
+     * The copy under test.
+     */
+    public NeuronDatabase database;
+
+    /**
+     * Constructs an instance of FreshNetworkState.
+     */
+    public FreshNetworkState() {
+    }
+
+    /**
+     * Copies the network built for the trial.
+     *
+     * @param state is the network built for the trial; it is never mutated.
+     */
+    @Setup(Level.Iteration)
+    public void setUp(NetworkState state) {
+        database = state.database.copy();
+        database.setSeed(SEED);
+    }
+
+    /**
+     * Gets the output layer of the copy.
+     *
+     * @return the output layer.
+     */
+    public Neuron[] getOutputLayer() {
+        return database.getNeuronLayer(database.getNumberOfLayers() - 1);
+    }
+}
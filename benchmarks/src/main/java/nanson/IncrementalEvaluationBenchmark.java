@@ -0,0 +1,109 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks mutate-and-test cycles: one random neuron changes one thing and
+ * the network is evaluated again, either fully or incrementally.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementalEvaluationBenchmark {
+    /**
+     * Constructs an instance of IncrementalEvaluationBenchmark.
+     */
+    public IncrementalEvaluationBenchmark() {
+    }
+
+    /**
+     * Incremental evaluator listening to the network under test.
+     */
+    @State(Scope.Thread)
+    public static class EvaluatorState {
+        /**
+         * The evaluator.
+         */
+        public IncrementalEvaluator evaluator;
+
+        /**
+         * Constructs an instance of EvaluatorState.
+         */
+        public EvaluatorState() {
+        }
+
+        /**
+         * Attaches the evaluator and runs the initial full evaluation.
+         *
+         * @param state is the network under test.
+         */
+        @Setup(Level.Trial)
+        public void setUp(NetworkState state) {
+            evaluator = new IncrementalEvaluator(state.database);
+            evaluator.evaluate(state.input);
+        }
+
+        /**
+         * Detaches the evaluator.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            evaluator.close();
+        }
+    }
+
+    /**
+     * Mutates one random activation neuron.
+     *
+     * @param state is the network under test.
+     */
+    private static void mutateRandomNeuron(NetworkState state) {
+        NeuronDatabase database = state.database;
+        int layer = 1 + database.getRandomGenerator().nextInt(database.getNumberOfLayers() - 1);
+        database.getNeuron(layer, database.getRandomGenerator().nextInt(database.getLayerLength(layer)))
+            .changeOneThing();
+    }
+
+    /**
+     * Mutates one neuron and runs a full forward pass.
+     *
+     * @param state     is the network under test.
+     * @param blackhole consumes the output.
+     */
+    @Benchmark
+    public void mutateAndComputeActivations(NetworkState state, Blackhole blackhole) {
+        mutateRandomNeuron(state);
+        state.database.computeActivations(state.input);
+        blackhole.consume(state.getOutputLayer()[0].isActivated());
+    }
+
+    /**
+     * Mutates one neuron and re-evaluates only what it can have changed.
+     *
+     * @param state          is the network under test.
+     * @param evaluatorState holds the incremental evaluator.
+     * @param blackhole      consumes the output.
+     */
+    @Benchmark
+    public void mutateAndEvaluateIncrementally(NetworkState state, EvaluatorState evaluatorState,
+                                               Blackhole blackhole) {
+        mutateRandomNeuron(state);
+        evaluatorState.evaluator.evaluate(state.input);
+        blackhole.consume(state.getOutputLayer()[0].isActivated());
+    }
+}
@@ -0,0 +1,121 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+
+/**
+ * Benchmarks the packed layer kernels against each other on the same network.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LayerKernelBenchmark {
+    /**
+     * Constructs an instance of LayerKernelBenchmark.
+     */
+    public LayerKernelBenchmark() {
+    }
+
+    /**
+     * Randomly wired packed network and the kernel evaluating it, with the same
+     * parameters and wiring as {@link NetworkState}.
+     */
+    @State(Scope.Thread)
+    public static class KernelState {
+        /**
+         * Seed of the network, so every run benchmarks the same wiring.
+         */
+        private static final long SEED = 42;
+
+        /**
+         * Name of the kernel under test.
+         */
+        @Param({LayerKernel.SCALAR, LayerKernel.VECTOR})
+        public String kernelName;
+
+        /**
+         * Number of neurons in every layer.
+         */
+        @Param({"64", "1024", "8192"})
+        public int layerSize;
+
+        /**
+         * Number of incoming connections of every activation neuron.
+         */
+        @Param({"2", "8", "32"})
+        public int fanIn;
+
+        /**
+         * Number of activation layers after the data layer.
+         */
+        @Param({"3", "6"})
+        public int depth;
+
+        /**
+         * The kernel under test.
+         */
+        public LayerKernel kernel;
+
+        /**
+         * The packed storage of the network.
+         */
+        public PackedNetwork network;
+
+        /**
+         * Constructs an instance of KernelState.
+         */
+        public KernelState() {
+        }
+
+        /**
+         * Looks the kernel up, builds the network and loads a random input.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            kernel = LayerKernel.forName(kernelName);
+            int[] layerLengths = new int[depth + 1];
+            Arrays.fill(layerLengths, layerSize);
+            NeuronDatabase database = new NeuronDatabase(true, fanIn, layerLengths);
+            database.setSeed(SEED);
+            for (int a = 1; a < database.getNumberOfLayers(); a++)
+                for (Neuron neuron : database.getNeuronLayer(a))
+                    for (int i = 0; i < fanIn * 8; i++)
+                        neuron.changeOneThing();
+            boolean[] input = new boolean[layerSize];
+            for (int i = 0; i < input.length; i++)
+                input[i] = database.getRandomGenerator().nextBoolean();
+            database.computeActivations(input);
+            network = (PackedNetwork) database.getNetworkStorage();
+        }
+    }
+
+    /**
+     * Evaluates every layer with the kernel under test.
+     *
+     * @param state     is the kernel and network under test.
+     * @param blackhole consumes the output.
+     */
+    @Benchmark
+    public void evaluateLayers(KernelState state, Blackhole blackhole) {
+        PackedNetwork network = state.network;
+        for (int a = 1; a < network.getNumberOfLayers(); a++)
+            state.kernel.evaluateWords(network, a, null, 0, network.getActivationWordCount(a));
+        blackhole.consume(network.getActivationWord(network.getNumberOfLayers() - 1, 0));
+    }
+}
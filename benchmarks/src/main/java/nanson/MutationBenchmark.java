@@ -0,0 +1,40 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks mutation storms where every activation neuron changes one thing.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationBenchmark {
+    /**
+     * Constructs an instance of MutationBenchmark.
+     */
+    public MutationBenchmark() {
+    }
+
+    /**
+     * Calls changeOneThing on every activation neuron of a copy of the network
+     * made again before every iteration.
+     *
+     * @param state is the network under test.
+     */
+    @Benchmark
+    public void changeOneThingStorm(FreshNetworkState state) {
+        NeuronDatabase database = state.database;
+        for (int a = 1; a < database.getNumberOfLayers(); a++)
+            for (Neuron neuron : database.getNeuronLayer(a))
+                neuron.changeOneThing();
+    }
+}
@@ -0,0 +1,93 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+
+/**
+ * Randomly wired network shared by the benchmarks, parameterized by layer size,
+ * fan-in, depth and storage model. It is built once per trial; benchmarks that
+ * mutate the network use a {@link FreshNetworkState} copy instead.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@State(Scope.Thread)
+public class NetworkState {
+    /**
+     * Seed of the network, so every run benchmarks the same wiring.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Number of neurons in every layer.
+     */
+    @Param({"64", "1024", "8192"})
+    public int layerSize;
+
+    /**
+     * Number of incoming connections of every activation neuron.
+     */
+    @Param({"2", "8"})
+    public int fanIn;
+
+    /**
+     * Number of activation layers after the data layer.
+     */
+    @Param({"3", "6"})
+    public int depth;
+
+    /**
+     * Whether the database uses the packed storage model.
+     */
+    @Param({"false", "true"})
+    public boolean packed;
+
+    /**
+     * The network under test.
+     */
+    public NeuronDatabase database;
+
+    /**
+     * Input bits loaded into the data layer by forward passes.
+     */
+    public boolean[] input;
+
+    /**
+     * Constructs an instance of NetworkState.
+     */
+    public NetworkState() {
+    }
+
+    /**
+     * Builds the network and wires it randomly by mutating every neuron
+     * repeatedly.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] layerLengths = new int[depth + 1];
+        Arrays.fill(layerLengths, layerSize);
+        database = new NeuronDatabase(packed, fanIn, layerLengths);
+        database.setSeed(SEED);
+        for (int a = 1; a < database.getNumberOfLayers(); a++)
+            for (Neuron neuron : database.getNeuronLayer(a))
+                for (int i = 0; i < fanIn * 8; i++)
+                    neuron.changeOneThing();
+        input = new boolean[layerSize];
+        for (int i = 0; i < input.length; i++)
+            input[i] = database.getRandomGenerator().nextBoolean();
+    }
+
+    /**
+     * Gets the output layer of the network.
+     *
+     * @return the output layer.
+     */
+    public Neuron[] getOutputLayer() {
+        return database.getNeuronLayer(database.getNumberOfLayers() - 1);
+    }
+}
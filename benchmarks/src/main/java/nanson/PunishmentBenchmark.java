@@ -0,0 +1,63 @@
+package nanson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks full punishment and stake cycles started from the output layer.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PunishmentBenchmark {
+    /**
+     * Denominator of the mutation probability at the punished output neurons
+     * (1 in 1000, the same as the auto grader).
+     */
+    private static final int PUNISHMENT_DENOMINATOR = 1000;
+
+    /**
+     * Constructs an instance of PunishmentBenchmark.
+     */
+    public PunishmentBenchmark() {
+    }
+
+    /**
+     * Punishes every output neuron by depth. Punishment mutates the network, so
+     * it runs on a copy made again before every iteration.
+     *
+     * @param state is the network under test.
+     */
+    @Benchmark
+    public void punishByDepth(FreshNetworkState state) {
+        for (Neuron neuron : state.getOutputLayer())
+            neuron.punishByDepth(PUNISHMENT_DENOMINATOR);
+    }
+
+    /**
+     * Updates the stake of every output neuron and then clears all stakes.
+     *
+     * @param state     is the network under test.
+     * @param blackhole consumes a stake.
+     */
+    @Benchmark
+    @SuppressWarnings("removal")
+    public void updateStake(NetworkState state, Blackhole blackhole) {
+        Neuron[] outputLayer = state.getOutputLayer();
+        for (Neuron neuron : outputLayer)
+            neuron.updateStake();
+        blackhole.consume(outputLayer[0].getStake());
+        for (Neuron[] layer : state.database.getNeurons())
+            for (Neuron neuron : layer)
+                neuron.clearStake();
+    }
+}
@@ -0,0 +1,588 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Binary feed of the activations of a network for observers such as displays.
+ * The engine calls {@link #publish()} whenever it likes, e.g. after every forward
+ * pass; each call captures every layer as an activation bitset, XORs it with the
+ * previous frame and, if anything changed, writes the frame into a bounded ring
+ * buffer under the next sequence number. Passes that change nothing publish
+ * nothing, and flips that flip back between two frames cancel out.
+ * <p>
+ * Each observer reads through its own {@link Subscriber} and keeps its own copy
+ * of the state it has seen. A subscriber that is one frame behind reads the
+ * diff of that frame; one that fell further behind skips straight to the latest
+ * frame and gets a single diff coalescing everything it missed, so an observer
+ * polling at its own pace always shows the latest state. A frame stays in the
+ * ring until the publisher laps it, which gives readers time to copy it; the
+ * engine never waits for observers and neither publishing nor polling
+ * allocates, except when a layer has been resized since the last frame.
+ * <p>
+ * One thread publishes; any number of threads may each poll their own
+ * subscriber.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class ActivationFeed {
+    /**
+     * Default number of frames the ring buffer holds.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The network whose activations {@link #publish()} publishes.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * Number of frames the ring buffer holds.
+     */
+    private final int capacity;
+
+    /**
+     * The ring buffer; replaced when the shape of the network changes.
+     */
+    private volatile Ring ring;
+
+    /**
+     * Sequence number of the latest frame, or 0 if none was published. Written
+     * after the frame is complete.
+     */
+    private volatile long publishedSequence;
+
+    /**
+     * Activations of the latest frame, compared with the next capture. Only used
+     * by the publishing thread.
+     */
+    private long[][] previous;
+
+    /**
+     * Constructs an ActivationFeed with {@link #DEFAULT_CAPACITY} frames.
+     *
+     * @param neuronDatabase is the network whose activations are published.
+     */
+    public ActivationFeed(@NotNull NeuronDatabase neuronDatabase) {
+        this(neuronDatabase, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an ActivationFeed.
+     *
+     * @param neuronDatabase is the network whose activations are published.
+     * @param capacity       is the number of frames the ring buffer holds; at
+     *                       least 2.
+     * @throws IllegalArgumentException if the capacity is less than 2.
+     */
+    public ActivationFeed(@NotNull NeuronDatabase neuronDatabase, int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("The capacity must be at least 2: " + capacity);
+        this.neuronDatabase = neuronDatabase;
+        this.capacity = capacity;
+        ring = new Ring(capacity, shapeOf(neuronDatabase));
+        previous = newBitsets(ring.shape);
+    }
+
+    /**
+     * Captures the activations of the network and publishes them as a new frame
+     * if any activation changed since the previous frame. Call it from the
+     * thread that mutates and evaluates the network.
+     *
+     * @return true if a frame was published.
+     */
+    public boolean publish() {
+        return publish(neuronDatabase);
+    }
+
+    /**
+     * Captures the activations of another network and publishes them as a new
+     * frame, diffed against the previous frame as if they came from the same
+     * network. Lets a trainer whose best network is replaced by a copy keep
+     * feeding the same observers. Call it from the publishing thread only.
+     *
+     * @param network is the network to capture.
+     * @return true if a frame was published.
+     */
+    public boolean publish(@NotNull NeuronDatabase network) {
+        Ring current = ring;
+        int[] shape = current.shape;
+        if (!hasShape(network, shape)) {
+            shape = shapeOf(network);
+            // A resize is rare, so it may allocate: the new ring starts from the previous state, padded with zeros.
+            long[][] resized = newBitsets(shape);
+            for (int a = 0; a < Math.min(resized.length, previous.length); a++)
+                System.arraycopy(previous[a], 0, resized[a], 0, Math.min(resized[a].length, previous[a].length));
+            previous = resized;
+            current = new Ring(capacity, shape);
+            // Readers that see the new ring before the next sequence still find the latest frame in it.
+            long latest = publishedSequence;
+            if (latest > 0) {
+                Frame frame = current.slots[(int) (latest % capacity)];
+                for (int a = 0; a < shape.length; a++)
+                    System.arraycopy(resized[a], 0, frame.activations[a], 0, resized[a].length);
+                frame.endWrite(latest);
+            }
+            ring = current;
+        }
+        long sequence = publishedSequence + 1;
+        Frame frame = current.slots[(int) (sequence % capacity)];
+        frame.beginWrite();
+        int changedNeurons = 0;
+        for (int a = 0; a < shape.length; a++) {
+            long[] activations = frame.activations[a];
+            capture(network, a, activations);
+            long[] changes = frame.changes[a];
+            long[] last = previous[a];
+            for (int w = 0; w < activations.length; w++) {
+                changes[w] = activations[w] ^ last[w];
+                changedNeurons += Long.bitCount(changes[w]);
+            }
+        }
+        if (changedNeurons == 0) {
+            frame.abortWrite();
+            return false;
+        }
+        frame.changedNeurons = changedNeurons;
+        for (int a = 0; a < shape.length; a++)
+            System.arraycopy(frame.activations[a], 0, previous[a], 0, previous[a].length);
+        frame.endWrite(sequence);
+        publishedSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Gets the sequence number of the latest frame.
+     *
+     * @return the sequence number, or 0 if no frame was published.
+     */
+    public long getPublishedSequence() {
+        return publishedSequence;
+    }
+
+    /**
+     * Creates a subscriber. Its first poll returns the latest frame as changes
+     * from an all-false network.
+     *
+     * @return the new subscriber.
+     */
+    public Subscriber subscribe() {
+        return new Subscriber();
+    }
+
+    /**
+     * Captures the activations of a layer into a bitset.
+     *
+     * @param network    is the network to capture.
+     * @param layerIndex is the index of the layer.
+     * @param words      is the bitset to fill.
+     */
+    private static void capture(NeuronDatabase network, int layerIndex, long[] words) {
+        NetworkStorage networkStorage = network.getNetworkStorage();
+        if (networkStorage != null) {
+            for (int w = 0; w < words.length; w++)
+                words[w] = networkStorage.getActivationWord(layerIndex, w);
+            return;
+        }
+        Neuron[] layer = network.getNeuronLayer(layerIndex);
+        for (int w = 0; w < words.length; w++) {
+            long word = 0;
+            for (int b = w << 6; b < Math.min((w + 1) << 6, layer.length); b++)
+                if (layer[b].isActivated())
+                    word |= 1L << b;
+            words[w] = word;
+        }
+    }
+
+    /**
+     * Gets the number of neurons of every layer of a network.
+     *
+     * @param network is the network.
+     * @return the layer lengths.
+     */
+    private static int[] shapeOf(NeuronDatabase network) {
+        int[] shape = new int[network.getNumberOfLayers()];
+        for (int a = 0; a < shape.length; a++)
+            shape[a] = network.getLayerLength(a);
+        return shape;
+    }
+
+    /**
+     * Checks the layer lengths of a network without allocating.
+     *
+     * @param network is the network.
+     * @param shape   is the number of neurons of every layer.
+     * @return whether the network has exactly these layer lengths.
+     */
+    private static boolean hasShape(NeuronDatabase network, int[] shape) {
+        if (network.getNumberOfLayers() != shape.length)
+            return false;
+        for (int a = 0; a < shape.length; a++)
+            if (network.getLayerLength(a) != shape[a])
+                return false;
+        return true;
+    }
+
+    /**
+     * Allocates one bitset per layer.
+     *
+     * @param shape is the number of neurons of every layer.
+     * @return the bitsets.
+     */
+    private static long[][] newBitsets(int[] shape) {
+        long[][] bitsets = new long[shape.length][];
+        for (int a = 0; a < shape.length; a++)
+            bitsets[a] = new long[PackedNetwork.wordsFor(shape[a])];
+        return bitsets;
+    }
+
+    /**
+     * A reader of the feed with its own copy of the state it has seen. Not
+     * thread-safe; give each observer its own subscriber.
+     */
+    public class Subscriber {
+        /**
+         * The ring the buffers below are shaped for.
+         */
+        private Ring ring;
+
+        /**
+         * Activations as of {@link #sequence}.
+         */
+        private long[][] activations;
+
+        /**
+         * Activations that changed in the last poll.
+         */
+        private long[][] changes;
+
+        /**
+         * Activations of the latest frame while it is being copied.
+         */
+        private long[][] scratch;
+
+        /**
+         * Sequence number of the latest frame seen, or 0 if none was.
+         */
+        private long sequence;
+
+        /**
+         * Number of neurons that changed in the last poll.
+         */
+        private int changedNeurons;
+
+        /**
+         * Number of frames that were coalesced into later ones because this
+         * subscriber fell behind.
+         */
+        private long skippedFrames;
+
+        /**
+         * Constructs a Subscriber.
+         */
+        Subscriber() {
+            ring = ActivationFeed.this.ring;
+            activations = newBitsets(ring.shape);
+            changes = newBitsets(ring.shape);
+            scratch = newBitsets(ring.shape);
+        }
+
+        /**
+         * Reads the latest frame, as the diff of that frame alone if it directly
+         * follows the last frame seen, or else as one diff of every frame missed.
+         *
+         * @return true if there was a new frame; its changes are then available
+         * through {@link #getChanges(int)}.
+         */
+        public boolean poll() {
+            long published = publishedSequence;
+            if (published <= sequence)
+                return false;
+            Ring current = ActivationFeed.this.ring;
+            if (current != ring) {
+                reshape(current);
+            } else if (published == sequence + 1 && readNext(published)) {
+                return true;
+            }
+            readLatest();
+            return true;
+        }
+
+        /**
+         * Reads the frame right after the last one seen and applies its changes.
+         *
+         * @param next is the sequence number of the frame.
+         * @return false if the frame was overwritten before it could be read.
+         */
+        private boolean readNext(long next) {
+            Frame frame = ring.slots[(int) (next % capacity)];
+            if (frame.readSequence() != next)
+                return false;
+            int count = frame.changedNeurons;
+            for (int a = 0; a < changes.length; a++)
+                System.arraycopy(frame.changes[a], 0, changes[a], 0, changes[a].length);
+            if (!frame.validate(next))
+                return false;
+            for (int a = 0; a < changes.length; a++)
+                for (int w = 0; w < changes[a].length; w++)
+                    activations[a][w] ^= changes[a][w];
+            changedNeurons = count;
+            sequence = next;
+            return true;
+        }
+
+        /**
+         * Reads the latest frame, retrying while the publisher overwrites it,
+         * and diffs it against the state seen so far.
+         */
+        private void readLatest() {
+            while (true) {
+                long latest = publishedSequence;
+                Ring current = ActivationFeed.this.ring;
+                if (current != ring)
+                    reshape(current);
+                Frame frame = ring.slots[(int) (latest % capacity)];
+                if (frame.readSequence() != latest)
+                    continue;
+                for (int a = 0; a < scratch.length; a++)
+                    System.arraycopy(frame.activations[a], 0, scratch[a], 0, scratch[a].length);
+                if (!frame.validate(latest))
+                    continue;
+                int count = 0;
+                for (int a = 0; a < scratch.length; a++) {
+                    for (int w = 0; w < scratch[a].length; w++) {
+                        changes[a][w] = scratch[a][w] ^ activations[a][w];
+                        count += Long.bitCount(changes[a][w]);
+                    }
+                }
+                long[][] swap = activations;
+                activations = scratch;
+                scratch = swap;
+                skippedFrames += latest - sequence - 1;
+                changedNeurons = count;
+                sequence = latest;
+                return;
+            }
+        }
+
+        /**
+         * Resizes the buffers for a ring with a new shape, keeping the state seen
+         * so far where the layers overlap.
+         *
+         * @param current is the new ring.
+         */
+        private void reshape(Ring current) {
+            long[][] resized = newBitsets(current.shape);
+            for (int a = 0; a < Math.min(resized.length, activations.length); a++)
+                System.arraycopy(activations[a], 0, resized[a], 0, Math.min(resized[a].length, activations[a].length));
+            ring = current;
+            activations = resized;
+            changes = newBitsets(current.shape);
+            scratch = newBitsets(current.shape);
+        }
+
+        /**
+         * Gets the sequence number of the latest frame seen.
+         *
+         * @return the sequence number, or 0 if no frame was seen.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Gets the number of layers of the frames seen.
+         *
+         * @return the number of layers.
+         */
+        public int getNumberOfLayers() {
+            return activations.length;
+        }
+
+        /**
+         * Gets the number of neurons of a layer as of the latest frame seen.
+         *
+         * @param layerIndex is the index of the layer.
+         * @return the layer length.
+         */
+        public int getLayerLength(int layerIndex) {
+            return ring.shape[layerIndex];
+        }
+
+        /**
+         * Gets the activations of a layer as of the latest frame seen. The array
+         * is not copied and is reused by later polls.
+         *
+         * @param layerIndex is the index of the layer.
+         * @return the activation bitset of the layer.
+         */
+        public long[] getActivations(int layerIndex) {
+            return activations[layerIndex];
+        }
+
+        /**
+         * Gets the activations of a layer that changed in the last poll. The array
+         * is not copied and is reused by later polls.
+         *
+         * @param layerIndex is the index of the layer.
+         * @return the bitset of the neurons whose activation flipped.
+         */
+        public long[] getChanges(int layerIndex) {
+            return changes[layerIndex];
+        }
+
+        /**
+         * Gets the number of neurons that changed in the last poll.
+         *
+         * @return the number of changed neurons.
+         */
+        public int getChangedNeurons() {
+            return changedNeurons;
+        }
+
+        /**
+         * Gets the number of frames coalesced into later ones because this
+         * subscriber fell behind.
+         *
+         * @return the number of skipped frames.
+         */
+        public long getSkippedFrames() {
+            return skippedFrames;
+        }
+    }
+
+    /**
+     * Frames of one network shape.
+     */
+    private static final class Ring {
+        /**
+         * Number of neurons of every layer.
+         */
+        final int[] shape;
+
+        /**
+         * The frames, indexed by sequence number modulo the capacity.
+         */
+        final Frame[] slots;
+
+        /**
+         * Constructs a Ring.
+         *
+         * @param capacity is the number of frames.
+         * @param shape    is the number of neurons of every layer.
+         */
+        Ring(int capacity, int[] shape) {
+            this.shape = shape;
+            slots = new Frame[capacity];
+            for (int i = 0; i < capacity; i++)
+                slots[i] = new Frame(shape);
+        }
+    }
+
+    /**
+     * One frame of the ring buffer, guarded by a sequence lock: the sequence is
+     * -1 while the frame is written, so readers can tell a frame that changed
+     * under them.
+     */
+    private static final class Frame {
+        /**
+         * Handle to {@link #sequence}, for ordered accesses.
+         */
+        private static final VarHandle SEQUENCE;
+
+        static {
+            try {
+                SEQUENCE = MethodHandles.lookup().findVarHandle(Frame.class, "sequence", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /**
+         * Activations of every layer.
+         */
+        final long[][] activations;
+
+        /**
+         * Activations that changed since the previous frame.
+         */
+        final long[][] changes;
+
+        /**
+         * Number of neurons that changed since the previous frame.
+         */
+        int changedNeurons;
+
+        /**
+         * Sequence number of the frame, 0 if it was never written, or -1 while it
+         * is written.
+         */
+        @SuppressWarnings("unused") // Accessed through SEQUENCE.
+        private volatile long sequence;
+
+        /**
+         * Sequence number the frame had before the current write.
+         */
+        private long writtenSequence;
+
+        /**
+         * Constructs a Frame.
+         *
+         * @param shape is the number of neurons of every layer.
+         */
+        Frame(int[] shape) {
+            activations = newBitsets(shape);
+            changes = newBitsets(shape);
+        }
+
+        /**
+         * Marks the frame as being written.
+         */
+        void beginWrite() {
+            writtenSequence = (long) SEQUENCE.getOpaque(this);
+            SEQUENCE.setVolatile(this, -1L);
+            // The payload stores that follow must not become visible before the -1.
+            VarHandle.storeStoreFence();
+        }
+
+        /**
+         * Abandons a write that published nothing. The previous contents of the
+         * frame are gone, so it stays marked invalid unless it was never written.
+         */
+        void abortWrite() {
+            SEQUENCE.setRelease(this, writtenSequence == 0 ? 0L : -1L);
+        }
+
+        /**
+         * Marks the frame as complete.
+         *
+         * @param sequence is the sequence number of the frame.
+         */
+        void endWrite(long sequence) {
+            SEQUENCE.setRelease(this, sequence);
+        }
+
+        /**
+         * Reads the sequence number before reading the frame.
+         *
+         * @return the sequence number.
+         */
+        long readSequence() {
+            return (long) SEQUENCE.getAcquire(this);
+        }
+
+        /**
+         * Checks after reading the frame that it wasn't written meanwhile.
+         *
+         * @param expected is the sequence number read before.
+         * @return whether the frame is unchanged.
+         */
+        boolean validate(long expected) {
+            VarHandle.loadLoadFence();
+            return (long) SEQUENCE.getOpaque(this) == expected;
+        }
+    }
+}
@@ -2,7 +2,7 @@ package nanson;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
+import java.util.random.RandomGenerator;
 
 /**
  * Represents a neuron that does the main "logic" work.
@@ -36,6 +36,12 @@ public class ActivationNeuron implements Neuron {
      */
     private final int[] incomingNeuronIndexes;
 
+    /**
+     * The incoming neurons resolved from {@link #incomingNeuronIndexes}, one per
+     * connection. Created lazily, since it is not serialized.
+     */
+    private transient Cacher<Neuron[]> incomingNeurons;
+
     /**
      * Current activation state of this neuron.
      */
@@ -75,9 +81,31 @@ public class ActivationNeuron implements Neuron {
         weights = new boolean[numberOfIncomingConnections];
     }
 
+    /**
+     * Constructs a copy of an ActivationNeuron for another database.
+     *
+     * @param neuronDatabase is the database the copy resides in (should only be
+     *                       constructed via database).
+     * @param neuron         is the neuron to copy.
+     */
+    ActivationNeuron(@NotNull NeuronDatabase neuronDatabase, @NotNull ActivationNeuron neuron) {
+        this.activated = neuron.activated;
+        this.neuronDatabase = neuronDatabase;
+        this.neuronLayerIndex = neuron.neuronLayerIndex;
+        this.neuronIndex = neuron.neuronIndex;
+        stake = neuron.stake;
+        nextNeuronIndex = neuron.nextNeuronIndex;
+        incomingNeuronIndexes = neuron.incomingNeuronIndexes.clone();
+        weights = neuron.weights.clone();
+    }
+
     @Override
     public void changeOneThing() {
-        int changeType = (int) (Math.random() * 3);
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.countMutation();
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        int changeType = neuronDatabase.getRandomGenerator().nextInt(3);
         switch (changeType) {
             case 0:
                 changeRandomIncomingNeuron();
@@ -89,6 +117,12 @@ public class ActivationNeuron implements Neuron {
                 changeNextNeuronIndex();
                 break;
         }
+        if (event.shouldCommit()) {
+            event.layerIndex = neuronLayerIndex;
+            event.neuronIndex = neuronIndex;
+            event.kind = MutationEvent.kindOf(changeType);
+            event.commit();
+        }
     }
 
     /**
@@ -97,9 +131,16 @@ public class ActivationNeuron implements Neuron {
      */
     private void changeRandomIncomingNeuron() {
         Neuron[] previousNeuronLayer = getPotentialInputNeurons();
-        int randomIndex = (int) (Math.random() * incomingNeuronIndexes.length);
-        int newIncomingNeuronIndex = (int) (Math.random() * previousNeuronLayer.length);
+        RandomGenerator random = neuronDatabase.getRandomGenerator();
+        int randomIndex = random.nextInt(incomingNeuronIndexes.length);
+        int newIncomingNeuronIndex = random.nextInt(previousNeuronLayer.length);
+        int oldIncomingNeuronIndex = incomingNeuronIndexes[randomIndex];
         incomingNeuronIndexes[randomIndex] = previousNeuronLayer[newIncomingNeuronIndex].getNeuronIndex();
+        if (oldIncomingNeuronIndex != incomingNeuronIndexes[randomIndex]) {
+            getIncomingNeuronCache().invalidate();
+            neuronDatabase.fireIncomingNeuronChanged(neuronLayerIndex, neuronIndex, randomIndex,
+                oldIncomingNeuronIndex, incomingNeuronIndexes[randomIndex]);
+        }
     }
 
     /**
@@ -108,8 +149,9 @@ public class ActivationNeuron implements Neuron {
      */
     private void flipRandomWeight() {
         if (weights.length > 0) {
-            int randIndex = (int) (Math.random() * weights.length);
+            int randIndex = neuronDatabase.getRandomGenerator().nextInt(weights.length);
             weights[randIndex] = !weights[randIndex];
+            neuronDatabase.fireWeightFlipped(neuronLayerIndex, neuronIndex, randIndex);
         }
     }
 
@@ -120,7 +162,7 @@ public class ActivationNeuron implements Neuron {
     private void changeNextNeuronIndex() {
         int temp = nextNeuronIndex;
         do {
-            nextNeuronIndex = (int) (Math.random() * incomingNeuronIndexes.length);
+            nextNeuronIndex = neuronDatabase.getRandomGenerator().nextInt(incomingNeuronIndexes.length);
         } while (nextNeuronIndex == temp);
     }
 
@@ -131,10 +173,33 @@ public class ActivationNeuron implements Neuron {
 
     @Override
     public Neuron[] getIncomingNeurons() {
-        ArrayList<Neuron> neurons = new ArrayList<>();
-        for (int incomingIndex : incomingNeuronIndexes)
-            neurons.add(getPotentialInputNeurons()[incomingIndex]);
-        return neurons.toArray(new Neuron[0]);
+        return getIncomingNeuronCache().getData().clone();
+    }
+
+    /**
+     * Gets the cache of the resolved incoming neurons, creating it if needed.
+     * Growing a layer keeps the neurons it already had, so only rewiring this
+     * neuron invalidates the cache.
+     *
+     * @return the cache of the incoming neurons.
+     */
+    private Cacher<Neuron[]> getIncomingNeuronCache() {
+        if (incomingNeurons == null)
+            incomingNeurons = new Cacher<>(this::resolveIncomingNeurons);
+        return incomingNeurons;
+    }
+
+    /**
+     * Looks up the incoming neurons in the previous layer.
+     *
+     * @return the incoming neuron of every connection.
+     */
+    private Neuron[] resolveIncomingNeurons() {
+        Neuron[] previousNeuronLayer = getPotentialInputNeurons();
+        Neuron[] neurons = new Neuron[incomingNeuronIndexes.length];
+        for (int i = 0; i < neurons.length; i++)
+            neurons[i] = previousNeuronLayer[incomingNeuronIndexes[i]];
+        return neurons;
     }
 
     @Override
@@ -152,6 +217,16 @@ public class ActivationNeuron implements Neuron {
         updateActivationState(evaluateActivation(bit));
     }
 
+    /**
+     * Recomputes the activation of this neuron without touching any stake. Used
+     * by the database when evaluating whole layers.
+     *
+     * @param bit should increase the chance that this neuron activates.
+     */
+    void evaluate(boolean bit) {
+        updateActivationState(evaluateActivation(bit));
+    }
+
     /**
      * Computes the threshold value used to determine activation. Current
      * implementation returns half of the number of incoming connections.
@@ -170,11 +245,13 @@ public class ActivationNeuron implements Neuron {
      * @return true if activation sum reaches or exceeds the threshold
      */
     private boolean evaluateActivation(boolean addOne) {
+        Neuron[] inputs = getIncomingNeuronCache().getData();
+        int threshold = getThreshold();
         int activationSum = (addOne ? 1 : 0);
-        for (int i = 0; i < incomingNeuronIndexes.length && i < weights.length; i++) {
-            if (weights[i] && getPotentialInputNeurons()[incomingNeuronIndexes[i]].isActivated())
+        for (int i = 0; i < inputs.length && i < weights.length; i++) {
+            if (weights[i] && inputs[i].isActivated())
                 activationSum++;
-            if (activationSum >= getThreshold())
+            if (activationSum >= threshold)
                 return true;
         }
         return false;
@@ -209,19 +286,75 @@ public class ActivationNeuron implements Neuron {
 
     @Override
     public void updateStake() {
-        updateStake(5, 0);
+        neuronDatabase.getStakePropagator().updateStake(neuronLayerIndex, neuronIndex);
     }
 
-    private void updateStake(int maxDepth, int currDepth) {
-        if (currDepth > maxDepth)
-            return;
-        stake += (int) Math.pow(2, maxDepth - currDepth);
-        for (int neuronIndex : incomingNeuronIndexes) {
-            Neuron neuron = getPotentialInputNeurons()[neuronIndex];
-            if (neuron instanceof ActivationNeuron) {
-                ((ActivationNeuron) neuron).updateStake(maxDepth, currDepth + 1);
-            }
-        }
+    /**
+     * Adds to the stake of this neuron.
+     *
+     * @param amount is the amount to add.
+     */
+    void addStake(int amount) {
+        stake += amount;
+    }
+
+    /**
+     * Gets the indexes of the incoming neurons in the previous layer. The array
+     * is not copied; change it through
+     * {@link #setIncomingNeuronIndexes(int[])} so the resolved neurons follow.
+     *
+     * @return the incoming neuron indexes.
+     */
+    int[] getIncomingNeuronIndexes() {
+        return incomingNeuronIndexes;
+    }
+
+    /**
+     * Replaces the indexes of the incoming neurons, e.g. when restoring a
+     * snapshot.
+     *
+     * @param incomingNeuronIndexes are the new indexes; they are copied.
+     */
+    void setIncomingNeuronIndexes(int @NotNull [] incomingNeuronIndexes) {
+        System.arraycopy(incomingNeuronIndexes, 0, this.incomingNeuronIndexes, 0, this.incomingNeuronIndexes.length);
+        getIncomingNeuronCache().invalidate();
+    }
+
+    /**
+     * Gets the weights of the incoming connections. The array is not copied.
+     *
+     * @return the weights.
+     */
+    boolean[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Gets the index of the next neuron to be evaluated.
+     *
+     * @return the next neuron index.
+     */
+    int getNextNeuronIndex() {
+        return nextNeuronIndex;
+    }
+
+    /**
+     * Sets the index of the next neuron to be evaluated.
+     *
+     * @param nextNeuronIndex is the new next neuron index.
+     */
+    void setNextNeuronIndex(int nextNeuronIndex) {
+        this.nextNeuronIndex = nextNeuronIndex;
+    }
+
+    /**
+     * Sets the activation of this neuron directly, e.g. when restoring a
+     * snapshot.
+     *
+     * @param activated is the new activation.
+     */
+    void setActivated(boolean activated) {
+        updateActivationState(activated);
     }
 
     @Override
@@ -246,22 +379,7 @@ public class ActivationNeuron implements Neuron {
 
     @Override
     public void punishByDepth(int denominatorOfProbability) {
-        if (denominatorOfProbability <= 0 || denominatorOfProbability > 1000000) // If invalid probability or too
-            // unlikely, stop punishment.
-            return;
-        double mutationChance = 1.0 / denominatorOfProbability;
-        if (Math.random() < mutationChance) {
-            changeOneThing();
-        }
-        int newProbabilityForIncomingNeurons = denominatorOfProbability * incomingNeuronIndexes.length; // Increase
-        // denominator
-        // to reduce
-        // chance for
-        // incoming
-        // neurons.
-        for (int neuronIndex : incomingNeuronIndexes) {
-            Neuron neuron = getPotentialInputNeurons()[neuronIndex];
-            neuron.punishByDepth(newProbabilityForIncomingNeurons);
-        }
+        neuronDatabase.getPunishmentScheduler().punishByDepth(neuronLayerIndex, neuronIndex,
+            denominatorOfProbability);
     }
 }
@@ -0,0 +1,118 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The auto grader's alphabet task: for every letter from 'A' to 'Z' the letter's
+ * bits are loaded into the data layer, and the first bits of the output layer
+ * are read back as the network's answer. The distance of an answer is its
+ * Hamming distance to the letter, so a perfect network scores 0.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class AlphabetTask {
+    /**
+     * Number of letters in the task.
+     */
+    public static final int NUMBER_OF_LETTERS = 26;
+
+    /**
+     * Number of bits per letter.
+     */
+    private final int lengthOfResults;
+
+    /**
+     * Input bits of every letter.
+     */
+    private final boolean[][] letterBits;
+
+    /**
+     * Constructs an AlphabetTask with {@link Constants#DEFAULT_LENGTH_OF_RESULTS}
+     * bits per letter.
+     */
+    public AlphabetTask() {
+        this(Constants.DEFAULT_LENGTH_OF_RESULTS);
+    }
+
+    /**
+     * Constructs an AlphabetTask.
+     *
+     * @param lengthOfResults is the number of bits per letter.
+     */
+    public AlphabetTask(int lengthOfResults) {
+        this.lengthOfResults = lengthOfResults;
+        letterBits = new boolean[NUMBER_OF_LETTERS][];
+        for (int i = 0; i < NUMBER_OF_LETTERS; i++)
+            letterBits[i] = Utilities.charToBooleanArray(getLetter(i), lengthOfResults);
+    }
+
+    /**
+     * Gets a letter of the task.
+     *
+     * @param index is the index of the letter (0 for 'A').
+     * @return the letter.
+     */
+    public static char getLetter(int index) {
+        return (char) ('A' + index);
+    }
+
+    /**
+     * Gets the number of bits per letter.
+     *
+     * @return the number of bits per letter.
+     */
+    public int getLengthOfResults() {
+        return lengthOfResults;
+    }
+
+    /**
+     * Runs a forward pass for one letter and reads the answer.
+     *
+     * @param neuronDatabase is the network to run; its output layer must have at
+     *                       least as many neurons as there are bits per letter.
+     * @param index          is the index of the letter (0 for 'A').
+     * @return the network's answer.
+     */
+    public char answer(@NotNull NeuronDatabase neuronDatabase, int index) {
+        neuronDatabase.computeActivations(letterBits[index]);
+        Neuron[] outputLayer = neuronDatabase.getNeuronLayer(neuronDatabase.getNumberOfLayers() - 1);
+        boolean[] results = new boolean[lengthOfResults];
+        for (int i = 0; i < lengthOfResults; i++)
+            results[i] = outputLayer[i].isActivated();
+        return Utilities.booleanArrayToChar(results);
+    }
+
+    /**
+     * Gets the distance of the network's answer for one letter.
+     *
+     * @param neuronDatabase is the network to run.
+     * @param index          is the index of the letter (0 for 'A').
+     * @return the Hamming distance between the answer and the letter.
+     */
+    public int distance(@NotNull NeuronDatabase neuronDatabase, int index) {
+        return Utilities.hammingDistance(answer(neuronDatabase, index), getLetter(index));
+    }
+
+    /**
+     * Scores a network over the whole alphabet.
+     *
+     * @param neuronDatabase is the network to run.
+     * @return the sum of the distances of every letter; lower is better.
+     */
+    public int score(@NotNull NeuronDatabase neuronDatabase) {
+        long start = TrainingMetrics.start();
+        // Every letter is answered in one bit-sliced pass over the pruned network.
+        boolean[][] outputs = neuronDatabase.getInferencePlan().evaluate(letterBits);
+        int score = 0;
+        for (int i = 0; i < NUMBER_OF_LETTERS; i++) {
+            boolean[] results = Arrays.copyOf(outputs[i], lengthOfResults);
+            score += Utilities.hammingDistance(Utilities.booleanArrayToChar(results), getLetter(i));
+        }
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordScore(start);
+        return score;
+    }
+}
@@ -0,0 +1,228 @@
+package nanson;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable snapshot of the statistics of a {@link Cacher} or
+ * {@link KeyedCacher}. A request is a hit when the value was cached, a miss when
+ * the requesting thread had to load it, and a wait when another thread was
+ * already loading it.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public final class CacheStatistics {
+    /**
+     * Statistics of a cache that doesn't record any.
+     */
+    public static final CacheStatistics EMPTY = new CacheStatistics(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Number of requests answered without loading.
+     */
+    private final long hitCount;
+
+    /**
+     * Number of requests that loaded their value.
+     */
+    private final long missCount;
+
+    /**
+     * Number of requests that waited for another thread's load.
+     */
+    private final long waitCount;
+
+    /**
+     * Number of loads that threw.
+     */
+    private final long loadFailureCount;
+
+    /**
+     * Total time spent in successful loads, in nanoseconds.
+     */
+    private final long totalLoadTime;
+
+    /**
+     * Number of entries evicted by size or age.
+     */
+    private final long evictionCount;
+
+    /**
+     * Constructs a CacheStatistics.
+     *
+     * @param hitCount         is the number of requests answered without
+     *                         loading.
+     * @param missCount        is the number of requests that loaded their value.
+     * @param waitCount        is the number of requests that waited for another
+     *                         thread's load.
+     * @param loadFailureCount is the number of loads that threw.
+     * @param totalLoadTime    is the total time spent in successful loads, in
+     *                         nanoseconds.
+     * @param evictionCount    is the number of entries evicted by size or age.
+     */
+    public CacheStatistics(long hitCount, long missCount, long waitCount, long loadFailureCount,
+                           long totalLoadTime, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.waitCount = waitCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * Gets the number of requests answered without loading.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of requests that loaded their value.
+     *
+     * @return the number of misses.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the number of requests that waited for another thread's load. They
+     * neither found the value cached nor paid for loading it.
+     *
+     * @return the number of waits.
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * Gets the number of loads that threw.
+     *
+     * @return the number of failed loads.
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Gets the total time spent in successful loads.
+     *
+     * @return the load time in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Gets the number of entries evicted by size or age.
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the number of requests.
+     *
+     * @return the number of hits, misses and waits.
+     */
+    public long getRequestCount() {
+        return hitCount + missCount + waitCount;
+    }
+
+    /**
+     * Gets the fraction of requests that were hits.
+     *
+     * @return the hit rate, 1 if there were no requests.
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 1 : (double) hitCount / requests;
+    }
+
+    /**
+     * Gets the average time of a successful load.
+     *
+     * @return the average load time in nanoseconds, 0 if nothing was loaded.
+     */
+    public double getAverageLoadPenalty() {
+        long loads = missCount - loadFailureCount;
+        return loads <= 0 ? 0 : (double) totalLoadTime / loads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d waits=%d failures=%d hitRate=%.3f averageLoad=%.0fns evictions=%d",
+            hitCount, missCount, waitCount, loadFailureCount, getHitRate(), getAverageLoadPenalty(), evictionCount);
+    }
+
+    /**
+     * Counters a cache records its statistics into. Counters are striped, so
+     * threads hitting the same cache don't contend on them.
+     */
+    static final class Recorder {
+        /**
+         * Number of requests answered without loading.
+         */
+        final LongAdder hits = new LongAdder();
+
+        /**
+         * Number of requests that loaded their value.
+         */
+        final LongAdder misses = new LongAdder();
+
+        /**
+         * Number of requests that waited for another thread's load.
+         */
+        final LongAdder waits = new LongAdder();
+
+        /**
+         * Number of loads that threw.
+         */
+        final LongAdder loadFailures = new LongAdder();
+
+        /**
+         * Total time spent in successful loads, in nanoseconds.
+         */
+        final LongAdder loadTime = new LongAdder();
+
+        /**
+         * Constructs a Recorder.
+         */
+        Recorder() {
+        }
+
+        /**
+         * Records a successful load.
+         *
+         * @param nanoseconds is how long the load took.
+         */
+        void recordLoad(long nanoseconds) {
+            misses.increment();
+            loadTime.add(nanoseconds);
+        }
+
+        /**
+         * Records a load that threw.
+         */
+        void recordLoadFailure() {
+            misses.increment();
+            loadFailures.increment();
+        }
+
+        /**
+         * Takes a snapshot of the counters.
+         *
+         * @param evictions is the number of evictions of the cache.
+         * @return the statistics.
+         */
+        CacheStatistics snapshot(long evictions) {
+            return new CacheStatistics(hits.sum(), misses.sum(), waits.sum(), loadFailures.sum(), loadTime.sum(),
+                evictions);
+        }
+    }
+}
@@ -2,55 +2,222 @@ package nanson;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 
 /**
- * Caches data
+ * Caches data: the supplier is called on the first request and again only
+ * after the cache has been invalidated.
+ * <p>
+ * The cache is thread-safe and lock-free when it holds a value. When it doesn't,
+ * one thread wins a compare-and-set and calls the supplier while the other
+ * threads wait for its result, so concurrent requests cause a single load. A
+ * value loaded while the cache was invalidated is returned to the threads that
+ * waited for it but is not cached.
  *
  * @param <T> is the type of the object being cached.
  * @author Nanson Chen
  * @version 2.0
  */
 public class Cacher<T> {
+    /**
+     * Handle to {@link #state}, for compare-and-set.
+     */
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Cacher.class, "state", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * Supplier used to obtain the cached value when the cache is invalid.
      */
     private final Supplier<? extends T> supplier;
 
     /**
-     * The cached data value.
+     * The state of the cache: null when invalid, a {@link Value} when valid or a
+     * {@link Load} while a thread calls the supplier.
      */
-    private T data;
+    @SuppressWarnings("unused") // Accessed through STATE.
+    private volatile Object state;
 
     /**
-     * Whether the cached value is currently valid.
+     * Hit, miss, wait and load time counters, or null if statistics are not
+     * recorded.
      */
-    private boolean valid = false;
+    private final CacheStatistics.Recorder recorder;
 
     /**
-     * Constructs a Cacher.
+     * Constructs a Cacher that doesn't record statistics.
      *
      * @param supplier is the supplier that gets the cached data.
      */
     public Cacher(@NotNull Supplier<? extends T> supplier) {
+        this(supplier, false);
+    }
+
+    /**
+     * Constructs a Cacher.
+     *
+     * @param supplier         is the supplier that gets the cached data.
+     * @param recordStatistics is whether to count hits, misses, waits and load
+     *                         time; leave it off for caches kept per neuron.
+     */
+    public Cacher(@NotNull Supplier<? extends T> supplier, boolean recordStatistics) {
         this.supplier = supplier;
+        this.recorder = recordStatistics ? new CacheStatistics.Recorder() : null;
     }
 
     /**
      * Gets the data, automatically re-gets the data if the cache was invalidated.
+     * If another thread is already getting the data, waits for its result.
      *
      * @return the data.
+     * @throws IllegalStateException if the supplier requests its own cache.
      */
     public T getData() {
-        if (valid)
-            return data;
-        return data = supplier.get();
+        while (true) {
+            Object current = STATE.getAcquire(this);
+            if (current instanceof Value<?> value) {
+                if (recorder != null)
+                    recorder.hits.increment();
+                return castData(value.data);
+            }
+            if (current instanceof Load<?> load) {
+                if (load.thread == Thread.currentThread())
+                    throw new IllegalStateException("The supplier of a Cacher requested its own data");
+                if (recorder != null)
+                    recorder.waits.increment();
+                return castData(await(load));
+            }
+            Load<T> load = new Load<>(Thread.currentThread());
+            if (STATE.compareAndSet(this, null, load))
+                return load(load);
+        }
     }
 
     /**
-     * Invalidates the cache.
+     * Calls the supplier for a load this thread has claimed, caching the result
+     * unless the cache was invalidated in the meantime.
+     *
+     * @param load is the claimed load.
+     * @return the loaded data.
+     */
+    private T load(Load<T> load) {
+        long start = System.nanoTime();
+        T data;
+        try {
+            data = supplier.get();
+        } catch (RuntimeException | Error e) {
+            if (recorder != null)
+                recorder.recordLoadFailure();
+            STATE.compareAndSet(this, load, null);
+            load.result.completeExceptionally(e);
+            throw e;
+        }
+        if (recorder != null)
+            recorder.recordLoad(System.nanoTime() - start);
+        STATE.compareAndSet(this, load, new Value<>(data));
+        load.result.complete(data);
+        return data;
+    }
+
+    /**
+     * Invalidates the cache. A load in progress still completes, but its value is
+     * not cached.
      */
     public void invalidate() {
-        valid = false;
+        STATE.setRelease(this, null);
+    }
+
+    /**
+     * Checks whether the cache currently holds a value.
+     *
+     * @return whether the next {@link #getData()} returns without loading.
+     */
+    public boolean isValid() {
+        return STATE.getAcquire(this) instanceof Value<?>;
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this cache.
+     *
+     * @return the statistics, all zero if they are not recorded.
+     */
+    public CacheStatistics getStatistics() {
+        return recorder == null ? CacheStatistics.EMPTY : recorder.snapshot(0);
+    }
+
+    /**
+     * Waits for the result of another thread's load, rethrowing what its
+     * supplier threw.
+     *
+     * @param load is the load to wait for.
+     * @param <V>  is the type of the data.
+     * @return the loaded data.
+     */
+    static <V> V await(@NotNull Load<V> load) {
+        try {
+            return load.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Casts cached data back to the type of this cache.
+     *
+     * @param data is the cached data.
+     * @return the same data.
+     */
+    @SuppressWarnings("unchecked")
+    private T castData(Object data) {
+        return (T) data;
+    }
+
+    /**
+     * A cached value.
+     *
+     * @param data is the value; may be null.
+     * @param <V>  is the type of the value.
+     */
+    record Value<V>(V data) {
+    }
+
+    /**
+     * A load in progress.
+     *
+     * @param <V> is the type of the loaded value.
+     */
+    static final class Load<V> {
+        /**
+         * The thread calling the supplier.
+         */
+        final Thread thread;
+
+        /**
+         * Completed with the loaded value, or with what the supplier threw.
+         */
+        final CompletableFuture<V> result = new CompletableFuture<>();
+
+        /**
+         * Constructs a Load.
+         *
+         * @param thread is the thread calling the supplier.
+         */
+        Load(@NotNull Thread thread) {
+            this.thread = thread;
+        }
     }
 }
@@ -2,11 +2,16 @@ package nanson;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main entry point for the Boolean AI application.
  * Provides a GUI to choose between Manual Mode (BooleanMatrixDisplay)
- * and Auto Mode (AutoGrader).
+ * and Auto Mode (NetworkVisualizer).
  *
  * @author Nanson Chen
  * @version 2.0
@@ -19,11 +24,19 @@ public class Driver {
     }
 
     /**
-     * Application entry point. Initializes the UI on the Event Dispatch Thread.
+     * Application entry point. Initializes the UI on the Event Dispatch Thread,
+     * or trains headlessly with {@link TrainingRunner} when the first argument is
+     * {@code train}.
      *
-     * @param args command-line arguments (ignored)
+     * @param args command-line arguments: {@code train} followed by the options
+     *             of {@link TrainingRunner}, or nothing for the UI.
+     * @throws IOException if headless training cannot read or write a snapshot.
      */
-    static void main(String[] args) {
+    static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("train")) {
+            TrainingRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         // Set look and feel to system default for better appearance
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -102,8 +115,52 @@ public class Driver {
     }
 
     /**
-     * Launches the auto mode (AutoGrader).
+     * Launches the auto mode: a {@link PopulationTrainer} runs on a background
+     * thread and publishes the best network's answer to every letter in turn to
+     * an {@link ActivationFeed}, which a {@link NetworkVisualizer} shows at a
+     * fixed frame rate.
      */
     private static void launchAutoMode() {
+        NeuronDatabase neuronDatabase = new NeuronDatabase(Constants.DEFAULT_NUM_INCOMING_NEURONS,
+            TrainingRunner.DEFAULT_LAYER_LENGTHS);
+        AlphabetTask task = new AlphabetTask(Constants.DEFAULT_LENGTH_OF_RESULTS);
+        ActivationFeed activationFeed = new ActivationFeed(neuronDatabase);
+        AtomicReference<String> status = new AtomicReference<>("Starting");
+
+        Thread trainingThread = new Thread(() -> {
+            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            try (PopulationTrainer trainer = new PopulationTrainer(neuronDatabase, task,
+                TrainingRunner.DEFAULT_POPULATION_SIZE, PopulationTrainer.DEFAULT_MUTATIONS_PER_CANDIDATE, executor)) {
+                int letter = 0;
+                while (trainer.getBestScore() > 0) {
+                    trainer.runGeneration();
+                    // Only the trainer's copies are mutated, so the best network is free to run here.
+                    char answer = task.answer(trainer.getBest(), letter);
+                    activationFeed.publish(trainer.getBest());
+                    status.set(String.format("Generation: %d | Score: %d | Goal: '%c' | Answer: '%c'",
+                        trainer.getGenerations(), trainer.getBestScore(), AlphabetTask.getLetter(letter), answer));
+                    letter = (letter + 1) % AlphabetTask.NUMBER_OF_LETTERS;
+                }
+                status.set(String.format("Solved in %d generations", trainer.getGenerations()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdown();
+            }
+        }, "training");
+        trainingThread.setDaemon(true);
+
+        JFrame autoFrame = new JFrame("Boolean AI - Auto Mode");
+        autoFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        autoFrame.setLayout(new BorderLayout());
+        JLabel statusLabel = new JLabel(status.get());
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        autoFrame.add(statusLabel, BorderLayout.NORTH);
+        autoFrame.add(new NetworkVisualizer(activationFeed), BorderLayout.CENTER);
+        new Timer(250, e -> statusLabel.setText(status.get())).start();
+        autoFrame.pack();
+        autoFrame.setLocationRelativeTo(null);
+        autoFrame.setVisible(true);
+        trainingThread.start();
     }
 }
\ No newline at end of file
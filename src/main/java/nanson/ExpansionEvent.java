@@ -0,0 +1,50 @@
+package nanson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for the growth of a network by
+ * {@link NeuronDatabase#growLayer(int, int)} or
+ * {@link NeuronDatabase#addLayer(int)}, timed from start to end.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@Name("nanson.Expansion")
+@Label("Network Expansion")
+@Category({"Boolean AI", "Network"})
+@Description("Growth of a layer or addition of a layer")
+public class ExpansionEvent extends jdk.jfr.Event {
+    /**
+     * Index of the grown or added layer.
+     */
+    @Label("Layer Index")
+    int layerIndex;
+
+    /**
+     * Number of neurons of the layer before, 0 for an added layer.
+     */
+    @Label("Old Layer Length")
+    int oldLayerLength;
+
+    /**
+     * Number of neurons of the layer after.
+     */
+    @Label("New Layer Length")
+    int newLayerLength;
+
+    /**
+     * Number of layers before.
+     */
+    @Label("Old Number Of Layers")
+    int oldNumberOfLayers;
+
+    /**
+     * Number of layers after.
+     */
+    @Label("New Number Of Layers")
+    int newNumberOfLayers;
+}
@@ -0,0 +1,313 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row (CSR) index of which neurons read each neuron, the
+ * reverse of the incoming neuron indexes. The connections reading the neurons
+ * of a layer are stored in one {@code int[]} per layer, grouped by the neuron
+ * they read, as connection ids {@code readerIndex * incomingConnections + slot}.
+ * <p>
+ * The index listens to the database's mutations. Every connection remembers its
+ * position, so rewiring one removes it from its row by swapping in the last
+ * entry of that row and appends it to its new row. A full row moves to the end
+ * of the layer's array with twice the capacity, and the array is compacted when
+ * it runs out of room, so every update costs amortized constant time.
+ * Not thread-safe; mutate the database from one thread at a time.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class FanOutIndex implements MutationListener {
+    /**
+     * The database being indexed.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * Number of incoming connections every activation neuron has.
+     */
+    private final int incomingConnections;
+
+    /**
+     * Connection ids reading each layer, grouped by row: entries[layerIndex].
+     */
+    private int[][] entries;
+
+    /**
+     * Position of every connection of the next layer in {@link #entries}:
+     * positions[layerIndex][connectionId].
+     */
+    private int[][] positions;
+
+    /**
+     * First position of the row of every neuron.
+     */
+    private int[][] rowStarts;
+
+    /**
+     * Number of connections reading every neuron.
+     */
+    private int[][] rowSizes;
+
+    /**
+     * Number of positions reserved for the row of every neuron.
+     */
+    private int[][] rowCapacities;
+
+    /**
+     * Number of positions of {@link #entries} handed out to rows, per layer.
+     */
+    private int[] used;
+
+    /**
+     * Number of positions of {@link #entries} left behind by moved rows, per
+     * layer.
+     */
+    private int[] garbage;
+
+    /**
+     * Constructs a FanOutIndex over every connection of a database and starts
+     * listening to its mutations.
+     *
+     * @param neuronDatabase is the database to index.
+     */
+    public FanOutIndex(@NotNull NeuronDatabase neuronDatabase) {
+        this.neuronDatabase = neuronDatabase;
+        this.incomingConnections = neuronDatabase.getIncomingConnections();
+        int numberOfLayers = neuronDatabase.getNumberOfLayers();
+        entries = new int[numberOfLayers][];
+        positions = new int[numberOfLayers][];
+        rowStarts = new int[numberOfLayers][];
+        rowSizes = new int[numberOfLayers][];
+        rowCapacities = new int[numberOfLayers][];
+        used = new int[numberOfLayers];
+        garbage = new int[numberOfLayers];
+        for (int a = 0; a < numberOfLayers; a++)
+            build(a);
+        neuronDatabase.addMutationListener(this);
+    }
+
+    /**
+     * Builds the rows of a layer from the incoming neuron indexes of the next
+     * layer, with every row exactly as large as it needs to be.
+     *
+     * @param layerIndex is the index of the layer whose readers are indexed.
+     */
+    private void build(int layerIndex) {
+        int length = neuronDatabase.getLayerLength(layerIndex);
+        int readers = layerIndex + 1 < neuronDatabase.getNumberOfLayers()
+            ? neuronDatabase.getLayerLength(layerIndex + 1) : 0;
+        int connections = readers * incomingConnections;
+        int[] sources = new int[connections];
+        int[] starts = new int[length];
+        int[] sizes = new int[length];
+        for (int c = 0; c < connections; c++) {
+            sources[c] = getIncomingNeuronIndex(layerIndex + 1, c / incomingConnections, c % incomingConnections);
+            sizes[sources[c]]++;
+        }
+        for (int b = 1; b < length; b++)
+            starts[b] = starts[b - 1] + sizes[b - 1];
+        int[] rowEntries = new int[connections];
+        int[] rowPositions = new int[connections];
+        int[] filled = new int[length];
+        for (int c = 0; c < connections; c++) {
+            int position = starts[sources[c]] + filled[sources[c]]++;
+            rowEntries[position] = c;
+            rowPositions[c] = position;
+        }
+        entries[layerIndex] = rowEntries;
+        positions[layerIndex] = rowPositions;
+        rowStarts[layerIndex] = starts;
+        rowSizes[layerIndex] = sizes;
+        rowCapacities[layerIndex] = sizes.clone();
+        used[layerIndex] = connections;
+        garbage[layerIndex] = 0;
+    }
+
+    /**
+     * Gets one incoming neuron index of a neuron of either storage model.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param slot             is the index of the incoming connection.
+     * @return the index of the incoming neuron.
+     */
+    private int getIncomingNeuronIndex(int neuronLayerIndex, int neuronIndex, int slot) {
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        if (networkStorage != null)
+            return networkStorage.getIncomingNeuronIndex(neuronLayerIndex, neuronIndex, slot);
+        ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(neuronLayerIndex, neuronIndex);
+        return neuron.getIncomingNeuronIndexes()[slot];
+    }
+
+    /**
+     * Gets the number of connections of the next layer reading a neuron. A
+     * neuron read twice by the same neuron counts twice.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @return the number of connections reading the neuron.
+     */
+    public int getFanOut(int neuronLayerIndex, int neuronIndex) {
+        return rowSizes[neuronLayerIndex][neuronIndex];
+    }
+
+    /**
+     * Gets the neuron of the next layer behind one of the connections reading a
+     * neuron, in no particular order.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param i                is the index of the connection, below
+     *                         {@link #getFanOut(int, int)}.
+     * @return the index of the reading neuron in the next layer.
+     */
+    public int getReader(int neuronLayerIndex, int neuronIndex, int i) {
+        return entries[neuronLayerIndex][rowStarts[neuronLayerIndex][neuronIndex] + i] / incomingConnections;
+    }
+
+    /**
+     * Gets the slot of one of the connections reading a neuron.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param i                is the index of the connection, below
+     *                         {@link #getFanOut(int, int)}.
+     * @return the index of the incoming connection of the reading neuron.
+     */
+    public int getReaderSlot(int neuronLayerIndex, int neuronIndex, int i) {
+        return entries[neuronLayerIndex][rowStarts[neuronLayerIndex][neuronIndex] + i] % incomingConnections;
+    }
+
+    /**
+     * Appends a connection to the row of a neuron, moving the row if it is full.
+     *
+     * @param layerIndex   is the index of the layer of the read neuron.
+     * @param neuronIndex  is the index of the read neuron.
+     * @param connectionId is the id of the connection.
+     */
+    private void insert(int layerIndex, int neuronIndex, int connectionId) {
+        int size = rowSizes[layerIndex][neuronIndex];
+        if (size == rowCapacities[layerIndex][neuronIndex])
+            moveRow(layerIndex, neuronIndex, Math.max(2, size * 2));
+        int position = rowStarts[layerIndex][neuronIndex] + size;
+        entries[layerIndex][position] = connectionId;
+        positions[layerIndex][connectionId] = position;
+        rowSizes[layerIndex][neuronIndex] = size + 1;
+    }
+
+    /**
+     * Removes a connection from the row of a neuron by moving the last entry of
+     * the row into its place.
+     *
+     * @param layerIndex   is the index of the layer of the read neuron.
+     * @param neuronIndex  is the index of the read neuron.
+     * @param connectionId is the id of the connection.
+     */
+    private void remove(int layerIndex, int neuronIndex, int connectionId) {
+        int position = positions[layerIndex][connectionId];
+        int last = rowStarts[layerIndex][neuronIndex] + --rowSizes[layerIndex][neuronIndex];
+        int moved = entries[layerIndex][last];
+        entries[layerIndex][position] = moved;
+        positions[layerIndex][moved] = position;
+    }
+
+    /**
+     * Moves the row of a neuron to the end of its layer's array with a new
+     * capacity, compacting the array first if there is no room.
+     *
+     * @param layerIndex  is the index of the layer of the neuron.
+     * @param neuronIndex is the index of the neuron.
+     * @param capacity    is the new capacity of the row.
+     */
+    private void moveRow(int layerIndex, int neuronIndex, int capacity) {
+        if (used[layerIndex] + capacity > entries[layerIndex].length)
+            compact(layerIndex, capacity);
+        int[] layerEntries = entries[layerIndex];
+        int start = rowStarts[layerIndex][neuronIndex];
+        int newStart = used[layerIndex];
+        for (int i = 0; i < rowSizes[layerIndex][neuronIndex]; i++) {
+            layerEntries[newStart + i] = layerEntries[start + i];
+            positions[layerIndex][layerEntries[newStart + i]] = newStart + i;
+        }
+        garbage[layerIndex] += rowCapacities[layerIndex][neuronIndex];
+        rowStarts[layerIndex][neuronIndex] = newStart;
+        rowCapacities[layerIndex][neuronIndex] = capacity;
+        used[layerIndex] += capacity;
+    }
+
+    /**
+     * Packs the rows of a layer into a new array without the positions left
+     * behind by moved rows, leaving at least as much free room as is in use.
+     *
+     * @param layerIndex is the index of the layer.
+     * @param needed     is the number of free positions needed afterwards.
+     */
+    private void compact(int layerIndex, int needed) {
+        int live = used[layerIndex] - garbage[layerIndex];
+        int[] layerEntries = entries[layerIndex];
+        int[] packed = new int[Math.max(2 * live, live + needed)];
+        int next = 0;
+        for (int b = 0; b < neuronDatabase.getLayerLength(layerIndex); b++) {
+            int start = rowStarts[layerIndex][b];
+            for (int i = 0; i < rowSizes[layerIndex][b]; i++) {
+                packed[next + i] = layerEntries[start + i];
+                positions[layerIndex][packed[next + i]] = next + i;
+            }
+            rowStarts[layerIndex][b] = next;
+            next += rowCapacities[layerIndex][b];
+        }
+        entries[layerIndex] = packed;
+        used[layerIndex] = next;
+        garbage[layerIndex] = 0;
+    }
+
+    @Override
+    public void incomingNeuronChanged(int neuronLayerIndex, int neuronIndex, int slot, int oldIncomingNeuronIndex,
+                                      int newIncomingNeuronIndex) {
+        int connectionId = neuronIndex * incomingConnections + slot;
+        remove(neuronLayerIndex - 1, oldIncomingNeuronIndex, connectionId);
+        insert(neuronLayerIndex - 1, newIncomingNeuronIndex, connectionId);
+    }
+
+    @Override
+    public void weightFlipped(int neuronLayerIndex, int neuronIndex, int slot) {
+        // Weights don't change the wiring.
+    }
+
+    @Override
+    public void layerResized(int neuronLayerIndex, int oldLength) {
+        int length = neuronDatabase.getLayerLength(neuronLayerIndex);
+        if (neuronLayerIndex == entries.length) {
+            entries = Arrays.copyOf(entries, neuronLayerIndex + 1);
+            positions = Arrays.copyOf(positions, neuronLayerIndex + 1);
+            rowStarts = Arrays.copyOf(rowStarts, neuronLayerIndex + 1);
+            rowSizes = Arrays.copyOf(rowSizes, neuronLayerIndex + 1);
+            rowCapacities = Arrays.copyOf(rowCapacities, neuronLayerIndex + 1);
+            used = Arrays.copyOf(used, neuronLayerIndex + 1);
+            garbage = Arrays.copyOf(garbage, neuronLayerIndex + 1);
+            build(neuronLayerIndex); // Nothing reads the new output layer yet.
+        } else {
+            // New neurons start with empty rows at the end of the array.
+            rowStarts[neuronLayerIndex] = PackedNetwork.ensureCapacity(rowStarts[neuronLayerIndex], length);
+            rowSizes[neuronLayerIndex] = PackedNetwork.ensureCapacity(rowSizes[neuronLayerIndex], length);
+            rowCapacities[neuronLayerIndex] = PackedNetwork.ensureCapacity(rowCapacities[neuronLayerIndex], length);
+            for (int b = oldLength; b < length; b++) {
+                rowStarts[neuronLayerIndex][b] = used[neuronLayerIndex];
+                rowSizes[neuronLayerIndex][b] = 0;
+                rowCapacities[neuronLayerIndex][b] = 0;
+            }
+        }
+        if (neuronLayerIndex == 0)
+            return;
+        int layerIndex = neuronLayerIndex - 1;
+        positions[layerIndex] = PackedNetwork.ensureCapacity(positions[layerIndex], length * incomingConnections);
+        for (int b = oldLength; b < length; b++) {
+            for (int k = 0; k < incomingConnections; k++)
+                insert(layerIndex, getIncomingNeuronIndex(neuronLayerIndex, b, k), b * incomingConnections + k);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Trained network compiled to a flat instruction program for fast forward-only
+ * queries. The program is built from an {@link InferencePlan}, so pruned and
+ * constant neurons cost nothing, and runs on a small interpreter over an
+ * {@code int[]} of registers holding 0 or 1, one per evaluated neuron.
+ * <p>
+ * Instructions are runs of ints in one array:
+ * <ul>
+ * <li>{@link #LOAD} register, input: loads an input bit into a register;</li>
+ * <li>{@link #NEURON} register, threshold, n, then n pairs of source register
+ * and weight: stores 1 if the weighted sum of the sources reaches the
+ * threshold;</li>
+ * <li>{@link #STORE} output, register: copies a register to an output;</li>
+ * <li>{@link #SET} output: sets a constant output.</li>
+ * </ul>
+ * A frozen network never changes, even if the database it was frozen from is
+ * mutated later, and can be queried from several threads at once.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class FrozenNetwork {
+    /**
+     * Opcode loading an input bit into a register.
+     */
+    public static final int LOAD = 0;
+
+    /**
+     * Opcode evaluating one neuron.
+     */
+    public static final int NEURON = 1;
+
+    /**
+     * Opcode copying a register to an output.
+     */
+    public static final int STORE = 2;
+
+    /**
+     * Opcode setting a constant output.
+     */
+    public static final int SET = 3;
+
+    /**
+     * The instruction program.
+     */
+    private final int[] program;
+
+    /**
+     * Number of registers the program uses.
+     */
+    private final int registerCount;
+
+    /**
+     * Number of outputs (neurons of the output layer).
+     */
+    private final int outputCount;
+
+    /**
+     * Compiles an inference plan.
+     *
+     * @param inferencePlan is the plan to compile.
+     */
+    public FrozenNetwork(@NotNull InferencePlan inferencePlan) {
+        int[] dataNeurons = inferencePlan.getDataNeurons();
+        int[] code = new int[16];
+        int length = 0;
+        for (int i = 0; i < dataNeurons.length; i++) {
+            code = ensureRoom(code, length, 3);
+            code[length++] = LOAD;
+            code[length++] = i;
+            code[length++] = dataNeurons[i];
+        }
+        int layerBase = 0;
+        int layerSize = dataNeurons.length;
+        for (int a = 1; a < inferencePlan.getNumberOfLayers(); a++) {
+            int[] starts = inferencePlan.getInputStarts(a);
+            int[] sources = inferencePlan.getInputSources(a);
+            int[] counts = inferencePlan.getInputCounts(a);
+            int[] thresholds = inferencePlan.getThresholds(a);
+            int nextBase = layerBase + layerSize;
+            for (int n = 0; n < thresholds.length; n++) {
+                int inputs = starts[n + 1] - starts[n];
+                code = ensureRoom(code, length, 4 + 2 * inputs);
+                code[length++] = NEURON;
+                code[length++] = nextBase + n;
+                code[length++] = thresholds[n];
+                code[length++] = inputs;
+                for (int i = starts[n]; i < starts[n + 1]; i++) {
+                    code[length++] = layerBase + sources[i];
+                    code[length++] = counts[i];
+                }
+            }
+            layerBase = nextBase;
+            layerSize = thresholds.length;
+        }
+        int[] outputPositions = inferencePlan.getOutputPositions();
+        boolean[] outputConstants = inferencePlan.getOutputConstants();
+        for (int b = 0; b < outputPositions.length; b++) {
+            code = ensureRoom(code, length, 3);
+            if (outputPositions[b] >= 0) {
+                code[length++] = STORE;
+                code[length++] = b;
+                code[length++] = layerBase + outputPositions[b];
+            } else if (outputConstants[b]) {
+                code[length++] = SET;
+                code[length++] = b;
+            }
+        }
+        program = Arrays.copyOf(code, length);
+        registerCount = layerBase + layerSize;
+        outputCount = outputPositions.length;
+    }
+
+    /**
+     * Makes room for more instructions.
+     *
+     * @param code   is the program so far.
+     * @param length is the number of ints used.
+     * @param needed is the number of ints to add.
+     * @return the program, grown if needed.
+     */
+    private static int[] ensureRoom(int[] code, int length, int needed) {
+        return PackedNetwork.ensureCapacity(code, length + needed);
+    }
+
+    /**
+     * Computes the output layer for an input.
+     *
+     * @param inputBits are the bits of the data layer; missing bits are treated
+     *                  as false.
+     * @return the activation of every output neuron.
+     */
+    public boolean[] evaluate(boolean @NotNull [] inputBits) {
+        long start = TrainingMetrics.start();
+        int[] code = program;
+        int[] registers = new int[registerCount];
+        boolean[] outputs = new boolean[outputCount];
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case LOAD -> {
+                    int input = code[pc + 2];
+                    registers[code[pc + 1]] = input < inputBits.length && inputBits[input] ? 1 : 0;
+                    pc += 3;
+                }
+                case NEURON -> {
+                    int threshold = code[pc + 2];
+                    int end = pc + 4 + 2 * code[pc + 3];
+                    int activationSum = 0;
+                    for (int i = pc + 4; i < end; i += 2)
+                        activationSum += registers[code[i]] * code[i + 1];
+                    registers[code[pc + 1]] = activationSum >= threshold ? 1 : 0;
+                    pc = end;
+                }
+                case STORE -> {
+                    outputs[code[pc + 1]] = registers[code[pc + 2]] != 0;
+                    pc += 3;
+                }
+                case SET -> {
+                    outputs[code[pc + 1]] = true;
+                    pc += 2;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + code[pc] + " at " + pc);
+            }
+        }
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordForwardPass(start);
+        return outputs;
+    }
+
+    /**
+     * Answers a character query the way {@link AlphabetTask} does: the
+     * character's bits are the input and the first bits of the output layer
+     * are the answer.
+     *
+     * @param c               is the character to ask.
+     * @param lengthOfResults is the number of bits per character.
+     * @return the answer.
+     */
+    public char answer(char c, int lengthOfResults) {
+        boolean[] outputs = evaluate(Utilities.charToBooleanArray(c, lengthOfResults));
+        return Utilities.booleanArrayToChar(Arrays.copyOf(outputs, lengthOfResults));
+    }
+
+    /**
+     * Gets the length of the program in ints.
+     *
+     * @return the program length.
+     */
+    public int getProgramLength() {
+        return program.length;
+    }
+
+    /**
+     * Gets the number of registers the program uses.
+     *
+     * @return the number of registers.
+     */
+    public int getRegisterCount() {
+        return registerCount;
+    }
+}
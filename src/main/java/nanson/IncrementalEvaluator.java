@@ -0,0 +1,250 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Re-evaluates only the part of a network that can have changed since the
+ * previous forward pass. Mutated neurons and neurons reading a data neuron
+ * whose bit changed are marked dirty; layer by layer, every dirty neuron is
+ * re-evaluated and, only if its activation flipped, the neurons reading it are
+ * marked dirty in turn. A mutation that does not change any output therefore
+ * costs a handful of neuron evaluations instead of a whole forward pass.
+ * <p>
+ * The evaluator follows the database's {@link FanOutIndex} to find the neurons
+ * reading a flipped neuron and listens to the database's mutations to mark
+ * mutated neurons dirty. It assumes activations are only changed through it;
+ * call {@link #invalidate()} after running a forward pass any other way. Not
+ * thread-safe.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class IncrementalEvaluator implements MutationListener, AutoCloseable {
+    /**
+     * The database being evaluated.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * Index of the neurons reading each neuron.
+     */
+    private final FanOutIndex fanOutIndex;
+
+    /**
+     * Bitsets of the neurons of each layer already marked dirty.
+     */
+    private long[][] dirtyMarks;
+
+    /**
+     * Dirty neurons of each layer, in marking order.
+     */
+    private int[][] dirtyNeurons;
+
+    /**
+     * Number of dirty neurons of each layer.
+     */
+    private int[] dirtyCounts;
+
+    /**
+     * Whether the next evaluation must evaluate the whole network.
+     */
+    private boolean invalid;
+
+    /**
+     * Number of neurons re-evaluated by the last evaluation.
+     */
+    private int lastEvaluationCount;
+
+    /**
+     * Constructs an IncrementalEvaluator and starts listening to the database's
+     * mutations. The first evaluation evaluates the whole network.
+     *
+     * @param neuronDatabase is the database to evaluate.
+     */
+    public IncrementalEvaluator(@NotNull NeuronDatabase neuronDatabase) {
+        this.neuronDatabase = neuronDatabase;
+        fanOutIndex = neuronDatabase.getFanOutIndex();
+        int numberOfLayers = neuronDatabase.getNumberOfLayers();
+        dirtyMarks = new long[numberOfLayers][];
+        dirtyNeurons = new int[numberOfLayers][];
+        dirtyCounts = new int[numberOfLayers];
+        for (int a = 0; a < numberOfLayers; a++) {
+            dirtyMarks[a] = new long[PackedNetwork.wordsFor(neuronDatabase.getLayerLength(a))];
+            dirtyNeurons[a] = new int[neuronDatabase.getLayerLength(a)];
+        }
+        invalid = true;
+        neuronDatabase.addMutationListener(this);
+    }
+
+    /**
+     * Marks a neuron dirty unless it already is.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     */
+    private void markDirty(int neuronLayerIndex, int neuronIndex) {
+        long[] marks = dirtyMarks[neuronLayerIndex];
+        long bit = 1L << neuronIndex;
+        if ((marks[neuronIndex >>> 6] & bit) != 0)
+            return;
+        marks[neuronIndex >>> 6] |= bit;
+        dirtyNeurons[neuronLayerIndex][dirtyCounts[neuronLayerIndex]++] = neuronIndex;
+    }
+
+    /**
+     * Marks every neuron reading a neuron dirty.
+     *
+     * @param neuronLayerIndex is the index of the layer of the read neuron.
+     * @param neuronIndex      is the index of the read neuron.
+     */
+    private void markReadersDirty(int neuronLayerIndex, int neuronIndex) {
+        for (int i = 0; i < fanOutIndex.getFanOut(neuronLayerIndex, neuronIndex); i++)
+            markDirty(neuronLayerIndex + 1, fanOutIndex.getReader(neuronLayerIndex, neuronIndex, i));
+    }
+
+    /**
+     * Runs a forward pass, re-evaluating only the neurons whose inputs, weights
+     * or wiring changed since the previous one. The resulting activations are
+     * the same as {@link NeuronDatabase#computeActivations(boolean[])}.
+     *
+     * @param inputBits are the bits to load into the data layer; missing bits are
+     *                  treated as false.
+     */
+    public void evaluate(boolean @NotNull [] inputBits) {
+        if (invalid) {
+            neuronDatabase.computeActivations(inputBits);
+            lastEvaluationCount = 0;
+            for (int a = 1; a < neuronDatabase.getNumberOfLayers(); a++)
+                lastEvaluationCount += neuronDatabase.getLayerLength(a);
+            clearDirty();
+            invalid = false;
+            return;
+        }
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        int numberOfLayers = neuronDatabase.getNumberOfLayers();
+        for (int i = 0; i < neuronDatabase.getLayerLength(0); i++) {
+            boolean bit = i < inputBits.length && inputBits[i];
+            Neuron dataNeuron = networkStorage == null ? neuronDatabase.getNeuron(0, i) : null;
+            boolean activated = networkStorage != null ? networkStorage.isActivated(0, i) : dataNeuron.isActivated();
+            if (bit == activated)
+                continue;
+            if (networkStorage != null)
+                networkStorage.setActivated(0, i, bit);
+            else
+                dataNeuron.computeActivation(bit);
+            if (numberOfLayers > 1)
+                markReadersDirty(0, i);
+        }
+        int evaluated = 0;
+        for (int a = 1; a < numberOfLayers; a++) {
+            int[] dirty = dirtyNeurons[a];
+            boolean last = a == numberOfLayers - 1;
+            for (int i = 0; i < dirtyCounts[a]; i++) {
+                if (reevaluate(a, dirty[i]) && !last)
+                    markReadersDirty(a, dirty[i]);
+            }
+            evaluated += dirtyCounts[a];
+            clearDirty(a);
+        }
+        lastEvaluationCount = evaluated;
+    }
+
+    /**
+     * Re-evaluates one neuron without touching any stake.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @return true if the activation of the neuron flipped.
+     */
+    private boolean reevaluate(int neuronLayerIndex, int neuronIndex) {
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        if (networkStorage != null) {
+            boolean activated = networkStorage.evaluateNeuron(neuronLayerIndex, neuronIndex, false);
+            if (activated == networkStorage.isActivated(neuronLayerIndex, neuronIndex))
+                return false;
+            networkStorage.setActivated(neuronLayerIndex, neuronIndex, activated);
+            return true;
+        }
+        ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(neuronLayerIndex, neuronIndex);
+        boolean activated = neuron.isActivated();
+        neuron.evaluate(false);
+        return neuron.isActivated() != activated;
+    }
+
+    /**
+     * Clears the dirty set of every layer.
+     */
+    private void clearDirty() {
+        for (int a = 0; a < dirtyCounts.length; a++)
+            clearDirty(a);
+    }
+
+    /**
+     * Clears the dirty set of a layer.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     */
+    private void clearDirty(int neuronLayerIndex) {
+        long[] marks = dirtyMarks[neuronLayerIndex];
+        int[] dirty = dirtyNeurons[neuronLayerIndex];
+        for (int i = 0; i < dirtyCounts[neuronLayerIndex]; i++)
+            marks[dirty[i] >>> 6] = 0;
+        dirtyCounts[neuronLayerIndex] = 0;
+    }
+
+    /**
+     * Makes the next evaluation evaluate the whole network, e.g. after
+     * activations were changed without this evaluator.
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Gets the number of neurons re-evaluated by the last evaluation.
+     *
+     * @return the number of re-evaluated neurons.
+     */
+    public int getLastEvaluationCount() {
+        return lastEvaluationCount;
+    }
+
+    @Override
+    public void incomingNeuronChanged(int neuronLayerIndex, int neuronIndex, int slot, int oldIncomingNeuronIndex,
+                                      int newIncomingNeuronIndex) {
+        markDirty(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public void weightFlipped(int neuronLayerIndex, int neuronIndex, int slot) {
+        markDirty(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public void layerResized(int neuronLayerIndex, int oldLength) {
+        int length = neuronDatabase.getLayerLength(neuronLayerIndex);
+        if (neuronLayerIndex == dirtyCounts.length) {
+            dirtyMarks = Arrays.copyOf(dirtyMarks, neuronLayerIndex + 1);
+            dirtyNeurons = Arrays.copyOf(dirtyNeurons, neuronLayerIndex + 1);
+            dirtyCounts = Arrays.copyOf(dirtyCounts, neuronLayerIndex + 1);
+            dirtyMarks[neuronLayerIndex] = new long[0];
+            dirtyNeurons[neuronLayerIndex] = new int[0];
+        }
+        dirtyMarks[neuronLayerIndex] = PackedNetwork.ensureCapacity(dirtyMarks[neuronLayerIndex],
+            PackedNetwork.wordsFor(length));
+        dirtyNeurons[neuronLayerIndex] = PackedNetwork.ensureCapacity(dirtyNeurons[neuronLayerIndex], length);
+        // New data neurons are compared with the next input; new activation neurons have never been evaluated.
+        for (int b = oldLength; neuronLayerIndex > 0 && b < length; b++)
+            markDirty(neuronLayerIndex, b);
+    }
+
+    /**
+     * Stops listening to the database's mutations.
+     */
+    @Override
+    public void close() {
+        neuronDatabase.removeMutationListener(this);
+    }
+}
@@ -0,0 +1,516 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Pruned, compacted program computing the output layer of a network, with
+ * exactly the same result as a full forward pass. Compiling the plan:
+ * <ul>
+ * <li>folds constants: a neuron whose weighted inputs always reach the
+ * threshold is always activated, and one whose weighted inputs can never reach
+ * it (e.g. every weight is false) never is;</li>
+ * <li>drops every neuron outside the output cone, i.e. not read by a weighted
+ * connection of a neuron that is evaluated;</li>
+ * <li>merges duplicate connections to the same neuron into one input that
+ * counts several times.</li>
+ * </ul>
+ * A plan is a snapshot and never changes; {@link NeuronDatabase#getInferencePlan()}
+ * compiles a new one after the database was mutated. Plans don't touch the
+ * database or any stake and can be evaluated from several threads at once.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class InferencePlan {
+    /**
+     * Modification count of the database when the plan was compiled.
+     */
+    private final long modificationCount;
+
+    /**
+     * Number of neurons of the data layer.
+     */
+    private final int dataLength;
+
+    /**
+     * Indexes of the data neurons read by the plan.
+     */
+    private final int[] dataNeurons;
+
+    /**
+     * Input ranges of the evaluated neurons of each layer: the inputs of neuron
+     * {@code i} are {@code inputStarts[layer][i] .. inputStarts[layer][i + 1]}.
+     */
+    private final int[][] inputStarts;
+
+    /**
+     * Position of every input in the previous layer's evaluated neurons.
+     */
+    private final int[][] inputSources;
+
+    /**
+     * Number of weighted connections every input stands for.
+     */
+    private final int[][] inputCounts;
+
+    /**
+     * Number of activated inputs every evaluated neuron needs, after
+     * subtracting its inputs that are always activated.
+     */
+    private final int[][] thresholds;
+
+    /**
+     * Position of every output neuron among the evaluated neurons of the output
+     * layer, or -1 if it is constant.
+     */
+    private final int[] outputPositions;
+
+    /**
+     * Activation of every constant output neuron.
+     */
+    private final boolean[] outputConstants;
+
+    /**
+     * Number of activation neurons that are evaluated.
+     */
+    private final int evaluatedNeurons;
+
+    /**
+     * Number of activation neurons that are constant.
+     */
+    private final int constantNeurons;
+
+    /**
+     * Number of activation neurons in the network.
+     */
+    private final int totalNeurons;
+
+    /**
+     * Compiles the plan of a database's current network.
+     *
+     * @param neuronDatabase is the database to compile.
+     */
+    public InferencePlan(@NotNull NeuronDatabase neuronDatabase) {
+        modificationCount = neuronDatabase.getModificationCount();
+        int numberOfLayers = neuronDatabase.getNumberOfLayers();
+        int incomingConnections = neuronDatabase.getIncomingConnections();
+        int threshold = incomingConnections / 2;
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+
+        // Copy the wiring once, keeping weighted connections only.
+        int[][][] sources = new int[numberOfLayers][][];
+        for (int a = 1; a < numberOfLayers; a++) {
+            sources[a] = new int[neuronDatabase.getLayerLength(a)][];
+            for (int b = 0; b < sources[a].length; b++) {
+                int[] weighted = new int[incomingConnections];
+                int count = 0;
+                for (int k = 0; k < incomingConnections; k++) {
+                    if (networkStorage != null) {
+                        if (networkStorage.getWeight(a, b, k))
+                            weighted[count++] = networkStorage.getIncomingNeuronIndex(a, b, k);
+                    } else {
+                        ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(a, b);
+                        if (neuron.getWeights()[k])
+                            weighted[count++] = neuron.getIncomingNeuronIndexes()[k];
+                    }
+                }
+                sources[a][b] = Arrays.copyOf(weighted, count);
+            }
+        }
+
+        // Fold constants forward: 0 is variable, 1 is always false, 2 is always true.
+        byte[][] states = new byte[numberOfLayers][];
+        states[0] = new byte[neuronDatabase.getLayerLength(0)];
+        int constants = 0;
+        int total = 0;
+        for (int a = 1; a < numberOfLayers; a++) {
+            states[a] = new byte[sources[a].length];
+            for (int b = 0; b < sources[a].length; b++) {
+                int alwaysTrue = 0;
+                int variable = 0;
+                for (int source : sources[a][b]) {
+                    if (states[a - 1][source] == 2)
+                        alwaysTrue++;
+                    else if (states[a - 1][source] == 0)
+                        variable++;
+                }
+                if (incomingConnections == 0 || alwaysTrue + variable < threshold)
+                    states[a][b] = 1;
+                else if (alwaysTrue >= threshold)
+                    states[a][b] = 2;
+                if (states[a][b] != 0)
+                    constants++;
+            }
+            total += sources[a].length;
+        }
+
+        // Mark the output cone backward, then number the live neurons of every layer.
+        int last = numberOfLayers - 1;
+        boolean[][] live = new boolean[numberOfLayers][];
+        int[][] positions = new int[numberOfLayers][];
+        int[] liveCounts = new int[numberOfLayers];
+        for (int a = last; a >= 0; a--) {
+            live[a] = new boolean[states[a].length];
+            for (int b = 0; b < live[a].length; b++)
+                live[a][b] = a == last && states[a][b] == 0;
+        }
+        for (int a = last; a >= 0; a--) {
+            positions[a] = new int[live[a].length];
+            for (int b = 0; b < live[a].length; b++) {
+                positions[a][b] = live[a][b] ? liveCounts[a]++ : -1;
+                if (live[a][b] && a > 0)
+                    for (int source : sources[a][b])
+                        if (states[a - 1][source] == 0)
+                            live[a - 1][source] = true;
+            }
+        }
+
+        dataLength = live[0].length;
+        dataNeurons = new int[liveCounts[0]];
+        for (int b = 0; b < live[0].length; b++)
+            if (live[0][b])
+                dataNeurons[positions[0][b]] = b;
+        inputStarts = new int[numberOfLayers][];
+        inputSources = new int[numberOfLayers][];
+        inputCounts = new int[numberOfLayers][];
+        thresholds = new int[numberOfLayers][];
+        int evaluated = 0;
+        for (int a = 1; a < numberOfLayers; a++) {
+            inputStarts[a] = new int[liveCounts[a] + 1];
+            thresholds[a] = new int[liveCounts[a]];
+            int[] layerSources = new int[liveCounts[a] * incomingConnections];
+            int[] layerCounts = new int[liveCounts[a] * incomingConnections];
+            int inputs = 0;
+            for (int b = 0; b < live[a].length; b++) {
+                if (!live[a][b])
+                    continue;
+                int position = positions[a][b];
+                int alwaysTrue = 0;
+                int first = inputs;
+                for (int source : sources[a][b]) {
+                    if (states[a - 1][source] == 2)
+                        alwaysTrue++;
+                    if (states[a - 1][source] != 0)
+                        continue;
+                    int sourcePosition = positions[a - 1][source];
+                    int i = first;
+                    while (i < inputs && layerSources[i] != sourcePosition)
+                        i++;
+                    if (i == inputs) {
+                        layerSources[inputs] = sourcePosition;
+                        inputs++;
+                    }
+                    layerCounts[i]++;
+                }
+                thresholds[a][position] = threshold - alwaysTrue;
+                inputStarts[a][position + 1] = inputs;
+            }
+            inputSources[a] = Arrays.copyOf(layerSources, inputs);
+            inputCounts[a] = Arrays.copyOf(layerCounts, inputs);
+            evaluated += liveCounts[a];
+        }
+        outputPositions = positions[last];
+        outputConstants = new boolean[states[last].length];
+        for (int b = 0; b < outputConstants.length; b++)
+            outputConstants[b] = states[last][b] == 2;
+        evaluatedNeurons = evaluated;
+        constantNeurons = constants;
+        totalNeurons = total;
+    }
+
+    /**
+     * Computes the output layer for an input.
+     *
+     * @param inputBits are the bits of the data layer; missing bits are treated
+     *                  as false.
+     * @return the activation of every output neuron.
+     */
+    public boolean[] evaluate(boolean @NotNull [] inputBits) {
+        long start = TrainingMetrics.start();
+        boolean[] values = new boolean[dataNeurons.length];
+        for (int i = 0; i < dataNeurons.length; i++)
+            values[i] = dataNeurons[i] < inputBits.length && inputBits[dataNeurons[i]];
+        for (int a = 1; a < inputStarts.length; a++) {
+            long layerStart = TrainingMetrics.start();
+            LayerEvaluationEvent event = new LayerEvaluationEvent();
+            event.begin();
+            int[] starts = inputStarts[a];
+            int[] layerSources = inputSources[a];
+            int[] layerCounts = inputCounts[a];
+            int[] layerThresholds = thresholds[a];
+            boolean[] next = new boolean[layerThresholds.length];
+            for (int n = 0; n < next.length; n++) {
+                int activationSum = 0;
+                for (int i = starts[n]; i < starts[n + 1] && activationSum < layerThresholds[n]; i++)
+                    if (values[layerSources[i]])
+                        activationSum += layerCounts[i];
+                next[n] = activationSum >= layerThresholds[n];
+            }
+            values = next;
+            if (TrainingMetrics.ENABLED)
+                TrainingMetrics.recordLayerEvaluation(layerStart);
+            commit(event, a, 1);
+        }
+        boolean[] outputs = new boolean[outputPositions.length];
+        for (int b = 0; b < outputs.length; b++)
+            outputs[b] = outputPositions[b] < 0 ? outputConstants[b] : values[outputPositions[b]];
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordForwardPass(start);
+        return outputs;
+    }
+
+    /**
+     * Computes the output layer for many inputs at once. Inputs are processed
+     * 64 at a time, bit-sliced: every neuron's activation is one {@code long}
+     * holding one sample per bit, so a batch of 64 costs about as many neuron
+     * visits as a single input.
+     *
+     * @param inputBits are the bits of the data layer of every sample; missing
+     *                  bits are treated as false.
+     * @return the activation of every output neuron for every sample.
+     */
+    public boolean[][] evaluate(boolean @NotNull [] @NotNull [] inputBits) {
+        long start = TrainingMetrics.start();
+        boolean[][] outputs = new boolean[inputBits.length][];
+        long[] slices = new long[dataLength];
+        for (int first = 0; first < inputBits.length; first += 64) {
+            int samples = Math.min(64, inputBits.length - first);
+            Arrays.fill(slices, 0);
+            for (int s = 0; s < samples; s++) {
+                boolean[] sample = inputBits[first + s];
+                for (int i = 0; i < Math.min(sample.length, dataLength); i++)
+                    if (sample[i])
+                        slices[i] |= 1L << s;
+            }
+            long[] outputSlices = computeSlices(slices);
+            for (int s = 0; s < samples; s++) {
+                boolean[] output = new boolean[outputSlices.length];
+                for (int b = 0; b < output.length; b++)
+                    output[b] = (outputSlices[b] >>> s & 1L) != 0;
+                outputs[first + s] = output;
+            }
+        }
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordBatch(start, inputBits.length);
+        return outputs;
+    }
+
+    /**
+     * Computes the output layer for 64 bit-sliced inputs: bit {@code s} of every
+     * word belongs to sample {@code s}.
+     *
+     * @param inputSlices are the bit-sliced activations of every data neuron.
+     * @return the bit-sliced activations of every output neuron.
+     */
+    public long[] evaluateSlices(long @NotNull [] inputSlices) {
+        long start = TrainingMetrics.start();
+        long[] outputs = computeSlices(inputSlices);
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordBatch(start, Long.SIZE);
+        return outputs;
+    }
+
+    /**
+     * Computes the output layer for 64 bit-sliced inputs, without counting it
+     * as a batch.
+     *
+     * @param inputSlices are the bit-sliced activations of every data neuron.
+     * @return the bit-sliced activations of every output neuron.
+     */
+    private long[] computeSlices(long[] inputSlices) {
+        long[] values = new long[dataNeurons.length];
+        for (int i = 0; i < dataNeurons.length; i++)
+            values[i] = dataNeurons[i] < inputSlices.length ? inputSlices[dataNeurons[i]] : 0;
+        long[] counter = new long[Integer.SIZE];
+        for (int a = 1; a < inputStarts.length; a++) {
+            long layerStart = TrainingMetrics.start();
+            LayerEvaluationEvent event = new LayerEvaluationEvent();
+            event.begin();
+            int[] starts = inputStarts[a];
+            int[] layerSources = inputSources[a];
+            int[] layerCounts = inputCounts[a];
+            int[] layerThresholds = thresholds[a];
+            long[] next = new long[layerThresholds.length];
+            for (int n = 0; n < next.length; n++) {
+                // Add the inputs into a bit-sliced counter, plane p holding bit p of every sample's sum.
+                int maximum = 0;
+                for (int i = starts[n]; i < starts[n + 1]; i++)
+                    maximum += layerCounts[i];
+                int planes = Integer.SIZE - Integer.numberOfLeadingZeros(maximum);
+                Arrays.fill(counter, 0, planes, 0);
+                for (int i = starts[n]; i < starts[n + 1]; i++) {
+                    long word = values[layerSources[i]];
+                    for (int count = layerCounts[i], plane = 0; count != 0; count >>>= 1, plane++) {
+                        if ((count & 1) == 0)
+                            continue;
+                        long carry = word;
+                        for (int p = plane; carry != 0 && p < planes; p++) {
+                            long overflow = counter[p] & carry;
+                            counter[p] ^= carry;
+                            carry = overflow;
+                        }
+                    }
+                }
+                // Compare every sum against the threshold from the most significant plane down.
+                int threshold = layerThresholds[n];
+                long greater = 0;
+                long equal = -1L;
+                for (int p = planes - 1; p >= 0; p--) {
+                    if ((threshold >>> p & 1) != 0) {
+                        equal &= counter[p];
+                    } else {
+                        greater |= equal & counter[p];
+                        equal &= ~counter[p];
+                    }
+                }
+                next[n] = threshold >>> planes != 0 ? 0 : greater | equal;
+            }
+            values = next;
+            if (TrainingMetrics.ENABLED)
+                TrainingMetrics.recordLayerEvaluation(layerStart);
+            commit(event, a, Long.SIZE);
+        }
+        long[] outputs = new long[outputPositions.length];
+        for (int b = 0; b < outputs.length; b++)
+            outputs[b] = outputPositions[b] < 0 ? (outputConstants[b] ? -1L : 0) : values[outputPositions[b]];
+        return outputs;
+    }
+
+    /**
+     * Commits the event of a layer evaluated by the plan, if it is recorded.
+     *
+     * @param event      is the event, begun before the layer was evaluated.
+     * @param layerIndex is the index of the layer.
+     * @param samples    is the number of samples evaluated at once.
+     */
+    private void commit(LayerEvaluationEvent event, int layerIndex, int samples) {
+        if (event.shouldCommit()) {
+            event.layerIndex = layerIndex;
+            event.neuronsEvaluated = thresholds[layerIndex].length;
+            event.planned = true;
+            event.samples = samples;
+            event.commit();
+        }
+    }
+
+    /**
+     * Gets the indexes of the data neurons read by the plan. The array is not
+     * copied.
+     *
+     * @return the data neuron indexes.
+     */
+    int[] getDataNeurons() {
+        return dataNeurons;
+    }
+
+    /**
+     * Gets the input ranges of the evaluated neurons of a layer. The array is not
+     * copied.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @return the input ranges, one more than the number of evaluated neurons.
+     */
+    int[] getInputStarts(int layerIndex) {
+        return inputStarts[layerIndex];
+    }
+
+    /**
+     * Gets the position of every input of a layer in the previous layer's
+     * evaluated neurons. The array is not copied.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @return the input sources.
+     */
+    int[] getInputSources(int layerIndex) {
+        return inputSources[layerIndex];
+    }
+
+    /**
+     * Gets the number of weighted connections every input of a layer stands
+     * for. The array is not copied.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @return the input counts.
+     */
+    int[] getInputCounts(int layerIndex) {
+        return inputCounts[layerIndex];
+    }
+
+    /**
+     * Gets the threshold of every evaluated neuron of a layer. The array is not
+     * copied.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @return the thresholds.
+     */
+    int[] getThresholds(int layerIndex) {
+        return thresholds[layerIndex];
+    }
+
+    /**
+     * Gets the number of layers of the compiled network.
+     *
+     * @return the number of layers.
+     */
+    int getNumberOfLayers() {
+        return inputStarts.length;
+    }
+
+    /**
+     * Gets the position of every output neuron among the evaluated neurons of
+     * the output layer, or -1 for constant neurons. The array is not copied.
+     *
+     * @return the output positions.
+     */
+    int[] getOutputPositions() {
+        return outputPositions;
+    }
+
+    /**
+     * Gets the activation of every constant output neuron. The array is not
+     * copied.
+     *
+     * @return the output constants.
+     */
+    boolean[] getOutputConstants() {
+        return outputConstants;
+    }
+
+    /**
+     * Gets the modification count of the database when the plan was compiled.
+     *
+     * @return the modification count.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Gets the number of activation neurons the plan evaluates.
+     *
+     * @return the number of evaluated neurons.
+     */
+    public int getEvaluatedNeuronCount() {
+        return evaluatedNeurons;
+    }
+
+    /**
+     * Gets the number of activation neurons found to be constant.
+     *
+     * @return the number of constant neurons.
+     */
+    public int getConstantNeuronCount() {
+        return constantNeurons;
+    }
+
+    /**
+     * Gets the number of activation neurons of the network.
+     *
+     * @return the number of activation neurons.
+     */
+    public int getTotalNeuronCount() {
+        return totalNeurons;
+    }
+}
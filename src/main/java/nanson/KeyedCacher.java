@@ -0,0 +1,747 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the values of a loader by key, bounded by size and optionally by age.
+ * <p>
+ * Lookups are lock-free. Recording the access of a hit for the eviction policy
+ * takes the cache's lock only if it is free, so threads hitting the cache
+ * together never wait for each other; under contention the recency order is
+ * approximate. Misses are single-flight per key like {@link Cacher}: one thread
+ * calls the loader while the other threads asking for the same key wait for its
+ * result. Loads run outside the lock.
+ * <p>
+ * Two eviction policies are available:
+ * <ul>
+ *     <li>{@link EvictionPolicy#LRU} evicts the least recently used entry.</li>
+ *     <li>{@link EvictionPolicy#TINY_LFU} (W-TinyLFU) admits new entries into a
+ *     small LRU window holding 1% of the entries. An entry leaving the window
+ *     only replaces the least recently used entry of the main LRU region if a
+ *     frequency sketch says its key was requested more often, so one-off keys
+ *     can't flush the keys that are used over and over.</li>
+ * </ul>
+ *
+ * @param <K> is the type of the keys.
+ * @param <V> is the type of the cached values.
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class KeyedCacher<K, V> {
+    /**
+     * Fraction of the entries kept in the admission window of
+     * {@link EvictionPolicy#TINY_LFU}.
+     */
+    private static final double WINDOW_FRACTION = 0.01;
+
+    /**
+     * Function loading the value of a key.
+     */
+    private final Function<? super K, ? extends V> loader;
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int maximumSize;
+
+    /**
+     * Age after which an entry expires, in nanoseconds, or 0 if entries don't
+     * expire.
+     */
+    private final long expireAfterWriteNanos;
+
+    /**
+     * Policy choosing the entry to evict.
+     */
+    private final EvictionPolicy policy;
+
+    /**
+     * Source of the current time in nanoseconds.
+     */
+    private final LongSupplier ticker;
+
+    /**
+     * Every cached entry by key.
+     */
+    private final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Loads in progress by key.
+     */
+    private final ConcurrentHashMap<K, Cacher.Load<V>> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Lock guarding the recency lists, the frequency sketch and eviction.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Admission window of {@link EvictionPolicy#TINY_LFU}, least recently used
+     * first; always empty for {@link EvictionPolicy#LRU}.
+     */
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+
+    /**
+     * Main region, least recently used first.
+     */
+    private final AccessOrder<K, V> main = new AccessOrder<>();
+
+    /**
+     * Maximum number of entries of the window.
+     */
+    private final int windowCapacity;
+
+    /**
+     * Request frequencies of the keys, or null for {@link EvictionPolicy#LRU}.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * Hit, miss, wait and load time counters, or null if statistics are not
+     * recorded.
+     */
+    private final CacheStatistics.Recorder recorder;
+
+    /**
+     * Number of entries evicted by size or age. Guarded by {@link #lock}.
+     */
+    private long evictionCount;
+
+    /**
+     * Constructs a KeyedCacher.
+     *
+     * @param loader           is the function loading the value of a key.
+     * @param maximumSize      is the maximum number of entries.
+     * @param expireAfterWrite is the age after which an entry is loaded again,
+     *                         or null if entries don't expire.
+     * @param policy           is the policy choosing the entry to evict.
+     * @param recordStatistics is whether to count hits, misses, waits and load
+     *                         time.
+     * @throws IllegalArgumentException if the maximum size isn't positive or the
+     *                                  age isn't positive.
+     */
+    public KeyedCacher(@NotNull Function<? super K, ? extends V> loader, int maximumSize, Duration expireAfterWrite,
+                       @NotNull EvictionPolicy policy, boolean recordStatistics) {
+        this(loader, maximumSize, expireAfterWrite, policy, recordStatistics, System::nanoTime);
+    }
+
+    /**
+     * Constructs a KeyedCacher with its own clock.
+     *
+     * @param loader           is the function loading the value of a key.
+     * @param maximumSize      is the maximum number of entries.
+     * @param expireAfterWrite is the age after which an entry is loaded again,
+     *                         or null if entries don't expire.
+     * @param policy           is the policy choosing the entry to evict.
+     * @param recordStatistics is whether to count hits, misses, waits and load
+     *                         time.
+     * @param ticker           is the source of the current time in nanoseconds.
+     * @throws IllegalArgumentException if the maximum size isn't positive or the
+     *                                  age isn't positive.
+     */
+    KeyedCacher(@NotNull Function<? super K, ? extends V> loader, int maximumSize, Duration expireAfterWrite,
+                @NotNull EvictionPolicy policy, boolean recordStatistics, @NotNull LongSupplier ticker) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("The maximum size must be positive: " + maximumSize);
+        if (expireAfterWrite != null && (expireAfterWrite.isNegative() || expireAfterWrite.isZero()))
+            throw new IllegalArgumentException("The expiration age must be positive: " + expireAfterWrite);
+        this.loader = loader;
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+        this.policy = policy;
+        this.ticker = ticker;
+        this.recorder = recordStatistics ? new CacheStatistics.Recorder() : null;
+        if (policy == EvictionPolicy.TINY_LFU) {
+            windowCapacity = Math.max(1, (int) (maximumSize * WINDOW_FRACTION));
+            sketch = new FrequencySketch(maximumSize);
+        } else {
+            windowCapacity = 0;
+            sketch = null;
+        }
+    }
+
+    /**
+     * Gets the value of a key, loading it if it isn't cached or has expired. If
+     * another thread is already loading the key, waits for its result.
+     *
+     * @param key is the key.
+     * @return the value.
+     */
+    public V get(@NotNull K key) {
+        while (true) {
+            Node<K, V> node = entries.get(key);
+            if (node != null && !isExpired(node)) {
+                if (recorder != null)
+                    recorder.hits.increment();
+                recordAccess(node);
+                return node.value;
+            }
+            if (node != null)
+                expire(node);
+            Cacher.Load<V> load = loads.get(key);
+            if (load != null) {
+                if (load.thread == Thread.currentThread())
+                    throw new IllegalStateException("The loader of a KeyedCacher requested its own key: " + key);
+                if (recorder != null)
+                    recorder.waits.increment();
+                return Cacher.await(load);
+            }
+            Cacher.Load<V> claimed = new Cacher.Load<>(Thread.currentThread());
+            if (loads.putIfAbsent(key, claimed) == null)
+                return loadClaimed(key, claimed);
+        }
+    }
+
+    /**
+     * Gets the value of a key without loading it.
+     *
+     * @param key is the key.
+     * @return the cached value, or null if the key isn't cached or has expired.
+     */
+    public V getIfPresent(@NotNull K key) {
+        Node<K, V> node = entries.get(key);
+        if (node == null || isExpired(node))
+            return null;
+        recordAccess(node);
+        return node.value;
+    }
+
+    /**
+     * Loads the value of a key this thread has just claimed, unless another
+     * thread's load of the key was published between this thread's lookups and
+     * its claim. A load only gives up its claim after publishing its entry, so
+     * the entry is visible once the claim succeeds.
+     *
+     * @param key   is the key.
+     * @param claim is the claimed load.
+     * @return the value.
+     */
+    private V loadClaimed(K key, Cacher.Load<V> claim) {
+        Node<K, V> node = entries.get(key);
+        if (node == null || isExpired(node))
+            return load(key, claim);
+        loads.remove(key, claim);
+        claim.result.complete(node.value);
+        if (recorder != null)
+            recorder.hits.increment();
+        recordAccess(node);
+        return node.value;
+    }
+
+    /**
+     * Loads the value of a key this thread has claimed, caching it unless the key
+     * was invalidated in the meantime. The entry is published before the claim
+     * is released, so no thread can find neither of them and load the key again.
+     *
+     * @param key   is the key.
+     * @param claim is the claimed load.
+     * @return the loaded value.
+     */
+    private V load(K key, Cacher.Load<V> claim) {
+        long start = ticker.getAsLong();
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            if (recorder != null)
+                recorder.recordLoadFailure();
+            loads.remove(key, claim);
+            claim.result.completeExceptionally(e);
+            throw e;
+        }
+        long now = ticker.getAsLong();
+        if (recorder != null)
+            recorder.recordLoad(now - start);
+        lock.lock();
+        try {
+            if (loads.get(key) == claim) {
+                insert(new Node<>(key, value, now));
+                loads.remove(key, claim);
+            }
+        } finally {
+            lock.unlock();
+        }
+        claim.result.complete(value);
+        return value;
+    }
+
+    /**
+     * Removes a key. A load of the key in progress still completes, but its
+     * value is not cached.
+     *
+     * @param key is the key.
+     */
+    public void invalidate(@NotNull K key) {
+        lock.lock();
+        try {
+            loads.remove(key);
+            Node<K, V> node = entries.remove(key);
+            if (node != null)
+                unlink(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every key.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            loads.clear();
+            entries.clear();
+            window.clear();
+            main.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every expired entry. Expired entries are otherwise only removed
+     * when they are requested or evicted by size.
+     */
+    public void cleanUp() {
+        if (expireAfterWriteNanos == 0)
+            return;
+        lock.lock();
+        try {
+            for (Node<K, V> node : entries.values())
+                if (isExpired(node) && entries.remove(node.key, node)) {
+                    unlink(node);
+                    evictionCount++;
+                }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of cached entries, including expired entries that weren't
+     * removed yet.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the maximum number of entries.
+     *
+     * @return the maximum size.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the eviction policy.
+     *
+     * @return the policy choosing the entry to evict.
+     */
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this cache.
+     *
+     * @return the statistics; only the eviction count is recorded if statistics
+     * are off.
+     */
+    public CacheStatistics getStatistics() {
+        long evictions;
+        lock.lock();
+        try {
+            evictions = evictionCount;
+        } finally {
+            lock.unlock();
+        }
+        return recorder == null ? new CacheStatistics(0, 0, 0, 0, 0, evictions) : recorder.snapshot(evictions);
+    }
+
+    /**
+     * Checks whether an entry is older than the expiration age.
+     *
+     * @param node is the entry.
+     * @return whether the entry has expired.
+     */
+    private boolean isExpired(Node<K, V> node) {
+        return expireAfterWriteNanos != 0 && ticker.getAsLong() - node.writeTime >= expireAfterWriteNanos;
+    }
+
+    /**
+     * Removes an expired entry, unless it was already replaced.
+     *
+     * @param node is the expired entry.
+     */
+    private void expire(Node<K, V> node) {
+        lock.lock();
+        try {
+            if (entries.remove(node.key, node)) {
+                unlink(node);
+                evictionCount++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a hit for the eviction policy, unless another thread holds the
+     * lock.
+     *
+     * @param node is the entry that was hit.
+     */
+    private void recordAccess(Node<K, V> node) {
+        if (!lock.tryLock())
+            return;
+        try {
+            if (sketch != null)
+                sketch.increment(node.key.hashCode());
+            if (node.linked)
+                (node.inWindow ? window : main).moveToBack(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a loaded entry, replacing the previous entry of its key, and evicts
+     * entries until the cache fits its maximum size. Must hold {@link #lock}.
+     *
+     * @param node is the new entry.
+     */
+    private void insert(Node<K, V> node) {
+        Node<K, V> previous = entries.put(node.key, node);
+        if (previous != null)
+            unlink(previous);
+        if (sketch == null) {
+            main.addToBack(node);
+            while (main.size > maximumSize)
+                evict(main.first);
+            return;
+        }
+        sketch.increment(node.key.hashCode());
+        node.inWindow = true;
+        window.addToBack(node);
+        while (window.size > windowCapacity) {
+            Node<K, V> candidate = window.first;
+            window.remove(candidate);
+            candidate.inWindow = false;
+            if (main.size < maximumSize - windowCapacity) {
+                main.addToBack(candidate);
+                continue;
+            }
+            // The window's oldest entry competes with the main region's least recently used one.
+            Node<K, V> victim = main.first;
+            if (victim != null
+                && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                evict(victim);
+                main.addToBack(candidate);
+            } else {
+                if (entries.remove(candidate.key, candidate))
+                    evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Evicts an entry. Must hold {@link #lock}.
+     *
+     * @param node is the entry to evict.
+     */
+    private void evict(Node<K, V> node) {
+        unlink(node);
+        if (entries.remove(node.key, node))
+            evictionCount++;
+    }
+
+    /**
+     * Removes an entry from whichever recency list holds it. Must hold
+     * {@link #lock}.
+     *
+     * @param node is the entry.
+     */
+    private void unlink(Node<K, V> node) {
+        if (node.linked)
+            (node.inWindow ? window : main).remove(node);
+    }
+
+    /**
+     * How a {@link KeyedCacher} chooses the entry to evict when it is full.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evict the least recently used entry.
+         */
+        LRU,
+
+        /**
+         * Admit new entries through a small LRU window and keep whichever of the
+         * window's oldest entry and the main region's least recently used entry
+         * was requested more often.
+         */
+        TINY_LFU
+    }
+
+    /**
+     * A cached entry, linked into one recency list.
+     *
+     * @param <K> is the type of the key.
+     * @param <V> is the type of the value.
+     */
+    private static final class Node<K, V> {
+        /**
+         * The key.
+         */
+        final K key;
+
+        /**
+         * The value; may be null.
+         */
+        final V value;
+
+        /**
+         * When the value was loaded, in nanoseconds of the cache's clock.
+         */
+        final long writeTime;
+
+        /**
+         * Previous entry of the recency list.
+         */
+        Node<K, V> previous;
+
+        /**
+         * Next entry of the recency list.
+         */
+        Node<K, V> next;
+
+        /**
+         * Whether the entry is in the admission window rather than the main
+         * region.
+         */
+        boolean inWindow;
+
+        /**
+         * Whether the entry is in a recency list.
+         */
+        boolean linked;
+
+        /**
+         * Constructs a Node.
+         *
+         * @param key       is the key.
+         * @param value     is the value.
+         * @param writeTime is when the value was loaded.
+         */
+        Node(K key, V value, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * Doubly linked list of entries, least recently used first.
+     *
+     * @param <K> is the type of the keys.
+     * @param <V> is the type of the values.
+     */
+    private static final class AccessOrder<K, V> {
+        /**
+         * Least recently used entry.
+         */
+        Node<K, V> first;
+
+        /**
+         * Most recently used entry.
+         */
+        Node<K, V> last;
+
+        /**
+         * Number of entries.
+         */
+        int size;
+
+        /**
+         * Constructs an empty AccessOrder.
+         */
+        AccessOrder() {
+        }
+
+        /**
+         * Appends an entry as the most recently used one.
+         *
+         * @param node is the entry.
+         */
+        void addToBack(Node<K, V> node) {
+            node.previous = last;
+            node.next = null;
+            if (last == null)
+                first = node;
+            else
+                last.next = node;
+            last = node;
+            node.linked = true;
+            size++;
+        }
+
+        /**
+         * Removes an entry.
+         *
+         * @param node is the entry.
+         */
+        void remove(Node<K, V> node) {
+            if (node.previous == null)
+                first = node.next;
+            else
+                node.previous.next = node.next;
+            if (node.next == null)
+                last = node.previous;
+            else
+                node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            node.linked = false;
+            size--;
+        }
+
+        /**
+         * Makes an entry the most recently used one.
+         *
+         * @param node is the entry.
+         */
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addToBack(node);
+            }
+        }
+
+        /**
+         * Removes every entry.
+         */
+        void clear() {
+            for (Node<K, V> node = first; node != null; node = node.next)
+                node.linked = false;
+            first = null;
+            last = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often keys were
+     * requested. Every counter is halved once the sketch has counted ten
+     * requests per entry of the cache, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        /**
+         * Odd multipliers of the four hash functions.
+         */
+        private static final long[] SEEDS = {
+            0x97CB3127L, 0xB3A7C1F5L, 0xC2B2AE3DL, 0x85EBCA6BL
+        };
+
+        /**
+         * Counters, sixteen per word.
+         */
+        private final long[] table;
+
+        /**
+         * Number of increments after which every counter is halved.
+         */
+        private final int sampleSize;
+
+        /**
+         * Number of increments since the last halving.
+         */
+        private int additions;
+
+        /**
+         * Constructs a FrequencySketch.
+         *
+         * @param maximumSize is the maximum number of entries of the cache.
+         */
+        FrequencySketch(int maximumSize) {
+            table = new long[Math.max(1, Integer.highestOneBit(Math.max(1, maximumSize - 1)) << 1)];
+            sampleSize = maximumSize <= Integer.MAX_VALUE / 10 ? 10 * maximumSize : Integer.MAX_VALUE;
+        }
+
+        /**
+         * Estimates how often a key was requested.
+         *
+         * @param hash is the hash code of the key.
+         * @return the smallest counter of the key, at most 15.
+         */
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = spread(hash, i);
+                frequency = Math.min(frequency, (int) (table[index(h)] >>> shift(h)) & 15);
+            }
+            return frequency;
+        }
+
+        /**
+         * Counts a request of a key.
+         *
+         * @param hash is the hash code of the key.
+         */
+        void increment(int hash) {
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = spread(hash, i);
+                int index = index(h);
+                int shift = shift(h);
+                if (((table[index] >>> shift) & 15) != 15)
+                    table[index] += 1L << shift;
+            }
+            if (++additions >= sampleSize) {
+                additions = 0;
+                for (int i = 0; i < table.length; i++)
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+        }
+
+        /**
+         * Hashes a key's hash code with one of the hash functions.
+         *
+         * @param hash     is the hash code of the key.
+         * @param function is the index of the hash function.
+         * @return the mixed hash.
+         */
+        private static long spread(int hash, int function) {
+            long h = (hash + SEEDS[function]) * SEEDS[function];
+            return h ^ (h >>> 29);
+        }
+
+        /**
+         * Gets the word of the table holding a counter.
+         *
+         * @param h is the mixed hash.
+         * @return the index of the word.
+         */
+        private int index(long h) {
+            return (int) (h >>> 32) & (table.length - 1);
+        }
+
+        /**
+         * Gets the position of a counter in its word.
+         *
+         * @param h is the mixed hash.
+         * @return the bit offset of the counter.
+         */
+        private static int shift(long h) {
+            return (int) (h & 15) << 2;
+        }
+    }
+}
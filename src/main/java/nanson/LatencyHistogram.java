@@ -0,0 +1,151 @@
+package nanson;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the style of
+ * HdrHistogram: every power of two is split into {@value #SUB_BUCKETS} equal
+ * buckets, so any recorded value is known to within about 6% from 16 ns to
+ * centuries, in a fixed {@value #BUCKETS} buckets.
+ * <p>
+ * Recording is lock-free and allocation-free. Buckets are striped by thread, so
+ * threads recording at the same time rarely touch the same cache line; a
+ * {@link #snapshot()} adds the stripes up.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public final class LatencyHistogram {
+    /**
+     * Log2 of the number of buckets per power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets: one per value below {@link #SUB_BUCKETS}, then
+     * {@link #SUB_BUCKETS} per power of two up to {@link Long#MAX_VALUE}.
+     */
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Bucket counts, one array per stripe.
+     */
+    private final AtomicLongArray[] stripes;
+
+    /**
+     * Sum of the recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Largest recorded value.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs a LatencyHistogram with one stripe per processor, up to 16.
+     */
+    public LatencyHistogram() {
+        this(Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1)));
+    }
+
+    /**
+     * Constructs a LatencyHistogram.
+     *
+     * @param stripes is the number of stripes; a power of two.
+     * @throws IllegalArgumentException if the number of stripes is not a power
+     *                                  of two.
+     */
+    public LatencyHistogram(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("The number of stripes must be a power of two: " + stripes);
+        this.stripes = new AtomicLongArray[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanoseconds is the latency; negative values are recorded as 0.
+     */
+    public void record(long nanoseconds) {
+        long value = Math.max(0, nanoseconds);
+        // Fibonacci hashing spreads consecutive thread ids over the stripes.
+        int stripe = (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> 32) & (stripes.length - 1);
+        stripes[stripe].getAndIncrement(bucketOf(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the latency of something that started at a given time.
+     *
+     * @param startNanos is when it started, in {@link System#nanoTime()}
+     *                   nanoseconds.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Takes a snapshot of the histogram. Values recorded while the snapshot is
+     * taken may or may not be included.
+     *
+     * @return the snapshot.
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes)
+            for (int b = 0; b < BUCKETS; b++)
+                counts[b] += stripe.get(b);
+        return LatencySnapshot.of(counts, sum.sum(), max.get());
+    }
+
+    /**
+     * Clears the histogram. Values recorded while it is cleared may or may not
+     * be kept.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes)
+            for (int b = 0; b < BUCKETS; b++)
+                stripe.set(b, 0);
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value is the value; not negative.
+     * @return the index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the largest value that falls into a bucket.
+     *
+     * @param bucket is the index of the bucket.
+     * @return the highest value of the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
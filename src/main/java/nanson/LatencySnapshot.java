@@ -0,0 +1,185 @@
+package nanson;
+
+import javax.management.ConstructorParameters;
+import java.util.Locale;
+
+/**
+ * Immutable summary of a {@link LatencyHistogram}: the count, mean, maximum and
+ * a few percentiles, all in nanoseconds. Percentiles are the highest value of
+ * the bucket they fall in, so they are never understated.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public final class LatencySnapshot {
+    /**
+     * Summary of a histogram that recorded nothing.
+     */
+    public static final LatencySnapshot EMPTY = new LatencySnapshot(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Number of recorded values.
+     */
+    private final long count;
+
+    /**
+     * Mean of the recorded values.
+     */
+    private final double mean;
+
+    /**
+     * Median of the recorded values.
+     */
+    private final long p50;
+
+    /**
+     * 90th percentile of the recorded values.
+     */
+    private final long p90;
+
+    /**
+     * 99th percentile of the recorded values.
+     */
+    private final long p99;
+
+    /**
+     * 99.9th percentile of the recorded values.
+     */
+    private final long p999;
+
+    /**
+     * Largest recorded value.
+     */
+    private final long max;
+
+    /**
+     * Constructs a LatencySnapshot.
+     *
+     * @param count is the number of recorded values.
+     * @param mean  is the mean of the recorded values.
+     * @param p50   is the median.
+     * @param p90   is the 90th percentile.
+     * @param p99   is the 99th percentile.
+     * @param p999  is the 99.9th percentile.
+     * @param max   is the largest recorded value.
+     */
+    @ConstructorParameters({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * Summarizes the buckets of a histogram.
+     *
+     * @param counts is the number of values in every bucket. The array is not
+     *               copied.
+     * @param sum    is the sum of the values.
+     * @param max    is the largest value.
+     * @return the summary.
+     */
+    static LatencySnapshot of(long[] counts, long sum, long max) {
+        long count = 0;
+        for (long c : counts)
+            count += c;
+        if (count == 0)
+            return EMPTY;
+        return new LatencySnapshot(count, (double) sum / count, percentile(counts, count, 0.5, max),
+            percentile(counts, count, 0.9, max), percentile(counts, count, 0.99, max),
+            percentile(counts, count, 0.999, max), max);
+    }
+
+    /**
+     * Finds a percentile in the buckets of a histogram.
+     *
+     * @param counts   is the number of values in every bucket.
+     * @param count    is the total number of values.
+     * @param quantile is the percentile as a fraction.
+     * @param max      is the largest value, which no percentile exceeds.
+     * @return the highest value of the bucket holding the percentile.
+     */
+    private static long percentile(long[] counts, long count, double quantile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank)
+                return Math.min(max, LatencyHistogram.highestValueOf(b));
+        }
+        return max;
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds, 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Gets the median of the recorded values.
+     *
+     * @return the median in nanoseconds.
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * Gets the 90th percentile of the recorded values.
+     *
+     * @return the percentile in nanoseconds.
+     */
+    public long getP90() {
+        return p90;
+    }
+
+    /**
+     * Gets the 99th percentile of the recorded values.
+     *
+     * @return the percentile in nanoseconds.
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * Gets the 99.9th percentile of the recorded values.
+     *
+     * @return the percentile in nanoseconds.
+     */
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the maximum in nanoseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+            count, mean, p50, p90, p99, p999, max);
+    }
+}
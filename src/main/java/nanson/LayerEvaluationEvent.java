@@ -0,0 +1,60 @@
+package nanson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the evaluation of one layer by
+ * {@link NeuronDatabase#evaluateLayer(int)} or by an {@link InferencePlan},
+ * timed from start to end.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@Name("nanson.LayerEvaluation")
+@Label("Layer Evaluation")
+@Category({"Boolean AI", "Network"})
+@Description("Evaluation of every neuron of a layer from the previous layer")
+@StackTrace(false)
+public class LayerEvaluationEvent extends jdk.jfr.Event {
+    /**
+     * Index of the evaluated layer.
+     */
+    @Label("Layer Index")
+    int layerIndex;
+
+    /**
+     * Number of neurons evaluated.
+     */
+    @Label("Neurons Evaluated")
+    int neuronsEvaluated;
+
+    /**
+     * Whether the network is stored in packed form; false for layers evaluated
+     * by a plan, which has its own form.
+     */
+    @Label("Packed")
+    boolean packed;
+
+    /**
+     * Whether the layer was split across an evaluation pool.
+     */
+    @Label("Parallel")
+    boolean parallel;
+
+    /**
+     * Whether the layer was evaluated by a compiled {@link InferencePlan},
+     * which skips pruned and constant neurons.
+     */
+    @Label("Planned")
+    boolean planned;
+
+    /**
+     * Number of samples evaluated at once: 1, or up to 64 bit-sliced.
+     */
+    @Label("Samples")
+    int samples;
+}
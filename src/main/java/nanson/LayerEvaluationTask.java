@@ -0,0 +1,137 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a range of one layer, splitting itself across a
+ * {@link ForkJoinPool} while the range is large enough. Neurons of a layer only
+ * read the previous layer, so chunks are independent. Packed layers are split
+ * on activation word boundaries so no two tasks write the same word.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class LayerEvaluationTask extends RecursiveAction {
+    /**
+     * Number of incoming connections below which a chunk is evaluated
+     * sequentially; forking smaller chunks costs more than it saves.
+     */
+    public static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+    /**
+     * The database being evaluated.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * The index of the layer being evaluated.
+     */
+    private final int neuronLayerIndex;
+
+    /**
+     * First unit (activation word if packed, neuron otherwise) to evaluate
+     * (inclusive).
+     */
+    private final int from;
+
+    /**
+     * Last unit to evaluate (exclusive).
+     */
+    private final int to;
+
+    /**
+     * Largest number of units evaluated without splitting further.
+     */
+    private final int chunkSize;
+
+    /**
+     * Inputs of a {@link PackedNetwork} layer, prepared once for every chunk, or
+     * null.
+     */
+    private final int[] preparedInputs;
+
+    /**
+     * Constructs a LayerEvaluationTask.
+     *
+     * @param neuronDatabase   is the database being evaluated.
+     * @param neuronLayerIndex is the index of the layer being evaluated.
+     * @param from             is the first unit to evaluate (inclusive).
+     * @param to               is the last unit to evaluate (exclusive).
+     * @param chunkSize        is the largest number of units evaluated without
+     *                         splitting further.
+     * @param preparedInputs   are the prepared inputs of a packed layer, or
+     *                         null.
+     */
+    private LayerEvaluationTask(NeuronDatabase neuronDatabase, int neuronLayerIndex, int from, int to,
+                                int chunkSize, int[] preparedInputs) {
+        this.neuronDatabase = neuronDatabase;
+        this.neuronLayerIndex = neuronLayerIndex;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+        this.preparedInputs = preparedInputs;
+    }
+
+    /**
+     * Evaluates a layer on a pool, waiting until every neuron is evaluated.
+     * Small layers are evaluated on the calling thread.
+     *
+     * @param neuronDatabase   is the database being evaluated.
+     * @param pool             is the pool to evaluate on.
+     * @param neuronLayerIndex is the index of the layer (must not be the data
+     *                         layer).
+     */
+    public static void evaluateLayer(@NotNull NeuronDatabase neuronDatabase, @NotNull ForkJoinPool pool,
+                                     int neuronLayerIndex) {
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        int neurons = neuronDatabase.getLayerLength(neuronLayerIndex);
+        int units = networkStorage != null ? networkStorage.getActivationWordCount(neuronLayerIndex) : neurons;
+        int neuronsPerUnit = networkStorage != null ? 64 : 1;
+        long connectionsPerUnit = (long) neuronsPerUnit * Math.max(1, neuronDatabase.getIncomingConnections());
+        // Enough chunks to balance the pool, but none smaller than the sequential threshold.
+        int minimumChunk = (int) Math.max(1, SEQUENTIAL_THRESHOLD / connectionsPerUnit);
+        int balancedChunk = Math.max(1, units / (pool.getParallelism() * 4));
+        int chunkSize = Math.max(minimumChunk, balancedChunk);
+        // The kernel's view of the previous layer is built once here rather than once per chunk.
+        int[] preparedInputs = networkStorage instanceof PackedNetwork packedNetwork
+            ? packedNetwork.prepareInputs(neuronLayerIndex) : null;
+        LayerEvaluationTask task = new LayerEvaluationTask(neuronDatabase, neuronLayerIndex, 0, units, chunkSize,
+            preparedInputs);
+        if (units <= chunkSize)
+            task.compute();
+        else
+            pool.invoke(task);
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= chunkSize) {
+            evaluateSequentially();
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new LayerEvaluationTask(neuronDatabase, neuronLayerIndex, from, middle, chunkSize, preparedInputs),
+            new LayerEvaluationTask(neuronDatabase, neuronLayerIndex, middle, to, chunkSize, preparedInputs));
+    }
+
+    /**
+     * Evaluates this task's range on the current thread.
+     */
+    private void evaluateSequentially() {
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        if (networkStorage instanceof PackedNetwork packedNetwork) {
+            packedNetwork.evaluateWords(neuronLayerIndex, null, preparedInputs, from, to);
+            return;
+        }
+        if (networkStorage != null) {
+            networkStorage.evaluateWords(neuronLayerIndex, null, from, to);
+            return;
+        }
+        Neuron[] layer = neuronDatabase.getNeuronLayer(neuronLayerIndex);
+        for (int b = from; b < to; b++)
+            ((ActivationNeuron) layer[b]).evaluate(false);
+    }
+}
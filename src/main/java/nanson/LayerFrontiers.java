@@ -0,0 +1,158 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the number of paths reaching each neuron of a network, layer by
+ * layer, for sweeps that walk from a root layer towards the data layer. The
+ * neurons of each layer with a non-zero path count form its frontier, in the
+ * order they were first reached, so a sweep only visits the neurons it reached.
+ * <p>
+ * All accumulators are allocated up front and only grow with the network, so a
+ * sweep does not allocate.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+final class LayerFrontiers {
+    /**
+     * The database whose neurons are counted.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * Number of paths reaching every neuron: pathCounts[layerIndex][neuronIndex].
+     */
+    private long[][] pathCounts;
+
+    /**
+     * Neurons of each layer with a non-zero path count.
+     */
+    private int[][] frontiers;
+
+    /**
+     * Number of neurons in each frontier.
+     */
+    private int[] frontierSizes;
+
+    /**
+     * Constructs a LayerFrontiers with room for every neuron of a database.
+     *
+     * @param neuronDatabase is the database whose neurons are counted.
+     */
+    LayerFrontiers(@NotNull NeuronDatabase neuronDatabase) {
+        this.neuronDatabase = neuronDatabase;
+        pathCounts = new long[0][];
+        frontiers = new int[0][];
+        frontierSizes = new int[0];
+        ensureCapacity();
+    }
+
+    /**
+     * Makes room for every neuron of the database, keeping the accumulators of
+     * layers that did not grow.
+     */
+    void ensureCapacity() {
+        int numberOfLayers = neuronDatabase.getNumberOfLayers();
+        if (pathCounts.length < numberOfLayers) {
+            pathCounts = Arrays.copyOf(pathCounts, numberOfLayers);
+            frontiers = Arrays.copyOf(frontiers, numberOfLayers);
+            frontierSizes = Arrays.copyOf(frontierSizes, numberOfLayers);
+        }
+        for (int a = 0; a < numberOfLayers; a++) {
+            int length = neuronDatabase.getLayerLength(a);
+            if (pathCounts[a] == null) {
+                pathCounts[a] = new long[length];
+                frontiers[a] = new int[length];
+            } else if (pathCounts[a].length < length) {
+                pathCounts[a] = PackedNetwork.ensureCapacity(pathCounts[a], length);
+                frontiers[a] = PackedNetwork.ensureCapacity(frontiers[a], length);
+            }
+        }
+    }
+
+    /**
+     * Adds paths reaching a neuron, adding it to its layer's frontier if it was
+     * not reached yet.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param paths            is the number of paths to add.
+     */
+    void addPaths(int neuronLayerIndex, int neuronIndex, long paths) {
+        long[] counts = pathCounts[neuronLayerIndex];
+        if (counts[neuronIndex] == 0)
+            frontiers[neuronLayerIndex][frontierSizes[neuronLayerIndex]++] = neuronIndex;
+        counts[neuronIndex] += paths;
+    }
+
+    /**
+     * Adds paths reaching every incoming neuron of an activation neuron, once
+     * per incoming connection.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param paths            is the number of paths to add per connection.
+     */
+    void addIncomingPaths(int neuronLayerIndex, int neuronIndex, long paths) {
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        if (networkStorage != null) {
+            int incomingConnections = networkStorage.getIncomingConnections();
+            for (int k = 0; k < incomingConnections; k++)
+                addPaths(neuronLayerIndex - 1, networkStorage.getIncomingNeuronIndex(neuronLayerIndex, neuronIndex, k),
+                    paths);
+        } else {
+            ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(neuronLayerIndex, neuronIndex);
+            for (int incomingIndex : neuron.getIncomingNeuronIndexes())
+                addPaths(neuronLayerIndex - 1, incomingIndex, paths);
+        }
+    }
+
+    /**
+     * Gets the frontier of a layer. Only the first
+     * {@link #getFrontierSize(int)} elements are neurons of the frontier.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @return the neurons of the layer reached so far.
+     */
+    int[] getFrontier(int neuronLayerIndex) {
+        return frontiers[neuronLayerIndex];
+    }
+
+    /**
+     * Gets the number of neurons in the frontier of a layer.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @return the size of the frontier.
+     */
+    int getFrontierSize(int neuronLayerIndex) {
+        return frontierSizes[neuronLayerIndex];
+    }
+
+    /**
+     * Gets the number of paths reaching a neuron.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @return the number of paths.
+     */
+    long getPaths(int neuronLayerIndex, int neuronIndex) {
+        return pathCounts[neuronLayerIndex][neuronIndex];
+    }
+
+    /**
+     * Empties the frontier of a layer, resetting the path count of every
+     * neuron in it.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     */
+    void clear(int neuronLayerIndex) {
+        long[] counts = pathCounts[neuronLayerIndex];
+        int[] frontier = frontiers[neuronLayerIndex];
+        for (int i = 0; i < frontierSizes[neuronLayerIndex]; i++)
+            counts[frontier[i]] = 0;
+        frontierSizes[neuronLayerIndex] = 0;
+    }
+}
@@ -0,0 +1,134 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Evaluates ranges of a {@link PackedNetwork} layer from the previous layer. The
+ * kernel used by every packed network is chosen once, when the class is
+ * initialized: the Vector API kernel when the {@code jdk.incubator.vector}
+ * module is present (run with {@code --add-modules jdk.incubator.vector}) and
+ * the hardware has vector registers wide enough to pay off, the scalar kernel
+ * otherwise.
+ * <p>
+ * The choice can be forced with the {@value #KERNEL_PROPERTY} system property,
+ * set to {@code scalar} or {@code vector}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public interface LayerKernel {
+    /**
+     * System property naming the kernel to use.
+     */
+    String KERNEL_PROPERTY = "nanson.kernel";
+
+    /**
+     * Name of the scalar kernel.
+     */
+    String SCALAR = "scalar";
+
+    /**
+     * Name of the Vector API kernel.
+     */
+    String VECTOR = "vector";
+
+    /**
+     * Gets the name of this kernel.
+     *
+     * @return {@value #SCALAR} or {@value #VECTOR}.
+     */
+    String getName();
+
+    /**
+     * Evaluates the neurons covered by a range of activation words of a layer.
+     * Behaves exactly like {@link NetworkStorage#evaluateWords(int, long[], int, int)}.
+     *
+     * @param network    is the network holding the layer.
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @param biasWords  is a bitset of the neurons that get one added to their
+     *                   activation sum, or null for no bias.
+     * @param fromWord   is the first activation word to evaluate (inclusive).
+     * @param toWord     is the last activation word to evaluate (exclusive).
+     */
+    default void evaluateWords(@NotNull PackedNetwork network, int layerIndex, long[] biasWords, int fromWord,
+                               int toWord) {
+        evaluateWords(network, layerIndex, biasWords, prepareInputs(network, layerIndex), fromWord, toWord);
+    }
+
+    /**
+     * Evaluates a range of a layer from inputs prepared by
+     * {@link #prepareInputs(PackedNetwork, int)}. A layer split into ranges
+     * evaluated by several threads prepares its inputs once and shares them.
+     *
+     * @param network        is the network holding the layer.
+     * @param layerIndex     is the index of the layer (must not be the data
+     *                       layer).
+     * @param biasWords      is a bitset of the neurons that get one added to
+     *                       their activation sum, or null for no bias.
+     * @param preparedInputs are the inputs prepared since the previous layer
+     *                       last changed. The array is not copied.
+     * @param fromWord       is the first activation word to evaluate
+     *                       (inclusive).
+     * @param toWord         is the last activation word to evaluate (exclusive).
+     */
+    void evaluateWords(@NotNull PackedNetwork network, int layerIndex, long[] biasWords, int[] preparedInputs,
+                       int fromWord, int toWord);
+
+    /**
+     * Prepares the previous layer of a layer for this kernel. The result stays
+     * valid until the previous layer changes.
+     *
+     * @param network    is the network holding the layer.
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @return the prepared inputs, or null if this kernel reads the activation
+     * words directly.
+     */
+    default int[] prepareInputs(@NotNull PackedNetwork network, int layerIndex) {
+        return null;
+    }
+
+    /**
+     * Chooses the kernel of this process: the one named by
+     * {@value #KERNEL_PROPERTY}, or the vector kernel when it is supported.
+     *
+     * @return the chosen kernel.
+     */
+    static @NotNull LayerKernel select() {
+        String name = System.getProperty(KERNEL_PROPERTY);
+        if (name != null)
+            return forName(name);
+        return isVectorSupported() ? forName(VECTOR) : forName(SCALAR);
+    }
+
+    /**
+     * Gets a kernel by name.
+     *
+     * @param name is {@value #SCALAR} or {@value #VECTOR}.
+     * @return the kernel.
+     * @throws IllegalArgumentException if the name is unknown or the vector
+     *                                  kernel is not supported.
+     */
+    static @NotNull LayerKernel forName(@NotNull String name) {
+        return switch (name) {
+            case SCALAR -> new ScalarLayerKernel();
+            case VECTOR -> {
+                if (!isVectorSupported())
+                    throw new IllegalArgumentException("The vector kernel needs --add-modules jdk.incubator.vector");
+                yield new VectorLayerKernel();
+            }
+            default -> throw new IllegalArgumentException("Unknown kernel: " + name);
+        };
+    }
+
+    /**
+     * Checks whether the vector kernel can be used. The vector kernel is only
+     * loaded after this check, so the scalar kernel works without the module.
+     *
+     * @return whether the Vector API module is present and the preferred vector
+     * shape holds at least eight ints.
+     */
+    static boolean isVectorSupported() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorLayerKernel.isHardwareSupported();
+    }
+}
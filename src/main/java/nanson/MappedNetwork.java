@@ -0,0 +1,738 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Network storage backed by a memory-mapped file, so networks larger than the
+ * heap can be used and opening one is instant: pages are only read once they
+ * are touched. Changes are written back to the file by the operating system, or
+ * immediately with {@link #force()}.
+ * <p>
+ * The file starts with a header ({@link #MAGIC}, {@link #FORMAT_VERSION}, the
+ * number of incoming connections, the number of layers, the number of entries
+ * of the layer table and the offset of the layer table). Every entry of the
+ * layer table holds the length of a layer, the number of neurons its region
+ * has room for and the offset of the region. A region holds the layer's
+ * activation words and, except for the data layer, its connection table, weight
+ * words, stakes and next neuron indexes, each with room for the whole capacity.
+ * Sections use the same layout as {@link PackedNetwork}, are little-endian and
+ * start on 8-byte boundaries.
+ * <p>
+ * Layers grow in place while their region has room. Otherwise the region moves
+ * to the end of the file with twice the capacity, and the layer table does the
+ * same when it runs out of entries, so growing costs amortized time
+ * proportional to the new neurons. The file is extended and mapped again when
+ * it grows; the space of a moved region is not reused, but
+ * {@link #create(Path, NetworkStorage)} writes a compact copy.
+ * <p>
+ * Serializing a mapped network serializes a {@link PackedNetwork} copy of it.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class MappedNetwork implements NetworkStorage, AutoCloseable {
+    /**
+     * Magic number at the start of every mapped network file: "BNAM".
+     */
+    public static final int MAGIC = 0x4D414E42;
+
+    /**
+     * Version of the file layout.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Layout of an int in the file.
+     */
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Layout of a long in the file.
+     */
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Size of the header before the layer table, in bytes.
+     */
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * Offset of the number of layers in the header.
+     */
+    private static final long NUMBER_OF_LAYERS_OFFSET = 12;
+
+    /**
+     * Offset of the number of entries of the layer table in the header.
+     */
+    private static final long LAYER_SLOTS_OFFSET = 16;
+
+    /**
+     * Offset of the offset of the layer table in the header.
+     */
+    private static final long TABLE_OFFSET_OFFSET = 24;
+
+    /**
+     * Size of one entry of the layer table: length (int), capacity (int) and
+     * region offset (long).
+     */
+    private static final int TABLE_ENTRY_SIZE = 16;
+
+    /**
+     * The mapped file.
+     */
+    private final transient Path path;
+
+    /**
+     * Arena owning the current mapping; closing it unmaps the file.
+     */
+    private transient Arena arena;
+
+    /**
+     * The current mapping of the whole file.
+     */
+    private transient MemorySegment segment;
+
+    /**
+     * Number of incoming connections every activation neuron has.
+     */
+    private final int incomingConnections;
+
+    /**
+     * Number of {@code long} words used to hold the weights of one neuron.
+     */
+    private final int weightWordsPerNeuron;
+
+    /**
+     * Number of entries of the layer table.
+     */
+    private int layerSlots;
+
+    /**
+     * Byte offset of the layer table.
+     */
+    private long tableOffset;
+
+    /**
+     * Number of neurons in each layer.
+     */
+    private int[] layerLengths;
+
+    /**
+     * Number of neurons the region of each layer has room for.
+     */
+    private int[] layerCapacities;
+
+    /**
+     * Byte offset of the activation words of each layer, the start of its
+     * region.
+     */
+    private long[] activationOffsets;
+
+    /**
+     * Byte offset of the connection table of each layer.
+     */
+    private long[] connectionOffsets;
+
+    /**
+     * Byte offset of the weight words of each layer.
+     */
+    private long[] weightOffsets;
+
+    /**
+     * Byte offset of the stakes of each layer.
+     */
+    private long[] stakeOffsets;
+
+    /**
+     * Byte offset of the next neuron indexes of each layer.
+     */
+    private long[] nextNeuronIndexOffsets;
+
+    /**
+     * Constructs a MappedNetwork over a file, computing the offset of every
+     * section.
+     *
+     * @param path                is the mapped file.
+     * @param arena               is the arena owning the mapping.
+     * @param segment             is the mapped file.
+     * @param incomingConnections is the number of incoming connections.
+     * @param layerSlots          is the number of entries of the layer table.
+     * @param tableOffset         is the byte offset of the layer table.
+     * @param layerLengths        are the lengths of the layers.
+     * @param layerCapacities     are the capacities of the regions of the
+     *                            layers.
+     * @param regionOffsets       are the byte offsets of the regions of the
+     *                            layers.
+     */
+    private MappedNetwork(Path path, Arena arena, MemorySegment segment, int incomingConnections, int layerSlots,
+                          long tableOffset, int[] layerLengths, int[] layerCapacities, long[] regionOffsets) {
+        this.path = path;
+        this.arena = arena;
+        this.segment = segment;
+        this.incomingConnections = incomingConnections;
+        this.weightWordsPerNeuron = PackedNetwork.wordsFor(incomingConnections);
+        this.layerSlots = layerSlots;
+        this.tableOffset = tableOffset;
+        this.layerLengths = layerLengths;
+        this.layerCapacities = layerCapacities;
+        activationOffsets = new long[layerLengths.length];
+        connectionOffsets = new long[layerLengths.length];
+        weightOffsets = new long[layerLengths.length];
+        stakeOffsets = new long[layerLengths.length];
+        nextNeuronIndexOffsets = new long[layerLengths.length];
+        for (int a = 0; a < layerLengths.length; a++)
+            layOut(a, regionOffsets[a]);
+    }
+
+    /**
+     * Computes the offset of every section of a layer from the offset and
+     * capacity of its region.
+     *
+     * @param layerIndex   is the index of the layer.
+     * @param regionOffset is the byte offset of the region.
+     */
+    private void layOut(int layerIndex, long regionOffset) {
+        long capacity = layerCapacities[layerIndex];
+        long offset = regionOffset;
+        activationOffsets[layerIndex] = offset;
+        offset += (long) PackedNetwork.wordsFor(layerCapacities[layerIndex]) * Long.BYTES;
+        if (layerIndex == 0)
+            return; // The data layer has no incoming connections.
+        connectionOffsets[layerIndex] = offset;
+        offset = align(offset + capacity * incomingConnections * Integer.BYTES);
+        weightOffsets[layerIndex] = offset;
+        offset += capacity * weightWordsPerNeuron * Long.BYTES;
+        stakeOffsets[layerIndex] = offset;
+        offset = align(offset + capacity * Integer.BYTES);
+        nextNeuronIndexOffsets[layerIndex] = offset;
+    }
+
+    /**
+     * Creates a file holding a network with every activation, weight and
+     * connection cleared, replacing any existing file, and maps it. Every
+     * region has room for exactly its layer; the first growth of a layer moves
+     * it.
+     *
+     * @param path                is the file to create.
+     * @param incomingConnections are the number of connections each neuron should
+     *                            have.
+     * @param layerLength         are the lengths of the neuron layers with the
+     *                            number of arguments being the number of layers.
+     * @return the mapped network.
+     * @throws IOException if the file can't be created or mapped.
+     */
+    public static MappedNetwork create(@NotNull Path path, int incomingConnections, int... layerLength)
+        throws IOException {
+        int[] layerLengths = layerLength.clone();
+        long[] regionOffsets = new long[layerLengths.length];
+        long size = align(HEADER_SIZE + (long) layerLengths.length * TABLE_ENTRY_SIZE);
+        for (int a = 0; a < layerLengths.length; a++) {
+            regionOffsets[a] = size;
+            size += regionSize(a, incomingConnections, layerLengths[a]);
+        }
+        Arena arena = Arena.ofShared();
+        MemorySegment segment = map(path, size, arena, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        segment.set(INT, 0, MAGIC);
+        segment.set(INT, Integer.BYTES, FORMAT_VERSION);
+        segment.set(INT, 2L * Integer.BYTES, incomingConnections);
+        segment.set(INT, NUMBER_OF_LAYERS_OFFSET, layerLengths.length);
+        segment.set(INT, LAYER_SLOTS_OFFSET, layerLengths.length);
+        segment.set(LONG, TABLE_OFFSET_OFFSET, HEADER_SIZE);
+        MappedNetwork network = new MappedNetwork(path, arena, segment, incomingConnections, layerLengths.length,
+            HEADER_SIZE, layerLengths, layerLengths.clone(), regionOffsets);
+        for (int a = 0; a < layerLengths.length; a++)
+            network.writeTableEntry(a, regionOffsets[a]);
+        return network;
+    }
+
+    /**
+     * Creates a file holding a copy of a network storage, replacing any existing
+     * file, and maps it.
+     *
+     * @param path    is the file to create.
+     * @param network is the storage to copy.
+     * @return the mapped network.
+     * @throws IOException if the file can't be created or mapped.
+     */
+    public static MappedNetwork create(@NotNull Path path, @NotNull NetworkStorage network) throws IOException {
+        int[] layerLengths = new int[network.getNumberOfLayers()];
+        for (int a = 0; a < layerLengths.length; a++)
+            layerLengths[a] = network.getLayerLength(a);
+        MappedNetwork copy = create(path, network.getIncomingConnections(), layerLengths);
+        for (int a = 0; a < layerLengths.length; a++) {
+            for (int w = 0; w < network.getActivationWordCount(a); w++)
+                copy.setActivationWord(a, w, network.getActivationWord(a, w));
+            if (a == 0)
+                continue;
+            for (int b = 0; b < layerLengths[a]; b++) {
+                for (int k = 0; k < copy.incomingConnections; k++) {
+                    copy.setIncomingNeuronIndex(a, b, k, network.getIncomingNeuronIndex(a, b, k));
+                    if (network.getWeight(a, b, k))
+                        copy.flipWeight(a, b, k);
+                }
+                copy.addStake(a, b, network.getStake(a, b));
+                copy.setNextNeuronIndex(a, b, network.getNextNeuronIndex(a, b));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Maps an existing network file. Nothing but the header and the layer table
+     * is read until the network is used.
+     *
+     * @param path is the file to open.
+     * @return the mapped network.
+     * @throws IOException if the file can't be mapped or is not a mapped network
+     *                     file of a supported version.
+     */
+    public static MappedNetwork open(@NotNull Path path) throws IOException {
+        long size;
+        int incomingConnections;
+        int layerSlots;
+        long tableOffset;
+        int[] layerLengths;
+        int[] layerCapacities;
+        long[] regionOffsets;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE, path);
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a mapped network: " + path);
+            int version = header.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported mapped network version " + version + ": " + path);
+            incomingConnections = header.getInt();
+            int numberOfLayers = header.getInt();
+            layerSlots = header.getInt();
+            tableOffset = header.getLong((int) TABLE_OFFSET_OFFSET);
+            if (incomingConnections < 0 || numberOfLayers < 0 || layerSlots < numberOfLayers
+                || tableOffset < HEADER_SIZE || tableOffset % Long.BYTES != 0
+                || tableOffset > size - (long) layerSlots * TABLE_ENTRY_SIZE)
+                throw new IOException("Corrupt mapped network header: " + path);
+            ByteBuffer table = readFully(channel, tableOffset, numberOfLayers * TABLE_ENTRY_SIZE, path);
+            layerLengths = new int[numberOfLayers];
+            layerCapacities = new int[numberOfLayers];
+            regionOffsets = new long[numberOfLayers];
+            for (int a = 0; a < numberOfLayers; a++) {
+                layerLengths[a] = table.getInt();
+                layerCapacities[a] = table.getInt();
+                regionOffsets[a] = table.getLong();
+                if (layerLengths[a] < 0 || layerCapacities[a] < layerLengths[a] || regionOffsets[a] < HEADER_SIZE
+                    || regionOffsets[a] % Long.BYTES != 0
+                    || regionOffsets[a] > size - regionSize(a, incomingConnections, layerCapacities[a]))
+                    throw new IOException("Corrupt mapped network layer table: " + path);
+            }
+        }
+        Arena arena = Arena.ofShared();
+        MemorySegment segment = map(path, size, arena);
+        return new MappedNetwork(path, arena, segment, incomingConnections, layerSlots, tableOffset, layerLengths,
+            layerCapacities, regionOffsets);
+    }
+
+    /**
+     * Reads bytes of a file into a little-endian buffer.
+     *
+     * @param channel  is the file.
+     * @param position is the position of the first byte.
+     * @param length   is the number of bytes to read.
+     * @param path     is the path of the file, for error messages.
+     * @return the buffer, ready to be read.
+     * @throws IOException if the file ends before every byte is read.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length, Path path)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of mapped network: " + path);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Opens and maps a file for reading and writing. Closes the arena if the
+     * file can't be mapped.
+     *
+     * @param path    is the file to map.
+     * @param size    is the number of bytes to map.
+     * @param arena   is the arena to own the mapping.
+     * @param options are extra options used to open the file.
+     * @return the mapping.
+     * @throws IOException if the file can't be opened or mapped.
+     */
+    private static MemorySegment map(Path path, long size, Arena arena, StandardOpenOption... options)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(path, withReadWrite(options))) {
+            // Mapping past the end of the file grows it with zeros.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the read and write options to a set of open options.
+     *
+     * @param options are the extra options.
+     * @return the options including read and write.
+     */
+    private static StandardOpenOption[] withReadWrite(StandardOpenOption... options) {
+        StandardOpenOption[] all = new StandardOpenOption[options.length + 2];
+        all[0] = StandardOpenOption.READ;
+        all[1] = StandardOpenOption.WRITE;
+        System.arraycopy(options, 0, all, 2, options.length);
+        return all;
+    }
+
+    /**
+     * Rounds an offset up to the next 8-byte boundary.
+     *
+     * @param offset is the offset.
+     * @return the aligned offset.
+     */
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Gets the size of the region of a layer.
+     *
+     * @param layerIndex          is the index of the layer.
+     * @param incomingConnections is the number of incoming connections.
+     * @param capacity            is the number of neurons the region has room
+     *                            for.
+     * @return the size of the region in bytes, a multiple of 8.
+     */
+    private static long regionSize(int layerIndex, int incomingConnections, int capacity) {
+        long length = capacity;
+        long size = (long) PackedNetwork.wordsFor(capacity) * Long.BYTES;
+        if (layerIndex == 0)
+            return size;
+        size = align(size + length * incomingConnections * Integer.BYTES);
+        size += length * PackedNetwork.wordsFor(incomingConnections) * Long.BYTES;
+        size = align(size + length * Integer.BYTES);
+        return align(size + length * Integer.BYTES);
+    }
+
+    /**
+     * Writes the entry of a layer to the layer table.
+     *
+     * @param layerIndex   is the index of the layer.
+     * @param regionOffset is the byte offset of the region of the layer.
+     */
+    private void writeTableEntry(int layerIndex, long regionOffset) {
+        long entry = tableOffset + (long) layerIndex * TABLE_ENTRY_SIZE;
+        segment.set(INT, entry, layerLengths[layerIndex]);
+        segment.set(INT, entry + Integer.BYTES, layerCapacities[layerIndex]);
+        segment.set(LONG, entry + 2L * Integer.BYTES, regionOffset);
+    }
+
+    /**
+     * Extends the file and maps it again, unmapping the previous mapping.
+     *
+     * @param size is the new size of the file.
+     * @throws UncheckedIOException if the file can't be extended or mapped.
+     */
+    private void remap(long size) {
+        Arena newArena = Arena.ofShared();
+        MemorySegment newSegment;
+        try {
+            newSegment = map(path, size, newArena);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't grow mapped network " + path, e);
+        }
+        arena.close();
+        arena = newArena;
+        segment = newSegment;
+    }
+
+    /**
+     * Writes every change made to the network to the file.
+     */
+    public void force() {
+        segment.force();
+    }
+
+    /**
+     * Unmaps the file. The network and any view of it can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Replaces the mapped network by a copy on the heap when serialized, since a
+     * mapping can't be serialized.
+     *
+     * @return a heap copy of this network.
+     * @throws ObjectStreamException never.
+     */
+    @java.io.Serial
+    private Object writeReplace() throws ObjectStreamException {
+        return new PackedNetwork(this);
+    }
+
+    @Override
+    public int getNumberOfLayers() {
+        return layerLengths.length;
+    }
+
+    @Override
+    public int getLayerLength(int layerIndex) {
+        return layerLengths[layerIndex];
+    }
+
+    @Override
+    public int getIncomingConnections() {
+        return incomingConnections;
+    }
+
+    @Override
+    public int getActivationWordCount(int layerIndex) {
+        return PackedNetwork.wordsFor(layerLengths[layerIndex]);
+    }
+
+    @Override
+    public long getActivationWord(int layerIndex, int wordIndex) {
+        return segment.get(LONG, activationOffsets[layerIndex] + (long) wordIndex * Long.BYTES);
+    }
+
+    @Override
+    public void setActivationWord(int layerIndex, int wordIndex, long word) {
+        segment.set(LONG, activationOffsets[layerIndex] + (long) wordIndex * Long.BYTES, word);
+    }
+
+    @Override
+    public void growLayer(int layerIndex, int additionalNeurons) {
+        int length = Math.addExact(layerLengths[layerIndex], additionalNeurons);
+        if (length > layerCapacities[layerIndex]) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(length, 2L * layerCapacities[layerIndex]));
+            long regionOffset = segment.byteSize();
+            remap(regionOffset + regionSize(layerIndex, incomingConnections, capacity));
+            moveRegion(layerIndex, capacity, regionOffset);
+        }
+        layerLengths[layerIndex] = length;
+        segment.set(INT, tableOffset + (long) layerIndex * TABLE_ENTRY_SIZE, length);
+    }
+
+    /**
+     * Copies the neurons of a layer into a new, cleared region and points the
+     * layer table at it.
+     *
+     * @param layerIndex   is the index of the layer.
+     * @param capacity     is the capacity of the new region.
+     * @param regionOffset is the byte offset of the new region.
+     */
+    private void moveRegion(int layerIndex, int capacity, long regionOffset) {
+        long length = layerLengths[layerIndex];
+        long activations = activationOffsets[layerIndex];
+        long connections = connectionOffsets[layerIndex];
+        long weights = weightOffsets[layerIndex];
+        long stakes = stakeOffsets[layerIndex];
+        long nextNeuronIndexes = nextNeuronIndexOffsets[layerIndex];
+        layerCapacities[layerIndex] = capacity;
+        layOut(layerIndex, regionOffset);
+        MemorySegment.copy(segment, activations, segment, activationOffsets[layerIndex],
+            (long) PackedNetwork.wordsFor(layerLengths[layerIndex]) * Long.BYTES);
+        if (layerIndex != 0) {
+            MemorySegment.copy(segment, connections, segment, connectionOffsets[layerIndex],
+                length * incomingConnections * Integer.BYTES);
+            MemorySegment.copy(segment, weights, segment, weightOffsets[layerIndex],
+                length * weightWordsPerNeuron * Long.BYTES);
+            MemorySegment.copy(segment, stakes, segment, stakeOffsets[layerIndex], length * Integer.BYTES);
+            MemorySegment.copy(segment, nextNeuronIndexes, segment, nextNeuronIndexOffsets[layerIndex],
+                length * Integer.BYTES);
+        }
+        writeTableEntry(layerIndex, regionOffset);
+    }
+
+    @Override
+    public void addLayer(int layerLength) {
+        int layerIndex = layerLengths.length;
+        long end = segment.byteSize();
+        long newTableOffset = tableOffset;
+        int newLayerSlots = layerSlots;
+        if (layerIndex == layerSlots) {
+            newLayerSlots = Math.max(1, 2 * layerSlots);
+            newTableOffset = end;
+            end = align(end + (long) newLayerSlots * TABLE_ENTRY_SIZE);
+        }
+        remap(end + regionSize(layerIndex, incomingConnections, layerLength));
+        if (newTableOffset != tableOffset) {
+            MemorySegment.copy(segment, tableOffset, segment, newTableOffset, (long) layerIndex * TABLE_ENTRY_SIZE);
+            tableOffset = newTableOffset;
+            layerSlots = newLayerSlots;
+            segment.set(INT, LAYER_SLOTS_OFFSET, layerSlots);
+            segment.set(LONG, TABLE_OFFSET_OFFSET, tableOffset);
+        }
+        layerLengths = Arrays.copyOf(layerLengths, layerIndex + 1);
+        layerCapacities = Arrays.copyOf(layerCapacities, layerIndex + 1);
+        activationOffsets = Arrays.copyOf(activationOffsets, layerIndex + 1);
+        connectionOffsets = Arrays.copyOf(connectionOffsets, layerIndex + 1);
+        weightOffsets = Arrays.copyOf(weightOffsets, layerIndex + 1);
+        stakeOffsets = Arrays.copyOf(stakeOffsets, layerIndex + 1);
+        nextNeuronIndexOffsets = Arrays.copyOf(nextNeuronIndexOffsets, layerIndex + 1);
+        layerLengths[layerIndex] = layerLength;
+        layerCapacities[layerIndex] = layerLength;
+        layOut(layerIndex, end);
+        writeTableEntry(layerIndex, end);
+        segment.set(INT, NUMBER_OF_LAYERS_OFFSET, layerIndex + 1);
+    }
+
+    @Override
+    public boolean isActivated(int layerIndex, int neuronIndex) {
+        return (getActivationWord(layerIndex, neuronIndex >>> 6) & (1L << neuronIndex)) != 0;
+    }
+
+    @Override
+    public void setActivated(int layerIndex, int neuronIndex, boolean activated) {
+        long word = getActivationWord(layerIndex, neuronIndex >>> 6);
+        if (activated)
+            word |= 1L << neuronIndex;
+        else
+            word &= ~(1L << neuronIndex);
+        setActivationWord(layerIndex, neuronIndex >>> 6, word);
+    }
+
+    @Override
+    public int getIncomingNeuronIndex(int layerIndex, int neuronIndex, int slot) {
+        return segment.get(INT, connectionOffset(layerIndex, neuronIndex, slot));
+    }
+
+    @Override
+    public void setIncomingNeuronIndex(int layerIndex, int neuronIndex, int slot, int incomingNeuronIndex) {
+        segment.set(INT, connectionOffset(layerIndex, neuronIndex, slot), incomingNeuronIndex);
+    }
+
+    /**
+     * Gets the byte offset of one incoming neuron index.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param slot        is the index of the incoming connection.
+     * @return the byte offset.
+     */
+    private long connectionOffset(int layerIndex, int neuronIndex, int slot) {
+        return connectionOffsets[layerIndex] + ((long) neuronIndex * incomingConnections + slot) * Integer.BYTES;
+    }
+
+    @Override
+    public boolean getWeight(int layerIndex, int neuronIndex, int slot) {
+        return (segment.get(LONG, weightOffset(layerIndex, neuronIndex, slot)) & (1L << slot)) != 0;
+    }
+
+    @Override
+    public void flipWeight(int layerIndex, int neuronIndex, int slot) {
+        long offset = weightOffset(layerIndex, neuronIndex, slot);
+        segment.set(LONG, offset, segment.get(LONG, offset) ^ (1L << slot));
+    }
+
+    /**
+     * Gets the byte offset of the weight word holding one weight.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param slot        is the index of the incoming connection.
+     * @return the byte offset.
+     */
+    private long weightOffset(int layerIndex, int neuronIndex, int slot) {
+        return weightOffsets[layerIndex] + ((long) neuronIndex * weightWordsPerNeuron + (slot >>> 6)) * Long.BYTES;
+    }
+
+    @Override
+    public int getNextNeuronIndex(int layerIndex, int neuronIndex) {
+        return segment.get(INT, nextNeuronIndexOffsets[layerIndex] + (long) neuronIndex * Integer.BYTES);
+    }
+
+    @Override
+    public void setNextNeuronIndex(int layerIndex, int neuronIndex, int nextNeuronIndex) {
+        segment.set(INT, nextNeuronIndexOffsets[layerIndex] + (long) neuronIndex * Integer.BYTES, nextNeuronIndex);
+    }
+
+    @Override
+    public int getStake(int layerIndex, int neuronIndex) {
+        return segment.get(INT, stakeOffsets[layerIndex] + (long) neuronIndex * Integer.BYTES);
+    }
+
+    @Override
+    public void addStake(int layerIndex, int neuronIndex, int amount) {
+        long offset = stakeOffsets[layerIndex] + (long) neuronIndex * Integer.BYTES;
+        segment.set(INT, offset, segment.get(INT, offset) + amount);
+    }
+
+    @Override
+    public void clearStake(int layerIndex, int neuronIndex) {
+        segment.set(INT, stakeOffsets[layerIndex] + (long) neuronIndex * Integer.BYTES, 0);
+    }
+
+    @Override
+    public boolean evaluateNeuron(int layerIndex, int neuronIndex, boolean addOne) {
+        if (incomingConnections == 0)
+            return false;
+        int activationSum = (addOne ? 1 : 0) + maskedPopCount(layerIndex, neuronIndex);
+        return activationSum >= incomingConnections / 2;
+    }
+
+    @Override
+    public void evaluateWords(int layerIndex, long[] biasWords, int fromWord, int toWord) {
+        int length = layerLengths[layerIndex];
+        int threshold = incomingConnections / 2;
+        for (int word = fromWord; word < toWord; word++) {
+            long result = 0;
+            if (incomingConnections != 0) {
+                long bias = biasWords == null ? 0 : biasWords[word];
+                int first = word << 6;
+                int last = Math.min(first + 64, length);
+                for (int n = first; n < last; n++) {
+                    int activationSum = (int) ((bias >>> n) & 1L) + maskedPopCount(layerIndex, n);
+                    if (activationSum >= threshold)
+                        result |= 1L << n;
+                }
+            }
+            setActivationWord(layerIndex, word, result);
+        }
+    }
+
+    /**
+     * Counts the incoming connections of a neuron that are both weighted and
+     * activated.
+     *
+     * @param layerIndex  is the index of the neuron's layer.
+     * @param neuronIndex is the index of the neuron in its layer.
+     * @return the number of weighted, activated incoming connections.
+     */
+    private int maskedPopCount(int layerIndex, int neuronIndex) {
+        long inputs = activationOffsets[layerIndex - 1];
+        long connection = connectionOffsets[layerIndex] + (long) neuronIndex * incomingConnections * Integer.BYTES;
+        long weightWord = weightOffsets[layerIndex] + (long) neuronIndex * weightWordsPerNeuron * Long.BYTES;
+        int count = 0;
+        for (int w = 0; w < weightWordsPerNeuron; w++) {
+            int end = Math.min(incomingConnections, (w + 1) << 6);
+            long gathered = 0;
+            for (int k = w << 6; k < end; k++) {
+                int input = segment.get(INT, connection + (long) k * Integer.BYTES);
+                long inputWord = segment.get(LONG, inputs + (long) (input >>> 6) * Long.BYTES);
+                gathered |= ((inputWord >>> input) & 1L) << k;
+            }
+            count += Long.bitCount(gathered & segment.get(LONG, weightWord + (long) w * Long.BYTES));
+        }
+        return count;
+    }
+}
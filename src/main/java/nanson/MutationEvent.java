@@ -0,0 +1,71 @@
+package nanson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one {@link Neuron#changeOneThing()} of an activation
+ * neuron. Mutations are frequent, so stack traces are off.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@Name("nanson.Mutation")
+@Label("Mutation")
+@Category({"Boolean AI", "Training"})
+@Description("Random change of one activation neuron")
+@StackTrace(false)
+public class MutationEvent extends jdk.jfr.Event {
+    /**
+     * Kind of a rewired incoming connection.
+     */
+    static final String INCOMING_NEURON = "incoming neuron";
+
+    /**
+     * Kind of a flipped weight.
+     */
+    static final String WEIGHT = "weight";
+
+    /**
+     * Kind of a changed next neuron index.
+     */
+    static final String NEXT_NEURON_INDEX = "next neuron index";
+
+    /**
+     * Index of the layer of the mutated neuron.
+     */
+    @Label("Layer Index")
+    int layerIndex;
+
+    /**
+     * Index of the mutated neuron in its layer.
+     */
+    @Label("Neuron Index")
+    int neuronIndex;
+
+    /**
+     * What was changed: {@value #INCOMING_NEURON}, {@value #WEIGHT} or
+     * {@value #NEXT_NEURON_INDEX}.
+     */
+    @Label("Kind")
+    String kind;
+
+    /**
+     * Gets the kind of a mutation from the change type drawn by
+     * {@link Neuron#changeOneThing()}.
+     *
+     * @param changeType is 0, 1 or 2.
+     * @return {@value #INCOMING_NEURON}, {@value #WEIGHT} or
+     * {@value #NEXT_NEURON_INDEX}.
+     */
+    static String kindOf(int changeType) {
+        return switch (changeType) {
+            case 0 -> INCOMING_NEURON;
+            case 1 -> WEIGHT;
+            default -> NEXT_NEURON_INDEX;
+        };
+    }
+}
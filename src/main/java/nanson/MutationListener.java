@@ -0,0 +1,43 @@
+package nanson;
+
+/**
+ * Receives every change a {@link NeuronDatabase} makes to the wiring or weights
+ * of its neurons, e.g. to keep derived structures up to date without scanning
+ * the whole network. Listeners are called on the mutating thread, right after
+ * the change.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public interface MutationListener {
+    /**
+     * Called after an incoming connection of a neuron was rewired.
+     *
+     * @param neuronLayerIndex       is the index of the layer of the neuron.
+     * @param neuronIndex            is the index of the neuron in that layer.
+     * @param slot                   is the index of the incoming connection.
+     * @param oldIncomingNeuronIndex is the index of the previous incoming neuron.
+     * @param newIncomingNeuronIndex is the index of the new incoming neuron.
+     */
+    void incomingNeuronChanged(int neuronLayerIndex, int neuronIndex, int slot, int oldIncomingNeuronIndex,
+                               int newIncomingNeuronIndex);
+
+    /**
+     * Called after a weight of a neuron was flipped.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param slot             is the index of the incoming connection.
+     */
+    void weightFlipped(int neuronLayerIndex, int neuronIndex, int slot);
+
+    /**
+     * Called after a layer grew or a layer was added. New neurons are appended,
+     * so every existing neuron keeps its index.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @param oldLength        is the number of neurons the layer had before; 0
+     *                         for a new layer.
+     */
+    void layerResized(int neuronLayerIndex, int oldLength);
+}
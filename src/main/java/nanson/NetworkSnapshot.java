@@ -0,0 +1,479 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes networks in a compact, versioned binary format, streamed
+ * through a {@link FileChannel}. Unlike Java serialization the format does not
+ * depend on class layout and is the same for both storage models.
+ * <p>
+ * Layout (multi-byte integers are little-endian, "varint" is unsigned LEB128):
+ * <ol>
+ *     <li>magic {@code "BNAI"} (int), format version (varint)</li>
+ *     <li>incoming connections (varint), number of layers (varint), then the
+ *     length of every layer (varint)</li>
+ *     <li>for every layer: its activation bits, eight per byte</li>
+ *     <li>for every activation neuron, layer by layer: its weight bits, eight
+ *     per byte, then each incoming neuron index (varint), then its next neuron
+ *     index (varint)</li>
+ *     <li>CRC32C of everything before it (int)</li>
+ * </ol>
+ * Stakes are not stored.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class NetworkSnapshot {
+    /**
+     * Magic number at the start of every snapshot ("BNAI").
+     */
+    public static final int MAGIC = 0x49414E42;
+
+    /**
+     * Version of the format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the I/O buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Constructs an instance of NetworkSnapshot.
+     */
+    public NetworkSnapshot() {
+    }
+
+    /**
+     * Writes a network to a file, replacing it if it exists.
+     *
+     * @param neuronDatabase is the network to write.
+     * @param file           is the file to write to.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(@NotNull NeuronDatabase neuronDatabase, @NotNull Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotOutput output = new SnapshotOutput(channel);
+            int incomingConnections = neuronDatabase.getIncomingConnections();
+            output.writeInt(MAGIC);
+            output.writeVarInt(FORMAT_VERSION);
+            output.writeVarInt(incomingConnections);
+            output.writeVarInt(neuronDatabase.getNumberOfLayers());
+            for (int a = 0; a < neuronDatabase.getNumberOfLayers(); a++)
+                output.writeVarInt(neuronDatabase.getLayerLength(a));
+            for (int a = 0; a < neuronDatabase.getNumberOfLayers(); a++) {
+                boolean[] activations = neuronDatabase.getActivations(a);
+                for (int b = 0; b < activations.length; b += 8) {
+                    int bits = 0;
+                    for (int i = 0; i < 8 && b + i < activations.length; i++)
+                        if (activations[b + i])
+                            bits |= 1 << i;
+                    output.writeByte(bits);
+                }
+            }
+            NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+            for (int a = 1; a < neuronDatabase.getNumberOfLayers(); a++) {
+                for (int b = 0; b < neuronDatabase.getLayerLength(a); b++) {
+                    if (networkStorage != null) {
+                        for (int k = 0; k < incomingConnections; k += 8) {
+                            int bits = 0;
+                            for (int i = 0; i < 8 && k + i < incomingConnections; i++)
+                                if (networkStorage.getWeight(a, b, k + i))
+                                    bits |= 1 << i;
+                            output.writeByte(bits);
+                        }
+                        for (int k = 0; k < incomingConnections; k++)
+                            output.writeVarInt(networkStorage.getIncomingNeuronIndex(a, b, k));
+                        output.writeVarInt(networkStorage.getNextNeuronIndex(a, b));
+                    } else {
+                        ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(a, b);
+                        boolean[] weights = neuron.getWeights();
+                        for (int k = 0; k < incomingConnections; k += 8) {
+                            int bits = 0;
+                            for (int i = 0; i < 8 && k + i < incomingConnections; i++)
+                                if (weights[k + i])
+                                    bits |= 1 << i;
+                            output.writeByte(bits);
+                        }
+                        for (int incomingIndex : neuron.getIncomingNeuronIndexes())
+                            output.writeVarInt(incomingIndex);
+                        output.writeVarInt(neuron.getNextNeuronIndex());
+                    }
+                }
+            }
+            output.finish();
+        }
+    }
+
+    /**
+     * Reads a network from a file.
+     *
+     * @param file   is the file to read from.
+     * @param packed if true, the network is read into a packed database.
+     * @return the network.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public static NeuronDatabase read(@NotNull Path file, boolean packed) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotInput input = new SnapshotInput(channel);
+            if (input.readInt() != MAGIC)
+                throw new IOException(file + " is not a network snapshot");
+            int version = input.readVarInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported snapshot version " + version);
+            // Counts are checked against the file size before anything is allocated from them.
+            int incomingConnections = input.readCount("incoming connections", input.remaining());
+            int[] layerLengths = new int[input.readCount("number of layers", input.remaining())];
+            for (int a = 0; a < layerLengths.length; a++)
+                layerLengths[a] = input.readCount("length of layer " + a, 8 * input.remaining());
+            if (minimumSize(incomingConnections, layerLengths) > input.remaining())
+                throw new IOException("Snapshot is shorter than its header says");
+            NeuronDatabase neuronDatabase = new NeuronDatabase(packed, incomingConnections, layerLengths);
+            NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+            for (int a = 0; a < layerLengths.length; a++)
+                for (int b = 0; b < layerLengths[a]; b += 8) {
+                    int bits = input.readByte();
+                    for (int i = 0; i < 8 && b + i < layerLengths[a]; i++)
+                        setActivated(neuronDatabase, a, b + i, (bits & (1 << i)) != 0);
+                }
+            boolean[] weights = new boolean[incomingConnections];
+            int[] incomingNeuronIndexes = new int[incomingConnections];
+            for (int a = 1; a < layerLengths.length; a++) {
+                for (int b = 0; b < layerLengths[a]; b++) {
+                    for (int k = 0; k < incomingConnections; k += 8) {
+                        int bits = input.readByte();
+                        for (int i = 0; i < 8 && k + i < incomingConnections; i++)
+                            weights[k + i] = (bits & (1 << i)) != 0;
+                    }
+                    for (int k = 0; k < incomingConnections; k++) {
+                        incomingNeuronIndexes[k] = input.readVarInt();
+                        if (incomingNeuronIndexes[k] < 0 || incomingNeuronIndexes[k] >= layerLengths[a - 1])
+                            throw new IOException("Connection of neuron " + a + "," + b + " is out of range");
+                    }
+                    int nextNeuronIndex = input.readVarInt();
+                    // getNextNeuron wraps an index one past the last connection back to 0.
+                    if (nextNeuronIndex < 0 || nextNeuronIndex > incomingConnections)
+                        throw new IOException("Next neuron index of neuron " + a + "," + b + " is out of range");
+                    if (networkStorage != null) {
+                        for (int k = 0; k < incomingConnections; k++) {
+                            if (weights[k])
+                                networkStorage.flipWeight(a, b, k);
+                            networkStorage.setIncomingNeuronIndex(a, b, k, incomingNeuronIndexes[k]);
+                        }
+                        networkStorage.setNextNeuronIndex(a, b, nextNeuronIndex);
+                    } else {
+                        ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(a, b);
+                        System.arraycopy(weights, 0, neuron.getWeights(), 0, incomingConnections);
+                        neuron.setIncomingNeuronIndexes(incomingNeuronIndexes);
+                        neuron.setNextNeuronIndex(nextNeuronIndex);
+                    }
+                }
+            }
+            input.verifyChecksum();
+            return neuronDatabase;
+        }
+    }
+
+    /**
+     * Computes the smallest size the rest of a snapshot can have after its
+     * header: one bit per neuron, then for every activation neuron one bit per
+     * weight and at least one byte per varint, then the checksum.
+     *
+     * @param incomingConnections is the number of incoming connections.
+     * @param layerLengths        is the length of every layer.
+     * @return the size in bytes, or {@link Long#MAX_VALUE} if it overflows.
+     */
+    private static long minimumSize(int incomingConnections, int[] layerLengths) {
+        long neuronSize = (incomingConnections + 7) / 8 + incomingConnections + 1L;
+        try {
+            long size = Integer.BYTES;
+            for (int a = 0; a < layerLengths.length; a++) {
+                size = Math.addExact(size, (layerLengths[a] + 7L) / 8);
+                if (a > 0)
+                    size = Math.addExact(size, Math.multiplyExact(layerLengths[a], neuronSize));
+            }
+            return size;
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Sets the activation of a neuron of either storage model.
+     *
+     * @param neuronDatabase   is the database of the neuron.
+     * @param neuronLayerIndex is the index of the layer.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param activated        is the new activation.
+     */
+    private static void setActivated(NeuronDatabase neuronDatabase, int neuronLayerIndex, int neuronIndex,
+                                     boolean activated) {
+        Neuron neuron = neuronDatabase.getNeuron(neuronLayerIndex, neuronIndex);
+        if (neuronDatabase.getNetworkStorage() != null)
+            neuronDatabase.getNetworkStorage().setActivated(neuronLayerIndex, neuronIndex, activated);
+        else if (neuron instanceof ActivationNeuron activationNeuron)
+            activationNeuron.setActivated(activated);
+        else
+            neuron.computeActivation(activated); // Data neurons take the bit as is.
+    }
+
+    /**
+     * Buffered, checksummed output to a channel.
+     */
+    private static final class SnapshotOutput {
+        /**
+         * Channel written to.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Buffer of bytes not yet written.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Checksum of every byte written so far.
+         */
+        private final CRC32C checksum = new CRC32C();
+
+        /**
+         * Constructs a SnapshotOutput.
+         *
+         * @param channel is the channel written to.
+         */
+        private SnapshotOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes one byte.
+         *
+         * @param value is the byte (low eight bits).
+         * @throws IOException if the channel cannot be written.
+         */
+        private void writeByte(int value) throws IOException {
+            ensureRemaining(1);
+            buffer.put((byte) value);
+        }
+
+        /**
+         * Writes a little-endian int.
+         *
+         * @param value is the int.
+         * @throws IOException if the channel cannot be written.
+         */
+        private void writeInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        /**
+         * Writes an unsigned LEB128 varint.
+         *
+         * @param value is the value (treated as unsigned).
+         * @throws IOException if the channel cannot be written.
+         */
+        private void writeVarInt(int value) throws IOException {
+            ensureRemaining(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        /**
+         * Flushes the buffer if it has less room than requested.
+         *
+         * @param bytes is the number of bytes about to be written.
+         * @throws IOException if the channel cannot be written.
+         */
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+        /**
+         * Writes the buffered bytes to the channel and adds them to the checksum.
+         *
+         * @throws IOException if the channel cannot be written.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Writes the checksum and everything still buffered.
+         *
+         * @throws IOException if the channel cannot be written.
+         */
+        private void finish() throws IOException {
+            flush();
+            buffer.putInt((int) checksum.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    /**
+     * Buffered, checksummed input from a channel.
+     */
+    private static final class SnapshotInput {
+        /**
+         * Channel read from.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Buffer of bytes read from the channel; starts empty.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+            .limit(0);
+
+        /**
+         * Checksum of every byte consumed before {@link #checksummed}.
+         */
+        private final CRC32C checksum = new CRC32C();
+
+        /**
+         * Position in the buffer up to which consumed bytes are in the checksum.
+         */
+        private int checksummed;
+
+        /**
+         * Constructs a SnapshotInput.
+         *
+         * @param channel is the channel read from.
+         */
+        private SnapshotInput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads one unsigned byte.
+         *
+         * @return the byte.
+         * @throws IOException if the channel cannot be read or ends early.
+         */
+        private int readByte() throws IOException {
+            ensureRemaining(1);
+            return buffer.get() & 0xFF;
+        }
+
+        /**
+         * Reads a little-endian int.
+         *
+         * @return the int.
+         * @throws IOException if the channel cannot be read or ends early.
+         */
+        private int readInt() throws IOException {
+            ensureRemaining(4);
+            return buffer.getInt();
+        }
+
+        /**
+         * Reads an unsigned LEB128 varint.
+         *
+         * @return the value.
+         * @throws IOException if the channel cannot be read, ends early or the
+         *                     varint is too long.
+         */
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        /**
+         * Reads a varint that counts something the reader allocates memory for.
+         *
+         * @param what    is what it counts, for the error message.
+         * @param maximum is the largest count the rest of the file can hold.
+         * @return the count.
+         * @throws IOException if the channel cannot be read, or the count is
+         *                     negative or larger than the maximum.
+         */
+        private int readCount(String what, long maximum) throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > maximum)
+                throw new IOException("Corrupt snapshot: " + what + " is " + Integer.toUnsignedString(count));
+            return count;
+        }
+
+        /**
+         * Gets the number of bytes left to read.
+         *
+         * @return the bytes buffered plus the bytes not yet read from the
+         * channel.
+         * @throws IOException if the channel cannot be queried.
+         */
+        private long remaining() throws IOException {
+            return buffer.remaining() + channel.size() - channel.position();
+        }
+
+        /**
+         * Refills the buffer until it holds at least the requested number of
+         * bytes.
+         *
+         * @param bytes is the number of bytes about to be read.
+         * @throws IOException if the channel cannot be read or ends early.
+         */
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+            updateChecksum();
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0)
+                    throw new EOFException("Snapshot ends early");
+            }
+            buffer.flip();
+            checksummed = 0;
+        }
+
+        /**
+         * Adds the bytes consumed since the last update to the checksum.
+         */
+        private void updateChecksum() {
+            ByteBuffer consumed = buffer.duplicate();
+            consumed.position(checksummed).limit(buffer.position());
+            checksum.update(consumed);
+            checksummed = buffer.position();
+        }
+
+        /**
+         * Reads the trailing checksum and compares it with the bytes consumed.
+         *
+         * @throws IOException if the checksum does not match or data follows it.
+         */
+        private void verifyChecksum() throws IOException {
+            updateChecksum();
+            int expected = (int) checksum.getValue();
+            if (readInt() != expected)
+                throw new IOException("Snapshot checksum mismatch");
+            if (buffer.hasRemaining() || channel.position() != channel.size())
+                throw new IOException("Unexpected data after snapshot checksum");
+        }
+    }
+}
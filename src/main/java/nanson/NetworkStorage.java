@@ -0,0 +1,224 @@
+package nanson;
+
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+
+/**
+ * Bit-packed storage holding the state of every neuron of a network, layer by
+ * layer. Packed neurons ({@link PackedActivationNeuron}, {@link PackedDataNeuron})
+ * are views of a storage and keep no state of their own.
+ * <p>
+ * Activations are bitsets of {@code long} words, 64 neurons per word. Layer 0 is
+ * the data layer and has no connections, weights, stakes or next neuron
+ * indexes.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public interface NetworkStorage extends Serializable {
+    /**
+     * Gets the number of layers.
+     *
+     * @return the number of layers.
+     */
+    int getNumberOfLayers();
+
+    /**
+     * Gets the number of neurons in a layer.
+     *
+     * @param layerIndex is the index of the layer.
+     * @return the number of neurons in that layer.
+     */
+    int getLayerLength(int layerIndex);
+
+    /**
+     * Gets the number of incoming connections every activation neuron has.
+     *
+     * @return the number of incoming connections.
+     */
+    int getIncomingConnections();
+
+    /**
+     * Gets the number of activation words of a layer.
+     *
+     * @param layerIndex is the index of the layer.
+     * @return the number of activation words.
+     */
+    int getActivationWordCount(int layerIndex);
+
+    /**
+     * Gets one activation word of a layer: the activations of neurons
+     * {@code wordIndex * 64} to {@code wordIndex * 64 + 63}, lowest bit first.
+     *
+     * @param layerIndex is the index of the layer.
+     * @param wordIndex  is the index of the word.
+     * @return the activation word.
+     */
+    long getActivationWord(int layerIndex, int wordIndex);
+
+    /**
+     * Sets one activation word of a layer.
+     *
+     * @param layerIndex is the index of the layer.
+     * @param wordIndex  is the index of the word.
+     * @param word       is the new activation word.
+     */
+    void setActivationWord(int layerIndex, int wordIndex, long word);
+
+    /**
+     * Appends neurons to a layer. The new neurons are cleared: they are not
+     * activated, have no weights, no stake and every incoming connection
+     * points to neuron 0. The state of every other neuron is kept.
+     *
+     * @param layerIndex        is the index of the layer.
+     * @param additionalNeurons is the number of neurons to add.
+     * @throws UncheckedIOException if the file holding the storage
+     *                              can't be extended.
+     */
+    void growLayer(int layerIndex, int additionalNeurons);
+
+    /**
+     * Appends a cleared layer after the last layer.
+     *
+     * @param layerLength is the number of neurons of the new layer.
+     * @throws UncheckedIOException if the file holding the storage
+     *                              can't be extended.
+     */
+    void addLayer(int layerLength);
+
+    /**
+     * Checks whether a neuron is activated.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @return true if the neuron is activated, false otherwise.
+     */
+    boolean isActivated(int layerIndex, int neuronIndex);
+
+    /**
+     * Sets the activation of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param activated   is the new activation.
+     */
+    void setActivated(int layerIndex, int neuronIndex, boolean activated);
+
+    /**
+     * Gets one incoming neuron index of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param slot        is the index of the incoming connection.
+     * @return the index of the incoming neuron in the previous layer.
+     */
+    int getIncomingNeuronIndex(int layerIndex, int neuronIndex, int slot);
+
+    /**
+     * Sets one incoming neuron index of a neuron.
+     *
+     * @param layerIndex          is the index of the layer.
+     * @param neuronIndex         is the index of the neuron in that layer.
+     * @param slot                is the index of the incoming connection.
+     * @param incomingNeuronIndex is the index of the incoming neuron in the
+     *                            previous layer.
+     */
+    void setIncomingNeuronIndex(int layerIndex, int neuronIndex, int slot, int incomingNeuronIndex);
+
+    /**
+     * Gets one weight of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param slot        is the index of the incoming connection.
+     * @return the weight of that connection.
+     */
+    boolean getWeight(int layerIndex, int neuronIndex, int slot);
+
+    /**
+     * Flips one weight of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param slot        is the index of the incoming connection.
+     */
+    void flipWeight(int layerIndex, int neuronIndex, int slot);
+
+    /**
+     * Gets the next neuron index of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @return the next neuron index.
+     */
+    int getNextNeuronIndex(int layerIndex, int neuronIndex);
+
+    /**
+     * Sets the next neuron index of a neuron.
+     *
+     * @param layerIndex      is the index of the layer.
+     * @param neuronIndex     is the index of the neuron in that layer.
+     * @param nextNeuronIndex is the new next neuron index.
+     */
+    void setNextNeuronIndex(int layerIndex, int neuronIndex, int nextNeuronIndex);
+
+    /**
+     * Gets the stake of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @return the stake of the neuron.
+     */
+    int getStake(int layerIndex, int neuronIndex);
+
+    /**
+     * Adds to the stake of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param amount      is the amount to add.
+     */
+    void addStake(int layerIndex, int neuronIndex, int amount);
+
+    /**
+     * Clears the stake of a neuron.
+     *
+     * @param layerIndex  is the index of the layer.
+     * @param neuronIndex is the index of the neuron in that layer.
+     */
+    void clearStake(int layerIndex, int neuronIndex);
+
+    /**
+     * Evaluates the activation of a single neuron from the previous layer.
+     *
+     * @param layerIndex  is the index of the layer (must not be the data layer).
+     * @param neuronIndex is the index of the neuron in that layer.
+     * @param addOne      if true, adds one to the activation sum (bias).
+     * @return true if the activation sum reaches or exceeds half the number of
+     * incoming connections.
+     */
+    boolean evaluateNeuron(int layerIndex, int neuronIndex, boolean addOne);
+
+    /**
+     * Evaluates the neurons covered by a range of activation words of a layer
+     * from the previous layer.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @param biasWords  is a bitset of the neurons that get one added to their
+     *                   activation sum, or null for no bias.
+     * @param fromWord   is the first activation word to evaluate (inclusive).
+     * @param toWord     is the last activation word to evaluate (exclusive).
+     */
+    void evaluateWords(int layerIndex, long[] biasWords, int fromWord, int toWord);
+
+    /**
+     * Evaluates a whole layer from the previous layer.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @param biasWords  is a bitset of the neurons that get one added to their
+     *                   activation sum, or null for no bias.
+     */
+    default void evaluateLayer(int layerIndex, long[] biasWords) {
+        evaluateWords(layerIndex, biasWords, 0, getActivationWordCount(layerIndex));
+    }
+}
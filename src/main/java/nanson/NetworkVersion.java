@@ -0,0 +1,132 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One published version of a {@link VersionedNetwork}: an immutable compiled
+ * view of a network as it was when the version was published. Every method is
+ * safe to call from any number of threads while the network it came from keeps
+ * being mutated.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public final class NetworkVersion {
+    /**
+     * Number of the version; versions of a network are numbered from 0 up.
+     */
+    private final long version;
+
+    /**
+     * Modification count of the network when this version was published.
+     */
+    private final long modificationCount;
+
+    /**
+     * When this version was published, in {@link System#nanoTime()} nanoseconds.
+     */
+    private final long publishNanos;
+
+    /**
+     * The compiled network.
+     */
+    private final InferencePlan inferencePlan;
+
+    /**
+     * The frozen program, compiled from the plan on first use.
+     */
+    private final Cacher<FrozenNetwork> frozenNetwork;
+
+    /**
+     * Constructs a NetworkVersion.
+     *
+     * @param version       is the number of the version.
+     * @param inferencePlan is the compiled network.
+     */
+    NetworkVersion(long version, @NotNull InferencePlan inferencePlan) {
+        this.version = version;
+        this.modificationCount = inferencePlan.getModificationCount();
+        this.publishNanos = System.nanoTime();
+        this.inferencePlan = inferencePlan;
+        this.frozenNetwork = new Cacher<>(() -> new FrozenNetwork(inferencePlan));
+    }
+
+    /**
+     * Gets the number of this version.
+     *
+     * @return the version number.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the modification count of the network when this version was
+     * published.
+     *
+     * @return the modification count.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Gets when this version was published.
+     *
+     * @return the publication time in {@link System#nanoTime()} nanoseconds.
+     */
+    public long getPublishNanos() {
+        return publishNanos;
+    }
+
+    /**
+     * Gets the compiled network.
+     *
+     * @return the inference plan.
+     */
+    public InferencePlan getInferencePlan() {
+        return inferencePlan;
+    }
+
+    /**
+     * Gets the frozen program of this version, compiling it once.
+     *
+     * @return the frozen network.
+     */
+    public FrozenNetwork getFrozenNetwork() {
+        return frozenNetwork.getData();
+    }
+
+    /**
+     * Computes the output layer for an input.
+     *
+     * @param inputBits are the bits of the data layer; missing bits are treated
+     *                  as false.
+     * @return the activation of every output neuron.
+     */
+    public boolean[] evaluate(boolean @NotNull [] inputBits) {
+        return getFrozenNetwork().evaluate(inputBits);
+    }
+
+    /**
+     * Computes the output layer for many inputs at once.
+     *
+     * @param inputBits are the bits of the data layer of every sample.
+     * @return the activation of every output neuron for every sample.
+     * @see InferencePlan#evaluate(boolean[][])
+     */
+    public boolean[][] evaluate(boolean @NotNull [] @NotNull [] inputBits) {
+        return inferencePlan.evaluate(inputBits);
+    }
+
+    /**
+     * Answers one character the way {@link AlphabetTask#answer} does.
+     *
+     * @param c               is the character to load into the data layer.
+     * @param lengthOfResults is the number of output bits read back.
+     * @return the network's answer.
+     */
+    public char answer(char c, int lengthOfResults) {
+        return getFrozenNetwork().answer(c, lengthOfResults);
+    }
+}
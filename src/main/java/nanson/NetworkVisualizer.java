@@ -0,0 +1,253 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Shows the activations of a network as a grid with one row per layer and one
+ * cell per neuron. It reads an {@link ActivationFeed} at a fixed frame rate on
+ * the Event Dispatch Thread, writes the neurons that changed since the previous
+ * frame into the pixels of an image and paints the whole grid with a single
+ * scaled blit. The thread running the network only publishes to the feed, so
+ * the display never blocks or slows it, and however fast the network changes
+ * at most one repaint is posted per frame.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class NetworkVisualizer extends JComponent {
+    /**
+     * Default number of frames per second.
+     */
+    public static final int DEFAULT_FRAMES_PER_SECOND = 30;
+
+    /**
+     * Default side of a cell in pixels, used for the preferred size.
+     */
+    public static final int DEFAULT_CELL_SIZE = 8;
+
+    /**
+     * Color of an inactive neuron.
+     */
+    private static final int INACTIVE = Color.WHITE.getRGB();
+
+    /**
+     * Color of an active neuron.
+     */
+    private static final int ACTIVE = Color.GREEN.getRGB();
+
+    /**
+     * Color of an active neuron of the data layer.
+     */
+    private static final int ACTIVE_DATA = Color.ORANGE.getRGB();
+
+    /**
+     * Color of the cells past the end of a shorter layer.
+     */
+    private static final int EMPTY = Color.DARK_GRAY.getRGB();
+
+    /**
+     * The subscriber the frames are read from; only used on the Event Dispatch
+     * Thread.
+     */
+    private final ActivationFeed.Subscriber subscriber;
+
+    /**
+     * Fires once per frame on the Event Dispatch Thread.
+     */
+    private final Timer timer;
+
+    /**
+     * Side of a cell in pixels, used for the preferred size.
+     */
+    private final int cellSize;
+
+    /**
+     * One pixel per neuron, one row per layer.
+     */
+    private BufferedImage image;
+
+    /**
+     * The pixels of {@link #image}, written directly.
+     */
+    private int[] pixels;
+
+    /**
+     * Length of every layer drawn into {@link #image}.
+     */
+    private int[] layerLengths;
+
+    /**
+     * Number of frames that changed the image.
+     */
+    private long framesPainted;
+
+    /**
+     * Constructs a NetworkVisualizer with {@link #DEFAULT_FRAMES_PER_SECOND} and
+     * {@link #DEFAULT_CELL_SIZE}.
+     *
+     * @param activationFeed is the feed to show.
+     */
+    public NetworkVisualizer(@NotNull ActivationFeed activationFeed) {
+        this(activationFeed, DEFAULT_FRAMES_PER_SECOND, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs a NetworkVisualizer. It starts reading the feed once shown and
+     * stops when hidden.
+     *
+     * @param activationFeed  is the feed to show.
+     * @param framesPerSecond is how often the feed is read; at least 1.
+     * @param cellSize        is the side of a cell in pixels, used for the
+     *                        preferred size.
+     * @throws IllegalArgumentException if the frame rate or cell size is less
+     *                                  than 1.
+     */
+    public NetworkVisualizer(@NotNull ActivationFeed activationFeed, int framesPerSecond, int cellSize) {
+        if (framesPerSecond < 1)
+            throw new IllegalArgumentException("The frame rate must be at least 1: " + framesPerSecond);
+        if (cellSize < 1)
+            throw new IllegalArgumentException("The cell size must be at least 1: " + cellSize);
+        this.subscriber = activationFeed.subscribe();
+        this.cellSize = cellSize;
+        timer = new Timer(1000 / framesPerSecond, e -> nextFrame());
+        timer.setCoalesce(true);
+        resize();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Reads the feed and repaints if anything changed.
+     */
+    private void nextFrame() {
+        if (!subscriber.poll())
+            return;
+        if (!hasImageShape()) {
+            resize();
+            revalidate();
+        } else {
+            drawChanges();
+        }
+        framesPainted++;
+        repaint();
+    }
+
+    /**
+     * Writes the neurons that changed in the last poll into the image.
+     */
+    private void drawChanges() {
+        int width = image.getWidth();
+        for (int a = 0; a < subscriber.getNumberOfLayers(); a++) {
+            long[] changes = subscriber.getChanges(a);
+            long[] activations = subscriber.getActivations(a);
+            int active = a == 0 ? ACTIVE_DATA : ACTIVE;
+            for (int w = 0; w < changes.length; w++) {
+                long changed = changes[w];
+                while (changed != 0) {
+                    int b = (w << 6) + Long.numberOfTrailingZeros(changed);
+                    pixels[a * width + b] = (activations[w] >>> b & 1) != 0 ? active : INACTIVE;
+                    changed &= changed - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the image was drawn for layers of the same lengths as the
+     * latest frame. Any change to the number of layers or to the length of a
+     * layer rebuilds the image.
+     *
+     * @return whether the image fits the latest frame.
+     */
+    private boolean hasImageShape() {
+        if (layerLengths.length != subscriber.getNumberOfLayers())
+            return false;
+        for (int a = 0; a < layerLengths.length; a++)
+            if (layerLengths[a] != subscriber.getLayerLength(a))
+                return false;
+        return true;
+    }
+
+    /**
+     * Gets the length of the longest layer of the latest frame.
+     *
+     * @return the number of columns of the grid, at least 1.
+     */
+    private int longestLayer() {
+        int longest = 1;
+        for (int a = 0; a < subscriber.getNumberOfLayers(); a++)
+            longest = Math.max(longest, subscriber.getLayerLength(a));
+        return longest;
+    }
+
+    /**
+     * Allocates an image for the shape of the latest frame and draws every
+     * neuron into it.
+     */
+    private void resize() {
+        int width = longestLayer();
+        int height = Math.max(1, subscriber.getNumberOfLayers());
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        layerLengths = new int[subscriber.getNumberOfLayers()];
+        for (int a = 0; a < layerLengths.length; a++)
+            layerLengths[a] = subscriber.getLayerLength(a);
+        for (int a = 0; a < height; a++) {
+            int length = a < layerLengths.length ? layerLengths[a] : 0;
+            int active = a == 0 ? ACTIVE_DATA : ACTIVE;
+            for (int b = 0; b < width; b++) {
+                if (b >= length)
+                    pixels[a * width + b] = EMPTY;
+                else
+                    pixels[a * width + b] = (subscriber.getActivations(a)[b >> 6] >>> b & 1) != 0 ? active : INACTIVE;
+            }
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet())
+            return super.getPreferredSize();
+        return new Dimension(image.getWidth() * cellSize, image.getHeight() * cellSize);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        // Nearest-neighbour scaling keeps every neuron a sharp cell.
+        g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
+    }
+
+    /**
+     * Gets the number of frames that changed the image.
+     *
+     * @return the number of frames painted.
+     */
+    public long getFramesPainted() {
+        return framesPainted;
+    }
+
+    /**
+     * Gets the subscriber the frames are read from, e.g. to show how many frames
+     * were skipped. Only use it on the Event Dispatch Thread.
+     *
+     * @return the subscriber.
+     */
+    public ActivationFeed.Subscriber getSubscriber() {
+        return subscriber;
+    }
+}
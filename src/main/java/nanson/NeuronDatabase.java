@@ -1,6 +1,16 @@
 package nanson;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
 
 /**
  * Stores the layers and neurons for a simulation.
@@ -10,12 +20,81 @@ import java.io.Serializable;
  */
 public class NeuronDatabase implements Serializable {
     /**
-     * 2D array storing neurons by layer: neurons[layerIndex][neuronIndex].
+     * Algorithm of the random generators created by the database. LXM
+     * generators are fast, statistically strong and splittable.
      */
-    private final Neuron[][] neurons;
+    public static final String DEFAULT_RANDOM_ALGORITHM = "L64X128MixRandom";
 
     /**
-     * Constructs a neuron database.
+     * Access to the layers of {@link #neurons} with acquire/release semantics, so
+     * lazily created layers of views are safely published to every thread.
+     */
+    private static final VarHandle LAYERS = MethodHandles.arrayElementVarHandle(Neuron[][].class);
+
+    /**
+     * 2D array storing neurons by layer: neurons[layerIndex][neuronIndex]. When
+     * the database is backed by a storage, the layers of views are created on
+     * first use and are null until then.
+     */
+    private Neuron[][] neurons;
+
+    /**
+     * Packed storage backing the neurons, or null when every neuron holds its own
+     * state.
+     */
+    private final NetworkStorage networkStorage;
+
+    /**
+     * Number of incoming connections every activation neuron has.
+     */
+    private final int incomingConnections;
+
+    /**
+     * Breadth-first stake propagator, created on first use.
+     */
+    private transient StakePropagator stakePropagator;
+
+    /**
+     * Layer-wise punishment scheduler, created on first use.
+     */
+    private transient PunishmentScheduler punishmentScheduler;
+
+    /**
+     * Index of the neurons reading each neuron, created on first use.
+     */
+    private transient FanOutIndex fanOutIndex;
+
+    /**
+     * Source of randomness for every mutation in this database, created on first
+     * use. Not shared between databases so parallel training does not contend on
+     * one generator.
+     */
+    private transient RandomGenerator randomGenerator;
+
+    /**
+     * Pool layers are evaluated on, or null to evaluate on the calling thread.
+     */
+    private transient ForkJoinPool evaluationPool;
+
+    /**
+     * Listeners notified of every mutation, replaced as a whole when a listener
+     * is added or removed. Null when there are none.
+     */
+    private transient volatile MutationListener[] mutationListeners;
+
+    /**
+     * Number of mutations (rewiring, weight flips, resizing) since the database
+     * was constructed or deserialized.
+     */
+    private transient long modificationCount;
+
+    /**
+     * Pruned inference plan, compiled on first use and again after mutations.
+     */
+    private transient InferencePlan inferencePlan;
+
+    /**
+     * Constructs a neuron database where every neuron is its own object.
      *
      * @param incomingConnections are the number of connections each neuron should
      *                            have.
@@ -23,16 +102,247 @@ public class NeuronDatabase implements Serializable {
      *                            number of arguments being the number of layers.
      */
     public NeuronDatabase(int incomingConnections, int... layerLength) {
+        this(false, incomingConnections, layerLength);
+    }
+
+    /**
+     * Constructs a neuron database.
+     *
+     * @param packed              if true, the state of every neuron is kept in a
+     *                            {@link PackedNetwork} on the heap and the
+     *                            neurons are lightweight views of it; otherwise
+     *                            every neuron is its own object (easier to
+     *                            inspect while debugging).
+     * @param incomingConnections are the number of connections each neuron should
+     *                            have.
+     * @param layerLength         is are the lengths of the neuron layers with the
+     *                            number of arguments being the number of layers.
+     */
+    public NeuronDatabase(boolean packed, int incomingConnections, int... layerLength) {
+        this.incomingConnections = incomingConnections;
+        networkStorage = packed ? new PackedNetwork(incomingConnections, layerLength) : null;
         neurons = new Neuron[layerLength.length][];
+        if (networkStorage != null)
+            return; // Views are created on first use.
         for (int a = 0; a < layerLength.length; a++)
             neurons[a] = new Neuron[layerLength[a]];
         for (int a = 0; a < neurons.length; a++) {
             for (int b = 0; b < neurons[a].length; b++)
-                if (a == 0)
+                neurons[a][b] = createNeuron(a, b, incomingConnections);
+        }
+    }
+
+    /**
+     * Constructs a neuron database whose neurons are views of an existing
+     * storage, e.g. a {@link MappedNetwork}. Views are only created for layers
+     * that are accessed, so opening a large storage is cheap.
+     *
+     * @param networkStorage is the storage holding the state of every neuron.
+     */
+    public NeuronDatabase(@NotNull NetworkStorage networkStorage) {
+        this.incomingConnections = networkStorage.getIncomingConnections();
+        this.networkStorage = networkStorage;
+        neurons = new Neuron[networkStorage.getNumberOfLayers()][];
+    }
+
+    /**
+     * Constructs a deep copy of a neuron database. Transient helpers (random
+     * generator, evaluation pool, ...) are not copied. Packed storage is always
+     * copied to the heap.
+     *
+     * @param neuronDatabase is the database to copy.
+     */
+    private NeuronDatabase(NeuronDatabase neuronDatabase) {
+        this.incomingConnections = neuronDatabase.incomingConnections;
+        neurons = new Neuron[neuronDatabase.neurons.length][];
+        if (neuronDatabase.networkStorage != null) {
+            networkStorage = new PackedNetwork(neuronDatabase.networkStorage);
+            return;
+        }
+        networkStorage = null;
+        for (int a = 0; a < neurons.length; a++) {
+            neurons[a] = new Neuron[neuronDatabase.neurons[a].length];
+            for (int b = 0; b < neurons[a].length; b++) {
+                Neuron neuron = neuronDatabase.neurons[a][b];
+                if (neuron instanceof ActivationNeuron activationNeuron)
+                    neurons[a][b] = new ActivationNeuron(this, activationNeuron);
+                else {
                     neurons[a][b] = new DataNeuron(a, b);
-                else
-                    neurons[a][b] = new ActivationNeuron(this, a, b, incomingConnections);
+                    neurons[a][b].computeActivation(neuron.isActivated());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a deep copy of this database. The copy gets its own, unseeded
+     * random generator.
+     *
+     * @return the copy.
+     */
+    public NeuronDatabase copy() {
+        return new NeuronDatabase(this);
+    }
+
+    /**
+     * Creates the neuron at a position, backed by the storage if there is one.
+     *
+     * @param neuronLayerIndex    is the index of the layer.
+     * @param neuronIndex         is the index of the neuron in that layer.
+     * @param incomingConnections are the number of connections the neuron should
+     *                            have.
+     * @return the new neuron.
+     */
+    private Neuron createNeuron(int neuronLayerIndex, int neuronIndex, int incomingConnections) {
+        if (networkStorage != null) {
+            if (neuronLayerIndex == 0)
+                return new PackedDataNeuron(networkStorage, neuronLayerIndex, neuronIndex);
+            return new PackedActivationNeuron(this, networkStorage, neuronLayerIndex, neuronIndex);
         }
+        if (neuronLayerIndex == 0)
+            return new DataNeuron(neuronLayerIndex, neuronIndex);
+        return new ActivationNeuron(this, neuronLayerIndex, neuronIndex, incomingConnections);
+    }
+
+    /**
+     * Checks whether the neurons are views of a packed storage.
+     *
+     * @return true if the database is packed, false otherwise.
+     */
+    public boolean isPacked() {
+        return networkStorage != null;
+    }
+
+    /**
+     * Gets the packed storage backing the neurons.
+     *
+     * @return the storage, or null if the database is not packed.
+     */
+    public NetworkStorage getNetworkStorage() {
+        return networkStorage;
+    }
+
+    /**
+     * Gets the stake propagator of this database.
+     *
+     * @return the stake propagator.
+     */
+    public StakePropagator getStakePropagator() {
+        if (stakePropagator == null)
+            stakePropagator = new StakePropagator(this);
+        return stakePropagator;
+    }
+
+    /**
+     * Gets the punishment scheduler of this database.
+     *
+     * @return the punishment scheduler.
+     */
+    public PunishmentScheduler getPunishmentScheduler() {
+        if (punishmentScheduler == null)
+            punishmentScheduler = new PunishmentScheduler(this);
+        return punishmentScheduler;
+    }
+
+    /**
+     * Gets the index of the neurons reading each neuron. The index is built on
+     * first use and then kept up to date as neurons are rewired.
+     *
+     * @return the fan-out index.
+     */
+    public synchronized FanOutIndex getFanOutIndex() {
+        if (fanOutIndex == null)
+            fanOutIndex = new FanOutIndex(this);
+        return fanOutIndex;
+    }
+
+    /**
+     * Gets the number of mutations (rewiring, weight flips, resizing) made
+     * through the neurons of this database. Changes made directly to a
+     * {@link NetworkStorage} are not counted.
+     *
+     * @return the modification count.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Gets a pruned plan computing the output layer of the current network. The
+     * plan is compiled on first use and compiled again if the database was
+     * mutated since.
+     *
+     * @return the inference plan.
+     */
+    public synchronized InferencePlan getInferencePlan() {
+        if (inferencePlan == null || inferencePlan.getModificationCount() != modificationCount)
+            inferencePlan = new InferencePlan(this);
+        return inferencePlan;
+    }
+
+    /**
+     * Compiles the current network to a {@link FrozenNetwork} for fast
+     * forward-only queries. Later mutations don't affect it.
+     *
+     * @return the frozen network.
+     */
+    public FrozenNetwork freeze() {
+        return new FrozenNetwork(getInferencePlan());
+    }
+
+    /**
+     * Gets the random generator used for every mutation in this database. An
+     * unseeded {@link #DEFAULT_RANDOM_ALGORITHM} generator is created if none was
+     * set. The generator is not thread-safe; use one database per thread.
+     *
+     * @return the random generator.
+     */
+    public RandomGenerator getRandomGenerator() {
+        if (randomGenerator == null)
+            randomGenerator = RandomGeneratorFactory.of(DEFAULT_RANDOM_ALGORITHM).create();
+        return randomGenerator;
+    }
+
+    /**
+     * Sets the random generator used for every mutation in this database.
+     *
+     * @param randomGenerator is the new random generator.
+     */
+    public void setRandomGenerator(@NotNull RandomGenerator randomGenerator) {
+        this.randomGenerator = randomGenerator;
+    }
+
+    /**
+     * Seeds this database with a new {@link #DEFAULT_RANDOM_ALGORITHM} generator,
+     * so the same sequence of calls replays the same mutations.
+     *
+     * @param seed is the seed.
+     */
+    public void setSeed(long seed) {
+        randomGenerator = RandomGeneratorFactory.of(DEFAULT_RANDOM_ALGORITHM).create(seed);
+    }
+
+    /**
+     * Splits a statistically independent generator off this database's
+     * generator, e.g. to give each parallel worker or copy of the network its own
+     * stream while staying reproducible from one seed.
+     *
+     * @return the new generator.
+     * @throws IllegalStateException if the current generator cannot be split.
+     */
+    public RandomGenerator splitRandomGenerator() {
+        if (!(getRandomGenerator() instanceof RandomGenerator.SplittableGenerator splittableGenerator))
+            throw new IllegalStateException("Random generator " + randomGenerator + " is not splittable");
+        return splittableGenerator.split();
+    }
+
+    /**
+     * Gets the number of incoming connections every activation neuron has.
+     *
+     * @return the number of incoming connections.
+     */
+    public int getIncomingConnections() {
+        return incomingConnections;
     }
 
     /**
@@ -41,6 +351,8 @@ public class NeuronDatabase implements Serializable {
      * @return the neuron matrix.
      */
     public Neuron[][] getNeurons() {
+        for (int a = 0; a < neurons.length; a++)
+            getNeuronLayer(a);
         return neurons;
     }
 
@@ -60,7 +372,210 @@ public class NeuronDatabase implements Serializable {
      * @return the neuron layer at that index.
      */
     public Neuron[] getNeuronLayer(int neuronLayerIndex) {
-        return neurons[neuronLayerIndex];
+        Neuron[] layer = (Neuron[]) LAYERS.getAcquire(neurons, neuronLayerIndex);
+        if (layer == null)
+            layer = createLayer(neuronLayerIndex);
+        return layer;
+    }
+
+    /**
+     * Creates the views of a layer of a storage-backed database, unless another
+     * thread already did.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @return the layer.
+     */
+    private synchronized Neuron[] createLayer(int neuronLayerIndex) {
+        Neuron[] layer = neurons[neuronLayerIndex];
+        if (layer != null)
+            return layer;
+        layer = new Neuron[networkStorage.getLayerLength(neuronLayerIndex)];
+        for (int b = 0; b < layer.length; b++)
+            layer[b] = createNeuron(neuronLayerIndex, b, incomingConnections);
+        LAYERS.setRelease(neurons, neuronLayerIndex, layer);
+        return layer;
+    }
+
+    /**
+     * Gets the number of neurons in a layer without creating any views.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @return the number of neurons in that layer.
+     */
+    public int getLayerLength(int neuronLayerIndex) {
+        if (networkStorage != null)
+            return networkStorage.getLayerLength(neuronLayerIndex);
+        return neurons[neuronLayerIndex].length;
+    }
+
+    /**
+     * Appends neurons to a layer in place. Every existing neuron keeps its
+     * weights, incoming neuron indexes and stake; the new neurons start like
+     * the neurons of a new database. Packed and mapped storage grow with
+     * capacity doubling, so growing costs amortized time proportional to the new
+     * neurons. Must not be called while the database is evaluated or mutated.
+     *
+     * @param neuronLayerIndex  is the index of the layer.
+     * @param additionalNeurons is the number of neurons to add.
+     * @throws IllegalArgumentException      if the number of neurons is
+     *                                       negative.
+     * @throws UncheckedIOException          if the file holding the storage
+     *                                       can't be extended.
+     */
+    public synchronized void growLayer(int neuronLayerIndex, int additionalNeurons) {
+        if (additionalNeurons < 0)
+            throw new IllegalArgumentException("Layers can't shrink: " + additionalNeurons);
+        ExpansionEvent event = new ExpansionEvent();
+        event.begin();
+        int oldLength = getLayerLength(neuronLayerIndex);
+        if (networkStorage != null)
+            networkStorage.growLayer(neuronLayerIndex, additionalNeurons);
+        Neuron[] layer = neurons[neuronLayerIndex];
+        if (layer != null) { // Views of storage-backed layers are created on first use.
+            layer = Arrays.copyOf(layer, oldLength + additionalNeurons);
+            for (int b = oldLength; b < layer.length; b++)
+                layer[b] = createNeuron(neuronLayerIndex, b, incomingConnections);
+            LAYERS.setRelease(neurons, neuronLayerIndex, layer);
+        }
+        resizeHelpers();
+        fireLayerResized(neuronLayerIndex, oldLength);
+        if (event.shouldCommit()) {
+            event.layerIndex = neuronLayerIndex;
+            event.oldLayerLength = oldLength;
+            event.newLayerLength = oldLength + additionalNeurons;
+            event.oldNumberOfLayers = neurons.length;
+            event.newNumberOfLayers = neurons.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Appends a layer after the last layer in place, fed by the previous last
+     * layer. The new layer becomes the output layer.
+     *
+     * @param layerLength is the number of neurons of the new layer.
+     * @throws IllegalArgumentException      if the number of neurons is
+     *                                       negative.
+     * @throws UncheckedIOException          if the file holding the storage
+     *                                       can't be extended.
+     */
+    public synchronized void addLayer(int layerLength) {
+        if (layerLength < 0)
+            throw new IllegalArgumentException("Negative layer length: " + layerLength);
+        ExpansionEvent event = new ExpansionEvent();
+        event.begin();
+        int neuronLayerIndex = neurons.length;
+        if (networkStorage != null)
+            networkStorage.addLayer(layerLength);
+        neurons = Arrays.copyOf(neurons, neuronLayerIndex + 1);
+        if (networkStorage == null) {
+            neurons[neuronLayerIndex] = new Neuron[layerLength];
+            for (int b = 0; b < layerLength; b++)
+                neurons[neuronLayerIndex][b] = createNeuron(neuronLayerIndex, b, incomingConnections);
+        }
+        resizeHelpers();
+        fireLayerResized(neuronLayerIndex, 0);
+        if (event.shouldCommit()) {
+            event.layerIndex = neuronLayerIndex;
+            event.newLayerLength = layerLength;
+            event.oldNumberOfLayers = neuronLayerIndex;
+            event.newNumberOfLayers = neuronLayerIndex + 1;
+            event.commit();
+        }
+    }
+
+    /**
+     * Lets the helpers created so far make room for grown layers.
+     */
+    private void resizeHelpers() {
+        if (stakePropagator != null)
+            stakePropagator.ensureCapacity();
+        if (punishmentScheduler != null)
+            punishmentScheduler.ensureCapacity();
+    }
+
+    /**
+     * Adds a listener notified of every mutation of this database. Listeners
+     * are not copied with the database.
+     *
+     * @param mutationListener is the listener to add.
+     */
+    public synchronized void addMutationListener(@NotNull MutationListener mutationListener) {
+        MutationListener[] listeners = mutationListeners == null ? new MutationListener[0] : mutationListeners;
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = mutationListener;
+        mutationListeners = listeners;
+    }
+
+    /**
+     * Removes a listener added with {@link #addMutationListener}.
+     *
+     * @param mutationListener is the listener to remove.
+     */
+    public synchronized void removeMutationListener(@NotNull MutationListener mutationListener) {
+        MutationListener[] listeners = mutationListeners;
+        if (listeners == null)
+            return;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == mutationListener) {
+                MutationListener[] remaining = new MutationListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, remaining, 0, i);
+                System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                mutationListeners = remaining.length == 0 ? null : remaining;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notifies every listener that an incoming connection was rewired.
+     *
+     * @param neuronLayerIndex       is the index of the layer of the neuron.
+     * @param neuronIndex            is the index of the neuron in that layer.
+     * @param slot                   is the index of the incoming connection.
+     * @param oldIncomingNeuronIndex is the index of the previous incoming neuron.
+     * @param newIncomingNeuronIndex is the index of the new incoming neuron.
+     */
+    void fireIncomingNeuronChanged(int neuronLayerIndex, int neuronIndex, int slot, int oldIncomingNeuronIndex,
+                                   int newIncomingNeuronIndex) {
+        modificationCount++;
+        MutationListener[] listeners = mutationListeners;
+        if (listeners == null)
+            return;
+        for (MutationListener listener : listeners)
+            listener.incomingNeuronChanged(neuronLayerIndex, neuronIndex, slot, oldIncomingNeuronIndex,
+                newIncomingNeuronIndex);
+    }
+
+    /**
+     * Notifies every listener that a weight was flipped.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @param slot             is the index of the incoming connection.
+     */
+    void fireWeightFlipped(int neuronLayerIndex, int neuronIndex, int slot) {
+        modificationCount++;
+        MutationListener[] listeners = mutationListeners;
+        if (listeners == null)
+            return;
+        for (MutationListener listener : listeners)
+            listener.weightFlipped(neuronLayerIndex, neuronIndex, slot);
+    }
+
+    /**
+     * Notifies every listener that a layer was resized.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @param oldLength        is the number of neurons the layer had before.
+     */
+    private void fireLayerResized(int neuronLayerIndex, int oldLength) {
+        modificationCount++;
+        MutationListener[] listeners = mutationListeners;
+        if (listeners == null)
+            return;
+        for (MutationListener listener : listeners)
+            listener.layerResized(neuronLayerIndex, oldLength);
     }
 
     /**
@@ -71,6 +586,102 @@ public class NeuronDatabase implements Serializable {
      * @return the neuron specified.
      */
     public Neuron getNeuron(int neuronLayerIndex, int neuronIndex) {
-        return neurons[neuronLayerIndex][neuronIndex];
+        return getNeuronLayer(neuronLayerIndex)[neuronIndex];
+    }
+
+    /**
+     * Evaluates every neuron of a layer from the previous layer. Stakes are left
+     * untouched. Packed databases evaluate 64 neurons per word at a time. If an
+     * evaluation pool is set, large layers are split across it.
+     *
+     * @param neuronLayerIndex is the index of the layer (must not be the data
+     *                         layer).
+     */
+    public void evaluateLayer(int neuronLayerIndex) {
+        long start = TrainingMetrics.start();
+        LayerEvaluationEvent event = new LayerEvaluationEvent();
+        event.begin();
+        if (evaluationPool != null) {
+            LayerEvaluationTask.evaluateLayer(this, evaluationPool, neuronLayerIndex);
+        } else if (networkStorage != null) {
+            networkStorage.evaluateLayer(neuronLayerIndex, null);
+        } else {
+            for (Neuron neuron : neurons[neuronLayerIndex])
+                ((ActivationNeuron) neuron).evaluate(false);
+        }
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordLayerEvaluation(start);
+        if (event.shouldCommit()) {
+            event.layerIndex = neuronLayerIndex;
+            event.neuronsEvaluated = getLayerLength(neuronLayerIndex);
+            event.packed = networkStorage != null;
+            event.parallel = evaluationPool != null;
+            event.samples = 1;
+            event.commit();
+        }
+    }
+
+    /**
+     * Sets the pool layers are evaluated on. Every layer still waits for the
+     * previous one to finish, and layers too small to be worth splitting are
+     * evaluated on the calling thread.
+     *
+     * @param evaluationPool is the pool to evaluate on, or null to evaluate on
+     *                       the calling thread.
+     */
+    public void setEvaluationPool(@Nullable ForkJoinPool evaluationPool) {
+        this.evaluationPool = evaluationPool;
+    }
+
+    /**
+     * Gets the pool layers are evaluated on.
+     *
+     * @return the pool, or null if layers are evaluated on the calling thread.
+     */
+    public ForkJoinPool getEvaluationPool() {
+        return evaluationPool;
+    }
+
+    /**
+     * Runs a forward pass: loads the input bits into the data layer and then
+     * evaluates every following layer in order.
+     *
+     * @param inputBits are the bits to load into the data layer; missing bits are
+     *                  treated as false.
+     */
+    public void computeActivations(boolean @NotNull [] inputBits) {
+        long start = TrainingMetrics.start();
+        if (networkStorage != null) {
+            int dataLength = networkStorage.getLayerLength(0);
+            for (int w = 0; w < networkStorage.getActivationWordCount(0); w++) {
+                long word = 0;
+                for (int i = w << 6; i < Math.min(dataLength, (w + 1) << 6); i++)
+                    if (i < inputBits.length && inputBits[i])
+                        word |= 1L << i;
+                networkStorage.setActivationWord(0, w, word);
+            }
+        } else {
+            Neuron[] dataLayer = neurons[0];
+            for (int i = 0; i < dataLayer.length; i++)
+                dataLayer[i].computeActivation(i < inputBits.length && inputBits[i]);
+        }
+        for (int a = 1; a < neurons.length; a++)
+            evaluateLayer(a);
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordForwardPass(start);
+    }
+
+    /**
+     * Gets the activations of a layer.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     * @return the activation of every neuron in that layer.
+     */
+    public boolean[] getActivations(int neuronLayerIndex) {
+        boolean[] activations = new boolean[getLayerLength(neuronLayerIndex)];
+        for (int i = 0; i < activations.length; i++)
+            activations[i] = networkStorage != null ? networkStorage.isActivated(neuronLayerIndex, i)
+                : neurons[neuronLayerIndex][i].isActivated();
+        return activations;
     }
 }
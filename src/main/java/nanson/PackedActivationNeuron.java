@@ -0,0 +1,190 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Lightweight view of an activation neuron whose state lives in a
+ * {@link NetworkStorage}. Behaves exactly like {@link ActivationNeuron}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class PackedActivationNeuron implements Neuron {
+    /**
+     * Reference to the containing neuron database.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * The storage holding this neuron's state.
+     */
+    private final NetworkStorage network;
+
+    /**
+     * The index of the layer this neuron belongs to.
+     */
+    private final int neuronLayerIndex;
+
+    /**
+     * The index of this neuron within its layer.
+     */
+    private final int neuronIndex;
+
+    /**
+     * Constructs a PackedActivationNeuron.
+     *
+     * @param neuronDatabase   is the database this neuron resides in (should only
+     *                         be constructed via database).
+     * @param network          is the storage holding this neuron's state.
+     * @param neuronLayerIndex is the index of the neuron layer this neuron resides
+     *                         in.
+     * @param neuronIndex      is the index of the neuron of the neuron layer this
+     *                         neuron resides in.
+     */
+    public PackedActivationNeuron(@NotNull NeuronDatabase neuronDatabase, @NotNull NetworkStorage network,
+                                  int neuronLayerIndex, int neuronIndex) {
+        this.neuronDatabase = neuronDatabase;
+        this.network = network;
+        this.neuronLayerIndex = neuronLayerIndex;
+        this.neuronIndex = neuronIndex;
+    }
+
+    @Override
+    public void changeOneThing() {
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.countMutation();
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        int changeType = neuronDatabase.getRandomGenerator().nextInt(3);
+        switch (changeType) {
+            case 0:
+                changeRandomIncomingNeuron();
+                break;
+            case 1:
+                flipRandomWeight();
+                break;
+            case 2:
+                changeNextNeuronIndex();
+                break;
+        }
+        if (event.shouldCommit()) {
+            event.layerIndex = neuronLayerIndex;
+            event.neuronIndex = neuronIndex;
+            event.kind = MutationEvent.kindOf(changeType);
+            event.commit();
+        }
+    }
+
+    /**
+     * Picks a random incoming connection and replaces it with a random neuron
+     * index from the previous neuron layer.
+     */
+    private void changeRandomIncomingNeuron() {
+        RandomGenerator random = neuronDatabase.getRandomGenerator();
+        int randomIndex = random.nextInt(network.getIncomingConnections());
+        int newIncomingNeuronIndex = random.nextInt(network.getLayerLength(neuronLayerIndex - 1));
+        int oldIncomingNeuronIndex = network.getIncomingNeuronIndex(neuronLayerIndex, neuronIndex, randomIndex);
+        network.setIncomingNeuronIndex(neuronLayerIndex, neuronIndex, randomIndex, newIncomingNeuronIndex);
+        if (oldIncomingNeuronIndex != newIncomingNeuronIndex)
+            neuronDatabase.fireIncomingNeuronChanged(neuronLayerIndex, neuronIndex, randomIndex,
+                oldIncomingNeuronIndex, newIncomingNeuronIndex);
+    }
+
+    /**
+     * Flips a single random weight (true -> false, false -> true).
+     */
+    private void flipRandomWeight() {
+        if (network.getIncomingConnections() > 0) {
+            int randIndex = neuronDatabase.getRandomGenerator().nextInt(network.getIncomingConnections());
+            network.flipWeight(neuronLayerIndex, neuronIndex, randIndex);
+            neuronDatabase.fireWeightFlipped(neuronLayerIndex, neuronIndex, randIndex);
+        }
+    }
+
+    /**
+     * Changes the next neuron index to a different random index within the
+     * range of available incoming neurons.
+     */
+    private void changeNextNeuronIndex() {
+        int temp = network.getNextNeuronIndex(neuronLayerIndex, neuronIndex);
+        int nextNeuronIndex;
+        do {
+            nextNeuronIndex = neuronDatabase.getRandomGenerator().nextInt(network.getIncomingConnections());
+        } while (nextNeuronIndex == temp);
+        network.setNextNeuronIndex(neuronLayerIndex, neuronIndex, nextNeuronIndex);
+    }
+
+    @Override
+    public Neuron[] getPotentialInputNeurons() {
+        return neuronDatabase.getNeuronLayer(neuronLayerIndex - 1);
+    }
+
+    @Override
+    public Neuron[] getIncomingNeurons() {
+        Neuron[] previousNeuronLayer = getPotentialInputNeurons();
+        Neuron[] neurons = new Neuron[network.getIncomingConnections()];
+        for (int i = 0; i < neurons.length; i++)
+            neurons[i] = previousNeuronLayer[network.getIncomingNeuronIndex(neuronLayerIndex, neuronIndex, i)];
+        return neurons;
+    }
+
+    @Override
+    public Neuron getNextNeuron() {
+        int nextNeuronIndex = network.getNextNeuronIndex(neuronLayerIndex, neuronIndex);
+        if (nextNeuronIndex >= network.getIncomingConnections()) {
+            nextNeuronIndex = 0;
+        }
+        network.setNextNeuronIndex(neuronLayerIndex, neuronIndex, nextNeuronIndex + 1);
+        return getPotentialInputNeurons()[nextNeuronIndex];
+    }
+
+    @Override
+    public void computeActivation(boolean bit) {
+        updateStake();
+        network.setActivated(neuronLayerIndex, neuronIndex,
+            network.evaluateNeuron(neuronLayerIndex, neuronIndex, bit));
+    }
+
+    @Override
+    public boolean isActivated() {
+        return network.isActivated(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public int getStake() {
+        return network.getStake(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public void updateStake() {
+        neuronDatabase.getStakePropagator().updateStake(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public void clearStake() {
+        network.clearStake(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public boolean isDataNeuron() {
+        return false;
+    }
+
+    @Override
+    public int getNeuronLayerIndex() {
+        return neuronLayerIndex;
+    }
+
+    @Override
+    public int getNeuronIndex() {
+        return neuronIndex;
+    }
+
+    @Override
+    public void punishByDepth(int denominatorOfProbability) {
+        neuronDatabase.getPunishmentScheduler().punishByDepth(neuronLayerIndex, neuronIndex,
+            denominatorOfProbability);
+    }
+}
@@ -0,0 +1,108 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Lightweight view of a data neuron whose activation lives in a
+ * {@link NetworkStorage}. Behaves exactly like {@link DataNeuron}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class PackedDataNeuron implements Neuron {
+    /**
+     * The storage holding this neuron's activation.
+     */
+    private final NetworkStorage network;
+
+    /**
+     * Index of the layer this data neuron belongs to.
+     */
+    private final int neuronLayerIndex;
+
+    /**
+     * Index of this neuron inside its layer.
+     */
+    private final int neuronIndex;
+
+    /**
+     * Constructs a PackedDataNeuron.
+     *
+     * @param network          is the storage holding this neuron's
+     *                         activation.
+     * @param neuronLayerIndex is the index of the neuron layer this neuron resides
+     *                         in.
+     * @param neuronIndex      is the index of the neuron in the neuron layer that
+     *                         this neuron resides in.
+     */
+    public PackedDataNeuron(@NotNull NetworkStorage network, int neuronLayerIndex, int neuronIndex) {
+        this.network = network;
+        this.neuronLayerIndex = neuronLayerIndex;
+        this.neuronIndex = neuronIndex;
+    }
+
+    @Override
+    public void changeOneThing() {
+        // DataNeuron doesn't mutate - it's controlled externally
+    }
+
+    @Override
+    public void computeActivation(boolean bit) {
+        network.setActivated(neuronLayerIndex, neuronIndex, bit);
+    }
+
+    @Override
+    public boolean isActivated() {
+        return network.isActivated(neuronLayerIndex, neuronIndex);
+    }
+
+    @Override
+    public int getStake() {
+        return 0; // DataNeuron doesn't have stake
+    }
+
+    @Override
+    public void updateStake() {
+        // DataNeuron doesn't have stake
+    }
+
+    @Override
+    public void clearStake() {
+        // DataNeuron doesn't have stake
+    }
+
+    @Override
+    public Neuron[] getPotentialInputNeurons() {
+        return new Neuron[0]; // DataNeuron doesn't have incoming neurons
+    }
+
+    @Override
+    public Neuron[] getIncomingNeurons() {
+        return new Neuron[0];
+    }
+
+    @Override
+    public boolean isDataNeuron() {
+        return true;
+    }
+
+    @Override
+    public int getNeuronLayerIndex() {
+        return neuronLayerIndex;
+    }
+
+    @Override
+    public int getNeuronIndex() {
+        return neuronIndex;
+    }
+
+    @Override
+    public Neuron getNextNeuron() {
+        return null;
+    }
+
+    @Override
+    public void punishByDepth(int denominatorOfProbability) {
+        // DataNeuron can't be punished nor has incoming neurons to punish.
+    }
+}
@@ -0,0 +1,410 @@
+package nanson;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for a whole network, on the heap. Every layer
+ * keeps its activations as a {@code long[]} bitset, its incoming connections as
+ * one contiguous {@code int[]} table and its weights as one {@code long[]}
+ * bitset, so no per-neuron objects are needed to hold state.
+ * <p>
+ * Connections of neuron {@code n} occupy
+ * {@code connections[n * incomingConnections .. (n + 1) * incomingConnections)}
+ * and its weights occupy {@code weightWordsPerNeuron} words starting at
+ * {@code n * weightWordsPerNeuron}, so the weight mask of a neuron always starts
+ * on a word boundary.
+ * <p>
+ * Layers can grow in place. The arrays of a layer double their capacity
+ * whenever they run out of room, so they may be longer than the layer needs and
+ * growing by one neuron at a time costs amortized constant time per neuron.
+ * <p>
+ * Layers are evaluated by the {@link LayerKernel} returned by
+ * {@link #getKernel()}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class PackedNetwork implements NetworkStorage {
+    /**
+     * Kernel evaluating ranges of layers, chosen once per process.
+     */
+    private static final LayerKernel KERNEL = LayerKernel.select();
+
+    /**
+     * Number of incoming connections every activation neuron has.
+     */
+    private final int incomingConnections;
+
+    /**
+     * Number of {@code long} words used to hold the weights of one neuron.
+     */
+    private final int weightWordsPerNeuron;
+
+    /**
+     * Number of neurons in each layer.
+     */
+    private int[] layerLengths;
+
+    /**
+     * Activation bitsets: activations[layerIndex][neuronIndex >>> 6].
+     */
+    private long[][] activations;
+
+    /**
+     * Incoming neuron indexes of every neuron in a layer, neuron-major.
+     */
+    private int[][] connections;
+
+    /**
+     * Weight bitsets of every neuron in a layer, neuron-major.
+     */
+    private long[][] weights;
+
+    /**
+     * Stake of every neuron in a layer.
+     */
+    private int[][] stakes;
+
+    /**
+     * Next neuron index of every neuron in a layer.
+     */
+    private int[][] nextNeuronIndexes;
+
+    /**
+     * Constructs a packed network with every activation, weight and connection
+     * cleared.
+     *
+     * @param incomingConnections are the number of connections each neuron should
+     *                            have.
+     * @param layerLength         are the lengths of the neuron layers with the
+     *                            number of arguments being the number of layers.
+     */
+    public PackedNetwork(int incomingConnections, int... layerLength) {
+        this.incomingConnections = incomingConnections;
+        this.weightWordsPerNeuron = wordsFor(incomingConnections);
+        this.layerLengths = layerLength.clone();
+        activations = new long[layerLength.length][];
+        connections = new int[layerLength.length][];
+        weights = new long[layerLength.length][];
+        stakes = new int[layerLength.length][];
+        nextNeuronIndexes = new int[layerLength.length][];
+        for (int a = 0; a < layerLength.length; a++) {
+            activations[a] = new long[wordsFor(layerLength[a])];
+            if (a == 0) {
+                // The data layer has no incoming connections.
+                connections[a] = new int[0];
+                weights[a] = new long[0];
+                stakes[a] = new int[0];
+                nextNeuronIndexes[a] = new int[0];
+            } else {
+                connections[a] = new int[layerLength[a] * incomingConnections];
+                weights[a] = new long[layerLength[a] * weightWordsPerNeuron];
+                stakes[a] = new int[layerLength[a]];
+                nextNeuronIndexes[a] = new int[layerLength[a]];
+            }
+        }
+    }
+
+    /**
+     * Constructs a deep copy of a network storage on the heap.
+     *
+     * @param network is the storage to copy.
+     */
+    public PackedNetwork(NetworkStorage network) {
+        this(network.getIncomingConnections(), layerLengthsOf(network));
+        if (network instanceof PackedNetwork packedNetwork) {
+            for (int a = 0; a < layerLengths.length; a++) {
+                activations[a] = packedNetwork.activations[a].clone();
+                connections[a] = packedNetwork.connections[a].clone();
+                weights[a] = packedNetwork.weights[a].clone();
+                stakes[a] = packedNetwork.stakes[a].clone();
+                nextNeuronIndexes[a] = packedNetwork.nextNeuronIndexes[a].clone();
+            }
+            return;
+        }
+        for (int a = 0; a < layerLengths.length; a++) {
+            for (int w = 0; w < getActivationWordCount(a); w++)
+                activations[a][w] = network.getActivationWord(a, w);
+            if (a == 0)
+                continue;
+            for (int b = 0; b < layerLengths[a]; b++) {
+                for (int k = 0; k < incomingConnections; k++) {
+                    setIncomingNeuronIndex(a, b, k, network.getIncomingNeuronIndex(a, b, k));
+                    if (network.getWeight(a, b, k))
+                        flipWeight(a, b, k);
+                }
+                stakes[a][b] = network.getStake(a, b);
+                nextNeuronIndexes[a][b] = network.getNextNeuronIndex(a, b);
+            }
+        }
+    }
+
+    /**
+     * Gets the length of every layer of a network storage.
+     *
+     * @param network is the storage.
+     * @return the layer lengths.
+     */
+    private static int[] layerLengthsOf(NetworkStorage network) {
+        int[] layerLengths = new int[network.getNumberOfLayers()];
+        for (int a = 0; a < layerLengths.length; a++)
+            layerLengths[a] = network.getLayerLength(a);
+        return layerLengths;
+    }
+
+    /**
+     * Gets the number of {@code long} words needed to hold the given number of
+     * bits.
+     *
+     * @param bits is the number of bits.
+     * @return the number of words.
+     */
+    public static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    @Override
+    public int getNumberOfLayers() {
+        return layerLengths.length;
+    }
+
+    @Override
+    public int getLayerLength(int layerIndex) {
+        return layerLengths[layerIndex];
+    }
+
+    @Override
+    public int getIncomingConnections() {
+        return incomingConnections;
+    }
+
+    /**
+     * Gets the kernel every packed network evaluates its layers with.
+     *
+     * @return the kernel chosen for this process.
+     */
+    public static LayerKernel getKernel() {
+        return KERNEL;
+    }
+
+    /**
+     * Gets the number of weight words used by one neuron.
+     *
+     * @return the number of weight words per neuron.
+     */
+    public int getWeightWordsPerNeuron() {
+        return weightWordsPerNeuron;
+    }
+
+    /**
+     * Gets the raw activation bitset of a layer. Writes to the array are visible
+     * to the network until the layer grows. The array may be longer than
+     * {@link #getActivationWordCount(int)}.
+     *
+     * @param layerIndex is the index of the layer.
+     * @return the activation words of that layer.
+     */
+    public long[] getActivationWords(int layerIndex) {
+        return activations[layerIndex];
+    }
+
+    @Override
+    public int getActivationWordCount(int layerIndex) {
+        return wordsFor(layerLengths[layerIndex]);
+    }
+
+    @Override
+    public long getActivationWord(int layerIndex, int wordIndex) {
+        return activations[layerIndex][wordIndex];
+    }
+
+    @Override
+    public void setActivationWord(int layerIndex, int wordIndex, long word) {
+        activations[layerIndex][wordIndex] = word;
+    }
+
+    /**
+     * Gets the raw connection table of a layer. Writes to the array are visible
+     * to the network until the layer grows. The array may be longer than the
+     * layer needs.
+     *
+     * @param layerIndex is the index of the layer.
+     * @return the connection table of that layer.
+     */
+    public int[] getConnectionTable(int layerIndex) {
+        return connections[layerIndex];
+    }
+
+    /**
+     * Gets the raw weight bitset of a layer. Writes to the array are visible to
+     * the network until the layer grows. The array may be longer than the layer
+     * needs.
+     *
+     * @param layerIndex is the index of the layer.
+     * @return the weight words of that layer.
+     */
+    public long[] getWeightWords(int layerIndex) {
+        return weights[layerIndex];
+    }
+
+    @Override
+    public void growLayer(int layerIndex, int additionalNeurons) {
+        int length = layerLengths[layerIndex] + additionalNeurons;
+        activations[layerIndex] = ensureCapacity(activations[layerIndex], wordsFor(length));
+        if (layerIndex != 0) {
+            connections[layerIndex] = ensureCapacity(connections[layerIndex], length * incomingConnections);
+            weights[layerIndex] = ensureCapacity(weights[layerIndex], length * weightWordsPerNeuron);
+            stakes[layerIndex] = ensureCapacity(stakes[layerIndex], length);
+            nextNeuronIndexes[layerIndex] = ensureCapacity(nextNeuronIndexes[layerIndex], length);
+        }
+        layerLengths[layerIndex] = length;
+    }
+
+    @Override
+    public void addLayer(int layerLength) {
+        int layerIndex = layerLengths.length;
+        layerLengths = Arrays.copyOf(layerLengths, layerIndex + 1);
+        activations = Arrays.copyOf(activations, layerIndex + 1);
+        connections = Arrays.copyOf(connections, layerIndex + 1);
+        weights = Arrays.copyOf(weights, layerIndex + 1);
+        stakes = Arrays.copyOf(stakes, layerIndex + 1);
+        nextNeuronIndexes = Arrays.copyOf(nextNeuronIndexes, layerIndex + 1);
+        layerLengths[layerIndex] = layerLength;
+        activations[layerIndex] = new long[wordsFor(layerLength)];
+        connections[layerIndex] = new int[layerLength * incomingConnections];
+        weights[layerIndex] = new long[layerLength * weightWordsPerNeuron];
+        stakes[layerIndex] = new int[layerLength];
+        nextNeuronIndexes[layerIndex] = new int[layerLength];
+    }
+
+    /**
+     * Grows an array to hold at least the given number of elements, at least
+     * doubling its capacity. New elements are zero.
+     *
+     * @param array    is the array.
+     * @param required is the number of elements needed.
+     * @return the array itself if it is large enough, a larger copy otherwise.
+     */
+    static long[] ensureCapacity(long[] array, int required) {
+        if (array.length >= required)
+            return array;
+        return Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+
+    /**
+     * Grows an array to hold at least the given number of elements, at least
+     * doubling its capacity. New elements are zero.
+     *
+     * @param array    is the array.
+     * @param required is the number of elements needed.
+     * @return the array itself if it is large enough, a larger copy otherwise.
+     */
+    static int[] ensureCapacity(int[] array, int required) {
+        if (array.length >= required)
+            return array;
+        return Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+
+    @Override
+    public boolean isActivated(int layerIndex, int neuronIndex) {
+        return (activations[layerIndex][neuronIndex >>> 6] & (1L << neuronIndex)) != 0;
+    }
+
+    @Override
+    public void setActivated(int layerIndex, int neuronIndex, boolean activated) {
+        if (activated)
+            activations[layerIndex][neuronIndex >>> 6] |= 1L << neuronIndex;
+        else
+            activations[layerIndex][neuronIndex >>> 6] &= ~(1L << neuronIndex);
+    }
+
+    @Override
+    public int getIncomingNeuronIndex(int layerIndex, int neuronIndex, int slot) {
+        return connections[layerIndex][neuronIndex * incomingConnections + slot];
+    }
+
+    @Override
+    public void setIncomingNeuronIndex(int layerIndex, int neuronIndex, int slot, int incomingNeuronIndex) {
+        connections[layerIndex][neuronIndex * incomingConnections + slot] = incomingNeuronIndex;
+    }
+
+    @Override
+    public boolean getWeight(int layerIndex, int neuronIndex, int slot) {
+        return (weights[layerIndex][neuronIndex * weightWordsPerNeuron + (slot >>> 6)] & (1L << slot)) != 0;
+    }
+
+    @Override
+    public void flipWeight(int layerIndex, int neuronIndex, int slot) {
+        weights[layerIndex][neuronIndex * weightWordsPerNeuron + (slot >>> 6)] ^= 1L << slot;
+    }
+
+    @Override
+    public int getNextNeuronIndex(int layerIndex, int neuronIndex) {
+        return nextNeuronIndexes[layerIndex][neuronIndex];
+    }
+
+    @Override
+    public void setNextNeuronIndex(int layerIndex, int neuronIndex, int nextNeuronIndex) {
+        nextNeuronIndexes[layerIndex][neuronIndex] = nextNeuronIndex;
+    }
+
+    @Override
+    public int getStake(int layerIndex, int neuronIndex) {
+        return stakes[layerIndex][neuronIndex];
+    }
+
+    @Override
+    public void addStake(int layerIndex, int neuronIndex, int amount) {
+        stakes[layerIndex][neuronIndex] += amount;
+    }
+
+    @Override
+    public void clearStake(int layerIndex, int neuronIndex) {
+        stakes[layerIndex][neuronIndex] = 0;
+    }
+
+    @Override
+    public boolean evaluateNeuron(int layerIndex, int neuronIndex, boolean addOne) {
+        if (incomingConnections == 0)
+            return false;
+        int activationSum = (addOne ? 1 : 0) + ScalarLayerKernel.maskedPopCount(activations[layerIndex - 1],
+            connections[layerIndex], weights[layerIndex], incomingConnections, weightWordsPerNeuron, neuronIndex);
+        return activationSum >= incomingConnections / 2;
+    }
+
+    @Override
+    public void evaluateWords(int layerIndex, long[] biasWords, int fromWord, int toWord) {
+        KERNEL.evaluateWords(this, layerIndex, biasWords, fromWord, toWord);
+    }
+
+    /**
+     * Prepares the previous layer of a layer for the kernel, once for every range
+     * of the layer evaluated with
+     * {@link #evaluateWords(int, long[], int[], int, int)}.
+     *
+     * @param layerIndex is the index of the layer (must not be the data layer).
+     * @return the prepared inputs, valid until the previous layer changes; null
+     * if the kernel needs none.
+     */
+    public int[] prepareInputs(int layerIndex) {
+        return KERNEL.prepareInputs(this, layerIndex);
+    }
+
+    /**
+     * Evaluates a range of a layer from inputs prepared by
+     * {@link #prepareInputs(int)}; otherwise like
+     * {@link #evaluateWords(int, long[], int, int)}.
+     *
+     * @param layerIndex     is the index of the layer (must not be the data
+     *                       layer).
+     * @param biasWords      is a bitset of the neurons that get one added to
+     *                       their activation sum, or null for no bias.
+     * @param preparedInputs are the prepared inputs. The array is not copied.
+     * @param fromWord       is the first activation word to evaluate
+     *                       (inclusive).
+     * @param toWord         is the last activation word to evaluate (exclusive).
+     */
+    public void evaluateWords(int layerIndex, long[] biasWords, int[] preparedInputs, int fromWord, int toWord) {
+        KERNEL.evaluateWords(this, layerIndex, biasWords, preparedInputs, fromWord, toWord);
+    }
+}
@@ -0,0 +1,328 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.random.RandomGenerator;
+
+/**
+ * Hill climbs a network with a population of mutated copies evaluated
+ * concurrently. Every generation copies the best network so far once per
+ * candidate, mutates each copy, scores all of them on the alphabet task and
+ * keeps the best candidate if it is at least as good as the current best.
+ * Copying, mutating and scoring all run on the executor.
+ * <p>
+ * Each candidate gets its own generator split off the best network's generator
+ * before any work is submitted, so a seeded run picks the same candidates no
+ * matter how the threads are scheduled.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class PopulationTrainer implements AutoCloseable {
+    /**
+     * Default number of mutations applied to each candidate.
+     */
+    public static final int DEFAULT_MUTATIONS_PER_CANDIDATE = 1;
+
+    /**
+     * Task the candidates are scored on.
+     */
+    private final AlphabetTask task;
+
+    /**
+     * Number of candidates per generation.
+     */
+    private final int populationSize;
+
+    /**
+     * Number of mutations applied to each candidate.
+     */
+    private final int mutationsPerCandidate;
+
+    /**
+     * Indexes of the activation layers that have at least one neuron, the
+     * layers mutations are applied to.
+     */
+    private final int[] mutableLayers;
+
+    /**
+     * Executor the candidates are evaluated on.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Whether the executor was created by this trainer and must be shut down by
+     * it.
+     */
+    private final boolean ownsExecutor;
+
+    /**
+     * Best network found so far.
+     */
+    private NeuronDatabase best;
+
+    /**
+     * Network the best network is published to whenever it changes, or null.
+     */
+    private VersionedNetwork versionedNetwork;
+
+    /**
+     * Score of the best network found so far.
+     */
+    private int bestScore;
+
+    /**
+     * Number of generations run.
+     */
+    private long generations;
+
+    /**
+     * Number of candidates evaluated.
+     */
+    private long evaluations;
+
+    /**
+     * Wall-clock time spent running generations, in nanoseconds.
+     */
+    private long trainingNanos;
+
+    /**
+     * Constructs a PopulationTrainer that evaluates every candidate on its own
+     * virtual thread.
+     *
+     * @param neuronDatabase is the network to start from; its network is not
+     *                       modified, but splitting the trainer's generator off
+     *                       its generator advances that.
+     * @param task           is the task candidates are scored on.
+     * @param populationSize is the number of candidates per generation.
+     * @throws IllegalArgumentException if the population size is not positive
+     *                                  or the network has no activation neuron.
+     */
+    public PopulationTrainer(@NotNull NeuronDatabase neuronDatabase, @NotNull AlphabetTask task, int populationSize) {
+        this(neuronDatabase, task, populationSize, DEFAULT_MUTATIONS_PER_CANDIDATE,
+            Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * Constructs a PopulationTrainer that evaluates candidates on the given
+     * executor, e.g. a fixed pool with one thread per core.
+     *
+     * @param neuronDatabase        is the network to start from; its network is
+     *                              not modified, but splitting the trainer's
+     *                              generator off its generator advances that.
+     * @param task                  is the task candidates are scored on.
+     * @param populationSize        is the number of candidates per generation.
+     * @param mutationsPerCandidate is the number of mutations applied to each
+     *                              candidate.
+     * @param executor              is the executor to evaluate on; it is not shut
+     *                              down by the trainer.
+     * @throws IllegalArgumentException if the population size is not positive,
+     *                                  the number of mutations is negative or
+     *                                  the network has no activation neuron.
+     */
+    public PopulationTrainer(@NotNull NeuronDatabase neuronDatabase, @NotNull AlphabetTask task, int populationSize,
+                             int mutationsPerCandidate, @NotNull ExecutorService executor) {
+        this(neuronDatabase, task, populationSize, mutationsPerCandidate, executor, false);
+    }
+
+    /**
+     * Constructs a PopulationTrainer.
+     *
+     * @param neuronDatabase        is the network to start from.
+     * @param task                  is the task candidates are scored on.
+     * @param populationSize        is the number of candidates per generation.
+     * @param mutationsPerCandidate is the number of mutations applied to each
+     *                              candidate.
+     * @param executor              is the executor to evaluate on.
+     * @param ownsExecutor          is whether the trainer shuts the executor down.
+     */
+    private PopulationTrainer(NeuronDatabase neuronDatabase, AlphabetTask task, int populationSize,
+                              int mutationsPerCandidate, ExecutorService executor, boolean ownsExecutor) {
+        if (populationSize <= 0)
+            throw new IllegalArgumentException("Population size must be positive");
+        if (mutationsPerCandidate < 0)
+            throw new IllegalArgumentException("Mutations per candidate can't be negative");
+        int[] mutableLayers = new int[neuronDatabase.getNumberOfLayers()];
+        int numberOfMutableLayers = 0;
+        for (int a = 1; a < mutableLayers.length; a++)
+            if (neuronDatabase.getLayerLength(a) > 0)
+                mutableLayers[numberOfMutableLayers++] = a;
+        if (numberOfMutableLayers == 0)
+            throw new IllegalArgumentException("The network has no activation neuron to mutate");
+        this.mutableLayers = Arrays.copyOf(mutableLayers, numberOfMutableLayers);
+        this.task = task;
+        this.populationSize = populationSize;
+        this.mutationsPerCandidate = mutationsPerCandidate;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        best = neuronDatabase.copy();
+        best.setRandomGenerator(neuronDatabase.splitRandomGenerator());
+        bestScore = task.score(best);
+    }
+
+    /**
+     * Runs one generation.
+     *
+     * @return true if the best network changed.
+     * @throws InterruptedException if interrupted while waiting for candidates.
+     */
+    public boolean runGeneration() throws InterruptedException {
+        long start = System.nanoTime();
+        List<Callable<Candidate>> candidates = new ArrayList<>(populationSize);
+        NeuronDatabase parent = best;
+        for (int i = 0; i < populationSize; i++) {
+            // Generators are split here, in order; the copies are made on the workers.
+            RandomGenerator randomGenerator = parent.splitRandomGenerator();
+            candidates.add(() -> {
+                NeuronDatabase candidate = parent.copy();
+                candidate.setRandomGenerator(randomGenerator);
+                mutate(candidate);
+                return new Candidate(candidate, task.score(candidate));
+            });
+        }
+        List<Future<Candidate>> results = executor.invokeAll(candidates);
+        Candidate bestCandidate = null;
+        for (Future<Candidate> result : results) {
+            Candidate candidate = getCandidate(result);
+            if (bestCandidate == null || candidate.score() < bestCandidate.score())
+                bestCandidate = candidate;
+        }
+        generations++;
+        evaluations += populationSize;
+        trainingNanos += System.nanoTime() - start;
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordGeneration(start);
+        if (bestCandidate.score() > bestScore)
+            return false;
+        // Ties are accepted so the population can drift across plateaus.
+        NeuronDatabase winner = bestCandidate.network();
+        winner.setRandomGenerator(best.getRandomGenerator());
+        best = winner;
+        bestScore = bestCandidate.score();
+        if (versionedNetwork != null)
+            versionedNetwork.publish(winner); // Its plan was compiled while it was scored.
+        return true;
+    }
+
+    /**
+     * Applies the mutations of one candidate, each to a random neuron of a
+     * random non-empty activation layer.
+     *
+     * @param candidate is the candidate to mutate.
+     */
+    private void mutate(NeuronDatabase candidate) {
+        RandomGenerator random = candidate.getRandomGenerator();
+        for (int i = 0; i < mutationsPerCandidate; i++) {
+            Neuron[] layer = candidate.getNeuronLayer(mutableLayers[random.nextInt(mutableLayers.length)]);
+            layer[random.nextInt(layer.length)].changeOneThing();
+        }
+    }
+
+    /**
+     * Gets an evaluated candidate.
+     *
+     * @param candidate is the candidate's future.
+     * @return the candidate and its score.
+     */
+    private static Candidate getCandidate(Future<Candidate> candidate) {
+        try {
+            return candidate.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Candidate evaluation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the best network found so far.
+     *
+     * @return the best network.
+     */
+    public NeuronDatabase getBest() {
+        return best;
+    }
+
+    /**
+     * Publishes the best network to a versioned network whenever it changes, so
+     * readers can serve inference from it while training goes on. The trainer
+     * never mutates its best network, only copies of it; don't call
+     * {@link VersionedNetwork#update} on the same versioned network.
+     *
+     * @param versionedNetwork is the network to publish to, or null to stop
+     *                         publishing.
+     */
+    public void setVersionedNetwork(VersionedNetwork versionedNetwork) {
+        this.versionedNetwork = versionedNetwork;
+    }
+
+    /**
+     * Gets the score of the best network found so far.
+     *
+     * @return the best score; lower is better.
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Gets the number of generations run.
+     *
+     * @return the number of generations.
+     */
+    public long getGenerations() {
+        return generations;
+    }
+
+    /**
+     * Gets the number of candidates evaluated.
+     *
+     * @return the number of evaluations.
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Gets the number of candidates evaluated per second of training.
+     *
+     * @return the evaluations per second.
+     */
+    public double getEvaluationsPerSecond() {
+        return trainingNanos == 0 ? 0 : evaluations * 1e9 / trainingNanos;
+    }
+
+    /**
+     * Gets the number of candidates evaluated per second of training per
+     * available core.
+     *
+     * @return the evaluations per second per core.
+     */
+    public double getEvaluationsPerSecondPerCore() {
+        return getEvaluationsPerSecond() / Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor)
+            executor.close();
+    }
+
+    /**
+     * A mutated copy of the best network and its score.
+     *
+     * @param network is the mutated copy.
+     * @param score   is its score on the task.
+     */
+    private record Candidate(NeuronDatabase network, int score) {
+    }
+}
@@ -0,0 +1,43 @@
+package nanson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one punishment sweep of a
+ * {@link PunishmentScheduler}, timed from start to end.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+@Name("nanson.Punishment")
+@Label("Punishment Sweep")
+@Category({"Boolean AI", "Training"})
+@Description("Punishment of neurons and of the neurons feeding them, layer by layer")
+public class PunishmentEvent extends jdk.jfr.Event {
+    /**
+     * Index of the layer the sweep started at.
+     */
+    @Label("Root Layer Index")
+    int rootLayerIndex;
+
+    /**
+     * Number of neurons the sweep started from.
+     */
+    @Label("Punished Neurons")
+    int punishedNeurons;
+
+    /**
+     * Number of neurons the sweep visited.
+     */
+    @Label("Neurons Visited")
+    long neuronsVisited;
+
+    /**
+     * Number of mutations the sweep applied.
+     */
+    @Label("Mutations Applied")
+    long mutationsApplied;
+}
@@ -0,0 +1,221 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Punishes neurons by depth one layer at a time. Punishing a neuron with a
+ * denominator {@code d} mutates it with probability {@code 1 / d} and punishes
+ * every incoming connection with {@code d * incomingConnections}, until the
+ * denominator exceeds {@link #MAX_DENOMINATOR}. Because all paths reaching a
+ * layer share the same denominator, the scheduler only needs the number of
+ * paths reaching each neuron: a neuron reached by {@code c} paths is mutated
+ * once per success of {@code c} independent trials. The trials of a whole layer
+ * are sampled in one pass by skipping geometrically distributed runs of
+ * failures, so rare mutations cost almost nothing.
+ * <p>
+ * Each layer is mutated before its path counts are pushed to the previous
+ * layer, so, as with the recursive definition, a rewired connection is followed
+ * to its new neuron.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class PunishmentScheduler {
+    /**
+     * Largest denominator that is still punished.
+     */
+    public static final int MAX_DENOMINATOR = 1000000;
+
+    /**
+     * The database whose neurons are punished.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * Number of paths reaching the neurons of each layer.
+     */
+    private final LayerFrontiers layerFrontiers;
+
+    /**
+     * Number of mutations applied by the current or last sweep.
+     */
+    private long sweepMutations;
+
+    /**
+     * Constructs a PunishmentScheduler.
+     *
+     * @param neuronDatabase is the database whose neurons are punished.
+     */
+    public PunishmentScheduler(@NotNull NeuronDatabase neuronDatabase) {
+        this.neuronDatabase = neuronDatabase;
+        layerFrontiers = new LayerFrontiers(neuronDatabase);
+    }
+
+    /**
+     * Makes room for every neuron of the database.
+     */
+    void ensureCapacity() {
+        layerFrontiers.ensureCapacity();
+    }
+
+    /**
+     * Punishes a neuron and the neurons feeding it.
+     *
+     * @param neuronLayerIndex         is the index of the layer of the neuron.
+     * @param neuronIndex              is the index of the neuron in that layer.
+     * @param denominatorOfProbability is the denominator of the probability of
+     *                                 mutation of the neuron.
+     */
+    public void punishByDepth(int neuronLayerIndex, int neuronIndex, int denominatorOfProbability) {
+        if (neuronLayerIndex == 0)
+            return;
+        long start = TrainingMetrics.start();
+        PunishmentEvent event = new PunishmentEvent();
+        event.begin();
+        layerFrontiers.addPaths(neuronLayerIndex, neuronIndex, 1);
+        long visits = propagate(neuronLayerIndex, denominatorOfProbability);
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordPunishment(start, visits);
+        commit(event, neuronLayerIndex, 1, visits);
+    }
+
+    /**
+     * Punishes several neurons of one layer and the neurons feeding them in a
+     * single sweep. Equivalent to punishing each neuron one at a time.
+     *
+     * @param neuronLayerIndex         is the index of the layer of the neurons.
+     * @param neuronIndexes            are the indexes of the neurons in that
+     *                                 layer.
+     * @param denominatorOfProbability is the denominator of the probability of
+     *                                 mutation of the neurons.
+     */
+    public void punishByDepth(int neuronLayerIndex, int @NotNull [] neuronIndexes, int denominatorOfProbability) {
+        if (neuronLayerIndex == 0)
+            return;
+        long start = TrainingMetrics.start();
+        PunishmentEvent event = new PunishmentEvent();
+        event.begin();
+        for (int neuronIndex : neuronIndexes)
+            layerFrontiers.addPaths(neuronLayerIndex, neuronIndex, 1);
+        long visits = propagate(neuronLayerIndex, denominatorOfProbability);
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.recordPunishment(start, visits);
+        commit(event, neuronLayerIndex, neuronIndexes.length, visits);
+    }
+
+    /**
+     * Gets the number of mutations applied by the last sweep.
+     *
+     * @return the number of mutations.
+     */
+    public long getSweepMutations() {
+        return sweepMutations;
+    }
+
+    /**
+     * Commits the Flight Recorder event of a sweep if it is enabled.
+     *
+     * @param event           is the event, begun before the sweep.
+     * @param rootLayerIndex  is the index of the layer the sweep started at.
+     * @param punishedNeurons is the number of neurons the sweep started from.
+     * @param visits          is the number of neurons the sweep visited.
+     */
+    private void commit(PunishmentEvent event, int rootLayerIndex, int punishedNeurons, long visits) {
+        if (!event.shouldCommit())
+            return;
+        event.rootLayerIndex = rootLayerIndex;
+        event.punishedNeurons = punishedNeurons;
+        event.neuronsVisited = visits;
+        event.mutationsApplied = sweepMutations;
+        event.commit();
+    }
+
+    /**
+     * Walks the frontiers from the root layer towards the data layer, mutating
+     * the neurons of each layer and then pushing their path counts to their
+     * incoming neurons.
+     *
+     * @param rootLayerIndex           is the index of the layer the punishment
+     *                                 starts at.
+     * @param denominatorOfProbability is the denominator at the root layer.
+     * @return the number of neurons visited.
+     */
+    private long propagate(int rootLayerIndex, long denominatorOfProbability) {
+        RandomGenerator random = neuronDatabase.getRandomGenerator();
+        int incomingConnections = neuronDatabase.getIncomingConnections();
+        long denominator = denominatorOfProbability;
+        long visits = 0;
+        sweepMutations = 0;
+        for (int layer = rootLayerIndex; layer > 0; layer--) {
+            if (denominator <= 0 || denominator > MAX_DENOMINATOR) { // Invalid or too unlikely.
+                layerFrontiers.clear(layer);
+                break;
+            }
+            mutateLayer(layer, 1.0 / denominator, random);
+            int[] frontier = layerFrontiers.getFrontier(layer);
+            int size = layerFrontiers.getFrontierSize(layer);
+            visits += size;
+            if (layer - 1 > 0) { // Data neurons can't be punished.
+                for (int i = 0; i < size; i++)
+                    layerFrontiers.addIncomingPaths(layer, frontier[i], layerFrontiers.getPaths(layer, frontier[i]));
+            }
+            layerFrontiers.clear(layer);
+            denominator *= incomingConnections;
+        }
+        return visits;
+    }
+
+    /**
+     * Samples the mutations of every trial of a layer in one pass, skipping the
+     * failures between two successes with a geometric draw.
+     *
+     * @param layer          is the index of the layer.
+     * @param mutationChance is the probability of mutation of a single trial.
+     * @param random         is the random number generator to use.
+     */
+    private void mutateLayer(int layer, double mutationChance, RandomGenerator random) {
+        int[] frontier = layerFrontiers.getFrontier(layer);
+        Neuron[] neurons = neuronDatabase.getNeuronLayer(layer);
+        int size = layerFrontiers.getFrontierSize(layer);
+        if (mutationChance >= 1.0) {
+            for (int i = 0; i < size; i++) {
+                long paths = layerFrontiers.getPaths(layer, frontier[i]);
+                for (long c = 0; c < paths; c++)
+                    neurons[frontier[i]].changeOneThing();
+                sweepMutations += paths;
+            }
+            return;
+        }
+        double logOfFailureChance = Math.log1p(-mutationChance);
+        long nextSuccess = skipFailures(0, logOfFailureChance, random);
+        long trialsSeen = 0;
+        for (int i = 0; i < size && nextSuccess != Long.MAX_VALUE; i++) {
+            trialsSeen += layerFrontiers.getPaths(layer, frontier[i]);
+            while (nextSuccess < trialsSeen) {
+                neurons[frontier[i]].changeOneThing();
+                sweepMutations++;
+                nextSuccess = skipFailures(nextSuccess + 1, logOfFailureChance, random);
+            }
+        }
+    }
+
+    /**
+     * Finds the next successful trial by drawing the number of failures before
+     * it from a geometric distribution.
+     *
+     * @param firstTrial         is the index of the first trial that may succeed.
+     * @param logOfFailureChance is the natural logarithm of the probability that
+     *                           a trial fails.
+     * @param random             is the random number generator to use.
+     * @return the index of the next successful trial, or Long.MAX_VALUE if it is
+     * out of reach.
+     */
+    private static long skipFailures(long firstTrial, double logOfFailureChance, RandomGenerator random) {
+        double failures = Math.floor(Math.log(1.0 - random.nextDouble()) / logOfFailureChance);
+        if (failures >= Long.MAX_VALUE - firstTrial)
+            return Long.MAX_VALUE;
+        return firstTrial + (long) failures;
+    }
+}
@@ -0,0 +1,84 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Evaluates packed layers one neuron at a time. Each neuron gathers its input
+ * bits into words, masks them with its weights and compares the population
+ * count against the threshold; 64 results make one output word.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class ScalarLayerKernel implements LayerKernel {
+    /**
+     * Constructs a ScalarLayerKernel.
+     */
+    public ScalarLayerKernel() {
+    }
+
+    @Override
+    public String getName() {
+        return SCALAR;
+    }
+
+    @Override
+    public void evaluateWords(@NotNull PackedNetwork network, int layerIndex, long[] biasWords, int[] preparedInputs,
+                              int fromWord, int toWord) {
+        long[] inputs = network.getActivationWords(layerIndex - 1);
+        long[] outputs = network.getActivationWords(layerIndex);
+        int[] table = network.getConnectionTable(layerIndex);
+        long[] mask = network.getWeightWords(layerIndex);
+        int length = network.getLayerLength(layerIndex);
+        int incomingConnections = network.getIncomingConnections();
+        int weightWordsPerNeuron = network.getWeightWordsPerNeuron();
+        int threshold = incomingConnections / 2;
+        for (int word = fromWord; word < toWord; word++) {
+            if (incomingConnections == 0) {
+                outputs[word] = 0;
+                continue;
+            }
+            long bias = biasWords == null ? 0 : biasWords[word];
+            int first = word << 6;
+            int last = Math.min(first + 64, length);
+            long result = 0;
+            for (int n = first; n < last; n++) {
+                int activationSum = (int) ((bias >>> n) & 1L)
+                    + maskedPopCount(inputs, table, mask, incomingConnections, weightWordsPerNeuron, n);
+                if (activationSum >= threshold)
+                    result |= 1L << n;
+            }
+            outputs[word] = result;
+        }
+    }
+
+    /**
+     * Counts the incoming connections of a neuron that are both weighted and
+     * activated.
+     *
+     * @param inputs               are the activation words of the previous layer.
+     * @param table                is the connection table of the neuron's layer.
+     * @param mask                 are the weight words of the neuron's layer.
+     * @param incomingConnections  is the number of incoming connections of every
+     *                             neuron.
+     * @param weightWordsPerNeuron is the number of weight words of every neuron.
+     * @param neuronIndex          is the index of the neuron in its layer.
+     * @return the number of weighted, activated incoming connections.
+     */
+    static int maskedPopCount(long[] inputs, int[] table, long[] mask, int incomingConnections,
+                              int weightWordsPerNeuron, int neuronIndex) {
+        int connection = neuronIndex * incomingConnections;
+        int weightWord = neuronIndex * weightWordsPerNeuron;
+        int count = 0;
+        for (int w = 0; w < weightWordsPerNeuron; w++) {
+            int end = Math.min(incomingConnections, (w + 1) << 6);
+            long gathered = 0;
+            for (int k = w << 6; k < end; k++) {
+                int input = table[connection + k];
+                gathered |= ((inputs[input >>> 6] >>> input) & 1L) << k;
+            }
+            count += Long.bitCount(gathered & mask[weightWord + w]);
+        }
+        return count;
+    }
+}
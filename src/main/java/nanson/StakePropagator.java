@@ -0,0 +1,113 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Propagates stake breadth-first, one layer at a time. Instead of walking every
+ * path from a neuron into the layers feeding it, the number of paths reaching
+ * each neuron is accumulated per layer, so a neuron reached by {@code p} paths at
+ * depth {@code d} receives {@code p << (maxDepth - d)} in a single visit. The
+ * totals match the recursive definition while the work is bounded by the number
+ * of neurons times the fan-in per layer.
+ * <p>
+ * All accumulators are allocated up front, so propagation does not allocate.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class StakePropagator {
+    /**
+     * Maximum depth stake is propagated to from the neuron whose stake is
+     * updated.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 5;
+
+    /**
+     * The database whose neurons receive stake.
+     */
+    private final NeuronDatabase neuronDatabase;
+
+    /**
+     * Number of paths reaching the neurons of each layer.
+     */
+    private final LayerFrontiers layerFrontiers;
+
+    /**
+     * Constructs a StakePropagator.
+     *
+     * @param neuronDatabase is the database whose neurons receive stake.
+     */
+    public StakePropagator(@NotNull NeuronDatabase neuronDatabase) {
+        this.neuronDatabase = neuronDatabase;
+        layerFrontiers = new LayerFrontiers(neuronDatabase);
+    }
+
+    /**
+     * Makes room for every neuron of the database.
+     */
+    void ensureCapacity() {
+        layerFrontiers.ensureCapacity();
+    }
+
+    /**
+     * Updates the stake of a neuron and the neurons feeding it, up to
+     * {@link #DEFAULT_MAX_DEPTH}.
+     *
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     */
+    public void updateStake(int neuronLayerIndex, int neuronIndex) {
+        if (neuronLayerIndex == 0)
+            return;
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.countStakeUpdate();
+        layerFrontiers.addPaths(neuronLayerIndex, neuronIndex, 1);
+        propagate(neuronLayerIndex, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Updates the stake of every neuron of a layer and the neurons feeding them,
+     * up to {@link #DEFAULT_MAX_DEPTH}. Equivalent to updating the stake of each
+     * neuron of the layer one at a time.
+     *
+     * @param neuronLayerIndex is the index of the layer.
+     */
+    public void updateLayerStakes(int neuronLayerIndex) {
+        if (neuronLayerIndex == 0)
+            return;
+        if (TrainingMetrics.ENABLED)
+            TrainingMetrics.countStakeUpdate();
+        for (int b = 0; b < neuronDatabase.getLayerLength(neuronLayerIndex); b++)
+            layerFrontiers.addPaths(neuronLayerIndex, b, 1);
+        propagate(neuronLayerIndex, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Walks the frontiers from the root layer towards the data layer, giving
+     * every reached neuron its stake and pushing its path count to its incoming
+     * neurons.
+     *
+     * @param rootLayerIndex is the index of the layer the propagation starts at.
+     * @param maxDepth       is the maximum depth to propagate to.
+     */
+    private void propagate(int rootLayerIndex, int maxDepth) {
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        for (int layer = rootLayerIndex, depth = 0; layer > 0 && depth <= maxDepth; layer--, depth++) {
+            int[] frontier = layerFrontiers.getFrontier(layer);
+            int size = layerFrontiers.getFrontierSize(layer);
+            boolean descend = depth < maxDepth && layer - 1 > 0; // Data neurons don't have stake.
+            int shift = maxDepth - depth;
+            for (int i = 0; i < size; i++) {
+                int neuronIndex = frontier[i];
+                long paths = layerFrontiers.getPaths(layer, neuronIndex);
+                if (networkStorage != null)
+                    networkStorage.addStake(layer, neuronIndex, (int) (paths << shift));
+                else
+                    ((ActivationNeuron) neuronDatabase.getNeuron(layer, neuronIndex)).addStake((int) (paths << shift));
+                if (descend)
+                    layerFrontiers.addIncomingPaths(layer, neuronIndex, paths);
+            }
+            layerFrontiers.clear(layer);
+        }
+    }
+}
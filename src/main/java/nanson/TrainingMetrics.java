@@ -0,0 +1,471 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the training loop: forward passes, single
+ * or in batches, layer evaluations, mutations, punishment sweeps, stake
+ * updates, scores and generations. Forward passes and layer evaluations are
+ * counted whether they run on a {@link NeuronDatabase}, an
+ * {@link InferencePlan} or a {@link FrozenNetwork}.
+ * <p>
+ * Metrics are off unless the {@value #METRICS_PROPERTY} system property is
+ * {@code true} when the class is initialized. Every instrumented call site
+ * checks {@link #ENABLED} first, and since it is a static final the JIT drops
+ * the checks and the timing around them when it is false. When on, counters
+ * are striped {@link LongAdder}s and latencies go to {@link LatencyHistogram}s,
+ * so threads training in parallel don't contend on them.
+ * <p>
+ * The metrics can be read through JMX once {@link #registerMBean()} was called,
+ * or printed with {@link #format()}, periodically with
+ * {@link #startReporting(PrintStream, Duration)}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public final class TrainingMetrics implements TrainingMetricsMXBean {
+    /**
+     * System property turning metrics on.
+     */
+    public static final String METRICS_PROPERTY = "nanson.metrics";
+
+    /**
+     * Name the metrics are registered under in JMX.
+     */
+    public static final String OBJECT_NAME = "nanson:type=TrainingMetrics";
+
+    /**
+     * Whether metrics are recorded; fixed when the class is initialized.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(METRICS_PROPERTY);
+
+    /**
+     * The MXBean; its methods read the static counters.
+     */
+    private static final TrainingMetrics MBEAN = new TrainingMetrics();
+
+    /**
+     * Number of forward passes.
+     */
+    private static final LongAdder forwardPasses = new LongAdder();
+
+    /**
+     * Number of batches of forward passes.
+     */
+    private static final LongAdder batches = new LongAdder();
+
+    /**
+     * Number of layer evaluations.
+     */
+    private static final LongAdder layerEvaluations = new LongAdder();
+
+    /**
+     * Number of mutations of activation neurons.
+     */
+    private static final LongAdder mutations = new LongAdder();
+
+    /**
+     * Number of punishment sweeps.
+     */
+    private static final LongAdder punishments = new LongAdder();
+
+    /**
+     * Number of neurons visited by punishment sweeps.
+     */
+    private static final LongAdder punishmentVisits = new LongAdder();
+
+    /**
+     * Number of stake updates.
+     */
+    private static final LongAdder stakeUpdates = new LongAdder();
+
+    /**
+     * Number of networks scored.
+     */
+    private static final LongAdder scores = new LongAdder();
+
+    /**
+     * Number of generations.
+     */
+    private static final LongAdder generations = new LongAdder();
+
+    /**
+     * Latencies of forward passes.
+     */
+    private static final LatencyHistogram forwardPassLatency = newHistogram();
+
+    /**
+     * Latencies of batches of forward passes.
+     */
+    private static final LatencyHistogram batchLatency = newHistogram();
+
+    /**
+     * Latencies of layer evaluations.
+     */
+    private static final LatencyHistogram layerEvaluationLatency = newHistogram();
+
+    /**
+     * Latencies of punishment sweeps.
+     */
+    private static final LatencyHistogram punishmentLatency = newHistogram();
+
+    /**
+     * Latencies of scoring a network.
+     */
+    private static final LatencyHistogram scoreLatency = newHistogram();
+
+    /**
+     * Latencies of generations.
+     */
+    private static final LatencyHistogram generationLatency = newHistogram();
+
+    /**
+     * Constructs the MXBean.
+     */
+    private TrainingMetrics() {
+    }
+
+    /**
+     * Creates a histogram, with a single stripe when metrics are off so it
+     * takes no memory to speak of.
+     *
+     * @return the histogram.
+     */
+    private static LatencyHistogram newHistogram() {
+        return ENABLED ? new LatencyHistogram() : new LatencyHistogram(1);
+    }
+
+    /**
+     * Gets the current time for timing an instrumented call, or 0 when metrics
+     * are off.
+     *
+     * @return {@link System#nanoTime()} if metrics are on.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a forward pass.
+     *
+     * @param startNanos is when it started, from {@link #start()}.
+     */
+    public static void recordForwardPass(long startNanos) {
+        forwardPasses.increment();
+        forwardPassLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Records a batch of forward passes evaluated together, e.g. bit-sliced.
+     * Every sample counts as a forward pass; the latency is the batch's.
+     *
+     * @param startNanos is when it started, from {@link #start()}.
+     * @param samples    is the number of samples in the batch.
+     */
+    public static void recordBatch(long startNanos, int samples) {
+        forwardPasses.add(samples);
+        batches.increment();
+        batchLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Records a layer evaluation.
+     *
+     * @param startNanos is when it started, from {@link #start()}.
+     */
+    public static void recordLayerEvaluation(long startNanos) {
+        layerEvaluations.increment();
+        layerEvaluationLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Counts a mutation of an activation neuron.
+     */
+    public static void countMutation() {
+        mutations.increment();
+    }
+
+    /**
+     * Records a punishment sweep.
+     *
+     * @param startNanos is when it started, from {@link #start()}.
+     * @param visits     is the number of neurons it visited.
+     */
+    public static void recordPunishment(long startNanos, long visits) {
+        punishments.increment();
+        punishmentVisits.add(visits);
+        punishmentLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Counts a stake update.
+     */
+    public static void countStakeUpdate() {
+        stakeUpdates.increment();
+    }
+
+    /**
+     * Records the scoring of a network.
+     *
+     * @param startNanos is when it started, from {@link #start()}.
+     */
+    public static void recordScore(long startNanos) {
+        scores.increment();
+        scoreLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Records a generation.
+     *
+     * @param startNanos is when it started, from {@link #start()}.
+     */
+    public static void recordGeneration(long startNanos) {
+        generations.increment();
+        generationLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under
+     * {@value #OBJECT_NAME}. Registering twice does nothing.
+     *
+     * @throws IllegalStateException if the MBean cannot be registered.
+     */
+    public static void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(MBEAN, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered.
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Gets the MXBean, e.g. to read the metrics without JMX.
+     *
+     * @return the MXBean.
+     */
+    public static TrainingMetricsMXBean getMBean() {
+        return MBEAN;
+    }
+
+    /**
+     * Formats every counter and histogram as text, one line per histogram.
+     *
+     * @return the text, ending with a line separator.
+     */
+    public static String format() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "forwardPasses=%d batches=%d layerEvaluations=%d mutations=%d "
+                + "punishments=%d punishmentVisits=%d stakeUpdates=%d scores=%d generations=%d%n",
+            forwardPasses.sum(), batches.sum(), layerEvaluations.sum(), mutations.sum(), punishments.sum(),
+            punishmentVisits.sum(), stakeUpdates.sum(), scores.sum(), generations.sum()));
+        appendLatency(text, "forwardPass", forwardPassLatency);
+        appendLatency(text, "batch", batchLatency);
+        appendLatency(text, "layerEvaluation", layerEvaluationLatency);
+        appendLatency(text, "punishment", punishmentLatency);
+        appendLatency(text, "score", scoreLatency);
+        appendLatency(text, "generation", generationLatency);
+        return text.toString();
+    }
+
+    /**
+     * Appends a histogram line to a text.
+     *
+     * @param text      is the text to append to.
+     * @param name      is the name of the histogram.
+     * @param histogram is the histogram.
+     */
+    private static void appendLatency(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append("  ").append(name).append(": ").append(histogram.snapshot()).append(System.lineSeparator());
+    }
+
+    /**
+     * Prints the metrics periodically on a daemon thread, each time preceded by
+     * the rates since the previous report. Shut the returned executor down to
+     * stop.
+     *
+     * @param out      is where the metrics are printed.
+     * @param interval is the time between two reports.
+     * @return the executor printing the reports.
+     */
+    public static ScheduledExecutorService startReporting(@NotNull PrintStream out, @NotNull Duration interval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "training-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Reporter reporter = new Reporter(out);
+        executor.scheduleAtFixedRate(reporter, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public long getForwardPasses() {
+        return forwardPasses.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getLayerEvaluations() {
+        return layerEvaluations.sum();
+    }
+
+    @Override
+    public long getMutations() {
+        return mutations.sum();
+    }
+
+    @Override
+    public long getPunishments() {
+        return punishments.sum();
+    }
+
+    @Override
+    public long getPunishmentVisits() {
+        return punishmentVisits.sum();
+    }
+
+    @Override
+    public long getStakeUpdates() {
+        return stakeUpdates.sum();
+    }
+
+    @Override
+    public long getScores() {
+        return scores.sum();
+    }
+
+    @Override
+    public long getGenerations() {
+        return generations.sum();
+    }
+
+    @Override
+    public LatencySnapshot getForwardPassLatency() {
+        return forwardPassLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getBatchLatency() {
+        return batchLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getLayerEvaluationLatency() {
+        return layerEvaluationLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getPunishmentLatency() {
+        return punishmentLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getScoreLatency() {
+        return scoreLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getGenerationLatency() {
+        return generationLatency.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[]{forwardPasses, batches, layerEvaluations, mutations,
+            punishments, punishmentVisits, stakeUpdates, scores, generations})
+            counter.reset();
+        for (LatencyHistogram histogram : new LatencyHistogram[]{forwardPassLatency, batchLatency,
+            layerEvaluationLatency, punishmentLatency, scoreLatency, generationLatency})
+            histogram.reset();
+    }
+
+    /**
+     * Prints the metrics with the rates since its previous run.
+     */
+    private static final class Reporter implements Runnable {
+        /**
+         * Where the metrics are printed.
+         */
+        private final PrintStream out;
+
+        /**
+         * When the previous report was printed, in {@link System#nanoTime()}
+         * nanoseconds.
+         */
+        private long lastNanos = System.nanoTime();
+
+        /**
+         * Forward passes at the previous report.
+         */
+        private long lastForwardPasses = forwardPasses.sum();
+
+        /**
+         * Mutations at the previous report.
+         */
+        private long lastMutations = mutations.sum();
+
+        /**
+         * Scores at the previous report.
+         */
+        private long lastScores = scores.sum();
+
+        /**
+         * Generations at the previous report.
+         */
+        private long lastGenerations = generations.sum();
+
+        /**
+         * Constructs a Reporter.
+         *
+         * @param out is where the metrics are printed.
+         */
+        Reporter(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+            long currentForwardPasses = forwardPasses.sum();
+            long currentMutations = mutations.sum();
+            long currentScores = scores.sum();
+            long currentGenerations = generations.sum();
+            String rates = String.format(Locale.ROOT,
+                "metrics: forwardPasses/s=%.0f mutations/s=%.0f scores/s=%.0f generations/s=%.1f%n",
+                (currentForwardPasses - lastForwardPasses) / seconds, (currentMutations - lastMutations) / seconds,
+                (currentScores - lastScores) / seconds, (currentGenerations - lastGenerations) / seconds);
+            out.print(rates + format());
+            lastNanos = now;
+            lastForwardPasses = currentForwardPasses;
+            lastMutations = currentMutations;
+            lastScores = currentScores;
+            lastGenerations = currentGenerations;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package nanson;
+
+/**
+ * Management interface of {@link TrainingMetrics}, registered as
+ * {@value TrainingMetrics#OBJECT_NAME}. Counters are totals since the start or
+ * the last reset; rates are left to the monitoring tool. Latencies are in
+ * nanoseconds.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public interface TrainingMetricsMXBean {
+    /**
+     * Checks whether metrics are recorded.
+     *
+     * @return whether the {@value TrainingMetrics#METRICS_PROPERTY} system
+     * property was true at startup.
+     */
+    boolean isEnabled();
+
+    /**
+     * Gets the number of forward passes through a whole network, one per
+     * sample of a batch.
+     *
+     * @return the number of forward passes.
+     */
+    long getForwardPasses();
+
+    /**
+     * Gets the number of batches of forward passes evaluated together.
+     *
+     * @return the number of batches.
+     */
+    long getBatches();
+
+    /**
+     * Gets the number of layers evaluated, within forward passes or on their
+     * own.
+     *
+     * @return the number of layer evaluations.
+     */
+    long getLayerEvaluations();
+
+    /**
+     * Gets the number of mutations of activation neurons.
+     *
+     * @return the number of changeOneThing calls.
+     */
+    long getMutations();
+
+    /**
+     * Gets the number of punishment sweeps. Only training by punishment, not
+     * population training, sweeps.
+     *
+     * @return the number of punishByDepth calls.
+     */
+    long getPunishments();
+
+    /**
+     * Gets the number of neurons visited by punishment sweeps.
+     *
+     * @return the number of neurons visited.
+     */
+    long getPunishmentVisits();
+
+    /**
+     * Gets the number of stake updates. Only training by punishment, not
+     * population training, updates stakes.
+     *
+     * @return the number of updateStake and updateLayerStakes calls.
+     */
+    long getStakeUpdates();
+
+    /**
+     * Gets the number of networks scored on the alphabet task.
+     *
+     * @return the number of scores.
+     */
+    long getScores();
+
+    /**
+     * Gets the number of generations run by population trainers.
+     *
+     * @return the number of generations.
+     */
+    long getGenerations();
+
+    /**
+     * Gets the latencies of single forward passes, not in a batch.
+     *
+     * @return the latency summary.
+     */
+    LatencySnapshot getForwardPassLatency();
+
+    /**
+     * Gets the latencies of batches of forward passes.
+     *
+     * @return the latency summary.
+     */
+    LatencySnapshot getBatchLatency();
+
+    /**
+     * Gets the latencies of layer evaluations.
+     *
+     * @return the latency summary.
+     */
+    LatencySnapshot getLayerEvaluationLatency();
+
+    /**
+     * Gets the latencies of punishment sweeps.
+     *
+     * @return the latency summary.
+     */
+    LatencySnapshot getPunishmentLatency();
+
+    /**
+     * Gets the latencies of scoring a network.
+     *
+     * @return the latency summary.
+     */
+    LatencySnapshot getScoreLatency();
+
+    /**
+     * Gets the latencies of generations.
+     *
+     * @return the latency summary.
+     */
+    LatencySnapshot getGenerationLatency();
+
+    /**
+     * Resets every counter and histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,396 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Trains a network on the alphabet task without any user interface. A
+ * {@link PopulationTrainer} runs generations back to back until a budget runs
+ * out, logging progress every few generations and writing the best network to a
+ * {@link NetworkSnapshot} checkpoint periodically and when training stops.
+ * <p>
+ * Run it from the command line with {@code java -cp boolean_ai.jar
+ * nanson.TrainingRunner [options]}, or through {@code Driver train [options]};
+ * {@code --help} lists the options. Nothing here loads AWT, so it runs on
+ * headless servers.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class TrainingRunner {
+    /**
+     * Default layer lengths: a data layer, two hidden layers and an output layer.
+     */
+    public static final int[] DEFAULT_LAYER_LENGTHS = {Constants.DEFAULT_LENGTH_OF_RESULTS, 64, 64,
+        Constants.DEFAULT_LENGTH_OF_RESULTS};
+
+    /**
+     * Default number of candidates per generation.
+     */
+    public static final int DEFAULT_POPULATION_SIZE = 16;
+
+    /**
+     * Default number of generations between progress log lines.
+     */
+    public static final long DEFAULT_LOG_INTERVAL = 100;
+
+    /**
+     * Command line usage.
+     */
+    private static final String USAGE = """
+        Usage: TrainingRunner [options]
+          --layers L0,L1,...       layer lengths, data layer first (default 7,64,64,7)
+          --fan-in N               incoming connections per neuron, at least 2 (default 2)
+          --packed                 use the packed storage model
+          --seed S                 seed of the random generator (default: unseeded)
+          --resume FILE            start from a snapshot instead of a new network
+          --population N           candidates per generation (default 16)
+          --mutations N            mutations per candidate (default 1)
+          --generations N          stop after N generations (default: no limit)
+          --time-limit SECONDS     stop after this much training time (default: no limit)
+          --target-score N         stop once the score is at most N (default 0)
+          --checkpoint FILE        write the best network to FILE
+          --checkpoint-every N     also write it every N generations (default: only at the end)
+          --log-every N            log progress every N generations (default 100)
+          --metrics-every SECONDS  record training metrics, print them every SECONDS and expose them
+                                   through JMX (same as -Dnanson.metrics=true)
+          --help                   show this message
+        """;
+
+    /**
+     * The trainer whose generations are run.
+     */
+    private final PopulationTrainer trainer;
+
+    /**
+     * Where progress is logged.
+     */
+    private final PrintStream log;
+
+    /**
+     * Maximum number of generations, or {@link Long#MAX_VALUE} for no limit.
+     */
+    private long generationBudget = Long.MAX_VALUE;
+
+    /**
+     * Maximum training time, or null for no limit.
+     */
+    private Duration timeLimit;
+
+    /**
+     * Score at or below which training stops.
+     */
+    private int targetScore;
+
+    /**
+     * File the best network is written to, or null for no checkpoints.
+     */
+    private Path checkpointFile;
+
+    /**
+     * Number of generations between checkpoints, or 0 to only write one at the
+     * end.
+     */
+    private long checkpointInterval;
+
+    /**
+     * Number of generations between progress log lines, or 0 for no progress
+     * lines.
+     */
+    private long logInterval = DEFAULT_LOG_INTERVAL;
+
+    /**
+     * Constructs a TrainingRunner.
+     *
+     * @param trainer is the trainer whose generations are run.
+     * @param log     is where progress is logged.
+     */
+    public TrainingRunner(@NotNull PopulationTrainer trainer, @NotNull PrintStream log) {
+        this.trainer = trainer;
+        this.log = log;
+    }
+
+    /**
+     * Sets the maximum number of generations.
+     *
+     * @param generationBudget is the number of generations, or
+     *                         {@link Long#MAX_VALUE} for no limit.
+     */
+    public void setGenerationBudget(long generationBudget) {
+        this.generationBudget = generationBudget;
+    }
+
+    /**
+     * Sets the maximum training time.
+     *
+     * @param timeLimit is the time limit, or null for no limit.
+     */
+    public void setTimeLimit(Duration timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Sets the score at or below which training stops.
+     *
+     * @param targetScore is the target score; 0 means a perfect network.
+     */
+    public void setTargetScore(int targetScore) {
+        this.targetScore = targetScore;
+    }
+
+    /**
+     * Sets where and how often the best network is checkpointed. A checkpoint is
+     * always written when training stops.
+     *
+     * @param checkpointFile     is the file to write, or null for no
+     *                           checkpoints.
+     * @param checkpointInterval is the number of generations between
+     *                           checkpoints, or 0 to only write one at the end.
+     */
+    public void setCheckpoint(Path checkpointFile, long checkpointInterval) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Sets how often progress is logged.
+     *
+     * @param logInterval is the number of generations between log lines, or 0
+     *                    to only log the start and the end.
+     */
+    public void setLogInterval(long logInterval) {
+        this.logInterval = logInterval;
+    }
+
+    /**
+     * Runs generations until the generation budget or time limit runs out, the
+     * target score is reached or the thread is interrupted.
+     *
+     * @return the score of the best network.
+     * @throws IOException if a checkpoint cannot be written.
+     */
+    public int run() throws IOException {
+        long start = System.nanoTime();
+        long deadline = timeLimit == null ? 0 : start + timeLimit.toNanos();
+        log.printf(Locale.ROOT, "start score=%d%n", trainer.getBestScore());
+        long generation = 0;
+        String reason = "generation budget";
+        while (true) {
+            if (trainer.getBestScore() <= targetScore) {
+                reason = "target score";
+                break;
+            }
+            if (generation >= generationBudget)
+                break;
+            if (timeLimit != null && System.nanoTime() - deadline >= 0) {
+                reason = "time limit";
+                break;
+            }
+            try {
+                trainer.runGeneration();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reason = "interrupted";
+                break;
+            }
+            generation++;
+            if (logInterval > 0 && generation % logInterval == 0)
+                logProgress(start);
+            if (checkpointInterval > 0 && generation % checkpointInterval == 0)
+                checkpoint();
+        }
+        checkpoint();
+        logProgress(start);
+        log.printf(Locale.ROOT, "stopped: %s%n", reason);
+        return trainer.getBestScore();
+    }
+
+    /**
+     * Logs one progress line.
+     *
+     * @param start is when the run started, in {@link System#nanoTime()}
+     *              nanoseconds.
+     */
+    private void logProgress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.printf(Locale.ROOT, "generation=%d score=%d evaluations=%d eval/s=%.0f eval/s/core=%.0f elapsed=%.1fs%n",
+            trainer.getGenerations(), trainer.getBestScore(), trainer.getEvaluations(),
+            trainer.getEvaluationsPerSecond(), trainer.getEvaluationsPerSecondPerCore(), seconds);
+    }
+
+    /**
+     * Writes the best network to the checkpoint file, through a temporary file
+     * so a crash never leaves a truncated checkpoint behind.
+     *
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    private void checkpoint() throws IOException {
+        if (checkpointFile == null)
+            return;
+        Path directory = checkpointFile.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, checkpointFile.getFileName().toString(), ".tmp");
+        try {
+            NetworkSnapshot.write(trainer.getBest(), temporary);
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Trains from the command line; {@code --help} lists the options. Exits
+     * with status 2 after printing the usage if an option is invalid.
+     *
+     * @param args are the options.
+     * @throws IOException if the network to resume from cannot be read or a
+     *                     checkpoint cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int status = runCommand(args, System.out, System.err);
+        if (status != 0)
+            System.exit(status);
+    }
+
+    /**
+     * Parses the options and trains, like {@link #main(String[])} without
+     * exiting.
+     *
+     * @param args are the options.
+     * @param out  is where progress, metrics and the usage asked for are
+     *             printed.
+     * @param err  is where invalid options and the usage are printed.
+     * @return the exit status: 0 if training ran or the usage was asked for, 2
+     * if an option is invalid.
+     * @throws IOException if the network to resume from cannot be read or a
+     *                     checkpoint cannot be written.
+     */
+    static int runCommand(String[] args, @NotNull PrintStream out, @NotNull PrintStream err) throws IOException {
+        int[] layerLengths = DEFAULT_LAYER_LENGTHS;
+        int incomingConnections = Constants.DEFAULT_NUM_INCOMING_NEURONS;
+        boolean packed = false;
+        Long seed = null;
+        Path resume = null;
+        int populationSize = DEFAULT_POPULATION_SIZE;
+        int mutationsPerCandidate = PopulationTrainer.DEFAULT_MUTATIONS_PER_CANDIDATE;
+        long generations = Long.MAX_VALUE;
+        Duration timeLimit = null;
+        int targetScore = 0;
+        Path checkpoint = null;
+        long checkpointInterval = 0;
+        long logInterval = DEFAULT_LOG_INTERVAL;
+        Duration metricsInterval = null;
+        NeuronDatabase neuronDatabase;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--layers" -> layerLengths = Arrays.stream(value(args, ++i).split(","))
+                        .mapToInt(Integer::parseInt).toArray();
+                    case "--fan-in" -> incomingConnections = Integer.parseInt(value(args, ++i));
+                    case "--packed" -> packed = true;
+                    case "--seed" -> seed = Long.parseLong(value(args, ++i));
+                    case "--resume" -> resume = Path.of(value(args, ++i));
+                    case "--population" -> populationSize = Integer.parseInt(value(args, ++i));
+                    case "--mutations" -> mutationsPerCandidate = Integer.parseInt(value(args, ++i));
+                    case "--generations" -> generations = Long.parseLong(value(args, ++i));
+                    case "--time-limit" -> timeLimit = Duration.ofMillis(
+                        (long) (Double.parseDouble(value(args, ++i)) * 1000));
+                    case "--target-score" -> targetScore = Integer.parseInt(value(args, ++i));
+                    case "--checkpoint" -> checkpoint = Path.of(value(args, ++i));
+                    case "--checkpoint-every" -> checkpointInterval = Long.parseLong(value(args, ++i));
+                    case "--log-every" -> logInterval = Long.parseLong(value(args, ++i));
+                    case "--metrics-every" -> metricsInterval = Duration.ofMillis(
+                        (long) (Double.parseDouble(value(args, ++i)) * 1000));
+                    case "--help" -> {
+                        out.print(USAGE);
+                        return 0;
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (metricsInterval != null && metricsInterval.toMillis() <= 0)
+                throw new IllegalArgumentException("--metrics-every must be positive");
+            if (populationSize <= 0)
+                throw new IllegalArgumentException("--population must be positive");
+            if (mutationsPerCandidate < 0)
+                throw new IllegalArgumentException("--mutations can't be negative");
+            if (resume == null) {
+                if (incomingConnections < 2)
+                    throw new IllegalArgumentException("--fan-in must be at least 2");
+                if (layerLengths.length < 2
+                    || layerLengths[layerLengths.length - 1] < Constants.DEFAULT_LENGTH_OF_RESULTS)
+                    throw new IllegalArgumentException("--layers needs an output layer of at least "
+                        + Constants.DEFAULT_LENGTH_OF_RESULTS + " neurons");
+                neuronDatabase = new NeuronDatabase(packed, incomingConnections, layerLengths);
+            } else {
+                neuronDatabase = NetworkSnapshot.read(resume, packed);
+                int numberOfLayers = neuronDatabase.getNumberOfLayers();
+                if (neuronDatabase.getIncomingConnections() < 2)
+                    throw new IllegalArgumentException("--resume needs a network with a fan-in of at least 2");
+                if (numberOfLayers < 2
+                    || neuronDatabase.getLayerLength(numberOfLayers - 1) < Constants.DEFAULT_LENGTH_OF_RESULTS)
+                    throw new IllegalArgumentException("--resume needs a network with an output layer of at least "
+                        + Constants.DEFAULT_LENGTH_OF_RESULTS + " neurons");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+
+        ScheduledExecutorService metricsReporter = null;
+        if (metricsInterval != null) {
+            // Nothing has touched TrainingMetrics yet, so the property is read when it is initialized below.
+            System.setProperty(TrainingMetrics.METRICS_PROPERTY, "true");
+            TrainingMetrics.registerMBean();
+            metricsReporter = TrainingMetrics.startReporting(out, metricsInterval);
+        }
+        if (seed != null)
+            neuronDatabase.setSeed(seed);
+        AlphabetTask task = new AlphabetTask(Constants.DEFAULT_LENGTH_OF_RESULTS);
+        // Scoring is CPU-bound, so candidates run on one platform thread per core.
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (PopulationTrainer trainer = new PopulationTrainer(neuronDatabase, task, populationSize,
+            mutationsPerCandidate, executor)) {
+            TrainingRunner runner = new TrainingRunner(trainer, out);
+            runner.setGenerationBudget(generations);
+            runner.setTimeLimit(timeLimit);
+            runner.setTargetScore(targetScore);
+            runner.setCheckpoint(checkpoint, checkpointInterval);
+            runner.setLogInterval(logInterval);
+            runner.run();
+        } finally {
+            executor.shutdown();
+            if (metricsReporter != null) {
+                metricsReporter.shutdown();
+                out.print(TrainingMetrics.format());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the value of an option.
+     *
+     * @param args  are the command line arguments.
+     * @param index is the index of the value.
+     * @return the value.
+     * @throws IllegalArgumentException if the option has no value.
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        return args[index];
+    }
+}
@@ -36,6 +36,18 @@ public class Utilities {
         return (char) value;
     }
 
+    /**
+     * Calculates the Hamming distance between two characters: the number of bit
+     * flips needed to transform one into the other.
+     *
+     * @param answer is the first character.
+     * @param target is the second character.
+     * @return the number of differing bits.
+     */
+    public static int hammingDistance(char answer, char target) {
+        return Integer.bitCount(answer ^ target);
+    }
+
     /**
      * Converts a char to a boolean array of the requested bit length.
      * The returned array has the most-significant bit first.
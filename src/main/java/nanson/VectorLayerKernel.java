@@ -0,0 +1,169 @@
+package nanson;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Evaluates packed layers with the Vector API. The connections of the 64
+ * neurons of an activation word are contiguous in the connection table, so the
+ * kernel gathers their input bits a full vector at a time, using the table
+ * itself as the gather index map, and packs the lanes into one bitstream. Each
+ * neuron then ANDs its slice of the stream with its weight mask and compares the
+ * population count against the threshold, exactly like the scalar kernel but
+ * without gathering its inputs one bit at a time.
+ * <p>
+ * Only load this class after {@link LayerKernel#isVectorSupported()} returned
+ * true; it needs the {@code jdk.incubator.vector} module.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class VectorLayerKernel implements LayerKernel {
+    /**
+     * Species of the input gathers.
+     */
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * Smallest number of lanes the kernel is worth using with.
+     */
+    private static final int MINIMUM_LANES = 8;
+
+    /**
+     * Buffers of each thread, reused from one evaluation to the next.
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Constructs a VectorLayerKernel.
+     */
+    public VectorLayerKernel() {
+    }
+
+    /**
+     * Checks whether the preferred vector shape is wide enough to beat the
+     * scalar kernel.
+     *
+     * @return whether the preferred species holds at least
+     * {@value #MINIMUM_LANES} ints, and whole gathers fit in a stream word.
+     */
+    static boolean isHardwareSupported() {
+        return SPECIES.length() >= MINIMUM_LANES && Long.SIZE % SPECIES.length() == 0;
+    }
+
+    @Override
+    public String getName() {
+        return VECTOR;
+    }
+
+    @Override
+    public void evaluateWords(@NotNull PackedNetwork network, int layerIndex, long[] biasWords, int fromWord,
+                              int toWord) {
+        // Only this thread reads the inputs, so they can go to its own buffer instead of a new array.
+        Scratch scratch = SCRATCH.get();
+        scratch.inputs = expandInputs(network, layerIndex, scratch.inputs);
+        evaluateWords(network, layerIndex, biasWords, scratch.inputs, fromWord, toWord);
+    }
+
+    @Override
+    public int[] prepareInputs(@NotNull PackedNetwork network, int layerIndex) {
+        // A fresh array, since every range of the layer reads it, possibly on other threads.
+        return expandInputs(network, layerIndex, null);
+    }
+
+    /**
+     * Expands the previous layer of a layer to one int per neuron.
+     *
+     * @param network    is the network holding the layer.
+     * @param layerIndex is the index of the layer.
+     * @param reuse      is an array to fill if it is large enough, or null.
+     * @return the filled array; at least as long as the previous layer.
+     */
+    private static int[] expandInputs(PackedNetwork network, int layerIndex, int[] reuse) {
+        long[] inputWords = network.getActivationWords(layerIndex - 1);
+        int length = network.getLayerLength(layerIndex - 1);
+        int[] inputs = reuse != null && reuse.length >= length ? reuse : new int[length];
+        for (int i = 0; i < length; i++)
+            inputs[i] = (int) (inputWords[i >>> 6] >>> i) & 1;
+        return inputs;
+    }
+
+    @Override
+    public void evaluateWords(@NotNull PackedNetwork network, int layerIndex, long[] biasWords, int[] preparedInputs,
+                              int fromWord, int toWord) {
+        long[] outputs = network.getActivationWords(layerIndex);
+        int incomingConnections = network.getIncomingConnections();
+        if (incomingConnections == 0) {
+            for (int word = fromWord; word < toWord; word++)
+                outputs[word] = 0;
+            return;
+        }
+        int[] table = network.getConnectionTable(layerIndex);
+        long[] mask = network.getWeightWords(layerIndex);
+        int length = network.getLayerLength(layerIndex);
+        int weightWordsPerNeuron = network.getWeightWordsPerNeuron();
+        int threshold = incomingConnections / 2;
+        int lanes = SPECIES.length();
+
+        int[] inputs = preparedInputs != null ? preparedInputs : prepareInputs(network, layerIndex);
+        // The input bits of the 64 neurons of a word, connection by connection, as one bitstream.
+        Scratch scratch = SCRATCH.get();
+        if (scratch.stream.length < incomingConnections + 1)
+            scratch.stream = new long[incomingConnections + 1];
+        long[] stream = scratch.stream;
+        // Connections of the last weight word of a neuron; the stream bits past them belong to the next neuron.
+        long lastWordMask = -1L >>> (-incomingConnections & 63);
+
+        for (int word = fromWord; word < toWord; word++) {
+            long bias = biasWords == null ? 0 : biasWords[word];
+            int first = word << 6;
+            int last = Math.min(first + 64, length);
+            // The connections of consecutive neurons are contiguous, so each gather reads one full vector of them.
+            int from = first * incomingConnections;
+            int slots = (last - first) * incomingConnections;
+            int slot = 0;
+            for (; slot <= slots - lanes; slot += lanes) {
+                long bits = IntVector.fromArray(SPECIES, inputs, 0, table, from + slot)
+                    .compare(VectorOperators.NE, 0).toLong();
+                stream[slot >>> 6] = slot % 64 == 0 ? bits : stream[slot >>> 6] | bits << slot;
+            }
+            for (; slot < slots; slot++) {
+                long bit = (long) inputs[table[from + slot]] << slot;
+                stream[slot >>> 6] = slot % 64 == 0 ? bit : stream[slot >>> 6] | bit;
+            }
+            long result = 0;
+            for (int n = first, offset = 0; n < last; n++) {
+                int activationSum = (int) ((bias >>> n) & 1L);
+                for (int w = 0; w < weightWordsPerNeuron; w++, offset += 64) {
+                    int shift = offset & 63;
+                    long field = stream[offset >>> 6] >>> shift;
+                    if (shift != 0)
+                        field |= stream[(offset >>> 6) + 1] << -shift;
+                    activationSum += Long.bitCount(field & mask[n * weightWordsPerNeuron + w]
+                        & (w == weightWordsPerNeuron - 1 ? lastWordMask : -1L));
+                }
+                offset += incomingConnections - (weightWordsPerNeuron << 6);
+                if (activationSum >= threshold)
+                    result |= 1L << n;
+            }
+            outputs[word] = result;
+        }
+    }
+
+    /**
+     * Buffers of one thread.
+     */
+    private static final class Scratch {
+        /**
+         * Expanded inputs of single-threaded evaluations.
+         */
+        int[] inputs = new int[0];
+
+        /**
+         * Input bitstream of the word being evaluated.
+         */
+        long[] stream = new long[0];
+    }
+}
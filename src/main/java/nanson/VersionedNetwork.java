@@ -0,0 +1,117 @@
+package nanson;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Serves inference from a network while it is being trained, read-copy-update
+ * style. Writers mutate a network and publish it; publishing compiles an
+ * immutable {@link NetworkVersion} and swaps it in with a single volatile write.
+ * Readers take the current version with a single volatile read and evaluate it
+ * without locks, so they never see a half-applied mutation and never wait for a
+ * writer, however long training or compilation takes.
+ * <p>
+ * Neurons themselves are not thread-safe, so readers never touch them: a network
+ * must only be mutated and published by one thread at a time. The methods that
+ * take a network serialize writers with a lock that readers never use.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+public class VersionedNetwork {
+    /**
+     * Lock serializing writers.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Network mutated by {@link #update(Consumer)}. Guarded by
+     * {@link #writeLock}.
+     */
+    private NeuronDatabase workingCopy;
+
+    /**
+     * The version readers get.
+     */
+    private volatile NetworkVersion current;
+
+    /**
+     * Constructs a VersionedNetwork and publishes the network as version 0.
+     *
+     * @param neuronDatabase is the network to serve; it becomes the working copy
+     *                       mutated by {@link #update(Consumer)}.
+     */
+    public VersionedNetwork(@NotNull NeuronDatabase neuronDatabase) {
+        workingCopy = neuronDatabase;
+        current = new NetworkVersion(0, neuronDatabase.getInferencePlan());
+    }
+
+    /**
+     * Gets the latest published version. Never blocks.
+     *
+     * @return the current version.
+     */
+    public NetworkVersion current() {
+        return current;
+    }
+
+    /**
+     * Gets the number of the latest published version.
+     *
+     * @return the current version number.
+     */
+    public long getVersion() {
+        return current.getVersion();
+    }
+
+    /**
+     * Mutates the working copy and publishes the result as a new version.
+     *
+     * @param mutation is applied to the working copy; it must not keep the
+     *                 network for use after it returns.
+     * @return the published version.
+     */
+    public NetworkVersion update(@NotNull Consumer<? super NeuronDatabase> mutation) {
+        writeLock.lock();
+        try {
+            mutation.accept(workingCopy);
+            return install(workingCopy);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes another network as a new version, e.g. the best network of a
+     * trainer. It becomes the working copy mutated by {@link #update(Consumer)},
+     * so the caller must stop mutating it, or keep mutating it only after a
+     * {@link NeuronDatabase#copy()}.
+     *
+     * @param neuronDatabase is the network to publish.
+     * @return the published version.
+     */
+    public NetworkVersion publish(@NotNull NeuronDatabase neuronDatabase) {
+        writeLock.lock();
+        try {
+            workingCopy = neuronDatabase;
+            return install(neuronDatabase);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Compiles a network and makes it the current version. Must hold
+     * {@link #writeLock}.
+     *
+     * @param neuronDatabase is the network to compile.
+     * @return the new version.
+     */
+    private NetworkVersion install(NeuronDatabase neuronDatabase) {
+        NetworkVersion version = new NetworkVersion(current.getVersion() + 1, neuronDatabase.getInferencePlan());
+        current = version;
+        return version;
+    }
+}
@@ -0,0 +1,148 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link ActivationFeed}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class ActivationFeedTest {
+    /**
+     * Layer lengths of the stress test; whole words, so every bit of every word
+     * is a neuron.
+     */
+    private static final int[] LAYER_LENGTHS = {128, 256, 192};
+
+    /**
+     * Number of frames the stress test publishes.
+     */
+    private static final int FRAMES = 200_000;
+
+    /**
+     * Number of polling threads of the stress test.
+     */
+    private static final int POLLERS = 3;
+
+    /**
+     * Gets the word the stress test writes everywhere in a frame.
+     *
+     * @param frame is the number of the frame.
+     * @return the word.
+     */
+    private static long pattern(long frame) {
+        return frame * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * A publisher writes the same word to every activation word of the network
+     * in each frame while pollers read concurrently. Every polled state must be
+     * one whole frame, frames must never go backwards and the changes of every
+     * poll must lead from the previous state to the new one.
+     */
+    @Test
+    void polledFramesAreConsistentUnderConcurrentPublishing() throws InterruptedException {
+        NeuronDatabase neuronDatabase = new NeuronDatabase(true, 2, LAYER_LENGTHS);
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        ActivationFeed activationFeed = new ActivationFeed(neuronDatabase, 4);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> pollers = new ArrayList<>();
+        for (int p = 0; p < POLLERS; p++) {
+            ActivationFeed.Subscriber subscriber = activationFeed.subscribe();
+            Thread poller = new Thread(() -> {
+                try {
+                    poll(subscriber, done);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            pollers.add(poller);
+            poller.start();
+        }
+        for (long frame = 1; frame <= FRAMES && failure.get() == null; frame++) {
+            for (int a = 0; a < LAYER_LENGTHS.length; a++)
+                for (int w = 0; w < networkStorage.getActivationWordCount(a); w++)
+                    networkStorage.setActivationWord(a, w, pattern(frame));
+            assertTrue(activationFeed.publish());
+        }
+        done.set(true);
+        for (Thread poller : pollers)
+            poller.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+    }
+
+    /**
+     * Polls until the publisher is done and the last frame was read, checking
+     * every poll.
+     *
+     * @param subscriber is the subscriber to poll.
+     * @param done       is set once the publisher is done.
+     */
+    private static void poll(ActivationFeed.Subscriber subscriber, AtomicBoolean done) {
+        long[][] previous = new long[LAYER_LENGTHS.length][];
+        for (int a = 0; a < LAYER_LENGTHS.length; a++)
+            previous[a] = new long[PackedNetwork.wordsFor(LAYER_LENGTHS[a])];
+        long lastFrame = 0;
+        while (true) {
+            boolean finished = done.get();
+            if (!subscriber.poll()) {
+                if (finished)
+                    break;
+                continue;
+            }
+            long word = subscriber.getActivations(0)[0];
+            for (int a = 0; a < LAYER_LENGTHS.length; a++) {
+                long[] activations = subscriber.getActivations(a);
+                long[] changes = subscriber.getChanges(a);
+                for (int w = 0; w < activations.length; w++) {
+                    assertEquals(word, activations[w], "torn frame at sequence " + subscriber.getSequence());
+                    assertEquals(previous[a][w] ^ changes[w], activations[w], "changes don't lead to the frame");
+                }
+                System.arraycopy(activations, 0, previous[a], 0, activations.length);
+            }
+            long frame = subscriber.getSequence();
+            assertEquals(pattern(frame), word, "frame doesn't match its sequence number");
+            assertTrue(frame > lastFrame, "frames went backwards");
+            lastFrame = frame;
+        }
+        assertEquals(FRAMES, lastFrame, "the last frame was not read");
+    }
+
+    /**
+     * A subscriber that fell behind gets the latest state and one diff from the
+     * state it had seen.
+     */
+    @Test
+    void slowSubscriberCoalescesToLatestState() {
+        NeuronDatabase neuronDatabase = new NeuronDatabase(true, 2, 70, 10);
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        ActivationFeed activationFeed = new ActivationFeed(neuronDatabase, 2);
+        ActivationFeed.Subscriber subscriber = activationFeed.subscribe();
+        networkStorage.setActivationWord(0, 0, 0b1011);
+        assertTrue(activationFeed.publish());
+        assertTrue(subscriber.poll());
+        for (long word = 1; word <= 10; word++) {
+            networkStorage.setActivationWord(0, 0, word << 8);
+            activationFeed.publish();
+        }
+        assertTrue(subscriber.poll());
+        assertArrayEquals(new long[]{10L << 8, 0}, subscriber.getActivations(0));
+        assertArrayEquals(new long[]{(10L << 8) ^ 0b1011, 0}, subscriber.getChanges(0));
+        assertEquals(9, subscriber.getSkippedFrames());
+        assertFalse(subscriber.poll());
+        assertFalse(activationFeed.publish(), "an unchanged network publishes nothing");
+    }
+}
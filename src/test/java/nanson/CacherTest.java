@@ -0,0 +1,129 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link Cacher}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class CacherTest {
+    /**
+     * Number of threads requesting the data together.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Threads requesting the data while it is being loaded cause a single load
+     * and all get its value; the loading thread counts a miss and every other
+     * thread a wait.
+     */
+    @Test
+    void concurrentRequestsLoadOnce() throws InterruptedException, ExecutionException {
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object data = new Object();
+        Cacher<Object> cacher = new Cacher<>(() -> {
+            loadCount.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return data;
+        }, true);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            results.add(executor.submit(cacher::getData));
+            loading.await();
+            for (int t = 1; t < THREADS; t++)
+                results.add(executor.submit(cacher::getData));
+            while (cacher.getStatistics().getWaitCount() < THREADS - 1)
+                Thread.onSpinWait();
+            release.countDown();
+            for (Future<Object> result : results)
+                assertSame(data, result.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loadCount.get());
+        CacheStatistics statistics = cacher.getStatistics();
+        assertEquals(0, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(THREADS - 1, statistics.getWaitCount());
+        assertEquals(THREADS, statistics.getRequestCount());
+    }
+
+    /**
+     * A cached value is returned without loading until the cache is
+     * invalidated, and the statistics count every request.
+     */
+    @Test
+    void invalidateReloads() {
+        AtomicInteger loadCount = new AtomicInteger();
+        Cacher<Integer> cacher = new Cacher<>(loadCount::incrementAndGet, true);
+        assertFalse(cacher.isValid());
+        assertEquals(1, cacher.getData());
+        assertEquals(1, cacher.getData());
+        assertTrue(cacher.isValid());
+        cacher.invalidate();
+        assertFalse(cacher.isValid());
+        assertEquals(2, cacher.getData());
+        CacheStatistics statistics = cacher.getStatistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(0, statistics.getWaitCount());
+        assertEquals(0, statistics.getLoadFailureCount());
+        assertEquals(0, statistics.getEvictionCount());
+    }
+
+    /**
+     * A supplier that throws leaves the cache invalid, counts a failed load and
+     * is called again by the next request.
+     */
+    @Test
+    void failedLoadIsRetried() {
+        AtomicInteger loadCount = new AtomicInteger();
+        Cacher<Integer> cacher = new Cacher<>(() -> {
+            if (loadCount.incrementAndGet() == 1)
+                throw new IllegalStateException("first load");
+            return loadCount.get();
+        }, true);
+        assertThrows(IllegalStateException.class, cacher::getData);
+        assertFalse(cacher.isValid());
+        assertEquals(2, cacher.getData());
+        CacheStatistics statistics = cacher.getStatistics();
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(1, statistics.getLoadFailureCount());
+    }
+
+    /**
+     * A supplier requesting its own cache fails instead of waiting for itself.
+     */
+    @Test
+    void recursiveLoadFails() {
+        List<Cacher<Object>> self = new ArrayList<>();
+        Cacher<Object> cacher = new Cacher<>(() -> self.getFirst().getData());
+        self.add(cacher);
+        assertThrows(IllegalStateException.class, cacher::getData);
+    }
+}
@@ -0,0 +1,154 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests {@link FanOutIndex} against a brute-force scan of the incoming neuron
+ * indexes of every neuron, on seeded random networks of both storage models.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class FanOutIndexTest {
+    /**
+     * Fan-in and layer lengths of every test case.
+     */
+    private static final int[][][] CASES = {
+        {{3}, {7, 64, 64, 7}},
+        {{7}, {20, 30, 25, 20, 10}},
+        {{65}, {70, 100, 65}},
+    };
+
+    /**
+     * The index built from a new network lists exactly the connections reading
+     * each neuron.
+     */
+    @Test
+    void newIndexMatchesScan() {
+        for (int[][] testCase : CASES) {
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 1, testCase[0][0], testCase[1]);
+                assertMatchesScan(neuronDatabase, describe(packed, testCase) + ", new");
+            }
+        }
+    }
+
+    /**
+     * The index follows random mutations, including rewires, and stays exact
+     * while rows move and the arrays are compacted.
+     */
+    @Test
+    void rewiresMatchScan() {
+        for (int[][] testCase : CASES) {
+            int[] shape = testCase[1];
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 2, testCase[0][0], shape);
+                neuronDatabase.setSeed(3);
+                neuronDatabase.getFanOutIndex();
+                SplittableRandom random = new SplittableRandom(4);
+                String name = describe(packed, testCase);
+                for (int step = 0; step < 2_000; step++) {
+                    int layer = 1 + random.nextInt(shape.length - 1);
+                    neuronDatabase.getNeuron(layer, random.nextInt(shape[layer])).changeOneThing();
+                    if (step % 100 == 0)
+                        assertMatchesScan(neuronDatabase, name + ", step " + step);
+                }
+                assertMatchesScan(neuronDatabase, name + ", after mutations");
+            }
+        }
+    }
+
+    /**
+     * The index follows grown data and activation layers and added output
+     * layers, and the connections of their neurons keep being followed when
+     * they are rewired afterwards.
+     */
+    @Test
+    void growthMatchesScan() {
+        for (int[][] testCase : CASES) {
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 5, testCase[0][0], testCase[1]);
+                neuronDatabase.setSeed(6);
+                neuronDatabase.getFanOutIndex();
+                SplittableRandom random = new SplittableRandom(7);
+                String name = describe(packed, testCase);
+                for (int round = 0; round < 9; round++) {
+                    switch (round % 3) {
+                        case 0 -> neuronDatabase.growLayer(1 + random.nextInt(neuronDatabase.getNumberOfLayers() - 1),
+                            1 + random.nextInt(100));
+                        case 1 -> neuronDatabase.growLayer(0, 1 + random.nextInt(20));
+                        default -> neuronDatabase.addLayer(1 + random.nextInt(30));
+                    }
+                    assertMatchesScan(neuronDatabase, name + ", round " + round);
+                    for (int step = 0; step < 300; step++) {
+                        int layer = 1 + random.nextInt(neuronDatabase.getNumberOfLayers() - 1);
+                        int length = neuronDatabase.getLayerLength(layer);
+                        // Rewiring favours the newest neurons, whose rows start empty.
+                        int neuron = random.nextBoolean() ? length - 1 - random.nextInt(Math.min(length, 10))
+                            : random.nextInt(length);
+                        neuronDatabase.getNeuron(layer, neuron).changeOneThing();
+                    }
+                    assertMatchesScan(neuronDatabase, name + ", round " + round + ", after mutations");
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the index of every layer lists exactly the connections of the
+     * next layer reading each neuron, counting a neuron read twice by the same
+     * neuron twice.
+     *
+     * @param neuronDatabase is the network.
+     * @param message        describes the test case.
+     */
+    private static void assertMatchesScan(NeuronDatabase neuronDatabase, String message) {
+        FanOutIndex fanOutIndex = neuronDatabase.getFanOutIndex();
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        int incomingConnections = neuronDatabase.getIncomingConnections();
+        int numberOfLayers = neuronDatabase.getNumberOfLayers();
+        for (int a = 0; a < numberOfLayers; a++) {
+            int length = neuronDatabase.getLayerLength(a);
+            int[][] expected = new int[length][0];
+            if (a + 1 < numberOfLayers) {
+                for (int b = 0; b < neuronDatabase.getLayerLength(a + 1); b++) {
+                    for (int k = 0; k < incomingConnections; k++) {
+                        int incoming = networkStorage != null ? networkStorage.getIncomingNeuronIndex(a + 1, b, k)
+                            : ((ActivationNeuron) neuronDatabase.getNeuron(a + 1, b)).getIncomingNeuronIndexes()[k];
+                        expected[incoming] = Arrays.copyOf(expected[incoming], expected[incoming].length + 1);
+                        expected[incoming][expected[incoming].length - 1] = b * incomingConnections + k;
+                    }
+                }
+            }
+            for (int b = 0; b < length; b++) {
+                int fanOut = fanOutIndex.getFanOut(a, b);
+                assertEquals(expected[b].length, fanOut, message + ", fan-out of neuron " + b + " of layer " + a);
+                int[] actual = new int[fanOut];
+                for (int i = 0; i < fanOut; i++) {
+                    actual[i] = fanOutIndex.getReader(a, b, i) * incomingConnections
+                        + fanOutIndex.getReaderSlot(a, b, i);
+                }
+                Arrays.sort(actual);
+                assertArrayEquals(expected[b], actual, message + ", readers of neuron " + b + " of layer " + a);
+            }
+        }
+    }
+
+    /**
+     * Describes a test case for a failure message.
+     *
+     * @param packed   whether the network is packed.
+     * @param testCase is the fan-in and the length of every layer.
+     * @return the description.
+     */
+    private static String describe(boolean packed, int[][] testCase) {
+        return (packed ? "packed" : "objects") + ", fan-in " + testCase[0][0] + ", layers "
+            + Arrays.toString(testCase[1]);
+    }
+}
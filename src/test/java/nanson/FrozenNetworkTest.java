@@ -0,0 +1,57 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Tests {@link FrozenNetwork} against a forward pass through the object model,
+ * on seeded random networks.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class FrozenNetworkTest {
+    /**
+     * Fan-ins tested: tiny, one word, and more than one word with a partial last
+     * word of weights.
+     */
+    private static final int[] FAN_INS = {3, 7, 64, 65, 100, 130};
+
+    /**
+     * Layer lengths tested; most layers end in a partial activation word.
+     */
+    private static final int[][] SHAPES = {{70, 100}, {130, 65, 100}, {100, 129, 65, 100}, {7, 64, 64, 7}};
+
+    /**
+     * Number of inputs per network.
+     */
+    private static final int SAMPLES = 100;
+
+    /**
+     * Every input run through the program frozen from a plan of either storage
+     * model gives the output of the object model.
+     */
+    @Test
+    void frozenProgramMatchesObjectModel() {
+        for (int incomingConnections : FAN_INS) {
+            for (int[] shape : SHAPES) {
+                long seed = 31L * incomingConnections + Arrays.hashCode(shape);
+                NeuronDatabase reference = RandomNetworks.create(false, seed, incomingConnections, shape);
+                FrozenNetwork frozenObjects = new FrozenNetwork(new InferencePlan(RandomNetworks.create(false, seed,
+                    incomingConnections, shape)));
+                FrozenNetwork frozenPacked = RandomNetworks.create(true, seed, incomingConnections, shape).freeze();
+                boolean[][] inputs = RandomNetworks.inputs(seed, SAMPLES, shape[0]);
+                for (int s = 0; s < SAMPLES; s++) {
+                    boolean[] expected = RandomNetworks.evaluate(reference, inputs[s]);
+                    String message = "fan-in " + incomingConnections + ", layers " + Arrays.toString(shape)
+                        + ", sample " + s;
+                    assertArrayEquals(expected, frozenObjects.evaluate(inputs[s]), message);
+                    assertArrayEquals(expected, frozenPacked.evaluate(inputs[s]), message);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link IncrementalEvaluator} against full forward passes of a copy of
+ * the network, on seeded random networks of both storage models.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class IncrementalEvaluatorTest {
+    /**
+     * Fan-in and layer lengths of every test case.
+     */
+    private static final int[][][] CASES = {
+        {{3}, {7, 64, 64, 7}},
+        {{7}, {20, 30, 25, 20, 10}},
+        {{65}, {70, 100, 65}},
+    };
+
+    /**
+     * Number of mutations and input changes per test case.
+     */
+    private static final int STEPS = 300;
+
+    /**
+     * After every random mutation or input change, every layer holds the
+     * activations of a full forward pass.
+     */
+    @Test
+    void mutationsAndInputChangesMatchFullPass() {
+        for (int[][] testCase : CASES) {
+            int incomingConnections = testCase[0][0];
+            int[] shape = testCase[1];
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 11, incomingConnections, shape);
+                neuronDatabase.setSeed(12);
+                SplittableRandom random = new SplittableRandom(13);
+                boolean[] input = RandomNetworks.inputs(14, 1, shape[0])[0];
+                String name = describe(packed, incomingConnections, shape);
+                try (IncrementalEvaluator incrementalEvaluator = new IncrementalEvaluator(neuronDatabase)) {
+                    incrementalEvaluator.evaluate(input);
+                    assertMatchesFullPass(neuronDatabase, input, name + ", first pass");
+                    for (int step = 0; step < STEPS; step++) {
+                        step(neuronDatabase, random, input);
+                        incrementalEvaluator.evaluate(input);
+                        assertMatchesFullPass(neuronDatabase, input, name + ", step " + step);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluating unchanged inputs of an unchanged network re-evaluates nothing,
+     * and a mutation of an output neuron re-evaluates at most that neuron.
+     */
+    @Test
+    void unchangedNetworkIsNotReevaluated() {
+        int[] shape = {20, 30, 25, 20, 10};
+        for (boolean packed : new boolean[]{false, true}) {
+            NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 21, 7, shape);
+            neuronDatabase.setSeed(22);
+            boolean[] input = RandomNetworks.inputs(23, 1, shape[0])[0];
+            try (IncrementalEvaluator incrementalEvaluator = new IncrementalEvaluator(neuronDatabase)) {
+                incrementalEvaluator.evaluate(input);
+                assertEquals(30 + 25 + 20 + 10, incrementalEvaluator.getLastEvaluationCount());
+                incrementalEvaluator.evaluate(input);
+                assertEquals(0, incrementalEvaluator.getLastEvaluationCount());
+                neuronDatabase.getNeuron(4, 3).changeOneThing();
+                incrementalEvaluator.evaluate(input);
+                assertTrue(incrementalEvaluator.getLastEvaluationCount() <= 1);
+            }
+        }
+    }
+
+    /**
+     * A forward pass run without the evaluator is replaced by a full pass once
+     * the evaluator is invalidated.
+     */
+    @Test
+    void invalidateEvaluatesWholeNetwork() {
+        int[] shape = {20, 30, 25, 20, 10};
+        for (boolean packed : new boolean[]{false, true}) {
+            NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 31, 7, shape);
+            boolean[][] inputs = RandomNetworks.inputs(32, 2, shape[0]);
+            try (IncrementalEvaluator incrementalEvaluator = new IncrementalEvaluator(neuronDatabase)) {
+                incrementalEvaluator.evaluate(inputs[0]);
+                neuronDatabase.computeActivations(inputs[1]);
+                incrementalEvaluator.invalidate();
+                incrementalEvaluator.evaluate(inputs[0]);
+                assertEquals(30 + 25 + 20 + 10, incrementalEvaluator.getLastEvaluationCount());
+                assertMatchesFullPass(neuronDatabase, inputs[0], describe(packed, 7, shape));
+            }
+        }
+    }
+
+    /**
+     * Layers grown and layers added while the evaluator is attached are
+     * evaluated, including new data neurons, and later mutations of the new
+     * neurons are still followed. With a fan-in of 1 every new activation
+     * neuron is active before any mutation, so it must be evaluated even though
+     * none of its inputs changed. That network is not mutated, since changing
+     * the next neuron index of a neuron with one connection never ends.
+     */
+    @Test
+    void growthWhileAttachedMatchesFullPass() {
+        int[] shape = {20, 30, 25, 10};
+        for (int incomingConnections : new int[]{1, 7}) {
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 41, incomingConnections, shape);
+                neuronDatabase.setSeed(42);
+                SplittableRandom random = new SplittableRandom(43);
+                String name = describe(packed, incomingConnections, shape);
+                try (IncrementalEvaluator incrementalEvaluator = new IncrementalEvaluator(neuronDatabase)) {
+                    boolean[] input = RandomNetworks.inputs(44, 1, shape[0])[0];
+                    incrementalEvaluator.evaluate(input);
+                    for (int round = 0; round < 6; round++) {
+                        grow(neuronDatabase, random, round);
+                        input = Arrays.copyOf(input, neuronDatabase.getLayerLength(0));
+                        incrementalEvaluator.evaluate(input);
+                        assertMatchesFullPass(neuronDatabase, input, name + ", round " + round);
+                        for (int i = 0; i < input.length; i++)
+                            input[i] = random.nextBoolean();
+                        incrementalEvaluator.evaluate(input);
+                        assertMatchesFullPass(neuronDatabase, input, name + ", round " + round + ", new input");
+                        for (int step = 0; incomingConnections > 1 && step < 50; step++) {
+                            step(neuronDatabase, random, input);
+                            incrementalEvaluator.evaluate(input);
+                            assertMatchesFullPass(neuronDatabase, input, name + ", round " + round + ", step "
+                                + step);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows a network: an activation layer, the data layer or a new output
+     * layer, in turn.
+     *
+     * @param neuronDatabase is the network.
+     * @param random         is the source of the new lengths.
+     * @param round          is the number of the growth.
+     */
+    private static void grow(NeuronDatabase neuronDatabase, SplittableRandom random, int round) {
+        switch (round % 3) {
+            case 0 -> neuronDatabase.growLayer(1 + random.nextInt(neuronDatabase.getNumberOfLayers() - 1),
+                1 + random.nextInt(70));
+            case 1 -> neuronDatabase.growLayer(0, 1 + random.nextInt(10));
+            default -> neuronDatabase.addLayer(1 + random.nextInt(20));
+        }
+    }
+
+    /**
+     * Applies one random change: usually a mutation of a random activation
+     * neuron, otherwise a flip of a few input bits.
+     *
+     * @param neuronDatabase is the network.
+     * @param random         is the source of the changes.
+     * @param input          are the input bits, changed in place.
+     */
+    private static void step(NeuronDatabase neuronDatabase, SplittableRandom random, boolean[] input) {
+        if (random.nextInt(4) == 0) {
+            for (int i = 1 + random.nextInt(3); i > 0; i--)
+                input[random.nextInt(input.length)] ^= true;
+            return;
+        }
+        int layer = 1 + random.nextInt(neuronDatabase.getNumberOfLayers() - 1);
+        if (neuronDatabase.getLayerLength(layer) > 0)
+            neuronDatabase.getNeuron(layer, random.nextInt(neuronDatabase.getLayerLength(layer))).changeOneThing();
+    }
+
+    /**
+     * Checks every layer against a full forward pass of a copy of the network.
+     *
+     * @param neuronDatabase is the network evaluated incrementally.
+     * @param input          are the input bits.
+     * @param message        describes the test case.
+     */
+    private static void assertMatchesFullPass(NeuronDatabase neuronDatabase, boolean[] input, String message) {
+        NeuronDatabase reference = neuronDatabase.copy();
+        reference.computeActivations(input);
+        for (int a = 0; a < neuronDatabase.getNumberOfLayers(); a++)
+            assertArrayEquals(reference.getActivations(a), neuronDatabase.getActivations(a), message + ", layer " + a);
+    }
+
+    /**
+     * Describes a test case for a failure message.
+     *
+     * @param packed              whether the network is packed.
+     * @param incomingConnections is the fan-in.
+     * @param shape               is the length of every layer.
+     * @return the description.
+     */
+    private static String describe(boolean packed, int incomingConnections, int[] shape) {
+        return (packed ? "packed" : "objects") + ", fan-in " + incomingConnections + ", layers "
+            + Arrays.toString(shape);
+    }
+}
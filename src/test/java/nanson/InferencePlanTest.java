@@ -0,0 +1,126 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests {@link InferencePlan} against a forward pass through the object model,
+ * on seeded random networks.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class InferencePlanTest {
+    /**
+     * Fan-ins tested: tiny, one word, and more than one word with a partial last
+     * word of weights.
+     */
+    private static final int[] FAN_INS = {3, 7, 64, 65, 100, 130};
+
+    /**
+     * Layer lengths tested; most layers end in a partial activation word.
+     */
+    private static final int[][] SHAPES = {{70, 100}, {130, 65, 100}, {100, 129, 65, 100}, {7, 64, 64, 7}};
+
+    /**
+     * Number of inputs per network: one full bit-sliced batch and a partial one.
+     */
+    private static final int SAMPLES = 100;
+
+    /**
+     * Every input evaluated on its own by the plan gives the output of the
+     * object model, in both storage models.
+     */
+    @Test
+    void singleEvaluationMatchesObjectModel() {
+        for (int incomingConnections : FAN_INS) {
+            for (int[] shape : SHAPES) {
+                long seed = seedOf(incomingConnections, shape);
+                NeuronDatabase reference = RandomNetworks.create(false, seed, incomingConnections, shape);
+                InferencePlan objectPlan = new InferencePlan(reference);
+                InferencePlan packedPlan = new InferencePlan(RandomNetworks.create(true, seed, incomingConnections,
+                    shape));
+                boolean[][] inputs = RandomNetworks.inputs(seed, SAMPLES, shape[0]);
+                for (int s = 0; s < SAMPLES; s++) {
+                    boolean[] expected = RandomNetworks.evaluate(reference, inputs[s]);
+                    String message = describe(incomingConnections, shape, s);
+                    assertArrayEquals(expected, objectPlan.evaluate(inputs[s]), message);
+                    assertArrayEquals(expected, packedPlan.evaluate(inputs[s]), message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inputs evaluated bit-sliced, including a partial batch of fewer than 64
+     * samples, give the output of the object model for every sample.
+     */
+    @Test
+    void batchEvaluationMatchesObjectModel() {
+        for (int incomingConnections : FAN_INS) {
+            for (int[] shape : SHAPES) {
+                long seed = seedOf(incomingConnections, shape);
+                NeuronDatabase reference = RandomNetworks.create(false, seed, incomingConnections, shape);
+                InferencePlan inferencePlan = new InferencePlan(RandomNetworks.create(true, seed,
+                    incomingConnections, shape));
+                boolean[][] inputs = RandomNetworks.inputs(seed, SAMPLES, shape[0]);
+                boolean[][] outputs = inferencePlan.evaluate(inputs);
+                assertEquals(SAMPLES, outputs.length);
+                for (int s = 0; s < SAMPLES; s++)
+                    assertArrayEquals(RandomNetworks.evaluate(reference, inputs[s]), outputs[s],
+                        describe(incomingConnections, shape, s));
+            }
+        }
+    }
+
+    /**
+     * A batch given as 64 bit-sliced words gives the same outputs as the batch
+     * given as boolean arrays.
+     */
+    @Test
+    void slicesMatchBatchEvaluation() {
+        int[] shape = {130, 65, 100};
+        InferencePlan inferencePlan = new InferencePlan(RandomNetworks.create(true, 1, 65, shape));
+        boolean[][] inputs = RandomNetworks.inputs(2, Long.SIZE, shape[0]);
+        long[] slices = new long[shape[0]];
+        for (int s = 0; s < Long.SIZE; s++)
+            for (int i = 0; i < shape[0]; i++)
+                if (inputs[s][i])
+                    slices[i] |= 1L << s;
+        long[] outputSlices = inferencePlan.evaluateSlices(slices);
+        boolean[][] outputs = inferencePlan.evaluate(inputs);
+        for (int s = 0; s < Long.SIZE; s++) {
+            boolean[] output = new boolean[outputSlices.length];
+            for (int b = 0; b < output.length; b++)
+                output[b] = (outputSlices[b] >>> s & 1L) != 0;
+            assertArrayEquals(outputs[s], output, "sample " + s);
+        }
+    }
+
+    /**
+     * Gets the seed of the network and inputs of a test case.
+     *
+     * @param incomingConnections is the fan-in.
+     * @param shape               is the length of every layer.
+     * @return the seed.
+     */
+    private static long seedOf(int incomingConnections, int[] shape) {
+        return 31L * incomingConnections + Arrays.hashCode(shape);
+    }
+
+    /**
+     * Describes a test case for a failure message.
+     *
+     * @param incomingConnections is the fan-in.
+     * @param shape               is the length of every layer.
+     * @param sample              is the index of the input.
+     * @return the description.
+     */
+    private static String describe(int incomingConnections, int[] shape, int sample) {
+        return "fan-in " + incomingConnections + ", layers " + Arrays.toString(shape) + ", sample " + sample;
+    }
+}
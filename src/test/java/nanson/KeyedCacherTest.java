@@ -0,0 +1,243 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link KeyedCacher}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class KeyedCacherTest {
+    /**
+     * Number of threads requesting keys together.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Number of keys of the contention test.
+     */
+    private static final int KEYS = 2_000;
+
+    /**
+     * Number of rounds of the contention test, each with a new cache.
+     */
+    private static final int ROUNDS = 50;
+
+    /**
+     * Maximum size of the cache of the scan test.
+     */
+    private static final int SCAN_CACHE_SIZE = 100;
+
+    /**
+     * Number of keys the scan test requests over and over.
+     */
+    private static final int HOT_KEYS = 60;
+
+    /**
+     * Number of keys the scan test scans between two requests of a hot key.
+     */
+    private static final int SCAN_KEYS_PER_HOT_KEY = 3;
+
+    /**
+     * Threads requesting the same keys in the same order, so that they miss
+     * each key together, load every key exactly once in both eviction policies,
+     * and every request is counted as a hit, miss or wait.
+     */
+    @Test
+    void concurrentRequestsLoadEveryKeyOnce() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (KeyedCacher.EvictionPolicy policy : KeyedCacher.EvictionPolicy.values()) {
+                for (int round = 0; round < ROUNDS; round++) {
+                    AtomicIntegerArray loadCounts = new AtomicIntegerArray(KEYS);
+                    KeyedCacher<Integer, Integer> keyedCacher = new KeyedCacher<>(key -> {
+                        loadCounts.incrementAndGet(key);
+                        return -key;
+                    }, 2 * KEYS, null, policy, true);
+                    CyclicBarrier start = new CyclicBarrier(THREADS);
+                    List<Future<?>> threads = new ArrayList<>();
+                    for (int t = 0; t < THREADS; t++) {
+                        threads.add(executor.submit(() -> {
+                            start.await();
+                            for (int key = 0; key < KEYS; key++)
+                                if (keyedCacher.get(key) != -key)
+                                    throw new AssertionError("Wrong value of key " + key);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> thread : threads)
+                        thread.get();
+                    for (int key = 0; key < KEYS; key++)
+                        assertEquals(1, loadCounts.get(key), policy + ", round " + round + ", key " + key);
+                    CacheStatistics statistics = keyedCacher.getStatistics();
+                    assertEquals(KEYS, statistics.getMissCount(), policy + " misses");
+                    assertEquals((long) THREADS * KEYS, statistics.getRequestCount(), policy + " requests");
+                    assertEquals(0, statistics.getEvictionCount(), policy + " evictions");
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A full LRU cache evicts its least recently used entry, where a hit makes
+     * an entry the most recently used one.
+     */
+    @Test
+    void lruEvictsLeastRecentlyUsed() {
+        AtomicInteger loadCount = new AtomicInteger();
+        KeyedCacher<Integer, Integer> keyedCacher = new KeyedCacher<>(key -> {
+            loadCount.incrementAndGet();
+            return key * 10;
+        }, 3, null, KeyedCacher.EvictionPolicy.LRU, true);
+        keyedCacher.get(1);
+        keyedCacher.get(2);
+        keyedCacher.get(3);
+        keyedCacher.get(1);
+        keyedCacher.get(4);
+        assertNull(keyedCacher.getIfPresent(2));
+        keyedCacher.get(3);
+        keyedCacher.get(5);
+        assertNull(keyedCacher.getIfPresent(1));
+        assertEquals(30, keyedCacher.getIfPresent(3));
+        assertEquals(40, keyedCacher.getIfPresent(4));
+        assertEquals(50, keyedCacher.getIfPresent(5));
+        assertEquals(3, keyedCacher.size());
+        assertEquals(5, loadCount.get());
+        CacheStatistics statistics = keyedCacher.getStatistics();
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(5, statistics.getMissCount());
+        assertEquals(0, statistics.getWaitCount());
+        assertEquals(2, statistics.getEvictionCount());
+    }
+
+    /**
+     * While a scan of keys requested once runs through a full cache, a
+     * W-TinyLFU cache keeps every key that is still requested over and over, and
+     * an LRU cache of the same size doesn't.
+     */
+    @Test
+    void tinyLfuKeepsFrequentKeysThroughScan() {
+        assertEquals(HOT_KEYS, countHotKeysAfterScan(KeyedCacher.EvictionPolicy.TINY_LFU));
+        assertTrue(countHotKeysAfterScan(KeyedCacher.EvictionPolicy.LRU) < HOT_KEYS);
+    }
+
+    /**
+     * Requests hot keys over and over, then scans keys requested once while
+     * still requesting a hot key after every few scanned keys.
+     *
+     * @param policy is the eviction policy.
+     * @return the number of hot keys still cached after the scan.
+     */
+    private static int countHotKeysAfterScan(KeyedCacher.EvictionPolicy policy) {
+        KeyedCacher<Integer, Integer> keyedCacher = new KeyedCacher<>(key -> key, SCAN_CACHE_SIZE, null, policy,
+            true);
+        for (int r = 0; r < 5; r++)
+            for (int key = 0; key < HOT_KEYS; key++)
+                keyedCacher.get(key);
+        for (int s = 0; s < 20 * SCAN_CACHE_SIZE; s++) {
+            keyedCacher.get(HOT_KEYS + s);
+            if (s % SCAN_KEYS_PER_HOT_KEY == 0)
+                keyedCacher.get(s / SCAN_KEYS_PER_HOT_KEY % HOT_KEYS);
+        }
+        int hotKeys = 0;
+        for (int key = 0; key < HOT_KEYS; key++)
+            if (keyedCacher.getIfPresent(key) != null)
+                hotKeys++;
+        assertEquals(SCAN_CACHE_SIZE, keyedCacher.size(), policy + " size");
+        return hotKeys;
+    }
+
+    /**
+     * An entry is returned until it reaches its expiration age, then loaded
+     * again; {@link KeyedCacher#cleanUp()} removes expired entries that are not
+     * requested.
+     */
+    @Test
+    void entriesExpireAfterWrite() {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger loadCount = new AtomicInteger();
+        KeyedCacher<String, Integer> keyedCacher = new KeyedCacher<>(key -> loadCount.incrementAndGet(), 10,
+            Duration.ofNanos(100), KeyedCacher.EvictionPolicy.LRU, true, time::get);
+        assertEquals(1, keyedCacher.get("a"));
+        time.set(50);
+        assertEquals(2, keyedCacher.get("b"));
+        time.set(99);
+        assertEquals(1, keyedCacher.get("a"));
+        time.set(100);
+        assertNull(keyedCacher.getIfPresent("a"));
+        assertEquals(3, keyedCacher.get("a"));
+        assertEquals(2, keyedCacher.get("b"));
+        time.set(150);
+        assertEquals(2, keyedCacher.size());
+        keyedCacher.cleanUp();
+        assertEquals(1, keyedCacher.size());
+        assertNull(keyedCacher.getIfPresent("b"));
+        assertEquals(3, keyedCacher.get("a"));
+        CacheStatistics statistics = keyedCacher.getStatistics();
+        assertEquals(3, statistics.getHitCount());
+        assertEquals(3, statistics.getMissCount());
+        assertEquals(2, statistics.getEvictionCount());
+    }
+
+    /**
+     * A loader that throws caches nothing, counts a failed load and is called
+     * again by the next request; invalidated keys are loaded again.
+     */
+    @Test
+    void failuresAndInvalidation() {
+        AtomicInteger loadCount = new AtomicInteger();
+        KeyedCacher<Integer, Integer> keyedCacher = new KeyedCacher<>(key -> {
+            if (loadCount.incrementAndGet() == 1)
+                throw new IllegalStateException("first load");
+            return loadCount.get();
+        }, 10, null, KeyedCacher.EvictionPolicy.LRU, true);
+        assertThrows(IllegalStateException.class, () -> keyedCacher.get(7));
+        assertEquals(0, keyedCacher.size());
+        assertEquals(2, keyedCacher.get(7));
+        assertEquals(2, keyedCacher.get(7));
+        keyedCacher.invalidate(7);
+        assertEquals(3, keyedCacher.get(7));
+        keyedCacher.invalidateAll();
+        assertEquals(0, keyedCacher.size());
+        CacheStatistics statistics = keyedCacher.getStatistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(3, statistics.getMissCount());
+        assertEquals(1, statistics.getLoadFailureCount());
+        assertEquals(0, statistics.getEvictionCount());
+    }
+
+    /**
+     * Statistics that are off leave every counter but evictions at zero.
+     */
+    @Test
+    void statisticsOffCountOnlyEvictions() {
+        KeyedCacher<Integer, Integer> keyedCacher = new KeyedCacher<>(key -> key, 1, null,
+            KeyedCacher.EvictionPolicy.LRU, false);
+        keyedCacher.get(1);
+        keyedCacher.get(1);
+        keyedCacher.get(2);
+        CacheStatistics statistics = keyedCacher.getStatistics();
+        assertEquals(0, statistics.getRequestCount());
+        assertEquals(1, statistics.getEvictionCount());
+    }
+}
@@ -0,0 +1,156 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link LatencyHistogram}, the {@link LatencySnapshot} summaries of its
+ * buckets and the reset of {@link TrainingMetrics} through JMX.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class LatencyHistogramTest {
+    /**
+     * Values below {@link LatencyHistogram#SUB_BUCKETS} get a bucket each, the
+     * next power of two is split into buckets of one value, the one after into
+     * buckets of two values, and {@link Long#MAX_VALUE} is the highest value of
+     * the last bucket.
+     */
+    @Test
+    void bucketBoundaries() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(15, LatencyHistogram.highestValueOf(15));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.highestValueOf(16));
+        assertEquals(31, LatencyHistogram.bucketOf(31));
+        assertEquals(31, LatencyHistogram.highestValueOf(31));
+        assertEquals(32, LatencyHistogram.bucketOf(32));
+        assertEquals(32, LatencyHistogram.bucketOf(33));
+        assertEquals(33, LatencyHistogram.highestValueOf(32));
+        assertEquals(33, LatencyHistogram.bucketOf(34));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1));
+    }
+
+    /**
+     * Every bucket starts right after the highest value of the previous one, so
+     * the buckets cover every value without gaps or overlaps.
+     */
+    @Test
+    void bucketsAreContiguous() {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest), "highest value of bucket " + bucket);
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1), "value after bucket " + bucket);
+        }
+    }
+
+    /**
+     * The highest value of the bucket of any value is at least the value and
+     * overstates it by at most 1/16, around every power of two and for seeded
+     * random values of every magnitude.
+     */
+    @Test
+    void highestValueBoundsRelativeError() {
+        for (int exponent = 0; exponent < Long.SIZE - 1; exponent++) {
+            long power = 1L << exponent;
+            for (long value : new long[]{power - 1, power, power + 1, power + power / 2})
+                assertHighestValueBounds(value);
+        }
+        SplittableRandom random = new SplittableRandom(91);
+        for (int i = 0; i < 100_000; i++)
+            assertHighestValueBounds(random.nextLong(Long.MAX_VALUE) >>> random.nextInt(Long.SIZE - 1));
+        assertHighestValueBounds(Long.MAX_VALUE);
+    }
+
+    /**
+     * Checks that the highest value of the bucket of a value bounds it from
+     * above within 1/16.
+     *
+     * @param value is the value; not negative.
+     */
+    private static void assertHighestValueBounds(long value) {
+        long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+        assertTrue(highest >= value, value + " is above " + highest);
+        assertTrue(highest - value <= value / LatencyHistogram.SUB_BUCKETS, value + " is far below " + highest);
+    }
+
+    /**
+     * The values 1 to 1000 give the mean, the maximum and percentiles that are
+     * the highest values of the buckets of the 500th, 900th, 990th and 999th
+     * values, capped by the maximum.
+     */
+    @Test
+    void percentilesOfKnownDistribution() {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long sum = 0;
+        for (long value = 1; value <= 1000; value++) {
+            counts[LatencyHistogram.bucketOf(value)]++;
+            sum += value;
+        }
+        LatencySnapshot snapshot = LatencySnapshot.of(counts, sum, 1000);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 1e-9);
+        assertEquals(511, snapshot.getP50());
+        assertEquals(927, snapshot.getP90());
+        assertEquals(991, snapshot.getP99());
+        assertEquals(1000, snapshot.getP999());
+        assertEquals(1000, snapshot.getMax());
+    }
+
+    /**
+     * A histogram that recorded one value a thousand times reports it for every
+     * percentile, since no percentile exceeds the maximum, and an empty one
+     * reports {@link LatencySnapshot#EMPTY}. Negative values are recorded as 0.
+     */
+    @Test
+    void recordedValuesAreSummarized() {
+        LatencyHistogram histogram = new LatencyHistogram(4);
+        assertSame(LatencySnapshot.EMPTY, histogram.snapshot());
+        for (int i = 0; i < 1000; i++)
+            histogram.record(1000);
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000.0, snapshot.getMean(), 1e-9);
+        assertEquals(1000, snapshot.getP50());
+        assertEquals(1000, snapshot.getP999());
+        histogram.reset();
+        assertSame(LatencySnapshot.EMPTY, histogram.snapshot());
+        histogram.record(-5);
+        assertEquals(0, histogram.snapshot().getMax());
+        assertEquals(1, histogram.snapshot().getCount());
+    }
+
+    /**
+     * Calling reset on the registered MXBean through the platform MBean server
+     * clears every counter and histogram of {@link TrainingMetrics}.
+     */
+    @Test
+    void jmxResetClearsTrainingMetrics() throws Exception {
+        TrainingMetrics.registerMBean();
+        TrainingMetricsMXBean metrics = TrainingMetrics.getMBean();
+        TrainingMetrics.recordGeneration(System.nanoTime() - 1000);
+        TrainingMetrics.recordForwardPass(System.nanoTime() - 1000);
+        TrainingMetrics.countMutation();
+        assertTrue(metrics.getGenerations() > 0);
+        assertTrue(metrics.getGenerationLatency().getCount() > 0);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.invoke(new ObjectName(TrainingMetrics.OBJECT_NAME), "reset", null, null);
+        assertEquals(0, metrics.getGenerations());
+        assertEquals(0, metrics.getForwardPasses());
+        assertEquals(0, metrics.getMutations());
+        assertEquals(0, metrics.getGenerationLatency().getCount());
+        assertEquals(0, metrics.getForwardPassLatency().getCount());
+        assertEquals(0L, server.getAttribute(new ObjectName(TrainingMetrics.OBJECT_NAME), "Generations"));
+    }
+}
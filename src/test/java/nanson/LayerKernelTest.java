@@ -0,0 +1,131 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Tests the {@link LayerKernel}s against a forward pass through the object
+ * model, on seeded random networks. The vector kernel is only tested when the
+ * Vector API is available.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class LayerKernelTest {
+    /**
+     * Fan-ins tested: tiny, one word, and more than one word with a partial last
+     * word of weights.
+     */
+    private static final int[] FAN_INS = {3, 7, 64, 65, 100, 130};
+
+    /**
+     * Layer lengths tested; most layers end in a partial activation word.
+     */
+    private static final int[][] SHAPES = {{70, 100}, {130, 65, 100}, {100, 129, 65, 100}, {64, 200, 1}};
+
+    /**
+     * Number of inputs per network.
+     */
+    private static final int SAMPLES = 8;
+
+    /**
+     * Every kernel evaluating a whole layer, or the layer split into ranges
+     * sharing prepared inputs, gives the activations of the object model.
+     */
+    @Test
+    void kernelsMatchObjectModel() {
+        for (LayerKernel kernel : kernels()) {
+            for (int incomingConnections : FAN_INS) {
+                for (int[] shape : SHAPES) {
+                    long seed = 31L * incomingConnections + Arrays.hashCode(shape);
+                    NeuronDatabase reference = RandomNetworks.create(false, seed, incomingConnections, shape);
+                    NeuronDatabase packed = RandomNetworks.create(true, seed, incomingConnections, shape);
+                    PackedNetwork network = (PackedNetwork) packed.getNetworkStorage();
+                    for (boolean[] input : RandomNetworks.inputs(seed, SAMPLES, shape[0])) {
+                        reference.computeActivations(input);
+                        packed.computeActivations(input);
+                        for (int a = 1; a < shape.length; a++) {
+                            String message = kernel.getName() + ", fan-in " + incomingConnections + ", layers "
+                                + Arrays.toString(shape) + ", layer " + a;
+                            invert(network, a);
+                            kernel.evaluateWords(network, a, null, 0, network.getActivationWordCount(a));
+                            assertArrayEquals(reference.getActivations(a), packed.getActivations(a), message);
+                            invert(network, a);
+                            int[] preparedInputs = kernel.prepareInputs(network, a);
+                            for (int w = 0; w < network.getActivationWordCount(a); w++)
+                                kernel.evaluateWords(network, a, null, preparedInputs, w, w + 1);
+                            assertArrayEquals(reference.getActivations(a), packed.getActivations(a),
+                                message + ", word by word");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The vector kernel gives exactly the words of the scalar kernel, with and
+     * without bias, including the unused bits of the last word.
+     */
+    @Test
+    void vectorKernelMatchesScalarKernelWithBias() {
+        if (!LayerKernel.isVectorSupported())
+            return;
+        LayerKernel scalar = LayerKernel.forName(LayerKernel.SCALAR);
+        LayerKernel vector = LayerKernel.forName(LayerKernel.VECTOR);
+        SplittableRandom random = new SplittableRandom(3);
+        for (int incomingConnections : FAN_INS) {
+            for (int[] shape : SHAPES) {
+                NeuronDatabase packed = RandomNetworks.create(true, random.nextLong(), incomingConnections, shape);
+                PackedNetwork network = (PackedNetwork) packed.getNetworkStorage();
+                packed.computeActivations(RandomNetworks.inputs(random.nextLong(), 1, shape[0])[0]);
+                for (int a = 1; a < shape.length; a++) {
+                    int words = network.getActivationWordCount(a);
+                    long[] biasWords = random.longs(words).toArray();
+                    for (long[] bias : new long[][]{null, biasWords}) {
+                        scalar.evaluateWords(network, a, bias, 0, words);
+                        long[] expected = network.getActivationWords(a).clone();
+                        invert(network, a);
+                        vector.evaluateWords(network, a, bias, 0, words);
+                        assertArrayEquals(Arrays.copyOf(expected, words),
+                            Arrays.copyOf(network.getActivationWords(a), words),
+                            "fan-in " + incomingConnections + ", layers " + Arrays.toString(shape) + ", layer " + a
+                                + (bias == null ? "" : ", biased"));
+                    }
+                    scalar.evaluateWords(network, a, null, 0, words);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the kernels to test.
+     *
+     * @return the scalar kernel, and the vector kernel if it is supported.
+     */
+    private static List<LayerKernel> kernels() {
+        List<LayerKernel> kernels = new ArrayList<>();
+        kernels.add(LayerKernel.forName(LayerKernel.SCALAR));
+        if (LayerKernel.isVectorSupported())
+            kernels.add(LayerKernel.forName(LayerKernel.VECTOR));
+        return kernels;
+    }
+
+    /**
+     * Inverts every activation word of a layer, so a kernel that skips a neuron
+     * leaves it wrong.
+     *
+     * @param network    is the network.
+     * @param layerIndex is the index of the layer.
+     */
+    private static void invert(PackedNetwork network, int layerIndex) {
+        for (int w = 0; w < network.getActivationWordCount(layerIndex); w++)
+            network.setActivationWord(layerIndex, w, ~network.getActivationWord(layerIndex, w));
+    }
+}
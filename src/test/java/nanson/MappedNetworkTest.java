@@ -0,0 +1,246 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link MappedNetwork}: persistence across reopening, and growth of a
+ * mapped file against the same growth of a {@link PackedNetwork}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class MappedNetworkTest {
+    /**
+     * Fan-in of every test network.
+     */
+    private static final int INCOMING_CONNECTIONS = 7;
+
+    /**
+     * Layer lengths of every test network.
+     */
+    private static final int[] SHAPE = {20, 30, 25, 10};
+
+    /**
+     * A network written to a mapped file reads back the same after it is closed
+     * and opened again.
+     */
+    @Test
+    void reopenedNetworkKeepsWiring() throws IOException {
+        Path file = Files.createTempFile("network", ".bnam");
+        try {
+            NeuronDatabase reference = mutatedNetwork();
+            try (MappedNetwork network = MappedNetwork.create(file, reference.getNetworkStorage())) {
+                assertSameState(reference.getNetworkStorage(), network, "created");
+            }
+            try (MappedNetwork network = MappedNetwork.open(file)) {
+                assertSameState(reference.getNetworkStorage(), network, "reopened");
+                assertSameOutputs(reference, new NeuronDatabase(network), "reopened");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A reopened mapped network grown past the capacity of its layers, with
+     * layers added past the room of its layer table, keeps the wiring of every
+     * existing neuron, clears every new one, and keeps its growth when it is
+     * closed and opened again.
+     */
+    @Test
+    void grownNetworkKeepsWiring() throws IOException {
+        Path file = Files.createTempFile("network", ".bnam");
+        try {
+            NeuronDatabase reference = mutatedNetwork();
+            MappedNetwork.create(file, reference.getNetworkStorage()).close();
+            SplittableRandom random = new SplittableRandom(5);
+            try (MappedNetwork network = MappedNetwork.open(file)) {
+                NeuronDatabase mapped = new NeuronDatabase(network);
+                reference.setSeed(6);
+                mapped.setSeed(6);
+                for (int round = 0; round < 12; round++) {
+                    int layer = random.nextInt(mapped.getNumberOfLayers());
+                    int additionalNeurons = random.nextInt(40);
+                    if (round % 4 == 3) {
+                        reference.addLayer(1 + additionalNeurons);
+                        mapped.addLayer(1 + additionalNeurons);
+                    } else {
+                        reference.growLayer(layer, additionalNeurons);
+                        mapped.growLayer(layer, additionalNeurons);
+                    }
+                    assertSameState(reference.getNetworkStorage(), network, "round " + round);
+                    // The same seeded mutations, some of them on the new neurons.
+                    for (int step = 0; step < 100; step++) {
+                        int a = 1 + random.nextInt(mapped.getNumberOfLayers() - 1);
+                        int length = mapped.getLayerLength(a);
+                        if (length == 0)
+                            continue;
+                        int b = random.nextBoolean() ? length - 1 : random.nextInt(length);
+                        reference.getNeuron(a, b).changeOneThing();
+                        mapped.getNeuron(a, b).changeOneThing();
+                    }
+                    assertSameState(reference.getNetworkStorage(), network, "round " + round + ", mutated");
+                    assertSameOutputs(reference, mapped, "round " + round);
+                }
+            }
+            try (MappedNetwork network = MappedNetwork.open(file)) {
+                assertSameState(reference.getNetworkStorage(), network, "reopened after growth");
+                network.growLayer(1, 3);
+                network.addLayer(4);
+            }
+            try (MappedNetwork network = MappedNetwork.open(file)) {
+                NetworkStorage grown = reference.getNetworkStorage();
+                assertEquals(grown.getNumberOfLayers() + 1, network.getNumberOfLayers());
+                assertEquals(grown.getLayerLength(1) + 3, network.getLayerLength(1));
+                assertEquals(4, network.getLayerLength(network.getNumberOfLayers() - 1));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Growth within the room of a moved region doesn't move it again: after a
+     * growth that doubles a region, growing by the same number of neurons again
+     * leaves the size of the file alone.
+     */
+    @Test
+    void growthWithinCapacityKeepsFileSize() throws IOException {
+        Path file = Files.createTempFile("network", ".bnam");
+        try (MappedNetwork network = MappedNetwork.create(file, INCOMING_CONNECTIONS, SHAPE)) {
+            network.growLayer(2, 5);
+            long size = Files.size(file);
+            network.growLayer(2, SHAPE[2] - 5);
+            assertEquals(size, Files.size(file));
+            network.growLayer(2, 1);
+            assertTrue(Files.size(file) > size);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Files that are not mapped networks, or whose layer table points outside
+     * the file, are rejected when opened.
+     */
+    @Test
+    void damagedFileFailsOpen() throws IOException {
+        Path file = Files.createTempFile("network", ".bnam");
+        try {
+            Files.write(file, new byte[]{1, 2, 3});
+            assertThrows(IOException.class, () -> MappedNetwork.open(file), "short file");
+            MappedNetwork.create(file, INCOMING_CONNECTIONS, SHAPE).close();
+            long size = Files.size(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                // The region of the last layer, at offset 8 of the last table entry, moves past the end.
+                ByteBuffer offset = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, size);
+                channel.write(offset, 32 + 16L * (SHAPE.length - 1) + 8);
+            }
+            assertThrows(IOException.class, () -> MappedNetwork.open(file), "region past the end");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Integer.BYTES), 0);
+            }
+            assertThrows(IOException.class, () -> MappedNetwork.open(file), "magic");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Creates a seeded random packed network whose stakes, next neuron indexes
+     * and activations are not all zero.
+     *
+     * @return the network.
+     */
+    private static NeuronDatabase mutatedNetwork() {
+        NeuronDatabase neuronDatabase = RandomNetworks.create(true, 1, INCOMING_CONNECTIONS, SHAPE);
+        neuronDatabase.setSeed(2);
+        SplittableRandom random = new SplittableRandom(3);
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        for (int i = 0; i < 200; i++) {
+            int layer = 1 + random.nextInt(SHAPE.length - 1);
+            int neuron = random.nextInt(SHAPE[layer]);
+            neuronDatabase.getNeuron(layer, neuron).changeOneThing();
+            networkStorage.addStake(layer, neuron, random.nextInt(10));
+        }
+        neuronDatabase.computeActivations(RandomNetworks.inputs(4, 1, SHAPE[0])[0]);
+        return neuronDatabase;
+    }
+
+    /**
+     * Checks that two storages hold the same shape and the same state for
+     * every neuron.
+     *
+     * @param expected is the reference storage.
+     * @param actual   is the storage checked.
+     * @param message  describes the check.
+     */
+    private static void assertSameState(NetworkStorage expected, NetworkStorage actual, String message) {
+        assertEquals(expected.getIncomingConnections(), actual.getIncomingConnections(), message);
+        assertEquals(expected.getNumberOfLayers(), actual.getNumberOfLayers(), message);
+        for (int a = 0; a < expected.getNumberOfLayers(); a++) {
+            assertEquals(expected.getLayerLength(a), actual.getLayerLength(a), message + ", layer " + a);
+            for (int b = 0; b < expected.getLayerLength(a); b++) {
+                assertEquals(expected.isActivated(a, b), actual.isActivated(a, b),
+                    message + ", activation " + a + "," + b);
+                if (a > 0)
+                    assertArrayEquals(stateOf(expected, a, b), stateOf(actual, a, b),
+                        message + ", neuron " + a + "," + b);
+            }
+        }
+    }
+
+    /**
+     * Checks that two networks give the same outputs for seeded random inputs,
+     * leaving both with the activations of the last input.
+     *
+     * @param expected is the reference network.
+     * @param actual   is the network checked.
+     * @param message  describes the check.
+     */
+    private static void assertSameOutputs(NeuronDatabase expected, NeuronDatabase actual, String message) {
+        int outputLayer = expected.getNumberOfLayers() - 1;
+        for (boolean[] input : RandomNetworks.inputs(7, 10, expected.getLayerLength(0))) {
+            expected.computeActivations(input);
+            actual.computeActivations(input);
+            assertArrayEquals(expected.getActivations(outputLayer), actual.getActivations(outputLayer),
+                message + ", outputs of " + Arrays.toString(input));
+        }
+    }
+
+    /**
+     * Gets the state of an activation neuron besides its activation.
+     *
+     * @param networkStorage is the storage.
+     * @param layerIndex     is the index of the layer.
+     * @param neuronIndex    is the index of the neuron in that layer.
+     * @return the incoming neuron indexes, then the weights as 0 or 1, then the
+     * stake and the next neuron index.
+     */
+    private static int[] stateOf(NetworkStorage networkStorage, int layerIndex, int neuronIndex) {
+        int incomingConnections = networkStorage.getIncomingConnections();
+        int[] state = new int[2 * incomingConnections + 2];
+        for (int k = 0; k < incomingConnections; k++) {
+            state[k] = networkStorage.getIncomingNeuronIndex(layerIndex, neuronIndex, k);
+            state[incomingConnections + k] = networkStorage.getWeight(layerIndex, neuronIndex, k) ? 1 : 0;
+        }
+        state[2 * incomingConnections] = networkStorage.getStake(layerIndex, neuronIndex);
+        state[2 * incomingConnections + 1] = networkStorage.getNextNeuronIndex(layerIndex, neuronIndex);
+        return state;
+    }
+}
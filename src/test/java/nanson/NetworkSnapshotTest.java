@@ -0,0 +1,294 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests {@link NetworkSnapshot}: round trips between both storage models and
+ * rejection of damaged files.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class NetworkSnapshotTest {
+    /**
+     * Fan-in and layer lengths of every round trip; fan-ins that don't fill
+     * their last weight byte and layers that don't fill their last activation
+     * byte.
+     */
+    private static final int[][][] CASES = {
+        {{3}, {7, 64, 64, 7}},
+        {{7}, {20, 30, 25, 20, 10}},
+        {{65}, {70, 100, 65}},
+        {{130}, {200, 129}},
+    };
+
+    /**
+     * Number of corrupted copies the fuzz test reads.
+     */
+    private static final int FUZZ_RUNS = 3_000;
+
+    /**
+     * A network written from either storage model and read into either gives
+     * the same wiring, weights, next neuron indexes and activations, and the
+     * same outputs.
+     */
+    @Test
+    void roundTripPreservesNetwork() throws IOException {
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            for (int[][] testCase : CASES) {
+                int[] shape = testCase[1];
+                for (boolean writtenPacked : new boolean[]{false, true}) {
+                    NeuronDatabase written = mutatedNetwork(writtenPacked, testCase[0][0], shape);
+                    NetworkSnapshot.write(written, file);
+                    for (boolean readPacked : new boolean[]{false, true}) {
+                        String message = (writtenPacked ? "packed" : "objects") + " to "
+                            + (readPacked ? "packed" : "objects") + ", layers " + Arrays.toString(shape);
+                        NeuronDatabase read = NetworkSnapshot.read(file, readPacked);
+                        assertEquals(readPacked, read.isPacked(), message);
+                        assertEquals(written.getIncomingConnections(), read.getIncomingConnections(), message);
+                        assertEquals(written.getNumberOfLayers(), read.getNumberOfLayers(), message);
+                        for (int a = 0; a < shape.length; a++) {
+                            assertArrayEquals(written.getActivations(a), read.getActivations(a),
+                                message + ", activations of layer " + a);
+                            for (int b = 0; a > 0 && b < shape[a]; b++)
+                                assertArrayEquals(wiringOf(written, a, b), wiringOf(read, a, b),
+                                    message + ", neuron " + a + "," + b);
+                        }
+                        NeuronDatabase reference = written.copy();
+                        for (boolean[] input : RandomNetworks.inputs(3, 20, shape[0])) {
+                            reference.computeActivations(input);
+                            read.computeActivations(input);
+                            assertArrayEquals(reference.getActivations(shape.length - 1),
+                                read.getActivations(shape.length - 1), message + ", outputs");
+                        }
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Every single flipped bit of a snapshot fails the read with an
+     * {@link IOException}, from the checksum if nothing else catches it first.
+     */
+    @Test
+    void flippedBitFailsRead() throws IOException {
+        byte[] snapshot = snapshotOf(mutatedNetwork(true, 7, new int[]{20, 30, 10}));
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            for (int i = 0; i < snapshot.length; i++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    byte[] damaged = snapshot.clone();
+                    damaged[i] ^= (byte) (1 << bit);
+                    Files.write(file, damaged);
+                    assertThrows(IOException.class, () -> NetworkSnapshot.read(file, true),
+                        "bit " + bit + " of byte " + i);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A snapshot cut short anywhere, or followed by extra bytes, fails the read
+     * with an {@link IOException}.
+     */
+    @Test
+    void truncatedOrExtendedFileFailsRead() throws IOException {
+        byte[] snapshot = snapshotOf(mutatedNetwork(false, 7, new int[]{20, 30, 10}));
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            for (int length = 0; length < snapshot.length; length++) {
+                Files.write(file, Arrays.copyOf(snapshot, length));
+                assertThrows(IOException.class, () -> NetworkSnapshot.read(file, false), "length " + length);
+            }
+            Files.write(file, Arrays.copyOf(snapshot, snapshot.length + 1));
+            assertThrows(IOException.class, () -> NetworkSnapshot.read(file, false), "extra byte");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Headers claiming more layers, longer layers or more connections than the
+     * file can hold are rejected before anything is allocated from them, even
+     * when the checksum matches.
+     */
+    @Test
+    void oversizedCountsFailRead() throws IOException {
+        int[][] headers = {
+            {Integer.MAX_VALUE},
+            {1_000_000, 2, 10, 10},
+            {3, 1_000_000},
+            {3, 2, Integer.MAX_VALUE, 10},
+            {3, 2, 10, 1_000_000},
+            {3, 2, 4_000, 4_000},
+            {-1, 2, 10, 10},
+        };
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            for (int[] header : headers) {
+                ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(NetworkSnapshot.MAGIC);
+                putVarInt(buffer, NetworkSnapshot.FORMAT_VERSION);
+                for (int value : header)
+                    putVarInt(buffer, value);
+                buffer.put(new byte[64]);
+                Files.write(file, withChecksum(Arrays.copyOf(buffer.array(), buffer.position())));
+                assertThrows(IOException.class, () -> NetworkSnapshot.read(file, true), Arrays.toString(header));
+                assertThrows(IOException.class, () -> NetworkSnapshot.read(file, false), Arrays.toString(header));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Seeded random damage, with the checksum recomputed half of the time so
+     * the damage reaches every check behind it, only ever fails the read with
+     * an {@link IOException}. Damage that leaves a valid snapshot may be read.
+     */
+    @Test
+    void corruptedFilesOnlyFailWithIOException() throws IOException {
+        byte[] snapshot = snapshotOf(mutatedNetwork(true, 7, new int[]{20, 30, 10}));
+        SplittableRandom random = new SplittableRandom(9);
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            for (int run = 0; run < FUZZ_RUNS; run++) {
+                byte[] damaged = snapshot.clone();
+                int damage = 1 + random.nextInt(4);
+                for (int i = 0; i < damage; i++) {
+                    // Most damage lands in the header, where the counts are.
+                    int position = random.nextInt(4) == 0 ? random.nextInt(damaged.length)
+                        : random.nextInt(Math.min(16, damaged.length - 4));
+                    damaged[position] = (byte) random.nextInt(256);
+                }
+                if (random.nextBoolean())
+                    damaged = withChecksum(Arrays.copyOf(damaged, damaged.length - Integer.BYTES));
+                Files.write(file, damaged);
+                boolean packed = random.nextBoolean();
+                try {
+                    NetworkSnapshot.read(file, packed);
+                } catch (IOException expected) {
+                    // Rejected.
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    throw new AssertionError("Run " + run + " failed with " + e, e);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Creates a seeded random network whose next neuron indexes and activations
+     * are not all zero.
+     *
+     * @param packed              if true, the network is packed.
+     * @param incomingConnections is the number of incoming connections.
+     * @param shape               is the length of every layer.
+     * @return the network.
+     */
+    private static NeuronDatabase mutatedNetwork(boolean packed, int incomingConnections, int[] shape) {
+        NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 1, incomingConnections, shape);
+        neuronDatabase.setSeed(2);
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 200; i++) {
+            int layer = 1 + random.nextInt(shape.length - 1);
+            neuronDatabase.getNeuron(layer, random.nextInt(shape[layer])).changeOneThing();
+        }
+        neuronDatabase.computeActivations(RandomNetworks.inputs(4, 1, shape[0])[0]);
+        return neuronDatabase;
+    }
+
+    /**
+     * Gets everything the snapshot stores about an activation neuron besides
+     * its activation.
+     *
+     * @param neuronDatabase   is the network.
+     * @param neuronLayerIndex is the index of the layer of the neuron.
+     * @param neuronIndex      is the index of the neuron in that layer.
+     * @return the incoming neuron indexes, then the weights as 0 or 1, then the
+     * next neuron index.
+     */
+    private static int[] wiringOf(NeuronDatabase neuronDatabase, int neuronLayerIndex, int neuronIndex) {
+        int incomingConnections = neuronDatabase.getIncomingConnections();
+        int[] wiring = new int[2 * incomingConnections + 1];
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        for (int k = 0; k < incomingConnections; k++) {
+            if (networkStorage != null) {
+                wiring[k] = networkStorage.getIncomingNeuronIndex(neuronLayerIndex, neuronIndex, k);
+                wiring[incomingConnections + k] = networkStorage.getWeight(neuronLayerIndex, neuronIndex, k) ? 1 : 0;
+            } else {
+                ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(neuronLayerIndex, neuronIndex);
+                wiring[k] = neuron.getIncomingNeuronIndexes()[k];
+                wiring[incomingConnections + k] = neuron.getWeights()[k] ? 1 : 0;
+            }
+        }
+        wiring[2 * incomingConnections] = networkStorage != null
+            ? networkStorage.getNextNeuronIndex(neuronLayerIndex, neuronIndex)
+            : ((ActivationNeuron) neuronDatabase.getNeuron(neuronLayerIndex, neuronIndex)).getNextNeuronIndex();
+        return wiring;
+    }
+
+    /**
+     * Writes a network and reads the file back as bytes.
+     *
+     * @param neuronDatabase is the network.
+     * @return the snapshot.
+     * @throws IOException if the temporary file cannot be used.
+     */
+    private static byte[] snapshotOf(NeuronDatabase neuronDatabase) throws IOException {
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            NetworkSnapshot.write(neuronDatabase, file);
+            return Files.readAllBytes(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Appends the CRC32C of some bytes, the way a snapshot ends.
+     *
+     * @param body are the bytes before the checksum.
+     * @return the bytes followed by their checksum.
+     */
+    private static byte[] withChecksum(byte[] body) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(body);
+        return ByteBuffer.allocate(body.length + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(body)
+            .putInt((int) checksum.getValue()).array();
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @param buffer is the buffer to write to.
+     * @param value  is the value, read as unsigned.
+     */
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,137 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Tests the seeding of {@link NeuronDatabase}: the same seed replays the same
+ * mutations, and generators split off a seeded database keep training
+ * reproducible.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class NeuronDatabaseTest {
+    /**
+     * Layer lengths of every test network.
+     */
+    private static final int[] SHAPE = {
+        Constants.DEFAULT_LENGTH_OF_RESULTS, 30, 25, Constants.DEFAULT_LENGTH_OF_RESULTS
+    };
+
+    /**
+     * Number of mutations applied to every network.
+     */
+    private static final int MUTATIONS = 500;
+
+    /**
+     * Two databases with the same seed make the same mutations in both storage
+     * models, and a database with another seed makes different ones.
+     */
+    @Test
+    void sameSeedReplaysMutations() throws IOException {
+        for (boolean packed : new boolean[]{false, true}) {
+            String name = packed ? "packed" : "objects";
+            byte[] first = snapshotOf(mutatedNetwork(packed, 61));
+            assertArrayEquals(first, snapshotOf(mutatedNetwork(packed, 61)), name);
+            assertFalse(Arrays.equals(first, snapshotOf(mutatedNetwork(packed, 62))), name + ", another seed");
+        }
+    }
+
+    /**
+     * Setting the seed again restarts the sequence of random values.
+     */
+    @Test
+    void setSeedRestartsSequence() {
+        NeuronDatabase neuronDatabase = new NeuronDatabase(true, 5, SHAPE);
+        neuronDatabase.setSeed(63);
+        long[] first = valuesOf(neuronDatabase.getRandomGenerator());
+        neuronDatabase.setSeed(63);
+        assertArrayEquals(first, valuesOf(neuronDatabase.getRandomGenerator()));
+    }
+
+    /**
+     * Generators split off databases with the same seed give the same streams,
+     * each split gives a different stream, and trainers started from
+     * databases with the same seed end with identical networks and leave the
+     * databases' generators in the same state.
+     */
+    @Test
+    void splitStreamsKeepTrainingReproducible() throws InterruptedException, IOException {
+        NeuronDatabase first = RandomNetworks.create(true, 64, 5, SHAPE);
+        NeuronDatabase second = RandomNetworks.create(true, 64, 5, SHAPE);
+        first.setSeed(65);
+        second.setSeed(65);
+        long[] firstSplit = valuesOf(first.splitRandomGenerator());
+        assertArrayEquals(firstSplit, valuesOf(second.splitRandomGenerator()));
+        long[] secondSplit = valuesOf(first.splitRandomGenerator());
+        assertArrayEquals(secondSplit, valuesOf(second.splitRandomGenerator()));
+        assertFalse(Arrays.equals(firstSplit, secondSplit));
+        try (PopulationTrainer firstTrainer = new PopulationTrainer(first, new AlphabetTask(), 5);
+             PopulationTrainer secondTrainer = new PopulationTrainer(second, new AlphabetTask(), 5)) {
+            for (int generation = 0; generation < 20; generation++) {
+                firstTrainer.runGeneration();
+                secondTrainer.runGeneration();
+            }
+            assertEquals(firstTrainer.getBestScore(), secondTrainer.getBestScore());
+            assertArrayEquals(snapshotOf(firstTrainer.getBest()), snapshotOf(secondTrainer.getBest()));
+        }
+        assertArrayEquals(valuesOf(first.getRandomGenerator()), valuesOf(second.getRandomGenerator()));
+    }
+
+    /**
+     * Creates a seeded random network and applies seeded random mutations to
+     * it, drawing the neurons from the database's own generator.
+     *
+     * @param packed if true, the network is packed.
+     * @param seed   is the seed of the database.
+     * @return the mutated network.
+     */
+    private static NeuronDatabase mutatedNetwork(boolean packed, long seed) {
+        NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 66, 5, SHAPE);
+        neuronDatabase.setSeed(seed);
+        RandomGenerator random = neuronDatabase.getRandomGenerator();
+        for (int i = 0; i < MUTATIONS; i++) {
+            int layer = 1 + random.nextInt(SHAPE.length - 1);
+            neuronDatabase.getNeuron(layer, random.nextInt(SHAPE[layer])).changeOneThing();
+        }
+        neuronDatabase.computeActivations(RandomNetworks.inputs(67, 1, SHAPE[0])[0]);
+        return neuronDatabase;
+    }
+
+    /**
+     * Writes a network and reads the file back as bytes.
+     *
+     * @param neuronDatabase is the network.
+     * @return the snapshot.
+     * @throws IOException if the temporary file cannot be used.
+     */
+    private static byte[] snapshotOf(NeuronDatabase neuronDatabase) throws IOException {
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            NetworkSnapshot.write(neuronDatabase, file);
+            return Files.readAllBytes(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Draws the next values of a generator.
+     *
+     * @param randomGenerator is the generator.
+     * @return its next 16 values.
+     */
+    private static long[] valuesOf(RandomGenerator randomGenerator) {
+        return randomGenerator.longs(16).toArray();
+    }
+}
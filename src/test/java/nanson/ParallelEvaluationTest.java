@@ -0,0 +1,48 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Tests evaluating layers on a fork/join pool against a forward pass through
+ * the object model on the calling thread, on seeded random networks.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class ParallelEvaluationTest {
+    /**
+     * Number of inputs per network.
+     */
+    private static final int SAMPLES = 8;
+
+    /**
+     * Layers split across a fork/join pool give the activations of the object
+     * model evaluated on the calling thread, in both storage models.
+     */
+    @Test
+    void poolEvaluationMatchesObjectModel() {
+        int[] shape = {200, 1000, 700, 130};
+        int incomingConnections = 65;
+        NeuronDatabase reference = RandomNetworks.create(false, 5, incomingConnections, shape);
+        NeuronDatabase packed = RandomNetworks.create(true, 5, incomingConnections, shape);
+        NeuronDatabase parallelObjects = RandomNetworks.create(false, 5, incomingConnections, shape);
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            packed.setEvaluationPool(pool);
+            parallelObjects.setEvaluationPool(pool);
+            for (boolean[] input : RandomNetworks.inputs(6, SAMPLES, shape[0])) {
+                reference.computeActivations(input);
+                packed.computeActivations(input);
+                parallelObjects.computeActivations(input);
+                for (int a = 1; a < shape.length; a++) {
+                    assertArrayEquals(reference.getActivations(a), packed.getActivations(a), "packed, layer " + a);
+                    assertArrayEquals(reference.getActivations(a), parallelObjects.getActivations(a),
+                        "objects, layer " + a);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link PopulationTrainer} on seeded networks.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class PopulationTrainerTest {
+    /**
+     * Layer lengths of every trained network.
+     */
+    private static final int[] SHAPE = {
+        Constants.DEFAULT_LENGTH_OF_RESULTS, 40, 40, Constants.DEFAULT_LENGTH_OF_RESULTS
+    };
+
+    /**
+     * Number of generations every training runs.
+     */
+    private static final int GENERATIONS = 40;
+
+    /**
+     * The best score never gets worse from one generation to the next, and it
+     * is always the score of the best network.
+     */
+    @Test
+    void bestScoreNeverIncreases() throws InterruptedException {
+        AlphabetTask task = new AlphabetTask();
+        try (PopulationTrainer populationTrainer = new PopulationTrainer(seededNetwork(), task, 6, 2,
+            Executors.newVirtualThreadPerTaskExecutor())) {
+            int bestScore = populationTrainer.getBestScore();
+            for (int generation = 0; generation < GENERATIONS; generation++) {
+                populationTrainer.runGeneration();
+                assertTrue(populationTrainer.getBestScore() <= bestScore, "generation " + generation);
+                bestScore = populationTrainer.getBestScore();
+                assertEquals(bestScore, task.score(populationTrainer.getBest().copy()), "generation " + generation);
+            }
+            assertEquals(GENERATIONS, populationTrainer.getGenerations());
+            assertEquals(6L * GENERATIONS, populationTrainer.getEvaluations());
+        }
+    }
+
+    /**
+     * Two trainers started from networks with the same seed pick the same
+     * candidates in every generation, whatever executor evaluates them, and end
+     * with identical networks.
+     */
+    @Test
+    void runGenerationIsDeterministic() throws InterruptedException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try (PopulationTrainer first = new PopulationTrainer(seededNetwork(), new AlphabetTask(), 8, 3,
+                 Executors.newVirtualThreadPerTaskExecutor());
+             PopulationTrainer second = new PopulationTrainer(seededNetwork(), new AlphabetTask(), 8, 3, pool)) {
+            assertEquals(first.getBestScore(), second.getBestScore());
+            boolean improved = false;
+            for (int generation = 0; generation < GENERATIONS; generation++) {
+                boolean changed = first.runGeneration();
+                assertEquals(changed, second.runGeneration(), "generation " + generation);
+                assertEquals(first.getBestScore(), second.getBestScore(), "generation " + generation);
+                improved |= changed;
+            }
+            assertTrue(improved);
+            assertArrayEquals(snapshotOf(first.getBest()), snapshotOf(second.getBest()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Candidates without mutations are copies of the best network, so they tie
+     * with it and the score stays the same.
+     */
+    @Test
+    void noMutationsKeepsScore() throws InterruptedException {
+        try (PopulationTrainer populationTrainer = new PopulationTrainer(seededNetwork(), new AlphabetTask(), 3, 0,
+            Executors.newVirtualThreadPerTaskExecutor())) {
+            int bestScore = populationTrainer.getBestScore();
+            for (int generation = 0; generation < 5; generation++) {
+                assertTrue(populationTrainer.runGeneration());
+                assertEquals(bestScore, populationTrainer.getBestScore());
+            }
+        }
+    }
+
+    /**
+     * A population that is not positive, a negative number of mutations and a
+     * network without an activation neuron to mutate are rejected.
+     */
+    @Test
+    void invalidArgumentsAreRejected() {
+        AlphabetTask task = new AlphabetTask();
+        assertThrows(IllegalArgumentException.class, () -> new PopulationTrainer(seededNetwork(), task, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PopulationTrainer(seededNetwork(), task, 4, -1,
+            Executors.newVirtualThreadPerTaskExecutor()));
+        assertThrows(IllegalArgumentException.class, () -> new PopulationTrainer(
+            new NeuronDatabase(true, 5, Constants.DEFAULT_LENGTH_OF_RESULTS), task, 4));
+        assertThrows(IllegalArgumentException.class, () -> new PopulationTrainer(
+            new NeuronDatabase(true, 5, Constants.DEFAULT_LENGTH_OF_RESULTS, 0), task, 4));
+    }
+
+    /**
+     * Creates a seeded random packed network.
+     *
+     * @return the network.
+     */
+    private static NeuronDatabase seededNetwork() {
+        NeuronDatabase neuronDatabase = RandomNetworks.create(true, 51, 5, SHAPE);
+        neuronDatabase.setSeed(52);
+        return neuronDatabase;
+    }
+
+    /**
+     * Writes a network and reads the file back as bytes.
+     *
+     * @param neuronDatabase is the network.
+     * @return the snapshot.
+     * @throws IOException if the temporary file cannot be used.
+     */
+    private static byte[] snapshotOf(NeuronDatabase neuronDatabase) throws IOException {
+        Path file = Files.createTempFile("network", ".bnai");
+        try {
+            NetworkSnapshot.write(neuronDatabase, file);
+            return Files.readAllBytes(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
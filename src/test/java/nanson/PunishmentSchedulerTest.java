@@ -0,0 +1,106 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link PunishmentScheduler} on seeded random networks of both storage
+ * models.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class PunishmentSchedulerTest {
+    /**
+     * Fan-in of every test network.
+     */
+    private static final int INCOMING_CONNECTIONS = 3;
+
+    /**
+     * Layer lengths of every test network.
+     */
+    private static final int[] SHAPE = {5, 9, 8, 7, 6};
+
+    /**
+     * Number of sweeps whose mutations are counted for each denominator.
+     */
+    private static final int SWEEPS = 2_000;
+
+    /**
+     * With a denominator of 1 every punished neuron is mutated once per time it
+     * is punished, and nothing below the first activation layer is.
+     */
+    @Test
+    void denominatorOfOneMutatesEveryPunishedNeuron() {
+        for (boolean packed : new boolean[]{false, true}) {
+            NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 71, INCOMING_CONNECTIONS, SHAPE);
+            neuronDatabase.setSeed(72);
+            PunishmentScheduler punishmentScheduler = neuronDatabase.getPunishmentScheduler();
+            int[] everyNeuron = new int[SHAPE[1]];
+            Arrays.setAll(everyNeuron, b -> b);
+            punishmentScheduler.punishByDepth(1, everyNeuron, 1);
+            assertEquals(SHAPE[1], punishmentScheduler.getSweepMutations());
+            punishmentScheduler.punishByDepth(1, new int[]{2, 2, 5}, 1);
+            assertEquals(3, punishmentScheduler.getSweepMutations());
+            int outputLayer = SHAPE.length - 1;
+            punishmentScheduler.punishByDepth(outputLayer, 4, 1);
+            assertTrue(punishmentScheduler.getSweepMutations() >= 1);
+        }
+    }
+
+    /**
+     * Every layer a sweep reaches runs {@code n * incomingConnections^d} trials
+     * at a denominator of {@code d0 * incomingConnections^d}, so each layer
+     * expects {@code n / d0} mutations however the network is wired. The total
+     * of many seeded sweeps stays within five standard deviations of that, and
+     * layers past {@link PunishmentScheduler#MAX_DENOMINATOR} are not mutated.
+     */
+    @Test
+    void mutationCountMatchesExpectation() {
+        int outputLayer = SHAPE.length - 1;
+        int[] everyNeuron = new int[SHAPE[outputLayer]];
+        Arrays.setAll(everyNeuron, b -> b);
+        for (int denominator : new int[]{2, 7, 50, PunishmentScheduler.MAX_DENOMINATOR / 9}) {
+            int layersReached = 0;
+            for (long d = denominator; layersReached < outputLayer && d <= PunishmentScheduler.MAX_DENOMINATOR;
+                 d *= INCOMING_CONNECTIONS)
+                layersReached++;
+            double expected = (double) SWEEPS * everyNeuron.length * layersReached / denominator;
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 73, INCOMING_CONNECTIONS, SHAPE);
+                neuronDatabase.setSeed(74);
+                PunishmentScheduler punishmentScheduler = neuronDatabase.getPunishmentScheduler();
+                long mutations = 0;
+                for (int sweep = 0; sweep < SWEEPS; sweep++) {
+                    punishmentScheduler.punishByDepth(outputLayer, everyNeuron, denominator);
+                    mutations += punishmentScheduler.getSweepMutations();
+                }
+                assertTrue(Math.abs(mutations - expected) <= 5 * Math.sqrt(expected) + 1, (packed ? "packed"
+                    : "objects") + ", denominator " + denominator + ": " + mutations + " mutations, expected "
+                    + expected);
+            }
+        }
+    }
+
+    /**
+     * A denominator past {@link PunishmentScheduler#MAX_DENOMINATOR}, or one that
+     * is not positive, mutates nothing and leaves the scheduler ready for the
+     * next sweep.
+     */
+    @Test
+    void outOfRangeDenominatorMutatesNothing() {
+        NeuronDatabase neuronDatabase = RandomNetworks.create(true, 75, INCOMING_CONNECTIONS, SHAPE);
+        neuronDatabase.setSeed(76);
+        PunishmentScheduler punishmentScheduler = neuronDatabase.getPunishmentScheduler();
+        for (int denominator : new int[]{PunishmentScheduler.MAX_DENOMINATOR + 1, 0, -3}) {
+            punishmentScheduler.punishByDepth(SHAPE.length - 1, 2, denominator);
+            assertEquals(0, punishmentScheduler.getSweepMutations(), "denominator " + denominator);
+        }
+        punishmentScheduler.punishByDepth(1, 2, 1);
+        assertEquals(1, punishmentScheduler.getSweepMutations());
+    }
+}
@@ -0,0 +1,95 @@
+package nanson;
+
+import java.util.SplittableRandom;
+
+/**
+ * Builds seeded random networks for tests, wired the same way in either storage
+ * model, so the engines of the packed model can be checked against the object
+ * model.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+final class RandomNetworks {
+    /**
+     * One in this many connections is unweighted. With nearly every connection
+     * weighted, activation sums of random inputs stay close to the threshold, so
+     * the outputs of a few layers still depend on the inputs.
+     */
+    private static final int UNWEIGHTED_ONE_IN = 64;
+
+    /**
+     * Constructs an instance of RandomNetworks.
+     */
+    private RandomNetworks() {
+    }
+
+    /**
+     * Creates a network whose every connection goes to a random neuron of the
+     * previous layer with a random weight. The same seed gives the same wiring
+     * in both storage models.
+     *
+     * @param packed              if true, the network is packed.
+     * @param seed                is the seed of the wiring.
+     * @param incomingConnections is the number of incoming connections.
+     * @param layerLengths        is the length of every layer.
+     * @return the network.
+     */
+    static NeuronDatabase create(boolean packed, long seed, int incomingConnections, int... layerLengths) {
+        NeuronDatabase neuronDatabase = new NeuronDatabase(packed, incomingConnections, layerLengths);
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] incomingNeuronIndexes = new int[incomingConnections];
+        boolean[] weights = new boolean[incomingConnections];
+        for (int a = 1; a < layerLengths.length; a++) {
+            for (int b = 0; b < layerLengths[a]; b++) {
+                for (int k = 0; k < incomingConnections; k++) {
+                    incomingNeuronIndexes[k] = random.nextInt(layerLengths[a - 1]);
+                    weights[k] = random.nextInt(UNWEIGHTED_ONE_IN) != 0;
+                }
+                if (networkStorage != null) {
+                    for (int k = 0; k < incomingConnections; k++) {
+                        networkStorage.setIncomingNeuronIndex(a, b, k, incomingNeuronIndexes[k]);
+                        if (networkStorage.getWeight(a, b, k) != weights[k])
+                            networkStorage.flipWeight(a, b, k);
+                    }
+                } else {
+                    ActivationNeuron neuron = (ActivationNeuron) neuronDatabase.getNeuron(a, b);
+                    neuron.setIncomingNeuronIndexes(incomingNeuronIndexes);
+                    System.arraycopy(weights, 0, neuron.getWeights(), 0, incomingConnections);
+                }
+            }
+        }
+        return neuronDatabase;
+    }
+
+    /**
+     * Creates random inputs for the data layer.
+     *
+     * @param seed    is the seed of the inputs.
+     * @param samples is the number of inputs.
+     * @param length  is the number of bits per input.
+     * @return the inputs.
+     */
+    static boolean[][] inputs(long seed, int samples, int length) {
+        SplittableRandom random = new SplittableRandom(seed);
+        boolean[][] inputs = new boolean[samples][length];
+        for (boolean[] input : inputs)
+            for (int i = 0; i < length; i++)
+                input[i] = random.nextBoolean();
+        return inputs;
+    }
+
+    /**
+     * Computes the output layer of a network the reference way: a forward pass
+     * through the neurons of the object model.
+     *
+     * @param neuronDatabase is a network of the object model.
+     * @param inputBits      are the bits of the data layer.
+     * @return the activation of every output neuron.
+     */
+    static boolean[] evaluate(NeuronDatabase neuronDatabase, boolean[] inputBits) {
+        neuronDatabase.computeActivations(inputBits);
+        return neuronDatabase.getActivations(neuronDatabase.getNumberOfLayers() - 1);
+    }
+}
@@ -0,0 +1,131 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Tests {@link StakePropagator} against the recursive definition of stake, on
+ * seeded random networks of both storage models.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class StakePropagatorTest {
+    /**
+     * Fan-in and layer lengths of every test case: deep networks with a small
+     * fan-in, where paths reach neurons many times, and shallow ones with a
+     * fan-in that is not a multiple of 64.
+     */
+    private static final int[][][] CASES = {
+        {{3}, {5, 9, 8, 7, 6, 5, 4, 3}},
+        {{7}, {10, 12, 11, 9, 8, 7}},
+        {{65}, {70, 100, 65}},
+        {{100}, {130, 65, 100}},
+    };
+
+    /**
+     * Updating the stake of single neurons gives every neuron the stake of the
+     * recursive definition.
+     */
+    @Test
+    void updateStakeMatchesRecursiveDefinition() {
+        for (int[][] testCase : CASES) {
+            int incomingConnections = testCase[0][0];
+            int[] shape = testCase[1];
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 7, incomingConnections, shape);
+                int[][] expected = newStakes(shape);
+                SplittableRandom random = new SplittableRandom(8);
+                for (int i = 0; i < 20; i++) {
+                    int layer = 1 + random.nextInt(shape.length - 1);
+                    int neuron = random.nextInt(shape[layer]);
+                    neuronDatabase.getStakePropagator().updateStake(layer, neuron);
+                    addStake(neuronDatabase, expected, layer, neuron, 0);
+                }
+                assertStakes(expected, neuronDatabase, (packed ? "packed" : "objects") + ", fan-in "
+                    + incomingConnections + ", layers " + Arrays.toString(shape));
+            }
+        }
+    }
+
+    /**
+     * Updating the stakes of a whole layer gives every neuron the stake of
+     * updating each neuron of the layer recursively.
+     */
+    @Test
+    void updateLayerStakesMatchesRecursiveDefinition() {
+        for (int[][] testCase : CASES) {
+            int incomingConnections = testCase[0][0];
+            int[] shape = testCase[1];
+            for (boolean packed : new boolean[]{false, true}) {
+                NeuronDatabase neuronDatabase = RandomNetworks.create(packed, 9, incomingConnections, shape);
+                int[][] expected = newStakes(shape);
+                for (int layer = shape.length - 1; layer >= 1; layer -= 2) {
+                    neuronDatabase.getStakePropagator().updateLayerStakes(layer);
+                    for (int b = 0; b < shape[layer]; b++)
+                        addStake(neuronDatabase, expected, layer, b, 0);
+                }
+                assertStakes(expected, neuronDatabase, (packed ? "packed" : "objects") + ", fan-in "
+                    + incomingConnections + ", layers " + Arrays.toString(shape));
+            }
+        }
+    }
+
+    /**
+     * Creates zero stakes for every neuron.
+     *
+     * @param shape is the length of every layer.
+     * @return the stakes, stakes[layerIndex][neuronIndex].
+     */
+    private static int[][] newStakes(int[] shape) {
+        int[][] stakes = new int[shape.length][];
+        for (int a = 0; a < shape.length; a++)
+            stakes[a] = new int[shape[a]];
+        return stakes;
+    }
+
+    /**
+     * Adds stake the recursive way: a neuron at depth {@code d} gets
+     * {@code 2^(maxDepth - d)}, then so does every incoming activation neuron at
+     * depth {@code d + 1}, once per connection.
+     *
+     * @param neuronDatabase is the network, whose wiring is read.
+     * @param stakes         are the stakes to add to.
+     * @param layer          is the index of the layer of the neuron.
+     * @param neuron         is the index of the neuron in that layer.
+     * @param depth          is the depth of the neuron.
+     */
+    private static void addStake(NeuronDatabase neuronDatabase, int[][] stakes, int layer, int neuron, int depth) {
+        if (depth > StakePropagator.DEFAULT_MAX_DEPTH)
+            return;
+        stakes[layer][neuron] += 1 << (StakePropagator.DEFAULT_MAX_DEPTH - depth);
+        if (layer - 1 == 0)
+            return;
+        NetworkStorage networkStorage = neuronDatabase.getNetworkStorage();
+        for (int k = 0; k < neuronDatabase.getIncomingConnections(); k++) {
+            int incoming = networkStorage != null ? networkStorage.getIncomingNeuronIndex(layer, neuron, k)
+                : ((ActivationNeuron) neuronDatabase.getNeuron(layer, neuron)).getIncomingNeuronIndexes()[k];
+            addStake(neuronDatabase, stakes, layer - 1, incoming, depth + 1);
+        }
+    }
+
+    /**
+     * Checks the stake of every activation neuron.
+     *
+     * @param expected       are the expected stakes.
+     * @param neuronDatabase is the network.
+     * @param message        describes the test case.
+     */
+    private static void assertStakes(int[][] expected, NeuronDatabase neuronDatabase, String message) {
+        for (int a = 1; a < expected.length; a++) {
+            int[] actual = new int[expected[a].length];
+            for (int b = 0; b < actual.length; b++)
+                actual[b] = neuronDatabase.getNeuron(a, b).getStake();
+            assertArrayEquals(expected[a], actual, message + ", layer " + a);
+        }
+    }
+}
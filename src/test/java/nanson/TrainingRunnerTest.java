@@ -0,0 +1,92 @@
+package nanson;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the command line of {@link TrainingRunner}.
+ *
+ * @author Nanson Chen
+ * @version 2.0
+ */
+class TrainingRunnerTest {
+    /**
+     * A run with a small generation budget writes a checkpoint holding its best
+     * network, and a run resumed from that checkpoint starts from its score and
+     * never ends with a worse one.
+     */
+    @Test
+    void runThenResumeFromCheckpoint() throws IOException {
+        Path directory = Files.createTempDirectory("training");
+        Path first = directory.resolve("first.bnai");
+        Path second = directory.resolve("second.bnai");
+        try {
+            String firstLog = runCommand(0, "--packed", "--seed", "81", "--generations", "20", "--log-every", "0",
+                "--checkpoint", first.toString());
+            assertTrue(firstLog.contains("stopped: "), firstLog);
+            AlphabetTask task = new AlphabetTask();
+            int firstScore = task.score(NetworkSnapshot.read(first, true));
+            assertTrue(firstLog.contains("score=" + firstScore + " "), firstLog);
+
+            String secondLog = runCommand(0, "--resume", first.toString(), "--seed", "82", "--generations", "20",
+                "--log-every", "0", "--checkpoint", second.toString());
+            assertTrue(secondLog.startsWith("start score=" + firstScore + System.lineSeparator()), secondLog);
+            assertTrue(task.score(NetworkSnapshot.read(second, false)) <= firstScore);
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Invalid populations and mutation counts, and snapshots that can't be
+     * trained on the alphabet task, print the usage and exit with status 2.
+     */
+    @Test
+    void invalidOptionsExitWithUsage() throws IOException {
+        runCommand(2, "--population", "0");
+        runCommand(2, "--mutations", "-1");
+        runCommand(2, "--layers", "7,20,6");
+        runCommand(2, "--fan-in", "1");
+        Path snapshot = Files.createTempFile("network", ".bnai");
+        try {
+            NetworkSnapshot.write(new NeuronDatabase(true, 3, Constants.DEFAULT_LENGTH_OF_RESULTS, 20, 6), snapshot);
+            runCommand(2, "--resume", snapshot.toString());
+            NetworkSnapshot.write(new NeuronDatabase(true, 1, Constants.DEFAULT_LENGTH_OF_RESULTS, 20,
+                Constants.DEFAULT_LENGTH_OF_RESULTS), snapshot);
+            runCommand(2, "--resume", snapshot.toString());
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    /**
+     * Runs the command line and checks its exit status; the usage is printed to
+     * the error stream exactly when the status is 2.
+     *
+     * @param expectedStatus is the expected exit status.
+     * @param args           are the options.
+     * @return what was printed to the output stream.
+     * @throws IOException if a network cannot be read or written.
+     */
+    private static String runCommand(int expectedStatus, String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = TrainingRunner.runCommand(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+        String errors = err.toString(StandardCharsets.UTF_8);
+        assertEquals(expectedStatus, status, String.join(" ", args) + ": " + errors);
+        assertEquals(expectedStatus == 2, errors.contains("Usage: TrainingRunner"), errors);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}